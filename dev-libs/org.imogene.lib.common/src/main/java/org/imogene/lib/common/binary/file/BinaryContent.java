@@ -0,0 +1,61 @@
+package org.imogene.lib.common.binary.file;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * A binary content stored in the binary store, with the number of binary files that reference it. The content is
+ * deleted when it is no more referenced.
+ *
+ * @author MEDES-IMPS
+ */
+@Entity
+@Table(name = "binary_content")
+public class BinaryContent {
+
+	@Id
+	private String hash;
+
+	private int refCount;
+
+	private long length;
+
+	public BinaryContent() {
+	}
+
+	/**
+	 * @param hash the hash of the content
+	 * @param length the content length
+	 */
+	public BinaryContent(String hash, long length) {
+		this.hash = hash;
+		this.length = length;
+		this.refCount = 1;
+	}
+
+	public String getHash() {
+		return hash;
+	}
+
+	public void setHash(String hash) {
+		this.hash = hash;
+	}
+
+	public int getRefCount() {
+		return refCount;
+	}
+
+	public void setRefCount(int refCount) {
+		this.refCount = refCount;
+	}
+
+	public long getLength() {
+		return length;
+	}
+
+	public void setLength(long length) {
+		this.length = length;
+	}
+
+}
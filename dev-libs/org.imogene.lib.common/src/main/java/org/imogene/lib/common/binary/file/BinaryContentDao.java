@@ -0,0 +1,44 @@
+package org.imogene.lib.common.binary.file;
+
+/**
+ * Manage persistence for BinaryContent. The references are counted in the transactions of the binary file manager,
+ * which adds the contents to or removes them from the store while the count is locked.
+ *
+ * @author MEDES-IMPS
+ */
+public interface BinaryContentDao {
+
+	/**
+	 * Add a reference to a content, the content is inserted if it is not referenced yet. The insertion fails if a
+	 * concurrent transaction has inserted the same content.
+	 *
+	 * @param hash the hash of the content
+	 * @param length the content length
+	 */
+	public void acquire(String hash, long length);
+
+	/**
+	 * Add a reference to a content that is already referenced
+	 *
+	 * @param hash the hash of the content
+	 * @return true if the reference has been added, false if the content is not referenced
+	 */
+	public boolean increment(String hash);
+
+	/**
+	 * Remove a reference to a content, the count of the references is locked until the end of the transaction
+	 *
+	 * @param hash the hash of the content
+	 * @return the number of references left, 0 if the content is no more referenced
+	 */
+	public int release(String hash);
+
+	/**
+	 * Get the hash of the content of a stored binary file
+	 *
+	 * @param binaryId the binary file id
+	 * @return the hash, or null if the binary file is not stored or if its content is not in the store
+	 */
+	public String getContentHash(String binaryId);
+
+}
@@ -0,0 +1,60 @@
+package org.imogene.lib.common.binary.file;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Manage persistence for BinaryContent
+ *
+ * @author MEDES-IMPS
+ */
+public class BinaryContentDaoImpl implements BinaryContentDao {
+
+	@PersistenceContext
+	private EntityManager em;
+
+	@Override
+	public void acquire(String hash, long length) {
+		if (!increment(hash)) {
+			em.persist(new BinaryContent(hash, length));
+			/* the duplicate key of a concurrent insertion is raised here rather than at commit */
+			em.flush();
+		}
+	}
+
+	@Override
+	public boolean increment(String hash) {
+		return em.createQuery("UPDATE BinaryContent c SET c.refCount = c.refCount + 1 WHERE c.hash = :hash")
+				.setParameter("hash", hash).executeUpdate() > 0;
+	}
+
+	@Override
+	public int release(String hash) {
+		BinaryContent content = em.find(BinaryContent.class, hash, LockModeType.PESSIMISTIC_WRITE);
+		if (content == null) {
+			return 0;
+		}
+		int refCount = content.getRefCount() - 1;
+		if (refCount <= 0) {
+			em.remove(content);
+			return 0;
+		}
+		content.setRefCount(refCount);
+		return refCount;
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public String getContentHash(String binaryId) {
+		List<String> result = em
+				.createQuery("SELECT b.contentHash FROM BinaryFile b WHERE b.id = :id", String.class)
+				.setParameter("id", binaryId).getResultList();
+		return result.isEmpty() ? null : result.get(0);
+	}
+
+}
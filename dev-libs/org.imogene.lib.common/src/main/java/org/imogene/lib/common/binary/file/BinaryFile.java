@@ -20,6 +20,9 @@ public class BinaryFile extends ImogBeanImpl implements Binary {
 	private String contentType;
 	private long length;
 
+	/* the hash of the content in the binary store, null if the content is stored in the binary directory */
+	private String contentHash;
+
 	public BinaryFile() {
 	}
 
@@ -53,10 +56,18 @@ public class BinaryFile extends ImogBeanImpl implements Binary {
 		this.length = length;
 	}
 
+	public String getContentHash() {
+		return contentHash;
+	}
+
+	public void setContentHash(String contentHash) {
+		this.contentHash = contentHash;
+	}
+
 	@Override
 	public InputStream createInputStream() {
 		try {
-			return new FileInputStream(BinaryFileManager.getInstance().buildFilePath(getId(), fileName));
+			return new FileInputStream(BinaryFileManager.getInstance().buildFilePath(this));
 		} catch (FileNotFoundException ex) {
 			ex.printStackTrace();
 		}
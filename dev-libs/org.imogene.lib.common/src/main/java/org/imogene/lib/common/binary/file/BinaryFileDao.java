@@ -1,7 +1,26 @@
 package org.imogene.lib.common.binary.file;
 
+import java.util.List;
+
 import org.imogene.lib.common.binary.BinaryDao;
 
 public interface BinaryFileDao extends BinaryDao<BinaryFile> {
 
+	/**
+	 * List the binary files whose content is not in the binary store, sorted by id
+	 * 
+	 * @param afterId the id after which the binary files are listed, null to list from the first one
+	 * @param max nb of binary files to retrieve
+	 * @return list of binary files
+	 */
+	public List<BinaryFile> loadNotStored(String afterId, int max);
+
+	/**
+	 * Set the hash of the content of a binary file, without changing its modification date and version
+	 * 
+	 * @param id the binary file id
+	 * @param contentHash the hash of the content in the binary store
+	 */
+	public void setContentHash(String id, String contentHash);
+
 }
@@ -1,5 +1,12 @@
 package org.imogene.lib.common.binary.file;
 
+import java.util.List;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
 import org.imogene.lib.common.dao.ImogBeanDaoImpl;
 
 public class BinaryFileDaoImpl extends ImogBeanDaoImpl<BinaryFile> implements BinaryFileDao {
@@ -13,4 +20,25 @@ public class BinaryFileDaoImpl extends ImogBeanDaoImpl<BinaryFile> implements Bi
 		em.createQuery("DELETE FROM Binary").executeUpdate();
 	}
 
+	@Override
+	public List<BinaryFile> loadNotStored(String afterId, int max) {
+		CriteriaBuilder builder = em.getCriteriaBuilder();
+		CriteriaQuery<BinaryFile> query = builder.createQuery(BinaryFile.class);
+		Root<BinaryFile> root = query.from(BinaryFile.class);
+		Predicate where = builder.isNull(root.<String> get("contentHash"));
+		if (afterId != null) {
+			where = builder.and(where, builder.greaterThan(root.<String> get("id"), afterId));
+		}
+		query.where(where);
+		query.orderBy(builder.asc(root.<String> get("id")));
+		return em.createQuery(query).setMaxResults(max).getResultList();
+	}
+
+	@Override
+	public void setContentHash(String id, String contentHash) {
+		/* a bulk update does not go through the lifecycle callbacks, the binary file is not seen as modified */
+		em.createQuery("UPDATE BinaryFile b SET b.contentHash = :hash WHERE b.id = :id")
+				.setParameter("hash", contentHash).setParameter("id", id).executeUpdate();
+	}
+
 }
@@ -1,20 +1,55 @@
 package org.imogene.lib.common.binary.file;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 import org.imogene.lib.common.binary.Binary;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /**
- * Singleton to manage the binary files, to get the binary file directory
- * 
+ * Singleton to manage the binary files, to get the binary file directory. The contents of the binary files are kept
+ * in a binary store, keyed by the hash of the content, so that a content received several times is stored once. The
+ * binary files whose content has not been moved to the store yet are still read from the binary file directory.
+ *
  * @author MEDES-IMPS
  */
 public class BinaryFileManager {
 
+	/* the algorithm of the content hash, the same as the one of the synchronization frames */
+	public static final String HASH_ALGORITHM = "SHA-1";
+
+	public static final String THUMB_SUFFIX = ".thumb";
+	public static final String FLV_SUFFIX = ".flv";
+	public static final String MP3_SUFFIX = ".mp3";
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
 	private static BinaryFileManager instance = new BinaryFileManager();
 
 	private File binaryFile;
 
+	private BinaryStore binaryStore;
+
+	private BinaryContentDao binaryContentDao;
+
+	/* the transactions of the reference counts, null to count them in the current transaction */
+	private TransactionTemplate transactionTemplate;
+
 	/**
 	 * Get the BinaryFile manager
 	 */
@@ -24,7 +59,7 @@ public class BinaryFileManager {
 
 	/**
 	 * Setter for bean injection
-	 * 
+	 *
 	 * @param binaryPath
 	 */
 	public void setBinaryPath(String path) {
@@ -32,11 +67,43 @@ public class BinaryFileManager {
 		if (!binaryFile.exists()) {
 			binaryFile.mkdirs();
 		}
+		if (binaryStore == null) {
+			binaryStore = new ShardedBinaryStore(new File(binaryFile, "content"));
+		}
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param binaryStore the store of the contents, a store sharded in the binary directory by default
+	 */
+	public void setBinaryStore(BinaryStore binaryStore) {
+		this.binaryStore = binaryStore;
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param binaryContentDao
+	 */
+	public void setBinaryContentDao(BinaryContentDao binaryContentDao) {
+		this.binaryContentDao = binaryContentDao;
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param transactionManager the transaction manager of the reference counts, which are counted in their own
+	 *            transactions
+	 */
+	public void setTransactionManager(PlatformTransactionManager transactionManager) {
+		transactionTemplate = new TransactionTemplate(transactionManager);
+		transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
 	}
 
 	/**
 	 * Build a binary file path
-	 * 
+	 *
 	 * @param entityId binary id
 	 * @param fileName file name
 	 * @return absolute file path
@@ -46,18 +113,348 @@ public class BinaryFileManager {
 	}
 
 	public File buildFilePath(Binary binary) {
+		String hash = getContentHash(binary);
+		if (hash != null) {
+			return binaryStore.getFile(hash, "");
+		}
 		return buildFilePath(binary.getId(), binary.getFileName());
 	}
 
 	public File buildFlvFilePath(Binary binary) {
-		return new File(binaryFile, "flv/" + binary.getId() + "-" + binary.getFileName() + ".flv");
+		if (isContentType(binary, "x-flash-video")) {
+			/* the content is already a flash video */
+			return buildFilePath(binary);
+		}
+		String hash = getContentHash(binary);
+		if (hash != null) {
+			return binaryStore.getFile(hash, FLV_SUFFIX);
+		}
+		return getLegacyFlvFile(binary);
 	}
 
 	public File buildThumbFilePath(Binary binary) {
-		return new File(binaryFile, "thumb_" + binary.getId() + "-" + binary.getFileName());
+		String hash = getContentHash(binary);
+		if (hash != null) {
+			return binaryStore.getFile(hash, THUMB_SUFFIX);
+		}
+		return getLegacyThumbFile(binary);
 	}
 
 	public File buildMp3FilePath(Binary binary) {
-		return new File(binaryFile, /* "mp3/" + */binary.getId() + "-" + binary.getFileName() /* + ".mp3" */);
+		if (isContentType(binary, "mp3") || isContentType(binary, "audio/mpeg")) {
+			/* the content is already an mp3 */
+			return buildFilePath(binary);
+		}
+		String hash = getContentHash(binary);
+		if (hash != null) {
+			return binaryStore.getFile(hash, MP3_SUFFIX);
+		}
+		return getLegacyMp3File(binary);
+	}
+
+	/**
+	 * Get the file served as the mp3 of an audio binary. The audio that has not been converted, as the one stored
+	 * before the conversions were enabled, is served as it is.
+	 *
+	 * @param binary the audio binary
+	 * @return the mp3 variant if it exists, the content otherwise
+	 */
+	public File getMp3File(Binary binary) {
+		File mp3 = buildMp3FilePath(binary);
+		if (mp3.exists()) {
+			return mp3;
+		}
+		return buildFilePath(binary);
+	}
+
+	/**
+	 * Create a temporary file in the binary directory, to receive a content that is then stored with store
+	 *
+	 * @return a new empty file
+	 * @throws IOException
+	 */
+	public File createTempFile() throws IOException {
+		return File.createTempFile("imogbin", ".tmp", binaryFile);
+	}
+
+	/**
+	 * Store the content of a binary file, the hash of the content is computed
+	 *
+	 * @param binary the binary file, whose content hash is set
+	 * @param content the file that contains the content, which is moved to the store or deleted
+	 * @throws IOException
+	 */
+	public void store(BinaryFile binary, File content) throws IOException {
+		store(binary, content, hash(content));
+	}
+
+	/**
+	 * Store the content of a binary file. A reference to the content is added, and the reference to the previous
+	 * content of the binary file, if any, is removed. Within a transaction, the reference to the previous content is
+	 * only removed once the transaction is committed, and the reference to the new content is removed if the
+	 * transaction is rolled back.
+	 *
+	 * @param binary the binary file, whose content hash is set
+	 * @param content the file that contains the content, which is moved to the store or deleted
+	 * @param hash the hexadecimal hash of the content
+	 * @throws IOException
+	 */
+	public void store(BinaryFile binary, File content, String hash) throws IOException {
+		hash = hash.toLowerCase();
+		String previous = binaryContentDao.getContentHash(binary.getId());
+		if (hash.equals(previous)) {
+			/* the same content is received again */
+			content.delete();
+		} else {
+			acquire(hash, content.length());
+			binaryStore.put(hash, content);
+			replace(previous, hash);
+		}
+		binary.setContentHash(hash);
+	}
+
+	/**
+	 * Get the hash of the content of a stored binary file
+	 *
+	 * @param binaryId the binary file id
+	 * @return the hash, or null if the binary file is not stored or if its content is not in the store
+	 */
+	public String getContentHash(String binaryId) {
+		return binaryContentDao.getContentHash(binaryId);
+	}
+
+	/**
+	 * Remove the content of a binary file that is deleted, the content is deleted if no other binary file
+	 * references it, once the current transaction is committed
+	 *
+	 * @param binary the deleted binary
+	 */
+	public void delete(Binary binary) {
+		String hash = getContentHash(binary);
+		if (hash != null) {
+			replace(hash, null);
+		} else {
+			buildFilePath(binary).delete();
+			buildThumbFilePath(binary).delete();
+			buildFlvFilePath(binary).delete();
+			buildMp3FilePath(binary).delete();
+		}
+	}
+
+	/**
+	 * Copy the content of a binary file stored in the binary directory to the store, along with its variants. The
+	 * files of the binary directory are kept, so that they can still be read until the content hash of the binary
+	 * file is committed, they are deleted afterwards with deleteMigrated.
+	 *
+	 * @param binary a binary file whose content is not in the store
+	 * @return the hash of the content, or null if the binary file has no content
+	 * @throws IOException
+	 */
+	public String migrate(BinaryFile binary) throws IOException {
+		File legacy = buildFilePath(binary.getId(), binary.getFileName());
+		if (!legacy.exists()) {
+			return null;
+		}
+		String hash = hash(legacy);
+		copyVariant(getLegacyThumbFile(binary), hash, THUMB_SUFFIX);
+		copyVariant(getLegacyFlvFile(binary), hash, FLV_SUFFIX);
+		copyVariant(getLegacyMp3File(binary), hash, MP3_SUFFIX);
+		File copy = createTempFile();
+		copy(legacy, copy);
+		acquire(hash, copy.length());
+		binaryStore.put(hash, copy);
+		replace(null, hash);
+		return hash;
+	}
+
+	/**
+	 * Delete the files of the binary directory of a binary file whose content has been migrated to the store
+	 *
+	 * @param binary the binary file, whose content hash is not set
+	 */
+	public void deleteMigrated(BinaryFile binary) {
+		buildFilePath(binary.getId(), binary.getFileName()).delete();
+		getLegacyThumbFile(binary).delete();
+		getLegacyFlvFile(binary).delete();
+		getLegacyMp3File(binary).delete();
+	}
+
+	/**
+	 * Compute the hash of a content
+	 *
+	 * @param content the file that contains the content
+	 * @return the hexadecimal hash
+	 * @throws IOException
+	 */
+	public static String hash(File content) throws IOException {
+		MessageDigest digest = createDigest();
+		InputStream in = new FileInputStream(content);
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Create the digest used to hash the contents
+	 *
+	 * @return a new digest
+	 */
+	public static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Get the hexadecimal form of a hash
+	 *
+	 * @param hash the hash bytes
+	 * @return the lower case hexadecimal hash
+	 */
+	public static String toHex(byte[] hash) {
+		char[] result = new char[hash.length * 2];
+		for (int i = 0; i < hash.length; i++) {
+			result[2 * i] = HEX[(hash[i] >> 4) & 0xf];
+			result[2 * i + 1] = HEX[hash[i] & 0xf];
+		}
+		return new String(result);
+	}
+
+	/* the variants of the binary files whose content is not in the store */
+	private File getLegacyThumbFile(Binary binary) {
+		return new File(binaryFile, "thumb_" + binary.getId() + "-" + binary.getFileName());
+	}
+
+	private File getLegacyFlvFile(Binary binary) {
+		return new File(binaryFile, "flv/" + binary.getId() + "-" + binary.getFileName() + ".flv");
+	}
+
+	private File getLegacyMp3File(Binary binary) {
+		return new File(binaryFile, "mp3/" + binary.getId() + "-" + binary.getFileName() + ".mp3");
+	}
+
+	private static boolean isContentType(Binary binary, String type) {
+		return binary.getContentType() != null && binary.getContentType().contains(type);
+	}
+
+	private static String getContentHash(Binary binary) {
+		if (binary instanceof BinaryFile) {
+			return ((BinaryFile) binary).getContentHash();
+		}
+		return null;
+	}
+
+	/**
+	 * Add a reference to a content. If a concurrent transaction has just inserted the same content, the insertion
+	 * fails on its duplicate key and the reference is added as an increment.
+	 */
+	private void acquire(final String hash, final long length) {
+		try {
+			execute(new TransactionCallbackWithoutResult() {
+				@Override
+				protected void doInTransactionWithoutResult(TransactionStatus status) {
+					binaryContentDao.acquire(hash, length);
+				}
+			});
+		} catch (RuntimeException e) {
+			final boolean[] incremented = new boolean[1];
+			execute(new TransactionCallbackWithoutResult() {
+				@Override
+				protected void doInTransactionWithoutResult(TransactionStatus status) {
+					incremented[0] = binaryContentDao.increment(hash);
+				}
+			});
+			if (!incremented[0]) {
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Remove a reference to a content, and delete the content if it is no more referenced. The content is deleted in
+	 * the transaction that has locked its count, so a concurrent reference waits until it is deleted and then stores
+	 * it again.
+	 */
+	private void release(final String hash) {
+		execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				if (binaryContentDao.release(hash) == 0) {
+					binaryStore.remove(hash);
+				}
+			}
+		});
+	}
+
+	private void execute(TransactionCallbackWithoutResult callback) {
+		if (transactionTemplate != null) {
+			transactionTemplate.execute(callback);
+		} else {
+			callback.doInTransaction(null);
+		}
+	}
+
+	/**
+	 * Remove the reference to the previous content of a binary file, when the current transaction is committed, or
+	 * the reference to the new content if it is rolled back
+	 */
+	private void replace(final String previous, final String hash) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			if (previous != null) {
+				release(previous);
+			}
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCompletion(int status) {
+				if (status == TransactionSynchronization.STATUS_COMMITTED) {
+					if (previous != null) {
+						release(previous);
+					}
+				} else if (hash != null) {
+					release(hash);
+				}
+			}
+		});
+	}
+
+	private void copyVariant(File variant, String hash, String suffix) throws IOException {
+		File target = binaryStore.getFile(hash, suffix);
+		if (variant.exists() && !target.exists()) {
+			target.getParentFile().mkdirs();
+			File temp = createTempFile();
+			copy(variant, temp);
+			if (!temp.renameTo(target)) {
+				temp.delete();
+			}
+		}
+	}
+
+	private static void copy(File source, File target) throws IOException {
+		InputStream in = new FileInputStream(source);
+		try {
+			OutputStream out = new FileOutputStream(target);
+			try {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					out.write(buffer, 0, read);
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
 	}
 }
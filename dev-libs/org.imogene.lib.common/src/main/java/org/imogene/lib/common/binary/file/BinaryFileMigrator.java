@@ -0,0 +1,171 @@
+package org.imogene.lib.common.binary.file;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Vector;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Moves the contents of the binary files stored in the binary directory to the binary store, in the background while
+ * the application is running. The binary files are migrated by batches, each one in its own transaction, and the
+ * files of the binary directory are deleted once the content hashes are committed, so that the binary files can be
+ * read during the migration.
+ *
+ * @author MEDES-IMPS
+ */
+public class BinaryFileMigrator implements InitializingBean, DisposableBean {
+
+	private BinaryFileDao binaryFileDao;
+
+	private PlatformTransactionManager transactionManager;
+
+	private int batchSize = 100;
+
+	/* pause between two batches, in milliseconds */
+	private long pause = 100;
+
+	private Thread thread;
+
+	private volatile boolean stopped = false;
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		thread = new Thread("binary-migrator") {
+			@Override
+			public void run() {
+				migrate();
+			}
+		};
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		stopped = true;
+		if (thread != null) {
+			thread.interrupt();
+			thread.join();
+			thread = null;
+		}
+	}
+
+	/**
+	 * Migrate the binary files until all of them are migrated or the migrator is stopped
+	 */
+	private void migrate() {
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		String lastId = null;
+		while (!stopped) {
+			final String afterId = lastId;
+			Batch batch;
+			try {
+				batch = template.execute(new TransactionCallback<Batch>() {
+					@Override
+					public Batch doInTransaction(TransactionStatus status) {
+						return migrateBatch(afterId);
+					}
+				});
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				return;
+			}
+			if (batch == null) {
+				return;
+			}
+			for (BinaryFile binary : batch.migrated) {
+				BinaryFileManager.getInstance().deleteMigrated(binary);
+			}
+			lastId = batch.lastId;
+			try {
+				Thread.sleep(pause);
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Migrate a batch of binary files
+	 *
+	 * @param afterId the id after which the binary files are migrated
+	 * @return the migrated batch, null if there is no binary file left to migrate
+	 */
+	private Batch migrateBatch(String afterId) {
+		List<BinaryFile> binaries = binaryFileDao.loadNotStored(afterId, batchSize);
+		if (binaries.isEmpty()) {
+			return null;
+		}
+		Batch batch = new Batch();
+		for (BinaryFile binary : binaries) {
+			try {
+				String hash = BinaryFileManager.getInstance().migrate(binary);
+				if (hash != null) {
+					binaryFileDao.setContentHash(binary.getId(), hash);
+					batch.migrated.add(binary);
+				}
+			} catch (IOException e) {
+				/* the binary file stays in the binary directory */
+				e.printStackTrace();
+			}
+			batch.lastId = binary.getId();
+		}
+		return batch;
+	}
+
+	/**
+	 * A batch of binary files, the files of the binary directory of the migrated ones are deleted once the batch is
+	 * committed
+	 */
+	private static class Batch {
+
+		private final List<BinaryFile> migrated = new Vector<BinaryFile>();
+
+		/* the id of the last binary file of the batch, migrated or not */
+		private String lastId;
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param binaryFileDao
+	 */
+	public void setBinaryFileDao(BinaryFileDao binaryFileDao) {
+		this.binaryFileDao = binaryFileDao;
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param transactionManager
+	 */
+	public void setTransactionManager(PlatformTransactionManager transactionManager) {
+		this.transactionManager = transactionManager;
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param batchSize the number of binary files migrated in a transaction
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param pause the pause between two batches, in milliseconds
+	 */
+	public void setPause(long pause) {
+		this.pause = pause;
+	}
+
+}
@@ -0,0 +1,40 @@
+package org.imogene.lib.common.binary.file;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Storage of the binary contents, keyed by the hash of the content. A content is stored once whatever the number of
+ * binaries that reference it, along with its variants (thumbnail, converted video) that are derived from it.
+ *
+ * @author MEDES-IMPS
+ */
+public interface BinaryStore {
+
+	/**
+	 * Get the file of a content or of one of its variants
+	 *
+	 * @param hash the hash of the content
+	 * @param suffix the suffix of the variant, an empty string for the content itself
+	 * @return the file, which may not exist
+	 */
+	public File getFile(String hash, String suffix);
+
+	/**
+	 * Store a content, the given file is moved in the store, or deleted if the content is already stored
+	 *
+	 * @param hash the hash of the content
+	 * @param content the file that contains the content
+	 * @return true if the content has been added, false if it was already stored
+	 * @throws IOException
+	 */
+	public boolean put(String hash, File content) throws IOException;
+
+	/**
+	 * Delete a content and its variants
+	 *
+	 * @param hash the hash of the content
+	 */
+	public void remove(String hash);
+
+}
@@ -0,0 +1,178 @@
+package org.imogene.lib.common.binary.file;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+
+/**
+ * Output stream that computes the hash, the length and the content type of a content while it is written, so that an
+ * uploaded content can be stored without being read again. The length is checked on each write, the writing fails as
+ * soon as the content exceeds the maximum length.
+ *
+ * @author MEDES-IMPS
+ */
+public class ContentOutputStream extends FilterOutputStream {
+
+	/* the number of bytes kept to detect the content type */
+	private static final int HEADER_SIZE = 16;
+
+	private final MessageDigest digest = BinaryFileManager.createDigest();
+
+	private final byte[] header = new byte[HEADER_SIZE];
+
+	private int headerLength = 0;
+
+	private long length;
+
+	private final long maxLength;
+
+	private String hash;
+
+	/**
+	 * @param out the stream the content is written to
+	 * @param maxLength the maximum length of the content, 0 or less for no maximum
+	 */
+	public ContentOutputStream(OutputStream out, long maxLength) {
+		this(out, 0, maxLength);
+	}
+
+	/**
+	 * @param out the stream the content is written to
+	 * @param length the length of the content already written to the stream, when the content is appended to a
+	 *            partial content, in which case the hash and the content type only cover the appended part
+	 * @param maxLength the maximum length of the whole content, 0 or less for no maximum
+	 */
+	public ContentOutputStream(OutputStream out, long length, long maxLength) {
+		super(out);
+		this.length = length;
+		this.maxLength = maxLength;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (maxLength > 0 && length + len > maxLength) {
+			throw new SizeExceededException(maxLength);
+		}
+		if (headerLength < HEADER_SIZE) {
+			int count = Math.min(len, HEADER_SIZE - headerLength);
+			System.arraycopy(b, off, header, headerLength, count);
+			headerLength += count;
+		}
+		digest.update(b, off, len);
+		length += len;
+		out.write(b, off, len);
+	}
+
+	@Override
+	public void close() throws IOException {
+		super.close();
+		if (hash == null) {
+			hash = BinaryFileManager.toHex(digest.digest());
+		}
+	}
+
+	/**
+	 * Get the hash of the content, once the stream is closed
+	 *
+	 * @return the hexadecimal hash, null if the stream is not closed
+	 */
+	public String getHash() {
+		return hash;
+	}
+
+	/**
+	 * Get the length of the content written so far
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * Get the content type detected from the first bytes of the content
+	 *
+	 * @return the content type, or null if it is not recognized
+	 */
+	public String getDetectedContentType() {
+		return detectContentType(header, headerLength);
+	}
+
+	/**
+	 * Detect the content type of the most common media from their first bytes
+	 *
+	 * @param header the first bytes of the content
+	 * @param length the number of bytes of the header
+	 * @return the content type, or null if it is not recognized
+	 */
+	public static String detectContentType(byte[] header, int length) {
+		if (startsWith(header, length, 0, 0xFF, 0xD8, 0xFF)) {
+			return "image/jpeg";
+		}
+		if (startsWith(header, length, 0, 0x89, 'P', 'N', 'G')) {
+			return "image/png";
+		}
+		if (startsWith(header, length, 0, 'G', 'I', 'F', '8')) {
+			return "image/gif";
+		}
+		if (startsWith(header, length, 0, 'B', 'M')) {
+			return "image/bmp";
+		}
+		if (startsWith(header, length, 0, '%', 'P', 'D', 'F')) {
+			return "application/pdf";
+		}
+		if (startsWith(header, length, 0, 'F', 'L', 'V')) {
+			return "video/x-flash-video";
+		}
+		if (startsWith(header, length, 0, 'I', 'D', '3')) {
+			return "audio/mpeg";
+		}
+		if (startsWith(header, length, 0, 'R', 'I', 'F', 'F')) {
+			if (startsWith(header, length, 8, 'W', 'A', 'V', 'E')) {
+				return "audio/x-wav";
+			}
+			if (startsWith(header, length, 8, 'A', 'V', 'I', ' ')) {
+				return "video/x-msvideo";
+			}
+		}
+		if (startsWith(header, length, 4, 'f', 't', 'y', 'p')) {
+			if (startsWith(header, length, 8, '3', 'g')) {
+				return "video/3gpp";
+			}
+			return "video/mp4";
+		}
+		if (startsWith(header, length, 0, 'P', 'K', 0x03, 0x04)) {
+			return "application/zip";
+		}
+		return null;
+	}
+
+	private static boolean startsWith(byte[] header, int length, int offset, int... magic) {
+		if (length < offset + magic.length) {
+			return false;
+		}
+		for (int i = 0; i < magic.length; i++) {
+			if ((header[offset + i] & 0xFF) != magic[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Thrown when a content exceeds its maximum length
+	 */
+	public static class SizeExceededException extends IOException {
+
+		private static final long serialVersionUID = 4181932611525045397L;
+
+		public SizeExceededException(long maxLength) {
+			super("The content exceeds the maximum size of " + maxLength + " bytes");
+		}
+	}
+
+}
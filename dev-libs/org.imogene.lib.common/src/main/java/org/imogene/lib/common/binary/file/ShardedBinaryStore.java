@@ -0,0 +1,122 @@
+package org.imogene.lib.common.binary.file;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Binary store that shards the contents in a tree of directories named after the first characters of their hash, so
+ * that no directory holds more than a few hundred files. With the default depth and width, the content of hash
+ * 3f2a9c... is stored as 3f/2a/3f2a9c...
+ *
+ * @author MEDES-IMPS
+ */
+public class ShardedBinaryStore implements BinaryStore {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final File root;
+
+	/* number of directory levels */
+	private int depth = 2;
+
+	/* number of hash characters by directory level */
+	private int width = 2;
+
+	/**
+	 * @param root the root directory of the store
+	 */
+	public ShardedBinaryStore(File root) {
+		this.root = root;
+	}
+
+	@Override
+	public File getFile(String hash, String suffix) {
+		return new File(getDirectory(hash), hash + suffix);
+	}
+
+	@Override
+	public boolean put(String hash, File content) throws IOException {
+		File target = getFile(hash, "");
+		if (target.exists()) {
+			content.delete();
+			return false;
+		}
+		target.getParentFile().mkdirs();
+		if (!content.renameTo(target)) {
+			/* the content is not on the same file system */
+			copy(content, target);
+			content.delete();
+		}
+		return true;
+	}
+
+	@Override
+	public void remove(String hash) {
+		File[] files = getDirectory(hash).listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (file.getName().startsWith(hash)) {
+				file.delete();
+			}
+		}
+	}
+
+	private File getDirectory(String hash) {
+		File directory = root;
+		for (int i = 0; i < depth; i++) {
+			directory = new File(directory, hash.substring(i * width, (i + 1) * width));
+		}
+		return directory;
+	}
+
+	/**
+	 * Copy a file through a temporary file, so that the target is never seen partially written
+	 */
+	private static void copy(File source, File target) throws IOException {
+		File temp = new File(target.getPath() + ".part");
+		InputStream in = new FileInputStream(source);
+		try {
+			OutputStream out = new FileOutputStream(temp);
+			try {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					out.write(buffer, 0, read);
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+		if (!temp.renameTo(target)) {
+			temp.delete();
+			throw new IOException("Unable to store " + target);
+		}
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param depth the number of directory levels
+	 */
+	public void setDepth(int depth) {
+		this.depth = depth;
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param width the number of hash characters by directory level
+	 */
+	public void setWidth(int width) {
+		this.width = width;
+	}
+
+}
@@ -0,0 +1,62 @@
+package org.imogene.lib.common.cache;
+
+import java.util.Iterator;
+
+import org.apache.log4j.Logger;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.cfg.Settings;
+import org.hibernate.cache.spi.access.AccessType;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.mapping.PersistentClass;
+import org.hibernate.mapping.RootClass;
+import org.hibernate.metamodel.source.MetadataImplementor;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+
+/**
+ * Enables the second-level cache of the concrete entities annotated with Cacheable. Hibernate only accepts a cache
+ * strategy on the root of an inheritance hierarchy and ignores the annotation on the subclasses, so the read-write
+ * strategy is set on the root of the hierarchies that have a cacheable entity, and the SelectiveRegionFactory skips
+ * the entries of the other entities. Nothing is cached when no entity is annotated, and nothing is done when the
+ * SelectiveRegionFactory is not the region factory.
+ *
+ * @author MEDES-IMPS
+ */
+public class CacheableEntityIntegrator implements Integrator {
+
+	private static final Logger logger = Logger.getLogger("org.imogene.lib.common.cache.CacheableEntityIntegrator");
+
+	@Override
+	public void integrate(Configuration configuration, SessionFactoryImplementor sessionFactory,
+			SessionFactoryServiceRegistry serviceRegistry) {
+		Settings settings = sessionFactory.getSettings();
+		if (!settings.isSecondLevelCacheEnabled() || !(settings.getRegionFactory() instanceof SelectiveRegionFactory)) {
+			return;
+		}
+		Iterator<PersistentClass> mappings = configuration.getClassMappings();
+		while (mappings.hasNext()) {
+			PersistentClass mapping = mappings.next();
+			Class<?> mappedClass = mapping.getMappedClass();
+			if (mappedClass == null || !SelectiveEntityRegionAccessStrategy.isCacheable(mappedClass)) {
+				continue;
+			}
+			RootClass root = mapping.getRootClass();
+			if (root.getCacheConcurrencyStrategy() == null) {
+				root.setCacheConcurrencyStrategy(AccessType.READ_WRITE.getExternalName());
+				logger.info("Second-level cache enabled on " + root.getEntityName() + " for "
+						+ mapping.getEntityName());
+			}
+		}
+	}
+
+	@Override
+	public void integrate(MetadataImplementor metadata, SessionFactoryImplementor sessionFactory,
+			SessionFactoryServiceRegistry serviceRegistry) {
+		/* the new metamodel is not used */
+	}
+
+	@Override
+	public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+	}
+
+}
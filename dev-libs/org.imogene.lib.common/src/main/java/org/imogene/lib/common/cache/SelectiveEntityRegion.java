@@ -0,0 +1,88 @@
+package org.imogene.lib.common.cache;
+
+import java.util.Map;
+
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.spi.CacheDataDescription;
+import org.hibernate.cache.spi.EntityRegion;
+import org.hibernate.cache.spi.access.AccessType;
+import org.hibernate.cache.spi.access.EntityRegionAccessStrategy;
+
+/**
+ * Entity region whose access strategies only cache the entities whose class is annotated with Cacheable
+ *
+ * @author MEDES-IMPS
+ */
+class SelectiveEntityRegion implements EntityRegion {
+
+	private final EntityRegion delegate;
+
+	/**
+	 * @param delegate the wrapped region
+	 */
+	SelectiveEntityRegion(EntityRegion delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public EntityRegionAccessStrategy buildAccessStrategy(AccessType accessType) throws CacheException {
+		return new SelectiveEntityRegionAccessStrategy(this, delegate.buildAccessStrategy(accessType));
+	}
+
+	@Override
+	public boolean isTransactionAware() {
+		return delegate.isTransactionAware();
+	}
+
+	@Override
+	public CacheDataDescription getCacheDataDescription() {
+		return delegate.getCacheDataDescription();
+	}
+
+	@Override
+	public String getName() {
+		return delegate.getName();
+	}
+
+	@Override
+	public void destroy() throws CacheException {
+		delegate.destroy();
+	}
+
+	@Override
+	public boolean contains(Object key) {
+		return delegate.contains(key);
+	}
+
+	@Override
+	public long getSizeInMemory() {
+		return delegate.getSizeInMemory();
+	}
+
+	@Override
+	public long getElementCountInMemory() {
+		return delegate.getElementCountInMemory();
+	}
+
+	@Override
+	public long getElementCountOnDisk() {
+		return delegate.getElementCountOnDisk();
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public Map toMap() {
+		return delegate.toMap();
+	}
+
+	@Override
+	public long nextTimestamp() {
+		return delegate.nextTimestamp();
+	}
+
+	@Override
+	public int getTimeout() {
+		return delegate.getTimeout();
+	}
+
+}
@@ -0,0 +1,178 @@
+package org.imogene.lib.common.cache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.persistence.Cacheable;
+
+import org.apache.log4j.Logger;
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.spi.EntityRegion;
+import org.hibernate.cache.spi.access.EntityRegionAccessStrategy;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.cache.spi.entry.CacheEntry;
+
+/**
+ * Entity access strategy that only stores the entries of the entities whose class is annotated with Cacheable. The
+ * entries of the other entities are never put in the cache, and are evicted when they are updated, so that they are
+ * always read from the database.
+ *
+ * @author MEDES-IMPS
+ */
+class SelectiveEntityRegionAccessStrategy implements EntityRegionAccessStrategy {
+
+	private static final Logger logger = Logger
+			.getLogger("org.imogene.lib.common.cache.SelectiveEntityRegionAccessStrategy");
+
+	/* the key of the entity class in the structured cache entries */
+	private static final String SUBCLASS_KEY = "_subclass";
+
+	/* whether the entities of a class are cached, by class name */
+	private static final ConcurrentMap<String, Boolean> cached = new ConcurrentHashMap<String, Boolean>();
+
+	private final EntityRegion region;
+
+	private final EntityRegionAccessStrategy delegate;
+
+	/**
+	 * @param region the region of the strategy
+	 * @param delegate the wrapped strategy
+	 */
+	SelectiveEntityRegionAccessStrategy(EntityRegion region, EntityRegionAccessStrategy delegate) {
+		this.region = region;
+		this.delegate = delegate;
+	}
+
+	@Override
+	public EntityRegion getRegion() {
+		return region;
+	}
+
+	@Override
+	public Object get(Object key, long txTimestamp) throws CacheException {
+		return delegate.get(key, txTimestamp);
+	}
+
+	@Override
+	public boolean putFromLoad(Object key, Object value, long txTimestamp, Object version) throws CacheException {
+		return isCached(value) && delegate.putFromLoad(key, value, txTimestamp, version);
+	}
+
+	@Override
+	public boolean putFromLoad(Object key, Object value, long txTimestamp, Object version,
+			boolean minimalPutOverride) throws CacheException {
+		return isCached(value) && delegate.putFromLoad(key, value, txTimestamp, version, minimalPutOverride);
+	}
+
+	@Override
+	public boolean insert(Object key, Object value, Object version) throws CacheException {
+		return isCached(value) && delegate.insert(key, value, version);
+	}
+
+	@Override
+	public boolean afterInsert(Object key, Object value, Object version) throws CacheException {
+		return isCached(value) && delegate.afterInsert(key, value, version);
+	}
+
+	@Override
+	public boolean update(Object key, Object value, Object currentVersion, Object previousVersion)
+			throws CacheException {
+		return isCached(value) && delegate.update(key, value, currentVersion, previousVersion);
+	}
+
+	@Override
+	public boolean afterUpdate(Object key, Object value, Object currentVersion, Object previousVersion,
+			SoftLock lock) throws CacheException {
+		if (isCached(value)) {
+			return delegate.afterUpdate(key, value, currentVersion, previousVersion, lock);
+		}
+		/* the item has been locked before the update, it is released and dropped */
+		delegate.unlockItem(key, lock);
+		delegate.evict(key);
+		return false;
+	}
+
+	@Override
+	public SoftLock lockItem(Object key, Object version) throws CacheException {
+		return delegate.lockItem(key, version);
+	}
+
+	@Override
+	public SoftLock lockRegion() throws CacheException {
+		return delegate.lockRegion();
+	}
+
+	@Override
+	public void unlockItem(Object key, SoftLock lock) throws CacheException {
+		delegate.unlockItem(key, lock);
+	}
+
+	@Override
+	public void unlockRegion(SoftLock lock) throws CacheException {
+		delegate.unlockRegion(lock);
+	}
+
+	@Override
+	public void remove(Object key) throws CacheException {
+		delegate.remove(key);
+	}
+
+	@Override
+	public void removeAll() throws CacheException {
+		delegate.removeAll();
+	}
+
+	@Override
+	public void evict(Object key) throws CacheException {
+		delegate.evict(key);
+	}
+
+	@Override
+	public void evictAll() throws CacheException {
+		delegate.evictAll();
+	}
+
+	/**
+	 * Check if a cache entry belongs to an entity whose class is annotated with Cacheable
+	 *
+	 * @param value the cache entry, or its structured form
+	 * @return true if the entry can be cached
+	 */
+	@SuppressWarnings("rawtypes")
+	private static boolean isCached(Object value) {
+		Object subclass = null;
+		if (value instanceof CacheEntry) {
+			subclass = ((CacheEntry) value).getSubclass();
+		} else if (value instanceof Map) {
+			subclass = ((Map) value).get(SUBCLASS_KEY);
+		}
+		if (subclass == null) {
+			return false;
+		}
+		String className = subclass.toString();
+		Boolean result = cached.get(className);
+		if (result == null) {
+			result = Boolean.FALSE;
+			try {
+				result = isCacheable(Class.forName(className));
+			} catch (ClassNotFoundException e) {
+				logger.warn("The entity class " + className + " cannot be loaded, its entries are not cached", e);
+			}
+			cached.putIfAbsent(className, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Check if an entity class is annotated with Cacheable
+	 *
+	 * @param entityClass the entity class
+	 * @return true if the entities of the class can be cached
+	 */
+	static boolean isCacheable(Class<?> entityClass) {
+		Cacheable cacheable = entityClass.getAnnotation(Cacheable.class);
+		return cacheable != null && cacheable.value();
+	}
+
+}
@@ -0,0 +1,126 @@
+package org.imogene.lib.common.cache;
+
+import java.util.Map;
+import java.util.Properties;
+
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.spi.CacheDataDescription;
+import org.hibernate.cache.spi.CollectionRegion;
+import org.hibernate.cache.spi.EntityRegion;
+import org.hibernate.cache.spi.NaturalIdRegion;
+import org.hibernate.cache.spi.QueryResultsRegion;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cache.spi.TimestampsRegion;
+import org.hibernate.cache.spi.access.AccessType;
+import org.hibernate.cfg.Settings;
+import org.hibernate.service.spi.Configurable;
+
+/**
+ * Cache region factory that only caches the entities whose class is annotated with Cacheable. Hibernate binds the
+ * second-level cache to the root of an inheritance hierarchy, so all the entities that extend ImogBeanImpl would be
+ * cached once the root is; this factory wraps the factory given by the imogene.cache.region.factory_class property
+ * and skips the entries of the other entities. The root is given its strategy by the CacheableEntityIntegrator.
+ *
+ * @author MEDES-IMPS
+ */
+public class SelectiveRegionFactory implements RegionFactory, Configurable {
+
+	private static final long serialVersionUID = -2687427301658215512L;
+
+	/* the property that gives the class of the wrapped region factory */
+	public static final String DELEGATE_FACTORY = "imogene.cache.region.factory_class";
+
+	private RegionFactory delegate;
+
+	public SelectiveRegionFactory() {
+	}
+
+	/**
+	 * Constructor used by the settings of the session factories, which give the properties to the region factory
+	 * instead of configuring it
+	 *
+	 * @param properties the properties of the session factory
+	 */
+	public SelectiveRegionFactory(Properties properties) {
+		configure(properties);
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	@Override
+	public void configure(Map configurationValues) {
+		Object factoryClass = configurationValues.get(DELEGATE_FACTORY);
+		if (factoryClass == null) {
+			throw new CacheException("Property " + DELEGATE_FACTORY + " is not set");
+		}
+		Properties properties = new Properties();
+		properties.putAll(configurationValues);
+		try {
+			Class<?> delegateClass = Class.forName(factoryClass.toString().trim());
+			try {
+				delegate = (RegionFactory) delegateClass.getConstructor(Properties.class).newInstance(properties);
+			} catch (NoSuchMethodException e) {
+				delegate = (RegionFactory) delegateClass.newInstance();
+			}
+		} catch (Exception e) {
+			throw new CacheException("Unable to instantiate the region factory " + factoryClass, e);
+		}
+		if (delegate instanceof Configurable) {
+			((Configurable) delegate).configure(configurationValues);
+		}
+	}
+
+	@Override
+	public void start(Settings settings, Properties properties) throws CacheException {
+		delegate.start(settings, properties);
+	}
+
+	@Override
+	public void stop() {
+		delegate.stop();
+	}
+
+	@Override
+	public boolean isMinimalPutsEnabledByDefault() {
+		return delegate.isMinimalPutsEnabledByDefault();
+	}
+
+	@Override
+	public AccessType getDefaultAccessType() {
+		return delegate.getDefaultAccessType();
+	}
+
+	@Override
+	public long nextTimestamp() {
+		return delegate.nextTimestamp();
+	}
+
+	@Override
+	public EntityRegion buildEntityRegion(String regionName, Properties properties, CacheDataDescription metadata)
+			throws CacheException {
+		return new SelectiveEntityRegion(delegate.buildEntityRegion(regionName, properties, metadata));
+	}
+
+	@Override
+	public NaturalIdRegion buildNaturalIdRegion(String regionName, Properties properties,
+			CacheDataDescription metadata) throws CacheException {
+		return delegate.buildNaturalIdRegion(regionName, properties, metadata);
+	}
+
+	@Override
+	public CollectionRegion buildCollectionRegion(String regionName, Properties properties,
+			CacheDataDescription metadata) throws CacheException {
+		return delegate.buildCollectionRegion(regionName, properties, metadata);
+	}
+
+	@Override
+	public QueryResultsRegion buildQueryResultsRegion(String regionName, Properties properties)
+			throws CacheException {
+		return delegate.buildQueryResultsRegion(regionName, properties);
+	}
+
+	@Override
+	public TimestampsRegion buildTimestampsRegion(String regionName, Properties properties) throws CacheException {
+		return delegate.buildTimestampsRegion(regionName, properties);
+	}
+
+}
@@ -0,0 +1,144 @@
+package org.imogene.lib.common.changelog;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+/**
+ * Entry of the change log, recorded each time an entity is stored. The entries are numbered with a monotonically
+ * increasing sequence, so that the entities changed since a synchronization can be found with a range read on the
+ * sequence.
+ *
+ * @author MEDES-IMPS
+ */
+@Entity
+@Table(name = "imog_change_log")
+public class ChangeLog implements Serializable {
+
+	private static final long serialVersionUID = -3265707426845281874L;
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.AUTO)
+	private Long sequence;
+
+	private String entityType;
+
+	private String entityId;
+
+	private String modifiedFrom;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date recorded;
+
+	public ChangeLog() {
+	}
+
+	/**
+	 * @param sequence the sequence number of the entry
+	 * @param entityType the class name of the stored entity
+	 * @param entityId the id of the stored entity
+	 */
+	public ChangeLog(Long sequence, String entityType, String entityId) {
+		this.sequence = sequence;
+		this.entityType = entityType;
+		this.entityId = entityId;
+	}
+
+	/**
+	 * Get the sequence number of the entry
+	 *
+	 * @return the sequence number
+	 */
+	public Long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Set the sequence number of the entry
+	 *
+	 * @param sequence the sequence number
+	 */
+	public void setSequence(Long sequence) {
+		this.sequence = sequence;
+	}
+
+	/**
+	 * Get the class name of the stored entity
+	 *
+	 * @return the class name
+	 */
+	public String getEntityType() {
+		return entityType;
+	}
+
+	/**
+	 * Set the class name of the stored entity
+	 *
+	 * @param entityType the class name
+	 */
+	public void setEntityType(String entityType) {
+		this.entityType = entityType;
+	}
+
+	/**
+	 * Get the id of the stored entity
+	 *
+	 * @return the entity id
+	 */
+	public String getEntityId() {
+		return entityId;
+	}
+
+	/**
+	 * Set the id of the stored entity
+	 *
+	 * @param entityId the entity id
+	 */
+	public void setEntityId(String entityId) {
+		this.entityId = entityId;
+	}
+
+	/**
+	 * Get the id of the terminal from which the entity has been modified
+	 *
+	 * @return the terminal id
+	 */
+	public String getModifiedFrom() {
+		return modifiedFrom;
+	}
+
+	/**
+	 * Set the id of the terminal from which the entity has been modified
+	 *
+	 * @param modifiedFrom the terminal id
+	 */
+	public void setModifiedFrom(String modifiedFrom) {
+		this.modifiedFrom = modifiedFrom;
+	}
+
+	/**
+	 * Get the date at when the entry has been recorded
+	 *
+	 * @return the record date
+	 */
+	public Date getRecorded() {
+		return recorded;
+	}
+
+	/**
+	 * Set the date at when the entry has been recorded
+	 *
+	 * @param recorded the record date
+	 */
+	public void setRecorded(Date recorded) {
+		this.recorded = recorded;
+	}
+
+}
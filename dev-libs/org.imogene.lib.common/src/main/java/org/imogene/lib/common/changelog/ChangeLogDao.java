@@ -0,0 +1,48 @@
+package org.imogene.lib.common.changelog;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Manage persistence for ChangeLog
+ *
+ * @author MEDES-IMPS
+ */
+public interface ChangeLogDao {
+
+	/**
+	 * Create the state of the change log if it does not exist, with the sequence number of the last recorded entry
+	 */
+	public void init();
+
+	/**
+	 * Store the change log entries of the entities stored or deleted in the current transaction. It is called once
+	 * the persistence context has been flushed for the commit, so the entries are flushed at once. The state of the
+	 * change log is locked until the transaction is completed.
+	 *
+	 * @param changes the changes recorded in the current transaction
+	 */
+	public void save(ChangeLogRecorder.Changes changes);
+
+	/**
+	 * List the entries that follow a sequence number, sorted by sequence number. The listed entries are not managed
+	 * by the persistence context.
+	 *
+	 * @param sequence the sequence number after which the entries are listed
+	 * @param max nb of entries to retrieve
+	 * @param entityTypes the class names of the entities to list
+	 * @param excludedOrigins the ids of the terminals whose modifications are not listed
+	 * @return list of entries, with their sequence number, entity type and entity id
+	 */
+	public List<ChangeLog> loadAfter(long sequence, int max, Collection<String> entityTypes,
+			Collection<String> excludedOrigins);
+
+	/**
+	 * Get the sequence number of the last committed entry. The entries up to it are all committed, the entries of the
+	 * transactions still running have greater sequence numbers.
+	 *
+	 * @return the sequence number, or 0 if no entry has been committed
+	 */
+	public long getLastSequence();
+
+}
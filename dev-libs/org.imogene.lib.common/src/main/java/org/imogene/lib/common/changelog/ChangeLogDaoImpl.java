@@ -0,0 +1,83 @@
+package org.imogene.lib.common.changelog;
+
+import java.util.Collection;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+/**
+ * Manage persistence for ChangeLog
+ *
+ * @author MEDES-IMPS
+ */
+public class ChangeLogDaoImpl implements ChangeLogDao {
+
+	@PersistenceContext
+	private EntityManager em;
+
+	@Override
+	public void init() {
+		if (em.find(ChangeLogState.class, ChangeLogState.ID) == null) {
+			em.persist(new ChangeLogState(getMaxSequence()));
+		}
+	}
+
+	@Override
+	public void save(ChangeLogRecorder.Changes changes) {
+		/* the sequence numbers are allocated once the state is locked, the entries are committed in their order */
+		ChangeLogState state = em.find(ChangeLogState.class, ChangeLogState.ID, LockModeType.PESSIMISTIC_WRITE);
+		if (state == null) {
+			state = new ChangeLogState(getMaxSequence());
+			em.persist(state);
+		}
+		for (ChangeLog entry : changes.drain()) {
+			em.persist(entry);
+			state.setSequence(entry.getSequence());
+		}
+		/* the persistence context has already been flushed for the commit */
+		em.flush();
+	}
+
+	@Override
+	public List<ChangeLog> loadAfter(long sequence, int max, Collection<String> entityTypes,
+			Collection<String> excludedOrigins) {
+		CriteriaBuilder builder = em.getCriteriaBuilder();
+		CriteriaQuery<ChangeLog> query = builder.createQuery(ChangeLog.class);
+		Root<ChangeLog> root = query.from(ChangeLog.class);
+		Path<Long> seq = root.<Long> get("sequence");
+		query.select(builder.construct(ChangeLog.class, seq, root.<String> get("entityType"),
+				root.<String> get("entityId")));
+		Predicate where = builder.and(builder.greaterThan(seq, sequence),
+				root.<String> get("entityType").in(entityTypes));
+		if (excludedOrigins != null && !excludedOrigins.isEmpty()) {
+			Path<String> origin = root.<String> get("modifiedFrom");
+			where = builder.and(where, builder.or(origin.isNull(), builder.not(origin.in(excludedOrigins))));
+		}
+		query.where(where);
+		query.orderBy(builder.asc(seq));
+		return em.createQuery(query).setMaxResults(max).getResultList();
+	}
+
+	@Override
+	public long getLastSequence() {
+		List<Long> last = em.createQuery("SELECT s.sequence FROM ChangeLogState s WHERE s.id = :id", Long.class)
+				.setParameter("id", ChangeLogState.ID).getResultList();
+		return last.isEmpty() || last.get(0) == null ? 0 : last.get(0);
+	}
+
+	/**
+	 * Get the sequence number of the last recorded entry
+	 */
+	private Long getMaxSequence() {
+		Long last = em.createQuery("SELECT MAX(c.sequence) FROM ChangeLog c", Long.class).getSingleResult();
+		return last != null ? last : Long.valueOf(0);
+	}
+
+}
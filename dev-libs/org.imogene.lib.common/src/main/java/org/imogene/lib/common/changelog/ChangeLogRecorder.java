@@ -0,0 +1,153 @@
+package org.imogene.lib.common.changelog;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import org.imogene.lib.common.entity.ImogBean;
+import org.imogene.lib.common.entity.ImogBeanChanges;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Singleton that records the entities stored or deleted in the current transaction, from the events received by the
+ * ImogBeanEventListener. The changes are kept with the transaction, as the type, id and origin of the entities, and
+ * the change log entries are stored once the persistence context has been flushed for the commit. Nothing is recorded
+ * until a change log DAO has been injected. When the recorder is started, the state of the change log is created if
+ * it does not exist.
+ *
+ * @author MEDES-IMPS
+ */
+public class ChangeLogRecorder implements InitializingBean {
+
+	private static ChangeLogRecorder instance = new ChangeLogRecorder();
+
+	private ChangeLogDao changeLogDao;
+
+	private PlatformTransactionManager transactionManager;
+
+	/**
+	 * Get the ChangeLog recorder
+	 */
+	public static ChangeLogRecorder getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param changeLogDao
+	 */
+	public void setChangeLogDao(ChangeLogDao changeLogDao) {
+		this.changeLogDao = changeLogDao;
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param transactionManager the transaction manager of the creation of the state of the change log, the state is
+	 *            otherwise created by the first transaction that stores entries
+	 */
+	public void setTransactionManager(PlatformTransactionManager transactionManager) {
+		this.transactionManager = transactionManager;
+	}
+
+	/**
+	 * Create the state of the change log if it does not exist
+	 */
+	@Override
+	public void afterPropertiesSet() {
+		final ChangeLogDao dao = changeLogDao;
+		if (dao == null || transactionManager == null) {
+			return;
+		}
+		new TransactionTemplate(transactionManager).execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				dao.init();
+			}
+		});
+	}
+
+	/**
+	 * Create the changes of a transaction
+	 *
+	 * @return the changes, or null if no change log DAO has been injected
+	 */
+	public ImogBeanChanges newChanges() {
+		ChangeLogDao dao = changeLogDao;
+		return dao != null ? new Changes(dao) : null;
+	}
+
+	/**
+	 * The changes recorded in a transaction, stored before the transaction is committed
+	 */
+	public static class Changes implements ImogBeanChanges {
+
+		private final ChangeLogDao dao;
+
+		/* one entry by entity, an entity stored twice in the transaction is recorded once */
+		private final Map<String, ChangeLog> entries = new LinkedHashMap<String, ChangeLog>();
+
+		private Changes(ChangeLogDao dao) {
+			this.dao = dao;
+		}
+
+		@Override
+		public void stored(ImogBean entity) {
+			record(entity);
+		}
+
+		@Override
+		public void deleted(ImogBean entity) {
+			/* the deleted entity is not found anymore when the logged entities are loaded */
+			record(entity);
+		}
+
+		private void record(ImogBean entity) {
+			String key = entity.getClass().getName() + "#" + entity.getId();
+			ChangeLog entry = entries.get(key);
+			if (entry == null) {
+				entry = new ChangeLog();
+				entry.setEntityType(entity.getClass().getName());
+				entry.setEntityId(entity.getId());
+				entries.put(key, entry);
+			}
+			entry.setModifiedFrom(entity.getModifiedFrom());
+		}
+
+		/**
+		 * Get the entries recorded since the previous call, stamped with the current date
+		 *
+		 * @return the change log entries to store
+		 */
+		public List<ChangeLog> drain() {
+			Date now = new Date();
+			Collection<ChangeLog> values = entries.values();
+			List<ChangeLog> result = new Vector<ChangeLog>(values);
+			for (ChangeLog entry : result) {
+				entry.setRecorded(now);
+			}
+			entries.clear();
+			return result;
+		}
+
+		@Override
+		public void beforeCommit() {
+			if (!entries.isEmpty()) {
+				dao.save(this);
+			}
+		}
+
+		@Override
+		public void afterCompletion(boolean committed) {
+		}
+	}
+
+}
@@ -0,0 +1,67 @@
+package org.imogene.lib.common.changelog;
+
+import java.io.Serializable;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * State of the change log, a single row that holds the sequence number of the last committed entry. The row is locked
+ * by the transactions that store entries until they are committed, so the entries are committed in the order of their
+ * sequence numbers and all the entries up to the recorded sequence number are committed.
+ *
+ * @author MEDES-IMPS
+ */
+@Entity
+@Table(name = "imog_change_log_state")
+public class ChangeLogState implements Serializable {
+
+	private static final long serialVersionUID = 4716538207449317342L;
+
+	/** the id of the single row */
+	public static final Integer ID = Integer.valueOf(1);
+
+	@Id
+	private Integer id;
+
+	private Long sequence;
+
+	public ChangeLogState() {
+	}
+
+	/**
+	 * @param sequence the sequence number of the last committed entry
+	 */
+	public ChangeLogState(Long sequence) {
+		this.id = ID;
+		this.sequence = sequence;
+	}
+
+	public Integer getId() {
+		return id;
+	}
+
+	public void setId(Integer id) {
+		this.id = id;
+	}
+
+	/**
+	 * Get the sequence number of the last committed entry
+	 *
+	 * @return the sequence number
+	 */
+	public Long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Set the sequence number of the last committed entry
+	 *
+	 * @param sequence the sequence number
+	 */
+	public void setSequence(Long sequence) {
+		this.sequence = sequence;
+	}
+
+}
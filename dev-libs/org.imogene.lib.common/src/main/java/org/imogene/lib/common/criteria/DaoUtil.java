@@ -1,20 +1,34 @@
 package org.imogene.lib.common.criteria;
 
+import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import javax.persistence.criteria.AbstractQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Fetch;
+import javax.persistence.criteria.FetchParent;
 import javax.persistence.criteria.From;
+import javax.persistence.criteria.Join;
 import javax.persistence.criteria.JoinType;
 import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Subquery;
 
 import org.imogene.lib.common.constants.CriteriaConstants;
 import org.imogene.lib.common.criteria.DaoUtil;
+import org.imogene.lib.common.enumindex.EnumIndexEntry;
+import org.imogene.lib.common.enumindex.EnumIndexRecorder;
 
 /**
  * This class enables to convert the Imogene criterions to the JPA criterions and the inverse.
@@ -23,7 +37,48 @@ import org.imogene.lib.common.criteria.DaoUtil;
  */
 public class DaoUtil {
 
-	private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("dd/MM/yyyy");
+	/* a date format can not be shared between threads, each thread has its own */
+	private static final ThreadLocal<DateFormat> DATE_FORMAT = new ThreadLocal<DateFormat>() {
+		@Override
+		protected DateFormat initialValue() {
+			return new SimpleDateFormat("dd/MM/yyyy");
+		}
+	};
+
+	/* the operations by operator */
+	private static final Map<String, Operation> OPERATIONS = new HashMap<String, Operation>();
+
+	static {
+		OPERATIONS.put(CriteriaConstants.STRING_OPERATOR_CONTAINS, Operation.STRING_CONTAINS);
+		OPERATIONS.put(CriteriaConstants.STRING_OPERATOR_EQUAL, Operation.STRING_EQUAL);
+		OPERATIONS.put(CriteriaConstants.STRING_OPERATOR_DIFF, Operation.STRING_DIFF);
+		OPERATIONS.put(CriteriaConstants.STRING_OPERATOR_INF, Operation.STRING_INF);
+		OPERATIONS.put(CriteriaConstants.STRING_OPERATOR_SUP, Operation.STRING_SUP);
+		OPERATIONS.put(CriteriaConstants.STRING_OPERATOR_STARTWITH, Operation.STRING_STARTWITH);
+		OPERATIONS.put(CriteriaConstants.DATE_OPERATOR_BEFORE, Operation.DATE_BEFORE);
+		OPERATIONS.put(CriteriaConstants.DATE_OPERATOR_AFTER, Operation.DATE_AFTER);
+		OPERATIONS.put(CriteriaConstants.DATE_OPERATOR_EQUAL, Operation.DATE_EQUAL);
+		OPERATIONS.put(CriteriaConstants.INT_OPERATOR_EQUAL, Operation.INT_EQUAL);
+		OPERATIONS.put(CriteriaConstants.INT_OPERATOR_SUP, Operation.INT_SUP);
+		OPERATIONS.put(CriteriaConstants.INT_OPERATOR_INF, Operation.INT_INF);
+		OPERATIONS.put(CriteriaConstants.FLOAT_OPERATOR_EQUAL, Operation.FLOAT_EQUAL);
+		OPERATIONS.put(CriteriaConstants.FLOAT_OPERATOR_SUP, Operation.FLOAT_SUP);
+		OPERATIONS.put(CriteriaConstants.FLOAT_OPERATOR_INF, Operation.FLOAT_INF);
+		OPERATIONS.put(CriteriaConstants.RELATIONFIELD_OPERATOR_EQUAL, Operation.STRING_EQUAL);
+		OPERATIONS.put(CriteriaConstants.RELATIONFIELD_OPERATOR_EQUAL_NULL, Operation.ISNULL);
+		OPERATIONS.put(CriteriaConstants.BOOLEAN_OPERATOR_EQUAL, Operation.BOOLEAN_EQUAL);
+		OPERATIONS.put(CriteriaConstants.OPERATOR_ISNULL, Operation.ISNULL);
+		OPERATIONS.put(CriteriaConstants.OPERATOR_ISNULL_OR_EMPTY, Operation.ISNULL_OR_EMPTY);
+		OPERATIONS.put(CriteriaConstants.ENUM_MULT_OPERATOR_CONTAINS_ALL, Operation.STRING_EQUAL);
+		OPERATIONS.put(CriteriaConstants.ENUM_MULT_OPERATOR_CONTAINS_ONE_OF, Operation.ENUM_CONTAINS_ONE_OF);
+		OPERATIONS.put(CriteriaConstants.OPERATOR_ISNOTNULL, Operation.ISNOTNULL);
+	}
+
+	/* the compiled plans of the criteria, by field and operator */
+	private static final ConcurrentMap<String, Plan> PLANS = new ConcurrentHashMap<String, Plan>();
+
+	/* maximum number of cached plans, the fields and operators come from the application model */
+	private static final int MAX_PLANS = 10000;
 
 	/**
 	 * @param criterion
@@ -32,8 +87,23 @@ public class DaoUtil {
 	 * @return
 	 */
 	public static <T> Predicate toPredicate(ImogCriterion criterion, CriteriaBuilder builder, Root<T> root) {
+		return toPredicate(criterion, builder, null, root);
+	}
+
+	/**
+	 * Convert a criterion to a predicate of a query. The query is used to create the subqueries on the enumeration
+	 * index for the indexed multi-valued enumeration fields.
+	 * 
+	 * @param criterion the criterion
+	 * @param builder the criteria builder
+	 * @param query the query, null to not use the enumeration index
+	 * @param root the root of the query
+	 * @return the predicate
+	 */
+	public static <T> Predicate toPredicate(ImogCriterion criterion, CriteriaBuilder builder, AbstractQuery<?> query,
+			Root<T> root) {
 		if (criterion instanceof BasicCriteria) {
-			Predicate predicate = convert((BasicCriteria) criterion, builder, root);
+			Predicate predicate = convert((BasicCriteria) criterion, builder, query, root);
 			if (predicate != null) {
 				return predicate;
 			}
@@ -45,7 +115,7 @@ public class DaoUtil {
 				junction = builder.conjunction();
 			}
 			for (ImogCriterion c : ((ImogJunction) criterion).getCriterions()) {
-				addCriterion(junction, c, builder, root);
+				addCriterion(junction, c, builder, query, root);
 			}
 			return junction;
 		}
@@ -60,11 +130,25 @@ public class DaoUtil {
 	 */
 	public static <T> void addCriterion(Predicate predicate, ImogCriterion criterion, CriteriaBuilder builder,
 			Root<T> root) {
+		addCriterion(predicate, criterion, builder, null, root);
+	}
+
+	/**
+	 * Add a criterion to a predicate of a query
+	 * 
+	 * @param predicate the junction to which the criterion is added
+	 * @param criterion the criterion
+	 * @param builder the criteria builder
+	 * @param query the query, null to not use the enumeration index
+	 * @param root the root of the query
+	 */
+	public static <T> void addCriterion(Predicate predicate, ImogCriterion criterion, CriteriaBuilder builder,
+			AbstractQuery<?> query, Root<T> root) {
 		if (criterion == null) {
 			return;
 		}
 		if (criterion instanceof BasicCriteria) {
-			Predicate p = convert((BasicCriteria) criterion, builder, root);
+			Predicate p = convert((BasicCriteria) criterion, builder, query, root);
 			if (p != null) {
 				predicate.getExpressions().add(p);
 			}
@@ -74,7 +158,7 @@ public class DaoUtil {
 				junction = builder.disjunction();
 			}
 			for (ImogCriterion c : ((ImogJunction) criterion).getCriterions()) {
-				addCriterion(junction, c, builder, root);
+				addCriterion(junction, c, builder, query, root);
 			}
 			predicate.getExpressions().add(junction);
 		}
@@ -83,96 +167,348 @@ public class DaoUtil {
 	/**
 	 * @param criteria
 	 * @param builder
+	 * @param query
 	 * @param root
 	 * @return
 	 */
-	private static <T> Predicate convert(BasicCriteria criteria, CriteriaBuilder builder, Root<T> root) {
-		String property = criteria.getField();
-		String operator = criteria.getOperation();
-		String value = criteria.getValue();
-		if (operator.equals(CriteriaConstants.STRING_OPERATOR_CONTAINS)) {
-			return builder.like(builder.lower(DaoUtil.<String> getCascadeRoot(root, property)),
-					"%" + value.toLowerCase() + "%");
-		} else if (operator.equals(CriteriaConstants.STRING_OPERATOR_EQUAL)) {
-			return builder.equal(DaoUtil.<String> getCascadeRoot(root, property), value);
-		} else if (operator.equals(CriteriaConstants.STRING_OPERATOR_DIFF)) {
-			return builder.notLike(DaoUtil.<String> getCascadeRoot(root, property), value);
-		} else if (operator.equals(CriteriaConstants.STRING_OPERATOR_INF)) {
-			return builder.lessThanOrEqualTo(DaoUtil.<String> getCascadeRoot(root, property), value);
-		} else if (operator.equals(CriteriaConstants.STRING_OPERATOR_SUP)) {
-			return builder.greaterThanOrEqualTo(DaoUtil.<String> getCascadeRoot(root, property), value);
-		} else if (operator.equals(CriteriaConstants.STRING_OPERATOR_STARTWITH)) {
-			return builder.like(DaoUtil.<String> getCascadeRoot(root, property), value + "%");
-		} else if (operator.equals(CriteriaConstants.DATE_OPERATOR_BEFORE)) {
-			try {
-				return builder.<Date> lessThanOrEqualTo(DaoUtil.<Date> getCascadeRoot(root, property),
-						DATE_FORMAT.parse(value));
-			} catch (ParseException e) {
-				e.printStackTrace();
-			}
-		} else if (operator.equals(CriteriaConstants.DATE_OPERATOR_AFTER)) {
-			try {
-				return builder.<Date> greaterThanOrEqualTo(DaoUtil.<Date> getCascadeRoot(root, property),
-						DATE_FORMAT.parse(value));
-			} catch (ParseException e) {
-				e.printStackTrace();
-			}
-		} else if (operator.equals(CriteriaConstants.DATE_OPERATOR_EQUAL)) {
-			try {
-				return builder.equal(DaoUtil.<Date> getCascadeRoot(root, property), DATE_FORMAT.parse(value));
-			} catch (ParseException e) {
-				e.printStackTrace();
-			}
-		} else if (operator.equals(CriteriaConstants.INT_OPERATOR_EQUAL)) {
-			return builder.equal(DaoUtil.<Integer> getCascadeRoot(root, property), Integer.valueOf(value));
-		} else if (operator.equals(CriteriaConstants.INT_OPERATOR_SUP)) {
-			return builder.ge(DaoUtil.<Integer> getCascadeRoot(root, property), Integer.valueOf(value));
-		} else if (operator.equals(CriteriaConstants.INT_OPERATOR_INF)) {
-			return builder.le(DaoUtil.<Integer> getCascadeRoot(root, property), Integer.valueOf(value));
-		} else if (operator.equals(CriteriaConstants.FLOAT_OPERATOR_EQUAL)) {
-			return builder.equal(DaoUtil.<Float> getCascadeRoot(root, property), Float.valueOf(value));
-		} else if (operator.equals(CriteriaConstants.FLOAT_OPERATOR_SUP)) {
-			return builder.ge(DaoUtil.<Float> getCascadeRoot(root, property), Float.valueOf(value));
-		} else if (operator.equals(CriteriaConstants.FLOAT_OPERATOR_INF)) {
-			return builder.le(DaoUtil.<Float> getCascadeRoot(root, property), Float.valueOf(value));
-		} else if (operator.equals(CriteriaConstants.RELATIONFIELD_OPERATOR_EQUAL)) {
-			return builder.equal(DaoUtil.<String> getCascadeRoot(root, property), value);
-		} else if (operator.equals(CriteriaConstants.RELATIONFIELD_OPERATOR_EQUAL_NULL)) {
-			return DaoUtil.getCascadeRoot(root, property).isNull();
-		} else if (operator.equals(CriteriaConstants.BOOLEAN_OPERATOR_EQUAL)) {
-			return builder.equal(DaoUtil.<Boolean> getCascadeRoot(root, property), Boolean.valueOf(value));
-		} else if (operator.equals(CriteriaConstants.OPERATOR_ISNULL)) {
-			return DaoUtil.getCascadeRoot(root, property).isNull();
-		} else if (operator.equals(CriteriaConstants.OPERATOR_ISNULL_OR_EMPTY)) {
-			return builder.or(DaoUtil.getCascadeRoot(root, property).isNull(),
-					builder.equal(DaoUtil.getCascadeRoot(root, property), ""));
-		} else if (operator.equals(CriteriaConstants.ENUM_MULT_OPERATOR_CONTAINS_ALL)) {
-			return builder.equal(DaoUtil.<String> getCascadeRoot(root, property), value);
-		} else if (operator.equals(CriteriaConstants.ENUM_MULT_OPERATOR_CONTAINS_ONE_OF)) {
-			String[] values = value.split(";");
-			if (values.length > 0) {
-				Predicate disjunction = builder.disjunction();
-				final List<Expression<Boolean>> list = disjunction.getExpressions();
-				for (String v : values) {
-					list.add(builder.like(DaoUtil.<String> getCascadeRoot(root, property), v + ";%"));
-					list.add(builder.like(DaoUtil.<String> getCascadeRoot(root, property), "%;" + v + ";%"));
-					list.add(builder.like(DaoUtil.<String> getCascadeRoot(root, property), "%;" + v));
-					list.add(builder.like(DaoUtil.<String> getCascadeRoot(root, property), v));
-				}
-				return disjunction;
+	private static <T> Predicate convert(BasicCriteria criteria, CriteriaBuilder builder, AbstractQuery<?> query,
+			Root<T> root) {
+		Plan plan = getPlan(criteria.getField(), criteria.getOperation());
+		if (plan.operation == null) {
+			return null;
+		}
+		if (plan.operation == Operation.ENUM_CONTAINS_ONE_OF && query != null) {
+			Predicate indexed = containsOneOf(builder, query, root, plan.path, criteria.getValue());
+			if (indexed != null) {
+				return indexed;
+			}
+		}
+		return plan.operation.toPredicate(builder, root, plan.path, criteria.getValue());
+	}
+
+	/**
+	 * Convert a "contains one of" criteria on an indexed multi-valued enumeration field to a subquery on the
+	 * enumeration index, which selects the same entities as the LIKE clauses but can use the index of the values
+	 * 
+	 * @param builder the criteria builder
+	 * @param query the query
+	 * @param root the root of the path
+	 * @param path the names of the properties of the path
+	 * @param value the ";" separated values
+	 * @return the predicate, or null if the field is not indexed
+	 */
+	private static Predicate containsOneOf(CriteriaBuilder builder, AbstractQuery<?> query, From<?, ?> root,
+			String[] path, String value) {
+		Set<String> values = EnumIndexRecorder.split(value);
+		if (values.isEmpty()) {
+			return null;
+		}
+		From<?, ?> from = root;
+		for (int i = 0; i < path.length - 1; i++) {
+			from = join(from, path[i]);
+		}
+		String property = EnumIndexRecorder.getBuiltProperty(from.getJavaType(), path[path.length - 1]);
+		if (property == null) {
+			return null;
+		}
+		Subquery<String> subquery = query.subquery(String.class);
+		Root<EnumIndexEntry> entry = subquery.from(EnumIndexEntry.class);
+		subquery.select(entry.<String> get("entityId"));
+		subquery.where(builder.equal(entry.get("property"), property), entry.get("enumValue").in(values));
+		return from.get("id").in(subquery);
+	}
+
+	/**
+	 * Get the compiled plan of a criteria, from the cache if it has already been compiled
+	 * 
+	 * @param property the field path
+	 * @param operator the operator
+	 * @return the plan
+	 */
+	private static Plan getPlan(String property, String operator) {
+		String key = property + "|" + operator;
+		Plan plan = PLANS.get(key);
+		if (plan == null) {
+			plan = new Plan(property.split("\\."), OPERATIONS.get(operator));
+			if (PLANS.size() < MAX_PLANS) {
+				PLANS.putIfAbsent(key, plan);
 			}
-		} else if (operator.equals(CriteriaConstants.OPERATOR_ISNOTNULL)) {
-			return DaoUtil.getCascadeRoot(root, property).isNotNull();
 		}
-		return null;
+		return plan;
+	}
+
+	/**
+	 * Parse a date criteria value
+	 * 
+	 * @param value the value, formatted as dd/MM/yyyy
+	 * @return the date, or null if the value is not a valid date
+	 */
+	private static Date parseDate(String value) {
+		try {
+			return DATE_FORMAT.get().parse(value);
+		} catch (ParseException e) {
+			e.printStackTrace();
+			return null;
+		}
 	}
 
+	/**
+	 * Get the path of a property, the intermediate properties being left joined. The joins already created in the
+	 * query for the same properties are reused, so that a path shared by several criteria or by the sort order is
+	 * joined once.
+	 * 
+	 * @param root the root of the path
+	 * @param property the property path, the property names being separated by dots
+	 * @return the path
+	 */
 	public static final <T> Path<T> getCascadeRoot(From<?, ?> root, String property) {
 		if (property.contains(".")) {
-			String[] split = property.split("\\.", 2);
-			return DaoUtil.<T> getCascadeRoot(((From<?, ?>) root).join(split[0], JoinType.LEFT), split[1]);
+			return DaoUtil.<T> getCascadeRoot(root, property.split("\\."));
 		} else {
 			return root.<T> get(property);
 		}
 	}
+
+	/**
+	 * Get the path of a property from its compiled path, the intermediate properties being left joined
+	 * 
+	 * @param root the root of the path
+	 * @param path the names of the properties of the path
+	 * @return the path
+	 */
+	private static <T> Path<T> getCascadeRoot(From<?, ?> root, String[] path) {
+		From<?, ?> from = root;
+		for (int i = 0; i < path.length - 1; i++) {
+			from = join(from, path[i]);
+		}
+		return from.<T> get(path[path.length - 1]);
+	}
+
+	/**
+	 * Left join a property, reusing the join of the query if it has already been created. A fetch of a single valued
+	 * association is reused too, a fetched collection is not since a restriction on it would filter its elements.
+	 * 
+	 * @param from the joined entity
+	 * @param property the property to join
+	 * @return the join
+	 */
+	private static From<?, ?> join(From<?, ?> from, String property) {
+		for (Join<?, ?> join : from.getJoins()) {
+			if (join.getJoinType() == JoinType.LEFT && property.equals(join.getAttribute().getName())) {
+				return join;
+			}
+		}
+		for (Fetch<?, ?> fetch : from.getFetches()) {
+			if (fetch instanceof Join && fetch.getJoinType() == JoinType.LEFT
+					&& property.equals(fetch.getAttribute().getName()) && !fetch.getAttribute().isCollection()) {
+				return (Join<?, ?>) fetch;
+			}
+		}
+		return from.join(property, JoinType.LEFT);
+	}
+
+	/**
+	 * Fetch associations with the entities loaded by a query, with left joins. The fetches already created in the
+	 * query are reused. The single valued associations of the fetched paths are also reused as joins by the criteria
+	 * and the sort order, so fetches have to be added before the restrictions.
+	 * 
+	 * @param root the root of the query
+	 * @param properties the association paths, the property names being separated by dots
+	 */
+	public static void fetch(From<?, ?> root, Collection<String> properties) {
+		for (String property : properties) {
+			FetchParent<?, ?> parent = root;
+			for (String name : property.split("\\.")) {
+				parent = fetch(parent, name);
+			}
+		}
+	}
+
+	/**
+	 * Left fetch an association, reusing the fetch of the query if it has already been created
+	 * 
+	 * @param parent the fetching entity
+	 * @param property the association to fetch
+	 * @return the fetch
+	 */
+	private static Fetch<?, ?> fetch(FetchParent<?, ?> parent, String property) {
+		for (Fetch<?, ?> fetch : parent.getFetches()) {
+			if (fetch.getJoinType() == JoinType.LEFT && property.equals(fetch.getAttribute().getName())) {
+				return fetch;
+			}
+		}
+		return parent.fetch(property, JoinType.LEFT);
+	}
+
+	/**
+	 * Compiled criteria: the field path split in property names and the operation resolved from the operator. A plan
+	 * is immutable and only depends on the field and on the operator, so it is shared by the queries.
+	 */
+	private static final class Plan {
+
+		private final String[] path;
+		private final Operation operation;
+
+		private Plan(String[] path, Operation operation) {
+			this.path = path;
+			this.operation = operation;
+		}
+	}
+
+	/**
+	 * The operations of the criteria, that convert the criteria value to a predicate on a path
+	 */
+	private enum Operation {
+
+		STRING_CONTAINS {
+			@Override
+			Predicate toPredicate(CriteriaBuilder builder, From<?, ?> root, String[] path, String value) {
+				return builder.like(builder.lower(DaoUtil.<String> getCascadeRoot(root, path)),
+						"%" + value.toLowerCase() + "%");
+			}
+		},
+		STRING_EQUAL {
+			@Override
+			Predicate toPredicate(CriteriaBuilder builder, From<?, ?> root, String[] path, String value) {
+				return builder.equal(DaoUtil.<String> getCascadeRoot(root, path), value);
+			}
+		},
+		STRING_DIFF {
+			@Override
+			Predicate toPredicate(CriteriaBuilder builder, From<?, ?> root, String[] path, String value) {
+				return builder.notLike(DaoUtil.<String> getCascadeRoot(root, path), value);
+			}
+		},
+		STRING_INF {
+			@Override
+			Predicate toPredicate(CriteriaBuilder builder, From<?, ?> root, String[] path, String value) {
+				return builder.lessThanOrEqualTo(DaoUtil.<String> getCascadeRoot(root, path), value);
+			}
+		},
+		STRING_SUP {
+			@Override
+			Predicate toPredicate(CriteriaBuilder builder, From<?, ?> root, String[] path, String value) {
+				return builder.greaterThanOrEqualTo(DaoUtil.<String> getCascadeRoot(root, path), value);
+			}
+		},
+		STRING_STARTWITH {
+			@Override
+			Predicate toPredicate(CriteriaBuilder builder, From<?, ?> root, String[] path, String value) {
+				return builder.like(DaoUtil.<String> getCascadeRoot(root, path), value + "%");
+			}
+		},
+		DATE_BEFORE {
+			@Override
+			Predicate toPredicate(CriteriaBuilder builder, From<?, ?> root, String[] path, String value) {
+				Date date = parseDate(value);
+				return date == null ? null : builder.<Date> lessThanOrEqualTo(
+						DaoUtil.<Date> getCascadeRoot(root, path), date);
+			}
+		},
+		DATE_AFTER {
+			@Override
+			Predicate toPredicate(CriteriaBuilder builder, From<?, ?> root, String[] path, String value) {
+				Date date = parseDate(value);
+				return date == null ? null : builder.<Date> greaterThanOrEqualTo(
+						DaoUtil.<Date> getCascadeRoot(root, path), date);
+			}
+		},
+		DATE_EQUAL {
+			@Override
+			Predicate toPredicate(CriteriaBuilder builder, From<?, ?> root, String[] path, String value) {
+				Date date = parseDate(value);
+				return date == null ? null : builder.equal(DaoUtil.<Date> getCascadeRoot(root, path), date);
+			}
+		},
+		INT_EQUAL {
+			@Override
+			Predicate toPredicate(CriteriaBuilder builder, From<?, ?> root, String[] path, String value) {
+				return builder.equal(DaoUtil.<Integer> getCascadeRoot(root, path), Integer.valueOf(value));
+			}
+		},
+		INT_SUP {
+			@Override
+			Predicate toPredicate(CriteriaBuilder builder, From<?, ?> root, String[] path, String value) {
+				return builder.ge(DaoUtil.<Integer> getCascadeRoot(root, path), Integer.valueOf(value));
+			}
+		},
+		INT_INF {
+			@Override
+			Predicate toPredicate(CriteriaBuilder builder, From<?, ?> root, String[] path, String value) {
+				return builder.le(DaoUtil.<Integer> getCascadeRoot(root, path), Integer.valueOf(value));
+			}
+		},
+		FLOAT_EQUAL {
+			@Override
+			Predicate toPredicate(CriteriaBuilder builder, From<?, ?> root, String[] path, String value) {
+				return builder.equal(DaoUtil.<Float> getCascadeRoot(root, path), Float.valueOf(value));
+			}
+		},
+		FLOAT_SUP {
+			@Override
+			Predicate toPredicate(CriteriaBuilder builder, From<?, ?> root, String[] path, String value) {
+				return builder.ge(DaoUtil.<Float> getCascadeRoot(root, path), Float.valueOf(value));
+			}
+		},
+		FLOAT_INF {
+			@Override
+			Predicate toPredicate(CriteriaBuilder builder, From<?, ?> root, String[] path, String value) {
+				return builder.le(DaoUtil.<Float> getCascadeRoot(root, path), Float.valueOf(value));
+			}
+		},
+		BOOLEAN_EQUAL {
+			@Override
+			Predicate toPredicate(CriteriaBuilder builder, From<?, ?> root, String[] path, String value) {
+				return builder.equal(DaoUtil.<Boolean> getCascadeRoot(root, path), Boolean.valueOf(value));
+			}
+		},
+		ISNULL {
+			@Override
+			Predicate toPredicate(CriteriaBuilder builder, From<?, ?> root, String[] path, String value) {
+				return DaoUtil.getCascadeRoot(root, path).isNull();
+			}
+		},
+		ISNULL_OR_EMPTY {
+			@Override
+			Predicate toPredicate(CriteriaBuilder builder, From<?, ?> root, String[] path, String value) {
+				return builder.or(DaoUtil.getCascadeRoot(root, path).isNull(),
+						builder.equal(DaoUtil.getCascadeRoot(root, path), ""));
+			}
+		},
+		ISNOTNULL {
+			@Override
+			Predicate toPredicate(CriteriaBuilder builder, From<?, ?> root, String[] path, String value) {
+				return DaoUtil.getCascadeRoot(root, path).isNotNull();
+			}
+		},
+		ENUM_CONTAINS_ONE_OF {
+			@Override
+			Predicate toPredicate(CriteriaBuilder builder, From<?, ?> root, String[] path, String value) {
+				String[] values = value.split(";");
+				if (values.length == 0) {
+					return null;
+				}
+				Predicate disjunction = builder.disjunction();
+				final List<Expression<Boolean>> list = disjunction.getExpressions();
+				for (String v : values) {
+					list.add(builder.like(DaoUtil.<String> getCascadeRoot(root, path), v + ";%"));
+					list.add(builder.like(DaoUtil.<String> getCascadeRoot(root, path), "%;" + v + ";%"));
+					list.add(builder.like(DaoUtil.<String> getCascadeRoot(root, path), "%;" + v));
+					list.add(builder.like(DaoUtil.<String> getCascadeRoot(root, path), v));
+				}
+				return disjunction;
+			}
+		};
+
+		/**
+		 * Convert a criteria value to a predicate
+		 * 
+		 * @param builder the criteria builder
+		 * @param root the root of the path
+		 * @param path the names of the properties of the path
+		 * @param value the criteria value
+		 * @return the predicate, or null if the value is not valid
+		 */
+		abstract Predicate toPredicate(CriteriaBuilder builder, From<?, ?> root, String[] path, String value);
+	}
 }
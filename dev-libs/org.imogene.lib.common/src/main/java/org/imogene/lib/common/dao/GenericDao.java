@@ -78,4 +78,15 @@ public interface GenericDao {
 	 */
 	public void flush();
 
+	/**
+	 * Make the current persistence context read-only: the entities it loads are not checked for modifications, and it
+	 * is never flushed
+	 */
+	public void setReadOnly();
+
+	/**
+	 * Clear the persistence context, causing all managed entities to become detached
+	 */
+	public void clear();
+
 }
@@ -1,5 +1,6 @@
 package org.imogene.lib.common.dao;
 
+import java.lang.reflect.Modifier;
 import java.util.List;
 
 import javax.persistence.EntityManager;
@@ -8,8 +9,11 @@ import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Root;
 
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
 import org.imogene.lib.common.entity.ImogActor;
 import org.imogene.lib.common.entity.ImogActorImpl;
+import org.imogene.lib.common.entitytype.EntityTypeRegistry;
 
 public class GenericDaoImpl implements GenericDao {
 
@@ -18,6 +22,13 @@ public class GenericDaoImpl implements GenericDao {
 
 	@Override
 	public <T> T load(Class<T> clazz, String id) {
+		if (Modifier.isAbstract(clazz.getModifiers())) {
+			/* the entity is read from its own table rather than from the union of the tables of the subclasses */
+			Class<?> type = EntityTypeRegistry.getType(id);
+			if (type != null && clazz.isAssignableFrom(type)) {
+				return clazz.cast(em.find(type, id));
+			}
+		}
 		return em.find(clazz, id);
 	}
 
@@ -83,4 +94,16 @@ public class GenericDaoImpl implements GenericDao {
 		em.flush();
 	}
 
+	@Override
+	public void setReadOnly() {
+		Session session = em.unwrap(Session.class);
+		session.setDefaultReadOnly(true);
+		session.setFlushMode(FlushMode.MANUAL);
+	}
+
+	@Override
+	public void clear() {
+		em.clear();
+	}
+
 }
@@ -38,6 +38,14 @@ public interface ImogBeanDao<T extends ImogBean> {
 	 */
 	public List<T> load(List<String> ids);
 
+	/**
+	 * Load the entities with the specified ids, that match the criteria
+	 * @param ids the entity ids
+	 * @param criterion request criteria
+	 * @return list of entities with the specified ids
+	 */
+	public List<T> load(List<String> ids, ImogCriterion criterion);
+
 	/**
 	 * Load the entity with the specified id
 	 * @param id the entity id
@@ -83,6 +91,20 @@ public interface ImogBeanDao<T extends ImogBean> {
 	 */
 	public List<T> load(int first, int max, String property, boolean sortOrder, ImogCriterion criterion);
 
+	/**
+	 * List entities of type ImogBean with a seek query: the page starts after the position of the given cursor
+	 * instead of an offset. The entities are sorted like with an offset, but the entities whose sort value is null come
+	 * after the others whatever the database does with the nulls.
+	 * @param cursor the position after which the entities are listed, null for the first page
+	 * @param max nb of items to retrieve
+	 * @param property the property used to sort the collection
+	 * @param sortOrder true for an ascendant sort
+	 * @param criterion request criteria
+	 * @return the page of ImogBean, or null if the cursor refers to an entity that does not exist anymore
+	 */
+	public KeysetPage<T> loadAfter(KeysetCursor cursor, int max, String property, boolean sortOrder,
+			ImogCriterion criterion);
+
 	/**
 	 * List entities modified after the given date
 	 * @param date modification date
@@ -130,6 +152,16 @@ public interface ImogBeanDao<T extends ImogBean> {
 	 */
 	public List<T> loadUploaded(Date date, ImogCriterion criterion);
 
+	/**
+	 * List entities uploaded after the given date and criteria, sorted by id
+	 * @param lastId the id after which the entities are listed, null for the first page
+	 * @param max nb of items to retrieve
+	 * @param date uploaded date, if null all the entities that match the criteria are listed
+	 * @param criterion request criteria
+	 * @return list of entities
+	 */
+	public List<T> loadUploadedAfter(String lastId, int max, Date date, ImogCriterion criterion);
+
 	/**
 	 * Entity uploaded after the given date with the given id
 	 * @param date uploaded date
@@ -230,6 +262,12 @@ public interface ImogBeanDao<T extends ImogBean> {
 	 */
 	public void saveOrUpdate(T entity, boolean neu);
 
+	/**
+	 * Make a new entity managed and persistent, without checking if it already exists
+	 * @param entity the entity to persist
+	 */
+	public void persist(T entity);
+
 	/**
 	 * Merge the state of the given entity into the current persistence context.
 	 * @param entity the entity to merge
@@ -1,15 +1,20 @@
 package org.imogene.lib.common.dao;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.JoinType;
 import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
 import org.imogene.lib.common.criteria.DaoUtil;
@@ -21,8 +26,17 @@ public abstract class ImogBeanDaoImpl<T extends ImogBean> implements ImogBeanDao
 	@PersistenceContext
 	protected EntityManager em;
 
+	/* query hint of the persistence provider that stores the results in the query cache */
+	private static final String CACHEABLE_HINT = "org.hibernate.cacheable";
+
 	protected final Class<T> clazz;
 
+	/* the associations fetched with the loaded entities */
+	private List<String> fetchedAssociations;
+
+	/* true to store the results of the queries in the query cache */
+	private boolean cacheQueries = false;
+
 	protected ImogBeanDaoImpl(Class<T> clazz) {
 		this.clazz = clazz;
 	}
@@ -31,6 +45,28 @@ public abstract class ImogBeanDaoImpl<T extends ImogBean> implements ImogBeanDao
 		this.em = em;
 	}
 
+	/**
+	 * Setter for bean injection. The listed associations are fetched by the queries that load entities, instead of
+	 * being loaded by one query per entity when they are accessed. Paged queries are limited in memory when a
+	 * collection is fetched, so only single valued associations should be listed for the paged loads.
+	 * 
+	 * @param fetchedAssociations the association paths, the property names being separated by dots
+	 */
+	public void setFetchedAssociations(List<String> fetchedAssociations) {
+		this.fetchedAssociations = fetchedAssociations;
+	}
+
+	/**
+	 * Setter for bean injection. The results of the queries are stored in the query cache, which is only worth it for
+	 * the entities that are read much more often than they are stored, since the cached results of a table are
+	 * invalidated each time it is modified. The query cache has to be enabled in the persistence configuration.
+	 * 
+	 * @param cacheQueries true to cache the results of the queries
+	 */
+	public void setCacheQueries(boolean cacheQueries) {
+		this.cacheQueries = cacheQueries;
+	}
+
 	@Override
 	public T load(String id) {
 		return em.find(clazz, id);
@@ -46,9 +82,21 @@ public abstract class ImogBeanDaoImpl<T extends ImogBean> implements ImogBeanDao
 		CriteriaBuilder builder = em.getCriteriaBuilder();
 		CriteriaQuery<T> query = builder.createQuery(clazz);
 		Root<T> root = query.from(clazz);
+		fetch(root);
 		query.select(root);
 		query.where(root.<String> get("id").in(ids));
-		return em.createQuery(query).getResultList();
+		return createQuery(query).getResultList();
+	}
+
+	@Override
+	public List<T> load(List<String> ids, ImogCriterion criterion) {
+		CriteriaBuilder builder = em.getCriteriaBuilder();
+		CriteriaQuery<T> query = builder.createQuery(clazz);
+		Root<T> root = query.from(clazz);
+		fetch(root);
+		query.select(root);
+		query.where(root.<String> get("id").in(ids), DaoUtil.<T> toPredicate(criterion, builder, query, root));
+		return createQuery(query).getResultList();
 	}
 
 	@Override
@@ -56,10 +104,11 @@ public abstract class ImogBeanDaoImpl<T extends ImogBean> implements ImogBeanDao
 		CriteriaBuilder builder = em.getCriteriaBuilder();
 		CriteriaQuery<T> query = builder.createQuery(clazz);
 		Root<T> root = query.from(clazz);
+		fetch(root);
 		query.select(root);
-		query.where(builder.equal(root.<String> get("id"), id), DaoUtil.<T> toPredicate(criterion, builder, root));
+		query.where(builder.equal(root.<String> get("id"), id), DaoUtil.<T> toPredicate(criterion, builder, query, root));
 		try {
-			return em.createQuery(query).setMaxResults(1).getSingleResult();
+			return createQuery(query).setMaxResults(1).getSingleResult();
 		} catch (NoResultException e) {
 			return null;
 		}
@@ -70,9 +119,10 @@ public abstract class ImogBeanDaoImpl<T extends ImogBean> implements ImogBeanDao
 		CriteriaBuilder builder = em.getCriteriaBuilder();
 		CriteriaQuery<T> query = builder.createQuery(clazz);
 		Root<T> root = query.from(clazz);
+		fetch(root);
 		query.select(root);
-		query.where(DaoUtil.<T> toPredicate(criterion, builder, root));
-		return em.createQuery(query).getResultList();
+		query.where(DaoUtil.<T> toPredicate(criterion, builder, query, root));
+		return createQuery(query).getResultList();
 	}
 
 	@Override
@@ -80,15 +130,16 @@ public abstract class ImogBeanDaoImpl<T extends ImogBean> implements ImogBeanDao
 		CriteriaBuilder builder = em.getCriteriaBuilder();
 		CriteriaQuery<T> query = builder.createQuery(clazz);
 		Root<T> root = query.from(clazz);
+		fetch(root);
 		query.select(root);
-		query.where(DaoUtil.<T> toPredicate(criterion, builder, root));
+		query.where(DaoUtil.<T> toPredicate(criterion, builder, query, root));
 		if (property == null) {
 			property = "modified";
 		}
 		Order o = asc ? builder.asc(DaoUtil.getCascadeRoot(root, property)) : builder.desc(DaoUtil.getCascadeRoot(root,
 				property));
 		query.orderBy(o, builder.desc(root.<String> get("id")));
-		return em.createQuery(query).getResultList();
+		return createQuery(query).getResultList();
 	}
 
 	@Override
@@ -96,6 +147,7 @@ public abstract class ImogBeanDaoImpl<T extends ImogBean> implements ImogBeanDao
 		CriteriaBuilder builder = em.getCriteriaBuilder();
 		CriteriaQuery<T> query = builder.createQuery(clazz);
 		Root<T> root = query.from(clazz);
+		fetch(root);
 		query.select(root);
 		if (property == null) {
 			property = "modified";
@@ -103,7 +155,7 @@ public abstract class ImogBeanDaoImpl<T extends ImogBean> implements ImogBeanDao
 		Order o = asc ? builder.asc(DaoUtil.getCascadeRoot(root, property)) : builder.desc(DaoUtil.getCascadeRoot(root,
 				property));
 		query.orderBy(o, builder.desc(root.<String> get("id")));
-		return em.createQuery(query).setFirstResult(first).setMaxResults(max).getResultList();
+		return createQuery(query).setFirstResult(first).setMaxResults(max).getResultList();
 	}
 
 	@Override
@@ -111,15 +163,162 @@ public abstract class ImogBeanDaoImpl<T extends ImogBean> implements ImogBeanDao
 		CriteriaBuilder builder = em.getCriteriaBuilder();
 		CriteriaQuery<T> query = builder.createQuery(clazz);
 		Root<T> root = query.from(clazz);
+		fetch(root);
 		query.select(root);
-		query.where(DaoUtil.<T> toPredicate(criterion, builder, root));
+		query.where(DaoUtil.<T> toPredicate(criterion, builder, query, root));
 		if (property == null) {
 			property = "modified";
 		}
 		Order o = asc ? builder.asc(DaoUtil.getCascadeRoot(root, property)) : builder.desc(DaoUtil.getCascadeRoot(root,
 				property));
 		query.orderBy(o, builder.desc(root.<String> get("id")));
-		return em.createQuery(query).setFirstResult(first).setMaxResults(max).getResultList();
+		return createQuery(query).setFirstResult(first).setMaxResults(max).getResultList();
+	}
+
+	@Override
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public KeysetPage<T> loadAfter(KeysetCursor cursor, int max, String property, boolean asc,
+			ImogCriterion criterion) {
+		if (property == null) {
+			property = "modified";
+		}
+		if (cursor != null && !cursor.isResolved()) {
+			cursor = resolve(cursor, property);
+			if (cursor == null) {
+				return null;
+			}
+		}
+
+		CriteriaBuilder builder = em.getCriteriaBuilder();
+		List<T> beans = new ArrayList<T>();
+		Comparable lastValue = null;
+
+		/* entities with a non null sort value, unless the cursor is already among the null ones */
+		if (cursor == null || cursor.getValue() != null) {
+			CriteriaQuery<Object[]> query = builder.createQuery(Object[].class);
+			Root<T> root = query.from(clazz);
+			fetch(root);
+			Path<Comparable> sort = DaoUtil.<Comparable> getCascadeRoot(root, property);
+			Path<String> id = root.<String> get("id");
+			query.multiselect(root, sort);
+			Predicate where = builder.and(DaoUtil.<T> toPredicate(criterion, builder, query, root), sort.isNotNull());
+			if (cursor != null) {
+				Comparable value = toSortValue(cursor.getValue(), sort.getJavaType());
+				Predicate after = asc ? builder.greaterThan(sort, value) : builder.lessThan(sort, value);
+				where = builder.and(where,
+						builder.or(after, builder.and(builder.equal(sort, value), builder.lessThan(id, cursor.getId()))));
+			}
+			query.where(where);
+			query.orderBy(asc ? builder.asc(sort) : builder.desc(sort), builder.desc(id));
+			for (Object[] row : createQuery(query).setMaxResults(max).getResultList()) {
+				beans.add((T) row[0]);
+				lastValue = (Comparable) row[1];
+			}
+		}
+
+		/* then the entities with a null sort value, sorted by id */
+		if (beans.size() < max) {
+			CriteriaQuery<T> query = builder.createQuery(clazz);
+			Root<T> root = query.from(clazz);
+			fetch(root);
+			Path<String> id = root.<String> get("id");
+			query.select(root);
+			Predicate where = builder.and(DaoUtil.<T> toPredicate(criterion, builder, query, root),
+					DaoUtil.getCascadeRoot(root, property).isNull());
+			if (cursor != null && cursor.getValue() == null) {
+				where = builder.and(where, builder.lessThan(id, cursor.getId()));
+			}
+			query.where(where);
+			query.orderBy(builder.desc(id));
+			List<T> nulls = createQuery(query).setMaxResults(max - beans.size()).getResultList();
+			if (!nulls.isEmpty()) {
+				beans.addAll(nulls);
+				lastValue = null;
+			}
+		}
+
+		KeysetCursor next = null;
+		if (beans.size() == max) {
+			next = new KeysetCursor(beans.get(beans.size() - 1).getId(), lastValue);
+		}
+		return new KeysetPage<T>(beans, next);
+	}
+
+	/**
+	 * Reads the sort value of the entity a cursor refers to
+	 * @param cursor the cursor whose value is not known
+	 * @param property the property used to sort
+	 * @return the resolved cursor, or null if the entity does not exist anymore
+	 */
+	private KeysetCursor resolve(KeysetCursor cursor, String property) {
+		CriteriaBuilder builder = em.getCriteriaBuilder();
+		CriteriaQuery<Object> query = builder.createQuery(Object.class);
+		Root<T> root = query.from(clazz);
+		query.select(DaoUtil.<Object> getCascadeRoot(root, property));
+		query.where(builder.equal(root.<String> get("id"), cursor.getId()));
+		List<Object> result = createQuery(query).setMaxResults(1).getResultList();
+		if (result.isEmpty()) {
+			return null;
+		}
+		return new KeysetCursor(cursor.getId(), result.get(0));
+	}
+
+	/**
+	 * Create a query, cached if the queries of this DAO are cached
+	 * 
+	 * @param query the criteria query
+	 * @return the query to execute
+	 */
+	protected <R> TypedQuery<R> createQuery(CriteriaQuery<R> query) {
+		TypedQuery<R> typed = em.createQuery(query);
+		if (cacheQueries) {
+			typed.setHint(CACHEABLE_HINT, Boolean.TRUE);
+		}
+		return typed;
+	}
+
+	/**
+	 * Fetch the configured associations with the entities loaded by a query, before the restrictions are added so that
+	 * they reuse the fetch joins
+	 * 
+	 * @param root the root of the query
+	 */
+	private void fetch(Root<T> root) {
+		if (fetchedAssociations != null && !fetchedAssociations.isEmpty()) {
+			DaoUtil.fetch(root, fetchedAssociations);
+		}
+	}
+
+	/**
+	 * Converts the value of a cursor to the type of the sort property, the value of a parsed cursor being encoded
+	 * @param value the cursor value
+	 * @param type the type of the sort property
+	 * @return the sort value
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Comparable toSortValue(Object value, Class<?> type) {
+		if (!(value instanceof String) || String.class.equals(type)) {
+			return (Comparable) value;
+		}
+		String s = (String) value;
+		if (Date.class.isAssignableFrom(type)) {
+			return new Date(Long.parseLong(s));
+		} else if (Integer.class.equals(type) || int.class.equals(type)) {
+			return Integer.valueOf(s);
+		} else if (Long.class.equals(type) || long.class.equals(type)) {
+			return Long.valueOf(s);
+		} else if (Float.class.equals(type) || float.class.equals(type)) {
+			return Float.valueOf(s);
+		} else if (Double.class.equals(type) || double.class.equals(type)) {
+			return Double.valueOf(s);
+		} else if (Boolean.class.equals(type) || boolean.class.equals(type)) {
+			return Boolean.valueOf(s);
+		} else if (BigDecimal.class.equals(type)) {
+			return new BigDecimal(s);
+		} else if (type.isEnum()) {
+			return Enum.valueOf((Class<Enum>) type, s);
+		}
+		throw new IllegalArgumentException("Unsupported sort type for a cursor: " + type.getName());
 	}
 
 	@Override
@@ -128,7 +327,7 @@ public abstract class ImogBeanDaoImpl<T extends ImogBean> implements ImogBeanDao
 		CriteriaQuery<Long> query = builder.createQuery(Long.class);
 		Root<T> root = query.from(clazz);
 		query.select(builder.count(root));
-		return em.createQuery(query).getSingleResult();
+		return createQuery(query).getSingleResult();
 	}
 
 	@Override
@@ -137,8 +336,8 @@ public abstract class ImogBeanDaoImpl<T extends ImogBean> implements ImogBeanDao
 		CriteriaQuery<Long> query = builder.createQuery(Long.class);
 		Root<T> root = query.from(clazz);
 		query.select(builder.count(root));
-		query.where(DaoUtil.<T> toPredicate(criterion, builder, root));
-		return em.createQuery(query).getSingleResult();
+		query.where(DaoUtil.<T> toPredicate(criterion, builder, query, root));
+		return createQuery(query).getSingleResult();
 	}
 
 	@Override
@@ -151,9 +350,10 @@ public abstract class ImogBeanDaoImpl<T extends ImogBean> implements ImogBeanDao
 		CriteriaBuilder builder = em.getCriteriaBuilder();
 		CriteriaQuery<T> query = builder.createQuery(clazz);
 		Root<T> root = query.from(clazz);
+		fetch(root);
 		query.select(root);
-		query.where(root.get(property).isNull(), DaoUtil.<T> toPredicate(criterion, builder, root));
-		return em.createQuery(query).getResultList();
+		query.where(root.get(property).isNull(), DaoUtil.<T> toPredicate(criterion, builder, query, root));
+		return createQuery(query).getResultList();
 	}
 
 	@Override
@@ -162,8 +362,9 @@ public abstract class ImogBeanDaoImpl<T extends ImogBean> implements ImogBeanDao
 		CriteriaBuilder builder = em.getCriteriaBuilder();
 		CriteriaQuery<T> query = builder.createQuery(clazz);
 		Root<T> root = query.from(clazz);
+		fetch(root);
 		query.select(root);
-		query.where(root.get(property).isNull(), DaoUtil.<T> toPredicate(criterion, builder, root));
+		query.where(root.get(property).isNull(), DaoUtil.<T> toPredicate(criterion, builder, query, root));
 		if (sortProperty == null) {
 			sortProperty = "modified";
 		}
@@ -172,7 +373,7 @@ public abstract class ImogBeanDaoImpl<T extends ImogBean> implements ImogBeanDao
 		} else {
 			query.orderBy(builder.desc(root.get(sortProperty)));
 		}
-		return em.createQuery(query).setFirstResult(first).setMaxResults(max).getResultList();
+		return createQuery(query).setFirstResult(first).setMaxResults(max).getResultList();
 	}
 
 	@Override
@@ -181,9 +382,10 @@ public abstract class ImogBeanDaoImpl<T extends ImogBean> implements ImogBeanDao
 		CriteriaBuilder builder = em.getCriteriaBuilder();
 		CriteriaQuery<T> query = builder.createQuery(clazz);
 		Root<T> root = query.from(clazz);
+		fetch(root);
 		query.select(root);
 		query.where(root.<T, Object> join(property, JoinType.LEFT).<String> get("id").isNull(),
-				DaoUtil.<T> toPredicate(criterion, builder, root));
+				DaoUtil.<T> toPredicate(criterion, builder, query, root));
 		if (sortProperty == null) {
 			sortProperty = "modified";
 		}
@@ -192,7 +394,7 @@ public abstract class ImogBeanDaoImpl<T extends ImogBean> implements ImogBeanDao
 		} else {
 			query.orderBy(builder.desc(root.get(sortProperty)));
 		}
-		return em.createQuery(query).setFirstResult(first).setMaxResults(max).getResultList();
+		return createQuery(query).setFirstResult(first).setMaxResults(max).getResultList();
 	}
 
 	@Override
@@ -200,9 +402,10 @@ public abstract class ImogBeanDaoImpl<T extends ImogBean> implements ImogBeanDao
 		CriteriaBuilder builder = em.getCriteriaBuilder();
 		CriteriaQuery<T> query = builder.createQuery(clazz);
 		Root<T> root = query.from(clazz);
+		fetch(root);
 		query.select(root);
 		query.where(builder.equal(root.<T, Object> join(property, JoinType.INNER).<String> get("id"), id));
-		return em.createQuery(query).getResultList();
+		return createQuery(query).getResultList();
 	}
 
 	@Override
@@ -211,8 +414,8 @@ public abstract class ImogBeanDaoImpl<T extends ImogBean> implements ImogBeanDao
 		CriteriaQuery<Long> query = builder.createQuery(Long.class);
 		Root<T> root = query.from(clazz);
 		query.select(builder.count(root));
-		query.where(root.get(property).isNull(), DaoUtil.<T> toPredicate(criterion, builder, root));
-		return em.createQuery(query).getSingleResult();
+		query.where(root.get(property).isNull(), DaoUtil.<T> toPredicate(criterion, builder, query, root));
+		return createQuery(query).getSingleResult();
 	}
 
 	@Override
@@ -222,16 +425,18 @@ public abstract class ImogBeanDaoImpl<T extends ImogBean> implements ImogBeanDao
 		Root<T> root = query.from(clazz);
 		query.select(builder.count(root));
 		query.where(root.join(property, JoinType.LEFT).<String> get("id").isNull(),
-				DaoUtil.<T> toPredicate(criterion, builder, root));
-		return em.createQuery(query).getSingleResult();
+				DaoUtil.<T> toPredicate(criterion, builder, query, root));
+		return createQuery(query).getSingleResult();
 	}
 
 	@Override
 	public List<T> load() {
 		CriteriaBuilder builder = em.getCriteriaBuilder();
 		CriteriaQuery<T> query = builder.createQuery(clazz);
-		query.select(query.from(clazz));
-		return em.createQuery(query).getResultList();
+		Root<T> root = query.from(clazz);
+		fetch(root);
+		query.select(root);
+		return createQuery(query).getResultList();
 	}
 
 	@Override
@@ -239,9 +444,10 @@ public abstract class ImogBeanDaoImpl<T extends ImogBean> implements ImogBeanDao
 		CriteriaBuilder builder = em.getCriteriaBuilder();
 		CriteriaQuery<T> query = builder.createQuery(clazz);
 		Root<T> root = query.from(clazz);
+		fetch(root);
 		query.select(root);
 		query.where(builder.<Date> greaterThanOrEqualTo(root.<Date> get("modified"), date));
-		return em.createQuery(query).getResultList();
+		return createQuery(query).getResultList();
 	}
 
 	@Override
@@ -249,10 +455,11 @@ public abstract class ImogBeanDaoImpl<T extends ImogBean> implements ImogBeanDao
 		CriteriaBuilder builder = em.getCriteriaBuilder();
 		CriteriaQuery<T> query = builder.createQuery(clazz);
 		Root<T> root = query.from(clazz);
+		fetch(root);
 		query.select(root);
 		query.where(builder.<Date> greaterThanOrEqualTo(root.<Date> get("modified"), date),
-				DaoUtil.toPredicate(criterion, builder, root));
-		return em.createQuery(query).getResultList();
+				DaoUtil.toPredicate(criterion, builder, query, root));
+		return createQuery(query).getResultList();
 	}
 
 	@Override
@@ -260,11 +467,12 @@ public abstract class ImogBeanDaoImpl<T extends ImogBean> implements ImogBeanDao
 		CriteriaBuilder builder = em.getCriteriaBuilder();
 		CriteriaQuery<T> query = builder.createQuery(clazz);
 		Root<T> root = query.from(clazz);
+		fetch(root);
 		query.select(root);
 		query.where(builder.<Date> greaterThanOrEqualTo(root.<Date> get("modified"), date),
 				builder.equal(root.<String> get("id"), id));
 		try {
-			return em.createQuery(query).setMaxResults(1).getSingleResult();
+			return createQuery(query).setMaxResults(1).getSingleResult();
 		} catch (NoResultException e) {
 			return null;
 		}
@@ -275,11 +483,12 @@ public abstract class ImogBeanDaoImpl<T extends ImogBean> implements ImogBeanDao
 		CriteriaBuilder builder = em.getCriteriaBuilder();
 		CriteriaQuery<T> query = builder.createQuery(clazz);
 		Root<T> root = query.from(clazz);
+		fetch(root);
 		query.select(root);
 		query.where(builder.<Date> greaterThanOrEqualTo(root.<Date> get("modified"), date),
-				builder.equal(root.<String> get("id"), id), DaoUtil.toPredicate(criterion, builder, root));
+				builder.equal(root.<String> get("id"), id), DaoUtil.toPredicate(criterion, builder, query, root));
 		try {
-			return em.createQuery(query).setMaxResults(1).getSingleResult();
+			return createQuery(query).setMaxResults(1).getSingleResult();
 		} catch (NoResultException e) {
 			return null;
 		}
@@ -290,9 +499,10 @@ public abstract class ImogBeanDaoImpl<T extends ImogBean> implements ImogBeanDao
 		CriteriaBuilder builder = em.getCriteriaBuilder();
 		CriteriaQuery<T> query = builder.createQuery(clazz);
 		Root<T> root = query.from(clazz);
+		fetch(root);
 		query.select(root);
 		query.where(builder.<Date> greaterThanOrEqualTo(root.<Date> get("uploadDate"), date));
-		return em.createQuery(query).getResultList();
+		return createQuery(query).getResultList();
 	}
 
 	@Override
@@ -300,10 +510,31 @@ public abstract class ImogBeanDaoImpl<T extends ImogBean> implements ImogBeanDao
 		CriteriaBuilder builder = em.getCriteriaBuilder();
 		CriteriaQuery<T> query = builder.createQuery(clazz);
 		Root<T> root = query.from(clazz);
+		fetch(root);
 		query.select(root);
 		query.where(builder.<Date> greaterThanOrEqualTo(root.<Date> get("uploadDate"), date),
-				DaoUtil.toPredicate(criterion, builder, root));
-		return em.createQuery(query).getResultList();
+				DaoUtil.toPredicate(criterion, builder, query, root));
+		return createQuery(query).getResultList();
+	}
+
+	@Override
+	public List<T> loadUploadedAfter(String lastId, int max, Date date, ImogCriterion criterion) {
+		CriteriaBuilder builder = em.getCriteriaBuilder();
+		CriteriaQuery<T> query = builder.createQuery(clazz);
+		Root<T> root = query.from(clazz);
+		fetch(root);
+		Path<String> id = root.<String> get("id");
+		query.select(root);
+		Predicate where = DaoUtil.toPredicate(criterion, builder, query, root);
+		if (date != null) {
+			where = builder.and(where, builder.<Date> greaterThanOrEqualTo(root.<Date> get("uploadDate"), date));
+		}
+		if (lastId != null) {
+			where = builder.and(where, builder.greaterThan(id, lastId));
+		}
+		query.where(where);
+		query.orderBy(builder.asc(id));
+		return createQuery(query).setMaxResults(max).getResultList();
 	}
 
 	@Override
@@ -311,11 +542,12 @@ public abstract class ImogBeanDaoImpl<T extends ImogBean> implements ImogBeanDao
 		CriteriaBuilder builder = em.getCriteriaBuilder();
 		CriteriaQuery<T> query = builder.createQuery(clazz);
 		Root<T> root = query.from(clazz);
+		fetch(root);
 		query.select(root);
 		query.where(builder.<Date> greaterThanOrEqualTo(root.<Date> get("uploadDate"), date),
 				builder.equal(root.<String> get("id"), id));
 		try {
-			return em.createQuery(query).setMaxResults(1).getSingleResult();
+			return createQuery(query).setMaxResults(1).getSingleResult();
 		} catch (NoResultException e) {
 			return null;
 		}
@@ -326,11 +558,12 @@ public abstract class ImogBeanDaoImpl<T extends ImogBean> implements ImogBeanDao
 		CriteriaBuilder builder = em.getCriteriaBuilder();
 		CriteriaQuery<T> query = builder.createQuery(clazz);
 		Root<T> root = query.from(clazz);
+		fetch(root);
 		query.select(root);
 		query.where(builder.<Date> greaterThanOrEqualTo(root.<Date> get("uploadDate"), date),
-				builder.equal(root.<String> get("id"), id), DaoUtil.toPredicate(criterion, builder, root));
+				builder.equal(root.<String> get("id"), id), DaoUtil.toPredicate(criterion, builder, query, root));
 		try {
-			return em.createQuery(query).setMaxResults(1).getSingleResult();
+			return createQuery(query).setMaxResults(1).getSingleResult();
 		} catch (NoResultException e) {
 			return null;
 		}
@@ -338,7 +571,17 @@ public abstract class ImogBeanDaoImpl<T extends ImogBean> implements ImogBeanDao
 
 	@Override
 	public void saveOrUpdate(T entity, boolean neu) {
-		em.merge(entity);
+		if (neu && NewEntityRegistry.remove(entity)) {
+			/* known to be absent from the database, no need to look for it */
+			em.persist(entity);
+		} else {
+			em.merge(entity);
+		}
+	}
+
+	@Override
+	public void persist(T entity) {
+		em.persist(entity);
 	}
 
 	@Override
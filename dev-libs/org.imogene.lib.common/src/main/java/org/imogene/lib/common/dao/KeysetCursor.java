@@ -0,0 +1,146 @@
+package org.imogene.lib.common.dao;
+
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.Date;
+
+/**
+ * Position in a sorted list of entities, made of the sort value and the id of the last entity of a page. It is used
+ * to load the next page with a seek query instead of an offset, so that the cost of a page does not depend on its
+ * depth.
+ * <p>
+ * A cursor may be built from an entity id only, the sort value is then read from the database when the next page is
+ * loaded. The cursor can be exchanged as an opaque string with {@link #toString()} and {@link #parse(String)}.
+ * </p>
+ * @author MEDES-IMPS
+ */
+public class KeysetCursor implements Serializable {
+
+	private static final long serialVersionUID = -2384093287466214383L;
+
+	private static final String ENCODING = "UTF-8";
+	private static final char SEPARATOR = ':';
+	private static final char NULL_VALUE = 'n';
+	private static final char UNKNOWN_VALUE = 'u';
+	private static final char VALUE = 'v';
+
+	private final String id;
+	private final Object value;
+	private final boolean resolved;
+
+	/**
+	 * @param id the id of the last entity of the page
+	 * @param value the sort value of the last entity of the page, may be null
+	 */
+	public KeysetCursor(String id, Object value) {
+		this(id, value, true);
+	}
+
+	private KeysetCursor(String id, Object value, boolean resolved) {
+		if (id == null) {
+			throw new IllegalArgumentException("The cursor id must not be null");
+		}
+		this.id = id;
+		this.value = value;
+		this.resolved = resolved;
+	}
+
+	/**
+	 * Creates a cursor positioned after the entity with the given id, whose sort value is not known yet
+	 * @param id the id of the last entity of the page
+	 * @return the cursor
+	 */
+	public static KeysetCursor after(String id) {
+		return new KeysetCursor(id, null, false);
+	}
+
+	/**
+	 * @return the id of the last entity of the page
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * The sort value of the last entity of the page. When the cursor has been parsed from a string, a non null value
+	 * is in its encoded form and is converted by the DAO to the type of the sort property.
+	 * @return the sort value, may be null
+	 */
+	public Object getValue() {
+		return value;
+	}
+
+	/**
+	 * @return true if the sort value is known, false if it has to be read from the database
+	 */
+	public boolean isResolved() {
+		return resolved;
+	}
+
+	/**
+	 * Encodes the cursor as an opaque string
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder(encode(id)).append(SEPARATOR);
+		if (!resolved) {
+			builder.append(UNKNOWN_VALUE);
+		} else if (value == null) {
+			builder.append(NULL_VALUE);
+		} else {
+			builder.append(VALUE);
+			if (value instanceof Date) {
+				builder.append(encode(String.valueOf(((Date) value).getTime())));
+			} else {
+				builder.append(encode(value.toString()));
+			}
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Decodes a cursor encoded with {@link #toString()}
+	 * @param cursor the encoded cursor
+	 * @return the cursor or null if the given string is null or empty
+	 */
+	public static KeysetCursor parse(String cursor) {
+		if (cursor == null || cursor.length() == 0) {
+			return null;
+		}
+		int index = cursor.indexOf(SEPARATOR);
+		if (index < 0 || index == cursor.length() - 1) {
+			throw new IllegalArgumentException("Invalid cursor: " + cursor);
+		}
+		String id = decode(cursor.substring(0, index));
+		char type = cursor.charAt(index + 1);
+		switch (type) {
+		case UNKNOWN_VALUE:
+			return after(id);
+		case NULL_VALUE:
+			return new KeysetCursor(id, null);
+		case VALUE:
+			return new KeysetCursor(id, decode(cursor.substring(index + 2)));
+		default:
+			throw new IllegalArgumentException("Invalid cursor: " + cursor);
+		}
+	}
+
+	private static String encode(String value) {
+		try {
+			return URLEncoder.encode(value, ENCODING);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String decode(String value) {
+		try {
+			return URLDecoder.decode(value, ENCODING);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
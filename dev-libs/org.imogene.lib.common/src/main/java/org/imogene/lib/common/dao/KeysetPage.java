@@ -0,0 +1,49 @@
+package org.imogene.lib.common.dao;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.imogene.lib.common.entity.ImogBean;
+
+/**
+ * A page of entities loaded with a seek query, and the cursor to use to load the next page
+ * @author MEDES-IMPS
+ */
+public class KeysetPage<T extends ImogBean> implements Serializable {
+
+	private static final long serialVersionUID = 4021907795327717546L;
+
+	private final List<T> beans;
+	private final KeysetCursor next;
+
+	/**
+	 * @param beans the entities of the page
+	 * @param next the cursor to load the next page, null if it is the last page
+	 */
+	public KeysetPage(List<T> beans, KeysetCursor next) {
+		this.beans = beans;
+		this.next = next;
+	}
+
+	/**
+	 * @return the entities of the page
+	 */
+	public List<T> getBeans() {
+		return beans;
+	}
+
+	/**
+	 * @return the cursor to load the next page, null if it is the last page
+	 */
+	public KeysetCursor getNext() {
+		return next;
+	}
+
+	/**
+	 * @return true if there may be entities after this page
+	 */
+	public boolean hasNext() {
+		return next != null;
+	}
+
+}
@@ -0,0 +1,55 @@
+package org.imogene.lib.common.dao;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.imogene.lib.common.entity.ImogBean;
+
+/**
+ * Registry of the entities known to be absent from the database, filled by the bulk imports. When such an entity is
+ * saved, the DAO persists it directly instead of merging it, which avoids the query that checks whether an entity
+ * with the same id exists. The registry is bound to the current thread.
+ * @author MEDES-IMPS
+ */
+public final class NewEntityRegistry {
+
+	private static final ThreadLocal<Set<String>> NEW_ENTITIES = new ThreadLocal<Set<String>>();
+
+	private NewEntityRegistry() {
+	}
+
+	/**
+	 * Register an entity that is known to be absent from the database
+	 * @param entity the new entity
+	 */
+	public static void register(ImogBean entity) {
+		Set<String> keys = NEW_ENTITIES.get();
+		if (keys == null) {
+			keys = new HashSet<String>();
+			NEW_ENTITIES.set(keys);
+		}
+		keys.add(key(entity));
+	}
+
+	/**
+	 * Remove an entity from the registry
+	 * @param entity the entity
+	 * @return true if the entity was registered as new
+	 */
+	public static boolean remove(ImogBean entity) {
+		Set<String> keys = NEW_ENTITIES.get();
+		return keys != null && keys.remove(key(entity));
+	}
+
+	/**
+	 * Clear the registry of the current thread
+	 */
+	public static void clear() {
+		NEW_ENTITIES.remove();
+	}
+
+	private static String key(ImogBean entity) {
+		return entity.getClass().getName() + "#" + entity.getId();
+	}
+
+}
@@ -1,5 +1,6 @@
 package org.imogene.lib.common.dynamicfields;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
@@ -12,6 +13,7 @@ import org.imogene.lib.common.entity.ImogBeanImpl;
  * @author MEDES-IMPS
  */
 @Entity
+@Cacheable
 @Table(name = "dynamicfield_template")
 public class DynamicFieldTemplate extends ImogBeanImpl {
 
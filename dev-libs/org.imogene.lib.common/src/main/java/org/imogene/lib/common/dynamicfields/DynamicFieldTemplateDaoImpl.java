@@ -10,6 +10,7 @@ public class DynamicFieldTemplateDaoImpl extends ImogBeanDaoImpl<DynamicFieldTem
 
 	protected DynamicFieldTemplateDaoImpl() {
 		super(DynamicFieldTemplate.class);
+		setCacheQueries(true);
 	}
 
 	@Override
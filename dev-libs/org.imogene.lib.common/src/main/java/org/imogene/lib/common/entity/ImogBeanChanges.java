@@ -0,0 +1,38 @@
+package org.imogene.lib.common.entity;
+
+/**
+ * Changes of the entities recorded during a transaction, from the events of the persistence provider. Only the values
+ * needed later are kept, never the entities, so that the persistence context can still be cleared during the
+ * transaction.
+ *
+ * @author MEDES-IMPS
+ */
+public interface ImogBeanChanges {
+
+	/**
+	 * Record that an entity has been inserted or updated in the database
+	 *
+	 * @param entity the stored entity, managed by the persistence context
+	 */
+	public void stored(ImogBean entity);
+
+	/**
+	 * Record that an entity has been deleted from the database
+	 *
+	 * @param entity the deleted entity
+	 */
+	public void deleted(ImogBean entity);
+
+	/**
+	 * Store the recorded changes, the persistence context has been flushed for the commit and can still be used
+	 */
+	public void beforeCommit();
+
+	/**
+	 * Called once the transaction is completed
+	 *
+	 * @param committed true if the transaction has been committed, false if it has been rolled back
+	 */
+	public void afterCompletion(boolean committed);
+
+}
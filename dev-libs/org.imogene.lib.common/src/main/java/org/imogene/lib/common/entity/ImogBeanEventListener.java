@@ -0,0 +1,133 @@
+package org.imogene.lib.common.entity;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.WeakHashMap;
+
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.imogene.lib.common.changelog.ChangeLogRecorder;
+import org.imogene.lib.common.entitytype.EntityTypeRegistry;
+import org.imogene.lib.common.enumindex.EnumIndexRecorder;
+import org.imogene.lib.common.history.HistoryWriter;
+
+/**
+ * Hibernate listener of the entities inserted, updated and deleted, that feeds the recorders of the changes. The
+ * events are received when the statements are executed, including by the flush of the commit, so that the plain
+ * updates are recorded too. The changes of a transaction are stored by a process of the session that runs once the
+ * persistence context has been flushed for the commit, in the same transaction.
+ * <p>
+ * The listener is registered by the hibernate.ejb.event.post-insert, hibernate.ejb.event.post-update and
+ * hibernate.ejb.event.post-delete properties of the persistence unit.
+ *
+ * @author MEDES-IMPS
+ */
+public class ImogBeanEventListener implements PostInsertEventListener, PostUpdateEventListener,
+		PostDeleteEventListener {
+
+	private static final long serialVersionUID = -2301949462427386314L;
+
+	/* the changes of the sessions whose transaction is not completed */
+	private static final Map<SessionImplementor, TransactionChanges> transactions = Collections
+			.synchronizedMap(new WeakHashMap<SessionImplementor, TransactionChanges>());
+
+	@Override
+	public void onPostInsert(PostInsertEvent event) {
+		if (event.getEntity() instanceof ImogBean) {
+			getChanges(event.getSession()).stored((ImogBean) event.getEntity());
+		}
+	}
+
+	@Override
+	public void onPostUpdate(PostUpdateEvent event) {
+		if (event.getEntity() instanceof ImogBean) {
+			getChanges(event.getSession()).stored((ImogBean) event.getEntity());
+		}
+	}
+
+	@Override
+	public void onPostDelete(PostDeleteEvent event) {
+		if (event.getEntity() instanceof ImogBean) {
+			getChanges(event.getSession()).deleted((ImogBean) event.getEntity());
+		}
+	}
+
+	/**
+	 * Get the changes of the current transaction of a session, they are registered as processes of the session on
+	 * the first change of the transaction
+	 *
+	 * @param session the session
+	 * @return the changes of the transaction
+	 */
+	private static TransactionChanges getChanges(EventSource session) {
+		TransactionChanges changes = transactions.get(session);
+		if (changes == null) {
+			changes = new TransactionChanges();
+			transactions.put(session, changes);
+			session.getActionQueue().registerProcess((BeforeTransactionCompletionProcess) changes);
+			session.getActionQueue().registerProcess((AfterTransactionCompletionProcess) changes);
+		}
+		return changes;
+	}
+
+	/**
+	 * The changes of a transaction, for each recorder enabled when the transaction has started to store entities
+	 */
+	private static class TransactionChanges implements BeforeTransactionCompletionProcess,
+			AfterTransactionCompletionProcess {
+
+		private final List<ImogBeanChanges> recorders = new Vector<ImogBeanChanges>();
+
+		private TransactionChanges() {
+			add(EnumIndexRecorder.getInstance().newChanges());
+			add(EntityTypeRegistry.getInstance().newChanges());
+			add(HistoryWriter.getInstance().newChanges());
+			/* last, the change log locks its state until the transaction is completed */
+			add(ChangeLogRecorder.getInstance().newChanges());
+		}
+
+		private void add(ImogBeanChanges changes) {
+			if (changes != null) {
+				recorders.add(changes);
+			}
+		}
+
+		private void stored(ImogBean entity) {
+			for (ImogBeanChanges changes : recorders) {
+				changes.stored(entity);
+			}
+		}
+
+		private void deleted(ImogBean entity) {
+			for (ImogBeanChanges changes : recorders) {
+				changes.deleted(entity);
+			}
+		}
+
+		@Override
+		public void doBeforeTransactionCompletion(SessionImplementor session) {
+			for (ImogBeanChanges changes : recorders) {
+				changes.beforeCommit();
+			}
+		}
+
+		@Override
+		public void doAfterTransactionCompletion(boolean success, SessionImplementor session) {
+			transactions.remove(session);
+			for (ImogBeanChanges changes : recorders) {
+				changes.afterCompletion(success);
+			}
+		}
+	}
+
+}
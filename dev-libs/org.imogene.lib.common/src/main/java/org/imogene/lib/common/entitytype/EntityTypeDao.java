@@ -0,0 +1,36 @@
+package org.imogene.lib.common.entitytype;
+
+/**
+ * Manage persistence for the entity type registry
+ *
+ * @author MEDES-IMPS
+ */
+public interface EntityTypeDao {
+
+	/**
+	 * Register the entities stored in the current transaction that are not registered yet, once the persistence
+	 * context has been flushed for the commit
+	 *
+	 * @param changes the entities stored in the current transaction
+	 */
+	public void save(EntityTypeRegistry.Changes changes);
+
+	/**
+	 * Get the registered class of an entity
+	 *
+	 * @param entityId the id of the entity
+	 * @return the class name of the entity, or null if it is not registered
+	 */
+	public String getType(String entityId);
+
+	/**
+	 * Register all the entities of a class that are not registered yet, for the entities stored before the registry
+	 * has been enabled. The entities are registered by batches, the persistence context being cleared after each
+	 * batch.
+	 *
+	 * @param type the concrete entity class
+	 * @return the number of registered entities
+	 */
+	public int register(Class<?> type);
+
+}
@@ -0,0 +1,78 @@
+package org.imogene.lib.common.entitytype;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Subquery;
+
+/**
+ * Manage persistence for the entity type registry
+ *
+ * @author MEDES-IMPS
+ */
+public class EntityTypeDaoImpl implements EntityTypeDao {
+
+	/* number of entities registered between two flushes when a class is registered */
+	private static final int BATCH_SIZE = 500;
+
+	@PersistenceContext
+	private EntityManager em;
+
+	@Override
+	public void save(EntityTypeRegistry.Changes changes) {
+		Map<String, String> types = changes.drain();
+		if (types.isEmpty()) {
+			return;
+		}
+		List<String> registered = em
+				.createQuery("SELECT e.entityId FROM EntityTypeEntry e WHERE e.entityId IN (:ids)", String.class)
+				.setParameter("ids", types.keySet()).getResultList();
+		Set<String> known = new HashSet<String>(registered);
+		for (Map.Entry<String, String> type : types.entrySet()) {
+			if (!known.contains(type.getKey())) {
+				em.persist(new EntityTypeEntry(type.getKey(), type.getValue()));
+			}
+		}
+		/* the persistence context has already been flushed for the commit */
+		em.flush();
+	}
+
+	@Override
+	public String getType(String entityId) {
+		EntityTypeEntry entry = em.find(EntityTypeEntry.class, entityId);
+		return entry != null ? entry.getEntityType() : null;
+	}
+
+	@Override
+	public int register(Class<?> type) {
+		CriteriaBuilder builder = em.getCriteriaBuilder();
+		CriteriaQuery<String> query = builder.createQuery(String.class);
+		Root<?> root = query.from(type);
+		Subquery<String> registered = query.subquery(String.class);
+		registered.select(registered.from(EntityTypeEntry.class).<String> get("entityId"));
+		query.select(root.<String> get("id"));
+		query.where(builder.not(root.<String> get("id").in(registered)));
+
+		/* the registered entities are flushed, so that the next batch is made of the following ones */
+		int count = 0;
+		List<String> ids = em.createQuery(query).setMaxResults(BATCH_SIZE).getResultList();
+		while (!ids.isEmpty()) {
+			for (String id : ids) {
+				em.persist(new EntityTypeEntry(id, type.getName()));
+			}
+			em.flush();
+			em.clear();
+			count = count + ids.size();
+			ids = em.createQuery(query).setMaxResults(BATCH_SIZE).getResultList();
+		}
+		return count;
+	}
+
+}
@@ -0,0 +1,55 @@
+package org.imogene.lib.common.entitytype;
+
+import java.io.Serializable;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Entry of the entity type registry: the concrete class of an entity, by entity id. The entities are stored in one
+ * table by class, so looking up an entity by id without its class queries all the tables, the registry gives the
+ * table to query.
+ *
+ * @author MEDES-IMPS
+ */
+@Entity
+@Table(name = "imog_entity_type")
+public class EntityTypeEntry implements Serializable {
+
+	private static final long serialVersionUID = -6213385092218764407L;
+
+	@Id
+	private String entityId;
+
+	private String entityType;
+
+	public EntityTypeEntry() {
+	}
+
+	/**
+	 * @param entityId the id of the entity
+	 * @param entityType the class name of the entity
+	 */
+	public EntityTypeEntry(String entityId, String entityType) {
+		this.entityId = entityId;
+		this.entityType = entityType;
+	}
+
+	public String getEntityId() {
+		return entityId;
+	}
+
+	public void setEntityId(String entityId) {
+		this.entityId = entityId;
+	}
+
+	public String getEntityType() {
+		return entityType;
+	}
+
+	public void setEntityType(String entityType) {
+		this.entityType = entityType;
+	}
+
+}
@@ -0,0 +1,172 @@
+package org.imogene.lib.common.entitytype;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.imogene.lib.common.entity.ImogBean;
+import org.imogene.lib.common.entity.ImogBeanChanges;
+
+/**
+ * Singleton registry of the concrete class of the entities, by entity id, so that an entity can be loaded from its
+ * id only with a primary key read on its own table instead of a union of all the entity tables. The stored entities
+ * are recorded from the events received by the ImogBeanEventListener and registered once the persistence context has
+ * been flushed for the commit, and the classes are cached once they have been registered or read. Nothing is
+ * registered until an entity type DAO has been injected.
+ *
+ * @author MEDES-IMPS
+ */
+public class EntityTypeRegistry {
+
+	private static final Logger logger = Logger.getLogger("org.imogene.lib.common.entitytype.EntityTypeRegistry");
+
+	private static EntityTypeRegistry instance = new EntityTypeRegistry();
+
+	private EntityTypeDao entityTypeDao;
+
+	/* the class of an entity never changes, so the cache is never invalidated, only bounded */
+	private int cacheSize = 10000;
+
+	private final Map<String, Class<?>> cache = new LinkedHashMap<String, Class<?>>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 3195426728071535903L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Class<?>> eldest) {
+			return size() > cacheSize;
+		}
+	};
+
+	/**
+	 * Get the entity type registry
+	 */
+	public static EntityTypeRegistry getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param entityTypeDao
+	 */
+	public void setEntityTypeDao(EntityTypeDao entityTypeDao) {
+		this.entityTypeDao = entityTypeDao;
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param cacheSize the maximum number of cached entity classes
+	 */
+	public void setCacheSize(int cacheSize) {
+		this.cacheSize = cacheSize;
+	}
+
+	/**
+	 * Create the changes of a transaction
+	 *
+	 * @return the changes, or null if no entity type DAO has been injected
+	 */
+	public ImogBeanChanges newChanges() {
+		EntityTypeDao dao = entityTypeDao;
+		return dao != null ? new Changes(dao) : null;
+	}
+
+	/**
+	 * Get the concrete class of an entity
+	 *
+	 * @param entityId the id of the entity
+	 * @return the class of the entity, or null if the entity is not registered or if its registered class cannot be
+	 *         loaded, the entity has then to be loaded from the tables of all the classes it may belong to
+	 */
+	public static Class<?> getType(String entityId) {
+		Class<?> type = instance.getCached(entityId);
+		EntityTypeDao dao = instance.entityTypeDao;
+		if (type == null && dao != null) {
+			String className = dao.getType(entityId);
+			if (className != null) {
+				try {
+					type = Class.forName(className);
+					instance.putCached(entityId, type);
+				} catch (ClassNotFoundException e) {
+					logger.warn("Unknown class " + className + " registered for the entity " + entityId, e);
+				}
+			}
+		}
+		return type;
+	}
+
+	private Class<?> getCached(String entityId) {
+		synchronized (cache) {
+			return cache.get(entityId);
+		}
+	}
+
+	private void putCached(String entityId, Class<?> type) {
+		synchronized (cache) {
+			cache.put(entityId, type);
+		}
+	}
+
+	/**
+	 * The entities stored in a transaction, registered before the transaction is committed
+	 */
+	public static class Changes implements ImogBeanChanges {
+
+		private final EntityTypeDao dao;
+
+		/* the classes of the recorded entities, by entity id */
+		private final Map<String, Class<?>> types = new LinkedHashMap<String, Class<?>>();
+
+		/* the entities registered in the transaction, cached once it is committed */
+		private final Map<String, Class<?>> registered = new LinkedHashMap<String, Class<?>>();
+
+		private Changes(EntityTypeDao dao) {
+			this.dao = dao;
+		}
+
+		@Override
+		public void stored(ImogBean entity) {
+			String entityId = entity.getId();
+			if (!registered.containsKey(entityId) && instance.getCached(entityId) == null) {
+				types.put(entityId, entity.getClass());
+			}
+		}
+
+		@Override
+		public void deleted(ImogBean entity) {
+		}
+
+		/**
+		 * Get the entities recorded since the previous call
+		 *
+		 * @return the class names of the entities to register, by entity id
+		 */
+		public Map<String, String> drain() {
+			Map<String, String> result = new LinkedHashMap<String, String>();
+			for (Map.Entry<String, Class<?>> type : types.entrySet()) {
+				result.put(type.getKey(), type.getValue().getName());
+			}
+			registered.putAll(types);
+			types.clear();
+			return result;
+		}
+
+		@Override
+		public void beforeCommit() {
+			if (!types.isEmpty()) {
+				dao.save(this);
+			}
+		}
+
+		@Override
+		public void afterCompletion(boolean committed) {
+			if (committed) {
+				for (Map.Entry<String, Class<?>> type : registered.entrySet()) {
+					instance.putCached(type.getKey(), type.getValue());
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,36 @@
+package org.imogene.lib.common.enumindex;
+
+import java.util.Set;
+
+/**
+ * Manage persistence for the enumeration index
+ *
+ * @author MEDES-IMPS
+ */
+public interface EnumIndexDao {
+
+	/**
+	 * Replace the index entries of the entities stored or deleted in the current transaction, once the persistence
+	 * context has been flushed for the commit
+	 *
+	 * @param changes the values of the indexed fields of the entities stored or deleted in the current transaction
+	 */
+	public void save(EnumIndexRecorder.Changes changes);
+
+	/**
+	 * Index the values of the indexed fields of all the entities of a type and of its subclasses, for the entities
+	 * stored before the index was enabled, and record the index of the type as built. The entries of the other types
+	 * that inherit the same fields are kept. The persistence context is cleared.
+	 *
+	 * @param type the entity class
+	 */
+	public void rebuild(Class<?> type);
+
+	/**
+	 * Rebuild the index of the entity types whose index has not been built yet
+	 *
+	 * @return the names of the built indexes, as given by EnumIndexRecorder.getIndexName
+	 */
+	public Set<String> build();
+
+}
@@ -0,0 +1,115 @@
+package org.imogene.lib.common.enumindex;
+
+import java.lang.reflect.Field;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.EntityType;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Manage persistence for the enumeration index
+ *
+ * @author MEDES-IMPS
+ */
+public class EnumIndexDaoImpl implements EnumIndexDao {
+
+	private static final Logger logger = Logger.getLogger("org.imogene.lib.common.enumindex.EnumIndexDaoImpl");
+
+	/* number of entries stored between two flushes when the index is rebuilt */
+	private static final int BATCH_SIZE = 500;
+
+	@PersistenceContext
+	private EntityManager em;
+
+	@Override
+	public void save(EnumIndexRecorder.Changes changes) {
+		for (Map.Entry<String, Map<String, String>> entity : changes.drain().entrySet()) {
+			Map<String, String> values = entity.getValue();
+			em.createQuery("DELETE FROM EnumIndexEntry e WHERE e.entityId = :entityId AND e.property IN (:names)")
+					.setParameter("entityId", entity.getKey())
+					.setParameter("names", new Vector<String>(values.keySet())).executeUpdate();
+			for (Map.Entry<String, String> value : values.entrySet()) {
+				index(value.getKey(), entity.getKey(), value.getValue());
+			}
+		}
+		/* the persistence context has already been flushed for the commit */
+		em.flush();
+	}
+
+	@Override
+	public void rebuild(Class<?> type) {
+		String entityName = em.getMetamodel().entity(type).getName();
+		for (Field field : EnumIndexRecorder.getIndexedFields(type)) {
+			String property = EnumIndexRecorder.getIndexedProperty(field);
+			/* only the entries of the entities of the type are replaced, the field may be inherited by other types */
+			em.createQuery(
+					"DELETE FROM EnumIndexEntry e WHERE e.property = :property AND e.entityId IN (SELECT t.id FROM "
+							+ entityName + " t)").setParameter("property", property).executeUpdate();
+
+			CriteriaBuilder builder = em.getCriteriaBuilder();
+			CriteriaQuery<Object[]> query = builder.createQuery(Object[].class);
+			Root<?> root = query.from(type);
+			query.multiselect(root.<String> get("id"), root.<String> get(field.getName()));
+			query.where(root.get(field.getName()).isNotNull());
+			int count = 0;
+			for (Object[] row : em.createQuery(query).getResultList()) {
+				count = count + index(property, (String) row[0], (String) row[1]);
+				if (count >= BATCH_SIZE) {
+					em.flush();
+					em.clear();
+					count = 0;
+				}
+			}
+			em.merge(new EnumIndexState(EnumIndexRecorder.getIndexName(type, field), new Date()));
+		}
+		em.flush();
+		em.clear();
+	}
+
+	@Override
+	public Set<String> build() {
+		Set<String> built = new HashSet<String>(em.createQuery("SELECT s.name FROM EnumIndexState s", String.class)
+				.getResultList());
+		for (EntityType<?> entity : em.getMetamodel().getEntities()) {
+			Class<?> type = entity.getJavaType();
+			Field[] fields = EnumIndexRecorder.getIndexedFields(type);
+			boolean complete = true;
+			for (Field field : fields) {
+				complete = complete && built.contains(EnumIndexRecorder.getIndexName(type, field));
+			}
+			if (!complete) {
+				logger.info("Building the enumeration index of " + type.getName());
+				rebuild(type);
+				for (Field field : fields) {
+					built.add(EnumIndexRecorder.getIndexName(type, field));
+				}
+			}
+		}
+		return built;
+	}
+
+	/**
+	 * Store the index entries of a field value
+	 *
+	 * @return the number of stored entries
+	 */
+	private int index(String property, String entityId, String value) {
+		int count = 0;
+		for (String v : EnumIndexRecorder.split(value)) {
+			em.persist(new EnumIndexEntry(property, v, entityId));
+			count++;
+		}
+		return count;
+	}
+
+}
@@ -0,0 +1,85 @@
+package org.imogene.lib.common.enumindex;
+
+import java.io.Serializable;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+import org.hibernate.annotations.Index;
+
+/**
+ * Entry of the enumeration index: one value of an indexed multi-valued enumeration field of an entity. The unique
+ * constraint gives an index on the values of a field, used by the criteria, and the index on the entity id is used
+ * when the entries of an entity are replaced.
+ *
+ * @author MEDES-IMPS
+ */
+@Entity
+@Table(name = "imog_enum_index", uniqueConstraints = { @UniqueConstraint(columnNames = { "property", "enumValue",
+		"entityId" }) })
+public class EnumIndexEntry implements Serializable {
+
+	private static final long serialVersionUID = 4627150869342380197L;
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.AUTO)
+	private Long id;
+
+	private String property;
+
+	private String enumValue;
+
+	@Index(name = "imog_enum_index_entity")
+	private String entityId;
+
+	public EnumIndexEntry() {
+	}
+
+	/**
+	 * @param property the indexed field, qualified by the class that declares it
+	 * @param enumValue one of the values of the field
+	 * @param entityId the id of the entity
+	 */
+	public EnumIndexEntry(String property, String enumValue, String entityId) {
+		this.property = property;
+		this.enumValue = enumValue;
+		this.entityId = entityId;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public String getProperty() {
+		return property;
+	}
+
+	public void setProperty(String property) {
+		this.property = property;
+	}
+
+	public String getEnumValue() {
+		return enumValue;
+	}
+
+	public void setEnumValue(String enumValue) {
+		this.enumValue = enumValue;
+	}
+
+	public String getEntityId() {
+		return entityId;
+	}
+
+	public void setEntityId(String entityId) {
+		this.entityId = entityId;
+	}
+
+}
@@ -0,0 +1,267 @@
+package org.imogene.lib.common.enumindex;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.imogene.lib.common.entity.ImogBean;
+import org.imogene.lib.common.entity.ImogBeanChanges;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Singleton that records the entities with indexed enumeration fields stored or deleted in the current transaction,
+ * from the events received by the ImogBeanEventListener. As for the change log, the values of the indexed fields are
+ * kept with the transaction and the index entries are replaced once the persistence context has been flushed for the
+ * commit. Nothing is recorded until an enumeration index DAO has been injected. When the recorder is started, the
+ * index of the entity types whose index has not been built yet, because they have been stored before the index was
+ * enabled, is built. The index of a field of an entity type is not used by the criteria until it has been built.
+ *
+ * @author MEDES-IMPS
+ */
+public class EnumIndexRecorder implements InitializingBean {
+
+	private static EnumIndexRecorder instance = new EnumIndexRecorder();
+
+	/* the indexed fields by entity class, empty for the classes without indexed field */
+	private static final ConcurrentMap<Class<?>, Field[]> FIELDS = new ConcurrentHashMap<Class<?>, Field[]>();
+
+	private EnumIndexDao enumIndexDao;
+
+	private PlatformTransactionManager transactionManager;
+
+	/* the names of the built indexes, as given by getIndexName */
+	private final Set<String> built = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/**
+	 * Get the enumeration index recorder
+	 */
+	public static EnumIndexRecorder getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param enumIndexDao
+	 */
+	public void setEnumIndexDao(EnumIndexDao enumIndexDao) {
+		this.enumIndexDao = enumIndexDao;
+		built.clear();
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param transactionManager the transaction manager of the build of the index, the index is not built nor used
+	 *            by the criteria without it
+	 */
+	public void setTransactionManager(PlatformTransactionManager transactionManager) {
+		this.transactionManager = transactionManager;
+	}
+
+	/**
+	 * Build the index of the entity types whose index has not been built yet
+	 */
+	@Override
+	public void afterPropertiesSet() {
+		final EnumIndexDao dao = enumIndexDao;
+		if (dao == null || transactionManager == null) {
+			return;
+		}
+		built.addAll(new TransactionTemplate(transactionManager).execute(new TransactionCallback<Set<String>>() {
+			@Override
+			public Set<String> doInTransaction(TransactionStatus status) {
+				return dao.build();
+			}
+		}));
+	}
+
+	/**
+	 * Tell if the index is maintained, and thus can be used by the criteria
+	 *
+	 * @return true if an enumeration index DAO has been injected
+	 */
+	public static boolean isEnabled() {
+		return instance.enumIndexDao != null;
+	}
+
+	/**
+	 * Create the changes of a transaction
+	 *
+	 * @return the changes, or null if no enumeration index DAO has been injected
+	 */
+	public ImogBeanChanges newChanges() {
+		EnumIndexDao dao = enumIndexDao;
+		return dao != null ? new Changes(dao) : null;
+	}
+
+	/**
+	 * Get the indexed fields of an entity class, including the inherited ones
+	 *
+	 * @param type the entity class
+	 * @return the fields marked with IndexedEnum, accessible
+	 */
+	public static Field[] getIndexedFields(Class<?> type) {
+		Field[] fields = FIELDS.get(type);
+		if (fields == null) {
+			List<Field> indexed = new Vector<Field>();
+			for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+				for (Field field : c.getDeclaredFields()) {
+					if (field.isAnnotationPresent(IndexedEnum.class)) {
+						field.setAccessible(true);
+						indexed.add(field);
+					}
+				}
+			}
+			fields = indexed.toArray(new Field[indexed.size()]);
+			FIELDS.putIfAbsent(type, fields);
+		}
+		return fields;
+	}
+
+	/**
+	 * Get the name of the index of a field of an entity class, if the index can be used by the criteria
+	 *
+	 * @param type the entity class
+	 * @param property the field name
+	 * @return the index name, or null if the field is not indexed or if its index has not been built for the class
+	 */
+	public static String getBuiltProperty(Class<?> type, String property) {
+		for (Field field : getIndexedFields(type)) {
+			if (field.getName().equals(property)) {
+				return isEnabled() && instance.built.contains(getIndexName(type, field)) ? getIndexedProperty(field)
+						: null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Get the name of the index of a field, the field name qualified by the class that declares it, so that the entries
+	 * of a field inherited by several entity classes share the same name
+	 *
+	 * @param field the indexed field
+	 * @return the index name
+	 */
+	public static String getIndexedProperty(Field field) {
+		return field.getDeclaringClass().getName() + "." + field.getName();
+	}
+
+	/**
+	 * Get the name under which the index of a field is recorded as built for an entity class
+	 *
+	 * @param type the entity class
+	 * @param field the indexed field
+	 * @return the class name and the index name
+	 */
+	public static String getIndexName(Class<?> type, Field field) {
+		return type.getName() + "#" + getIndexedProperty(field);
+	}
+
+	/**
+	 * Split the value of a multi-valued enumeration field
+	 *
+	 * @param value the ";" separated values
+	 * @return the distinct non empty values
+	 */
+	public static Set<String> split(String value) {
+		Set<String> values = new LinkedHashSet<String>();
+		if (value != null) {
+			for (String v : value.split(";")) {
+				if (v.length() > 0) {
+					values.add(v);
+				}
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * The values of the indexed fields of the entities stored or deleted in a transaction, indexed before the
+	 * transaction is committed
+	 */
+	public static class Changes implements ImogBeanChanges {
+
+		private final EnumIndexDao dao;
+
+		/* the values by index name, by entity id, the last values of an entity stored twice are indexed once */
+		private final Map<String, Map<String, String>> values = new LinkedHashMap<String, Map<String, String>>();
+
+		private Changes(EnumIndexDao dao) {
+			this.dao = dao;
+		}
+
+		@Override
+		public void stored(ImogBean entity) {
+			Field[] fields = getIndexedFields(entity.getClass());
+			if (fields.length > 0) {
+				Map<String, String> indexed = getValues(entity.getId());
+				for (Field field : fields) {
+					indexed.put(getIndexedProperty(field), getValue(field, entity));
+				}
+			}
+		}
+
+		@Override
+		public void deleted(ImogBean entity) {
+			Field[] fields = getIndexedFields(entity.getClass());
+			if (fields.length > 0) {
+				Map<String, String> indexed = getValues(entity.getId());
+				for (Field field : fields) {
+					indexed.put(getIndexedProperty(field), null);
+				}
+			}
+		}
+
+		private Map<String, String> getValues(String entityId) {
+			Map<String, String> indexed = values.get(entityId);
+			if (indexed == null) {
+				indexed = new LinkedHashMap<String, String>();
+				values.put(entityId, indexed);
+			}
+			return indexed;
+		}
+
+		/**
+		 * Get the values recorded since the previous call
+		 *
+		 * @return the values of the indexed fields by index name, null for the deleted entities, by entity id
+		 */
+		public Map<String, Map<String, String>> drain() {
+			Map<String, Map<String, String>> result = new LinkedHashMap<String, Map<String, String>>(values);
+			values.clear();
+			return result;
+		}
+
+		@Override
+		public void beforeCommit() {
+			if (!values.isEmpty()) {
+				dao.save(this);
+			}
+		}
+
+		@Override
+		public void afterCompletion(boolean committed) {
+		}
+
+		private static String getValue(Field field, Object entity) {
+			try {
+				return (String) field.get(entity);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,59 @@
+package org.imogene.lib.common.enumindex;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+/**
+ * State of the index of an indexed field of an entity class: the index has been built for all the entities of the
+ * class, including the ones stored before the index was enabled, and can be used by the criteria.
+ *
+ * @author MEDES-IMPS
+ */
+@Entity
+@Table(name = "imog_enum_index_state")
+public class EnumIndexState implements Serializable {
+
+	private static final long serialVersionUID = -3804182264117416587L;
+
+	/* the entity class and the index name, as given by EnumIndexRecorder.getIndexName */
+	@Id
+	private String name;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date built;
+
+	public EnumIndexState() {
+	}
+
+	/**
+	 * @param name the entity class and the index name
+	 * @param built the date the index has been built
+	 */
+	public EnumIndexState(String name, Date built) {
+		this.name = name;
+		this.built = built;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public Date getBuilt() {
+		return built;
+	}
+
+	public void setBuilt(Date built) {
+		this.built = built;
+	}
+
+}
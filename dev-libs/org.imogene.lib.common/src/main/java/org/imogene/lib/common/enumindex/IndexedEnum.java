@@ -0,0 +1,22 @@
+package org.imogene.lib.common.enumindex;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a multi-valued enumeration field, whose values are stored as a ";" separated string, as indexed. The values of
+ * the field are then also stored one by one in the enumeration index when the entity is stored, and the "contains one
+ * of" criteria on the field are resolved with the index instead of LIKE clauses on the string.
+ * <p>
+ * The values of the entities stored before the field has been marked are indexed when the application is started, the
+ * index of the field is not used by the criteria until then.
+ *
+ * @author MEDES-IMPS
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface IndexedEnum {
+
+}
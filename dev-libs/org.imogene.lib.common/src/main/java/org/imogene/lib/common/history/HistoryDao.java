@@ -0,0 +1,31 @@
+package org.imogene.lib.common.history;
+
+import java.util.List;
+
+import org.imogene.lib.common.entity.ImogBean;
+import org.imogene.lib.common.entity.ImogBeanBck;
+
+/**
+ * Manage persistence for the history of the entities
+ *
+ * @author MEDES-IMPS
+ */
+public interface HistoryDao {
+
+	/**
+	 * Load an entity stored in the current transaction, from the persistence context if it is still managed
+	 *
+	 * @param type the class of the entity
+	 * @param id the id of the entity
+	 * @return the entity, or null if it does not exist
+	 */
+	public ImogBean load(Class<?> type, String id);
+
+	/**
+	 * Store history snapshots in their own transaction, the inserts being sent in JDBC batches
+	 *
+	 * @param snapshots the snapshots to store, in their order
+	 */
+	public void saveAll(List<ImogBeanBck> snapshots);
+
+}
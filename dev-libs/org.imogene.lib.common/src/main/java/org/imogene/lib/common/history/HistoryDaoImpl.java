@@ -0,0 +1,44 @@
+package org.imogene.lib.common.history;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.imogene.lib.common.entity.ImogBean;
+import org.imogene.lib.common.entity.ImogBeanBck;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Manage persistence for the history of the entities
+ *
+ * @author MEDES-IMPS
+ */
+public class HistoryDaoImpl implements HistoryDao {
+
+	/* should match the hibernate.jdbc.batch_size property */
+	private static final int FLUSH_SIZE = 50;
+
+	@PersistenceContext
+	private EntityManager em;
+
+	@Override
+	public ImogBean load(Class<?> type, String id) {
+		return (ImogBean) em.find(type, id);
+	}
+
+	@Override
+	@Transactional
+	public void saveAll(List<ImogBeanBck> snapshots) {
+		int count = 0;
+		for (ImogBeanBck snapshot : snapshots) {
+			/* the snapshots are always new, persist avoids the select done by merge */
+			em.persist(snapshot);
+			if (++count % FLUSH_SIZE == 0) {
+				em.flush();
+				em.clear();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,140 @@
+package org.imogene.lib.common.history;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.imogene.lib.common.entity.CloneFactory;
+import org.imogene.lib.common.entity.ImogBean;
+import org.imogene.lib.common.entity.ImogBeanBck;
+import org.imogene.lib.common.entity.ImogBeanChanges;
+import org.imogene.lib.common.util.BatchWriter;
+
+/**
+ * Singleton that writes the history of the entities asynchronously. The entities stored in a transaction are
+ * recorded from the events received by the ImogBeanEventListener, by class and id only. Once the persistence context
+ * has been flushed for the commit, each entity is read again from the persistence context, with its final version and
+ * modification date, and its snapshot is taken. The snapshots are handed to a background thread once the transaction
+ * has been committed. They are written by a single thread in the order they are handed, and carry the entity version,
+ * which orders the history of an entity whatever the order of the writes. Nothing is recorded until a history DAO and
+ * a clone factory have been injected.
+ *
+ * @author MEDES-IMPS
+ */
+public class HistoryWriter extends BatchWriter<ImogBeanBck> {
+
+	private static HistoryWriter instance = new HistoryWriter();
+
+	/* the classes whose entities have no history, known once one of their entities has been recorded */
+	private final Set<Class<?>> withoutHistory = Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
+
+	private HistoryDao historyDao;
+
+	private CloneFactory cloneFactory;
+
+	private HistoryWriter() {
+		super("history-writer");
+	}
+
+	/**
+	 * Get the history writer
+	 */
+	public static HistoryWriter getInstance() {
+		return instance;
+	}
+
+	@Override
+	protected void store(List<ImogBeanBck> snapshots) {
+		historyDao.saveAll(snapshots);
+	}
+
+	/**
+	 * Create the changes of a transaction
+	 *
+	 * @return the changes, or null if no history DAO or no clone factory has been injected
+	 */
+	public ImogBeanChanges newChanges() {
+		return historyDao != null && cloneFactory != null ? new Changes() : null;
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param historyDao
+	 */
+	public void setHistoryDao(HistoryDao historyDao) {
+		this.historyDao = historyDao;
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param cloneFactory the factory of the snapshots
+	 */
+	public void setCloneFactory(CloneFactory cloneFactory) {
+		this.cloneFactory = cloneFactory;
+	}
+
+	/**
+	 * The entities stored in a transaction, whose snapshots are written once the transaction is committed
+	 */
+	private class Changes implements ImogBeanChanges {
+
+		/* the ids of the stored entities by class, an entity stored twice is recorded once */
+		private final Map<Class<?>, Set<String>> entities = new LinkedHashMap<Class<?>, Set<String>>();
+
+		private final List<ImogBeanBck> snapshots = new Vector<ImogBeanBck>();
+
+		@Override
+		public void stored(ImogBean entity) {
+			/* the snapshots have no history */
+			if (entity instanceof ImogBeanBck || withoutHistory.contains(entity.getClass())) {
+				return;
+			}
+			Set<String> ids = entities.get(entity.getClass());
+			if (ids == null) {
+				ids = new LinkedHashSet<String>();
+				entities.put(entity.getClass(), ids);
+			}
+			ids.add(entity.getId());
+		}
+
+		@Override
+		public void deleted(ImogBean entity) {
+			Set<String> ids = entities.get(entity.getClass());
+			if (ids != null) {
+				ids.remove(entity.getId());
+			}
+		}
+
+		@Override
+		public void beforeCommit() {
+			for (Map.Entry<Class<?>, Set<String>> type : entities.entrySet()) {
+				for (String id : type.getValue()) {
+					ImogBean stored = historyDao.load(type.getKey(), id);
+					ImogBeanBck snapshot = stored != null ? (ImogBeanBck) cloneFactory.clone(stored) : null;
+					if (snapshot != null) {
+						snapshots.add(snapshot);
+					} else if (stored != null) {
+						withoutHistory.add(type.getKey());
+						break;
+					}
+				}
+			}
+			entities.clear();
+		}
+
+		@Override
+		public void afterCompletion(boolean committed) {
+			if (committed && !snapshots.isEmpty()) {
+				write(snapshots);
+			}
+		}
+	}
+
+}
@@ -1,5 +1,6 @@
 package org.imogene.lib.common.model;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.Table;
 
@@ -12,6 +13,7 @@ import org.imogene.lib.common.entity.ImogBeanImpl;
  * @author Medes-IMPS
  */
 @Entity
+@Cacheable
 @Table(name = "imog_cardentity")
 public class CardEntity extends ImogBeanImpl {
 
@@ -17,6 +17,7 @@ public class CardEntityDaoImpl extends ImogBeanDaoImpl<CardEntity> implements Ca
 
 	protected CardEntityDaoImpl() {
 		super(CardEntity.class);
+		setCacheQueries(true);
 	}
 
 
@@ -25,7 +26,7 @@ public class CardEntityDaoImpl extends ImogBeanDaoImpl<CardEntity> implements Ca
 		CriteriaBuilder builder = em.getCriteriaBuilder();
 		CriteriaQuery<CardEntity> query = builder.createQuery(CardEntity.class);
 		query.select(query.from(CardEntity.class));
-		return em.createQuery(query).getResultList();
+		return createQuery(query).getResultList();
 	}
 
 	@Override
@@ -9,6 +9,7 @@ public class FieldGroupDaoImpl extends ImogBeanDaoImpl<FieldGroup> implements Fi
 
 	protected FieldGroupDaoImpl() {
 		super(FieldGroup.class);
+		setCacheQueries(true);
 	}
 
 	@Override
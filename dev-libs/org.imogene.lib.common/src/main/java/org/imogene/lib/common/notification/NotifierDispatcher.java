@@ -0,0 +1,274 @@
+package org.imogene.lib.common.notification;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Dispatches the modifications of the entities to the notifier. The events are sent by a fixed pool of threads,
+ * after a short delay during which the identical events of an entity are collapsed into one. The number of events
+ * waiting to be sent is bounded, the events that exceed it are dropped and counted. The HTTP connections to the
+ * notifier are kept alive and reused by the JDK between the events.
+ *
+ * @author MEDES-IMPS
+ */
+public class NotifierDispatcher implements InitializingBean, DisposableBean {
+
+	private static final Logger logger = Logger.getLogger("org.imogene.lib.common.notification.NotifierDispatcher");
+
+	private static final int BUFFER_SIZE = 1024;
+
+	private String notifierUrl;
+
+	private int poolSize = 2;
+
+	private int capacity = 10000;
+
+	/* delay during which the identical events are collapsed, in milliseconds */
+	private long coalesceDelay = 1000;
+
+	private int connectTimeout = 5000;
+
+	private int readTimeout = 10000;
+
+	/* maximum time the stop waits for the events to be sent, in milliseconds */
+	private long shutdownTimeout = 30000;
+
+	private ScheduledThreadPoolExecutor executor;
+
+	/* the events waiting to be sent, by type, operation and id */
+	private final ConcurrentMap<String, Boolean> pending = new ConcurrentHashMap<String, Boolean>();
+
+	private final AtomicLong sent = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		executor = new ScheduledThreadPoolExecutor(poolSize, new ThreadFactory() {
+
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "notifier-dispatcher-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Stop the dispatcher. The events already scheduled are still sent, the stop waits for them as long as the pool
+	 * takes to send them one after the other, within the shutdown timeout. The events still waiting then are dropped.
+	 */
+	@Override
+	public void destroy() throws Exception {
+		executor.shutdown();
+		int waiting = executor.getQueue().size() + executor.getActiveCount();
+		long rounds = (waiting + poolSize - 1) / poolSize;
+		long timeout = Math.min(shutdownTimeout, coalesceDelay + rounds * (connectTimeout + readTimeout));
+		if (!executor.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+			List<Runnable> discarded = executor.shutdownNow();
+			pending.clear();
+			dropped.addAndGet(discarded.size());
+			logger.warn(discarded.size() + " events have not been sent to the notifier within " + timeout
+					+ " ms and are dropped");
+		}
+	}
+
+	/**
+	 * Dispatch a modification to the notifier
+	 *
+	 * @param type the entity class name
+	 * @param operation the operation on the entity
+	 * @param id the entity id
+	 */
+	public void dispatch(final String type, final String operation, final String id) {
+		final String key = type + "#" + operation + "#" + id;
+		if (pending.size() >= capacity) {
+			dropped.incrementAndGet();
+			return;
+		}
+		if (pending.putIfAbsent(key, Boolean.TRUE) != null) {
+			coalesced.incrementAndGet();
+			return;
+		}
+		try {
+			executor.schedule(new Runnable() {
+				@Override
+				public void run() {
+					/* the events received from now on are sent again */
+					pending.remove(key);
+					send(type, operation, id);
+				}
+			}, coalesceDelay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			/* the dispatcher has been stopped */
+			pending.remove(key);
+			dropped.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Send an event to the notifier
+	 *
+	 * @param type the entity class name
+	 * @param operation the operation on the entity
+	 * @param id the entity id
+	 */
+	private void send(String type, String operation, String id) {
+		HttpURLConnection connection = null;
+		try {
+			URL url = new URL(notifierUrl + "?type=" + encode(type) + "&op=" + encode(operation) + "&id="
+					+ encode(id));
+			connection = (HttpURLConnection) url.openConnection();
+			connection.setConnectTimeout(connectTimeout);
+			connection.setReadTimeout(readTimeout);
+			connection.getResponseCode();
+			/* the response is read entirely so that the connection can be reused */
+			consume(connection.getInputStream());
+			sent.incrementAndGet();
+		} catch (IOException e) {
+			failed.incrementAndGet();
+			if (connection != null) {
+				consume(connection.getErrorStream());
+			}
+		}
+	}
+
+	private static String encode(String value) throws UnsupportedEncodingException {
+		return URLEncoder.encode(value, "UTF-8");
+	}
+
+	private static void consume(InputStream in) {
+		if (in == null) {
+			return;
+		}
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			while (in.read(buffer) != -1) {
+				// discarded
+			}
+			in.close();
+		} catch (IOException e) {
+			// the connection is not reused
+		}
+	}
+
+	/**
+	 * Get the number of events waiting to be sent
+	 */
+	public int getPendingCount() {
+		return pending.size();
+	}
+
+	/**
+	 * Get the number of events sent to the notifier
+	 */
+	public long getSentCount() {
+		return sent.get();
+	}
+
+	/**
+	 * Get the number of events collapsed with an identical event waiting to be sent
+	 */
+	public long getCoalescedCount() {
+		return coalesced.get();
+	}
+
+	/**
+	 * Get the number of events dropped because too many events were waiting to be sent
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * Get the number of events that could not be sent
+	 */
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param notifierUrl the notifier URL
+	 */
+	public void setNotifierUrl(String notifierUrl) {
+		this.notifierUrl = notifierUrl;
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param poolSize the number of threads that send the events
+	 */
+	public void setPoolSize(int poolSize) {
+		this.poolSize = poolSize;
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param capacity the maximum number of events waiting to be sent
+	 */
+	public void setCapacity(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param coalesceDelay the delay during which the identical events are collapsed, in milliseconds
+	 */
+	public void setCoalesceDelay(long coalesceDelay) {
+		this.coalesceDelay = coalesceDelay;
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param connectTimeout the connection timeout, in milliseconds
+	 */
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param readTimeout the read timeout, in milliseconds
+	 */
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param shutdownTimeout the maximum time the stop waits for the events to be sent, in milliseconds
+	 */
+	public void setShutdownTimeout(long shutdownTimeout) {
+		this.shutdownTimeout = shutdownTimeout;
+	}
+
+}
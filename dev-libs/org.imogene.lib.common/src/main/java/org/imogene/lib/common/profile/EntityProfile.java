@@ -1,5 +1,6 @@
 package org.imogene.lib.common.profile;
 
+import javax.persistence.Cacheable;
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
@@ -16,6 +17,7 @@ import org.imogene.lib.common.model.CardEntity;
  * @author MEDES-IMPS
  */
 @Entity
+@Cacheable
 @Table(name = "imog_entityprofile")
 public class EntityProfile extends ImogBeanImpl {
 
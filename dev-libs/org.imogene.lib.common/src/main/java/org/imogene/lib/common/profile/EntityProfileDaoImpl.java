@@ -9,6 +9,7 @@ public class EntityProfileDaoImpl extends ImogBeanDaoImpl<EntityProfile> impleme
 
 	protected EntityProfileDaoImpl() {
 		super(EntityProfile.class);
+		setCacheQueries(true);
 	}
 
 	@Override
@@ -1,5 +1,6 @@
 package org.imogene.lib.common.profile;
 
+import javax.persistence.Cacheable;
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
@@ -17,6 +18,7 @@ import org.imogene.lib.common.model.FieldGroup;
  * @author MEDES-IMPS
  */
 @Entity
+@Cacheable
 @Table(name = "imog_fieldgroupprofile")
 public class FieldGroupProfile extends ImogBeanImpl {
 
@@ -9,6 +9,7 @@ public class FieldGroupProfileDaoImpl extends ImogBeanDaoImpl<FieldGroupProfile>
 
 	protected FieldGroupProfileDaoImpl() {
 		super(FieldGroupProfile.class);
+		setCacheQueries(true);
 	}
 
 	@Override
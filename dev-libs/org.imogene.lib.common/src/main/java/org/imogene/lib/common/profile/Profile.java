@@ -3,6 +3,7 @@ package org.imogene.lib.common.profile;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.persistence.Cacheable;
 import javax.persistence.CascadeType;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
@@ -18,6 +19,7 @@ import org.imogene.lib.common.entity.ImogBeanImpl;
  * @author MEDES-IMPS
  */
 @Entity
+@Cacheable
 @Table(name = "imog_profile")
 public class Profile extends ImogBeanImpl {
 
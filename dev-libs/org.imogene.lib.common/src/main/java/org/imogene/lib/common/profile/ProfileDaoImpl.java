@@ -15,6 +15,7 @@ public class ProfileDaoImpl extends ImogBeanDaoImpl<Profile> implements ProfileD
 
 	protected ProfileDaoImpl() {
 		super(Profile.class);
+		setCacheQueries(true);
 	}
 
 	@Override
@@ -37,7 +38,7 @@ public class ProfileDaoImpl extends ImogBeanDaoImpl<Profile> implements ProfileD
 		Root<EntityProfile> root = query.from(EntityProfile.class);
 		query.select(root);
 		query.where(builder.equal(root.<Profile> get("profile"), parent));
-		return em.createQuery(query).getResultList();
+		return createQuery(query).getResultList();
 	}
 
 	/**
@@ -53,7 +54,7 @@ public class ProfileDaoImpl extends ImogBeanDaoImpl<Profile> implements ProfileD
 		Root<FieldGroupProfile> root = query.from(FieldGroupProfile.class);
 		query.select(root);
 		query.where(builder.equal(root.<Profile> get("profile"), parent));
-		return em.createQuery(query).getResultList();
+		return createQuery(query).getResultList();
 	}
 
 }
@@ -0,0 +1,19 @@
+package org.imogene.lib.common.useraction;
+
+import java.util.List;
+
+/**
+ * Manage persistence for UserAction
+ *
+ * @author MEDES-IMPS
+ */
+public interface UserActionDao {
+
+	/**
+	 * Store new user actions in their own transaction, the inserts being sent in JDBC batches
+	 *
+	 * @param actions the user actions to store, with their id set
+	 */
+	public void saveAll(List<UserAction> actions);
+
+}
@@ -0,0 +1,37 @@
+package org.imogene.lib.common.useraction;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Manage persistence for UserAction
+ *
+ * @author MEDES-IMPS
+ */
+public class UserActionDaoImpl implements UserActionDao {
+
+	/* should match the hibernate.jdbc.batch_size property */
+	private static final int FLUSH_SIZE = 50;
+
+	@PersistenceContext
+	private EntityManager em;
+
+	@Override
+	@Transactional
+	public void saveAll(List<UserAction> actions) {
+		int count = 0;
+		for (UserAction action : actions) {
+			/* the actions are always new, persist avoids the select done by merge */
+			em.persist(action);
+			if (++count % FLUSH_SIZE == 0) {
+				em.flush();
+				em.clear();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,35 @@
+package org.imogene.lib.common.useraction;
+
+import java.util.List;
+
+import org.imogene.lib.common.util.BatchWriter;
+
+/**
+ * Writes the user actions asynchronously, so that the audit journal does not slow down the requests. The actions are
+ * stored in batches by a background thread.
+ *
+ * @author MEDES-IMPS
+ */
+public class UserActionWriter extends BatchWriter<UserAction> {
+
+	private UserActionDao userActionDao;
+
+	public UserActionWriter() {
+		super("useraction-writer");
+	}
+
+	@Override
+	protected void store(List<UserAction> actions) {
+		userActionDao.saveAll(actions);
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param userActionDao
+	 */
+	public void setUserActionDao(UserActionDao userActionDao) {
+		this.userActionDao = userActionDao;
+	}
+
+}
@@ -0,0 +1,230 @@
+package org.imogene.lib.common.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Writes items asynchronously. The items are put in a bounded queue and stored in batches, in the order they have
+ * been written, by a background thread. The queue is drained before the writer is destroyed, so that no item is lost
+ * on a clean shutdown. The items of a batch that cannot be stored are stored one by one, so that an invalid item only
+ * loses itself.
+ *
+ * @param <T> the type of the written items
+ * @author MEDES-IMPS
+ */
+public abstract class BatchWriter<T> implements InitializingBean, DisposableBean {
+
+	/**
+	 * What is done with an item when the queue is full
+	 */
+	public enum OverflowPolicy {
+		/** wait until the queue has room for the item */
+		BLOCK,
+		/** drop the item */
+		DISCARD,
+		/** store the item in the calling thread */
+		CALLER_RUNS
+	}
+
+	private static final Logger logger = Logger.getLogger("org.imogene.lib.common.util.BatchWriter");
+
+	/* how long the writer waits for an item before checking if it has been stopped */
+	private static final long POLL_TIMEOUT = 500;
+
+	private final String name;
+
+	private int capacity = 10000;
+
+	private int batchSize = 50;
+
+	private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+	private BlockingQueue<T> queue;
+
+	private Thread thread;
+
+	private volatile boolean stopped = true;
+
+	private final AtomicLong discarded = new AtomicLong();
+
+	/**
+	 * @param name the name of the writer thread
+	 */
+	protected BatchWriter(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Store a batch of items, in the order they have been written
+	 *
+	 * @param items the items to store
+	 */
+	protected abstract void store(List<T> items);
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		queue = new ArrayBlockingQueue<T>(capacity);
+		stopped = false;
+		thread = new Thread(name) {
+			@Override
+			public void run() {
+				process();
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		stopped = true;
+		if (thread != null) {
+			/* the thread ends once the queue is empty */
+			thread.join();
+			thread = null;
+		}
+		/* the items queued while the writer was stopping, until no writer adds any more */
+		List<T> remaining = new ArrayList<T>(batchSize);
+		while (queue.drainTo(remaining, batchSize) > 0) {
+			storeBatch(remaining);
+			remaining.clear();
+		}
+	}
+
+	/**
+	 * Write an item. The item is stored in the calling thread if the writer is not running.
+	 *
+	 * @param item the item to store
+	 */
+	public void write(T item) {
+		if (stopped) {
+			store(Collections.singletonList(item));
+			return;
+		}
+		if (queue.offer(item)) {
+			return;
+		}
+		switch (overflowPolicy) {
+		case BLOCK:
+			try {
+				queue.put(item);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				discarded.incrementAndGet();
+			}
+			break;
+		case CALLER_RUNS:
+			/* a failure is logged and counted as with the writer thread, not thrown to the caller */
+			storeBatch(Collections.singletonList(item));
+			break;
+		default:
+			discarded.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Write items, in their order
+	 *
+	 * @param items the items to store
+	 */
+	public void write(List<T> items) {
+		for (T item : items) {
+			write(item);
+		}
+	}
+
+	/**
+	 * Store the queued items until the writer is stopped and the queue is empty
+	 */
+	private void process() {
+		List<T> batch = new ArrayList<T>(batchSize);
+		while (!stopped || !queue.isEmpty()) {
+			try {
+				T item = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+				if (item == null) {
+					continue;
+				}
+				batch.add(item);
+				queue.drainTo(batch, batchSize - 1);
+				storeBatch(batch);
+			} catch (InterruptedException e) {
+				/* the queue is still drained, the writer only ends when it is stopped */
+			} finally {
+				batch.clear();
+			}
+		}
+	}
+
+	/**
+	 * Store a batch of items, or each item in turn if the batch cannot be stored. The items that cannot be stored are
+	 * dropped.
+	 *
+	 * @param batch the items to store
+	 */
+	private void storeBatch(List<T> batch) {
+		try {
+			store(batch);
+			return;
+		} catch (RuntimeException e) {
+			if (batch.size() == 1) {
+				discarded.incrementAndGet();
+				logger.error(name + ": an item cannot be stored and is dropped", e);
+				return;
+			}
+			logger.warn(name + ": a batch of " + batch.size()
+					+ " items cannot be stored, the items are stored one by one", e);
+		}
+		for (T item : batch) {
+			try {
+				store(Collections.singletonList(item));
+			} catch (RuntimeException e) {
+				discarded.incrementAndGet();
+				logger.error(name + ": an item cannot be stored and is dropped", e);
+			}
+		}
+	}
+
+	/**
+	 * Get the number of items that have been dropped, because the queue was full or because they could not be stored
+	 */
+	public long getDiscardedCount() {
+		return discarded.get();
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param capacity the maximum number of items waiting to be stored
+	 */
+	public void setCapacity(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param batchSize the maximum number of items stored at once
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param overflowPolicy what is done with an item when the queue is full
+	 */
+	public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		this.overflowPolicy = overflowPolicy;
+	}
+
+}
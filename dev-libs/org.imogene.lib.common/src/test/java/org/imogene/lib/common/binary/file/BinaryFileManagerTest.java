@@ -0,0 +1,195 @@
+package org.imogene.lib.common.binary.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the files of the binaries and of their variants, in the binary directory and in the store
+ *
+ * @author MEDES-IMPS
+ */
+public class BinaryFileManagerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private BinaryFileManager manager;
+
+	private MemoryContentDao contentDao;
+
+	@Before
+	public void setUp() throws Exception {
+		manager = new BinaryFileManager();
+		manager.setBinaryPath(folder.getRoot().getPath());
+		contentDao = new MemoryContentDao();
+		manager.setBinaryContentDao(contentDao);
+	}
+
+	/**
+	 * The audio stored before the conversions were enabled is served as it is
+	 */
+	@Test
+	public void legacyAudioIsServedUntilItIsConverted() throws Exception {
+		BinaryFile binary = binary("B1", "audio/amr");
+		File content = write(manager.buildFilePath(binary), "amr");
+		assertEquals(content, manager.getMp3File(binary));
+
+		File mp3 = write(manager.buildMp3FilePath(binary), "mp3");
+		assertFalse(mp3.equals(content));
+		assertEquals(mp3, manager.getMp3File(binary));
+	}
+
+	@Test
+	public void storedAudioIsServedUntilItIsConverted() throws Exception {
+		BinaryFile binary = binary("B2", "audio/amr");
+		manager.store(binary, write(manager.createTempFile(), "amr"));
+		assertEquals(manager.buildFilePath(binary), manager.getMp3File(binary));
+
+		File mp3 = write(manager.buildMp3FilePath(binary), "mp3");
+		assertEquals(mp3, manager.getMp3File(binary));
+	}
+
+	@Test
+	public void mp3IsServedAsItIs() throws Exception {
+		BinaryFile binary = binary("B3", "audio/mpeg");
+		manager.store(binary, write(manager.createTempFile(), "mp3"));
+		assertEquals(manager.buildFilePath(binary), manager.buildMp3FilePath(binary));
+		assertEquals(manager.buildFilePath(binary), manager.getMp3File(binary));
+	}
+
+	/**
+	 * The migration copies the content and its variants to the store, the legacy files are deleted afterwards
+	 */
+	@Test
+	public void migrationCopiesTheVariants() throws Exception {
+		BinaryFile binary = binary("B4", "audio/amr");
+		File content = write(manager.buildFilePath(binary), "amr");
+		File mp3 = write(manager.buildMp3FilePath(binary), "mp3");
+
+		String hash = manager.migrate(binary);
+		binary.setContentHash(hash);
+		assertTrue(manager.buildFilePath(binary).exists());
+		assertTrue(manager.buildMp3FilePath(binary).exists());
+		assertEquals(manager.buildMp3FilePath(binary), manager.getMp3File(binary));
+
+		binary.setContentHash(null);
+		manager.deleteMigrated(binary);
+		assertFalse(content.exists());
+		assertFalse(mp3.exists());
+	}
+
+	/**
+	 * A content shared by two binaries is deleted with its variants once both binaries are deleted
+	 */
+	@Test
+	public void contentsAreDeletedWithTheirLastReference() throws Exception {
+		BinaryFile first = binary("B5", "audio/amr");
+		BinaryFile second = binary("B6", "audio/amr");
+		manager.store(first, write(manager.createTempFile(), "shared"));
+		manager.store(second, write(manager.createTempFile(), "shared"));
+		File content = manager.buildFilePath(first);
+		File mp3 = write(manager.buildMp3FilePath(first), "mp3");
+		assertEquals(Integer.valueOf(2), contentDao.refCounts.get(first.getContentHash()));
+
+		manager.delete(first);
+		assertTrue(content.exists());
+		manager.delete(second);
+		assertFalse(content.exists());
+		assertFalse(mp3.exists());
+		assertFalse(contentDao.refCounts.containsKey(first.getContentHash()));
+	}
+
+	/**
+	 * The insertion of a content inserted meanwhile by a concurrent transaction is retried as an increment
+	 */
+	@Test
+	public void duplicateInsertionsAreRetriedAsIncrements() throws Exception {
+		contentDao.concurrentInsertion = true;
+		BinaryFile binary = binary("B7", "audio/amr");
+		manager.store(binary, write(manager.createTempFile(), "concurrent"));
+		assertEquals(Integer.valueOf(2), contentDao.refCounts.get(binary.getContentHash()));
+		assertTrue(manager.buildFilePath(binary).exists());
+	}
+
+	private static BinaryFile binary(String id, String contentType) {
+		BinaryFile binary = new BinaryFile();
+		binary.setId(id);
+		binary.setFileName("record.bin");
+		binary.setContentType(contentType);
+		return binary;
+	}
+
+	private static File write(File file, String content) throws IOException {
+		file.getParentFile().mkdirs();
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Content DAO that counts the references in memory
+	 */
+	private static class MemoryContentDao implements BinaryContentDao {
+
+		private final Map<String, Integer> refCounts = new HashMap<String, Integer>();
+
+		/* true if the next insertion fails because a concurrent transaction has inserted the same content */
+		private boolean concurrentInsertion;
+
+		@Override
+		public void acquire(String hash, long length) {
+			if (!increment(hash)) {
+				refCounts.put(hash, 1);
+				if (concurrentInsertion) {
+					concurrentInsertion = false;
+					throw new IllegalStateException("duplicate key " + hash);
+				}
+			}
+		}
+
+		@Override
+		public boolean increment(String hash) {
+			Integer refCount = refCounts.get(hash);
+			if (refCount == null) {
+				return false;
+			}
+			refCounts.put(hash, refCount + 1);
+			return true;
+		}
+
+		@Override
+		public int release(String hash) {
+			Integer refCount = refCounts.get(hash);
+			int left = refCount == null ? 0 : refCount - 1;
+			if (left <= 0) {
+				refCounts.remove(hash);
+			} else {
+				refCounts.put(hash, left);
+			}
+			return left;
+		}
+
+		@Override
+		public String getContentHash(String binaryId) {
+			return null;
+		}
+	}
+
+}
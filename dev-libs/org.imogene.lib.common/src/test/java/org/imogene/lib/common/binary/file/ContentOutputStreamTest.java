@@ -0,0 +1,146 @@
+package org.imogene.lib.common.binary.file;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import org.imogene.lib.common.binary.file.ContentOutputStream.SizeExceededException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the content type, the length and the hash computed while a content is written
+ *
+ * @author MEDES-IMPS
+ */
+public class ContentOutputStreamTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * The content type is detected from the magic bytes, also when they are written one by one
+	 */
+	@Test
+	public void contentTypeIsDetectedFromTheMagicBytes() throws Exception {
+		assertEquals("image/jpeg", detect(0xFF, 0xD8, 0xFF, 0xE0));
+		assertEquals("image/png", detect(0x89, 'P', 'N', 'G', 0x0D, 0x0A));
+		assertEquals("image/gif", detect('G', 'I', 'F', '8', '9', 'a'));
+		assertEquals("application/pdf", detect('%', 'P', 'D', 'F', '-', '1'));
+		assertEquals("audio/mpeg", detect('I', 'D', '3', 0x03));
+		assertEquals("audio/x-wav", detect('R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'A', 'V', 'E'));
+		assertEquals("video/x-msvideo", detect('R', 'I', 'F', 'F', 0, 0, 0, 0, 'A', 'V', 'I', ' '));
+		assertEquals("video/mp4", detect(0, 0, 0, 0x18, 'f', 't', 'y', 'p', 'i', 's', 'o', 'm'));
+		assertEquals("video/3gpp", detect(0, 0, 0, 0x14, 'f', 't', 'y', 'p', '3', 'g', 'p', '4'));
+		assertEquals("application/zip", detect('P', 'K', 0x03, 0x04));
+	}
+
+	/**
+	 * The contents that are not recognized, or too short to be, have no content type
+	 */
+	@Test
+	public void unknownContentsHaveNoContentType() throws Exception {
+		assertNull(detect('t', 'e', 'x', 't'));
+		assertNull(detect('R', 'I', 'F', 'F', 0, 0, 0, 0, 'X', 'X', 'X', 'X'));
+		assertNull(detect(0xFF, 0xD8));
+		assertNull(detect());
+	}
+
+	/**
+	 * The write that exceeds the maximum length fails, nothing of it is written
+	 */
+	@Test
+	public void contentBeyondTheMaximumLengthIsRejected() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ContentOutputStream content = new ContentOutputStream(out, 10);
+		content.write(new byte[8]);
+		content.write(0);
+		content.write(0);
+		try {
+			content.write(0);
+			fail("the content exceeds the maximum length");
+		} catch (SizeExceededException e) {
+			/* expected */
+		}
+		assertEquals(10, out.size());
+		assertEquals(10, content.getLength());
+	}
+
+	/**
+	 * The maximum length of an appended content includes the part already written
+	 */
+	@Test
+	public void appendedContentIsRejectedWithThePartAlreadyWritten() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ContentOutputStream content = new ContentOutputStream(out, 6, 10);
+		content.write(new byte[4]);
+		try {
+			content.write(new byte[1]);
+			fail("the content exceeds the maximum length");
+		} catch (SizeExceededException e) {
+			/* expected */
+		}
+		assertEquals(4, out.size());
+		assertEquals(10, content.getLength());
+	}
+
+	/**
+	 * The hash of the written content is the hash of the stored file
+	 */
+	@Test
+	public void hashCoversTheWrittenContent() throws Exception {
+		byte[] data = new byte[100000];
+		new Random(17).nextBytes(data);
+		File file = folder.newFile();
+		ContentOutputStream content = new ContentOutputStream(new FileOutputStream(file), 0);
+		int offset = 0;
+		for (int chunk = 1; offset < data.length; chunk = chunk * 3 + 1) {
+			int count = Math.min(chunk, data.length - offset);
+			content.write(data, offset, count);
+			offset += count;
+		}
+		assertNull(content.getHash());
+		content.close();
+		assertEquals(BinaryFileManager.hash(file), content.getHash());
+		assertEquals(data.length, content.getLength());
+		assertEquals(data.length, file.length());
+	}
+
+	/**
+	 * The hash of an appended content only covers the appended part
+	 */
+	@Test
+	public void hashOfAnAppendedContentCoversTheAppendedPart() throws Exception {
+		byte[] data = "appended part".getBytes("UTF-8");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ContentOutputStream content = new ContentOutputStream(out, 100, 0);
+		content.write(data);
+		content.close();
+		assertArrayEquals(data, out.toByteArray());
+		assertEquals(100 + data.length, content.getLength());
+		MessageDigest digest = BinaryFileManager.createDigest();
+		assertEquals(BinaryFileManager.toHex(digest.digest(data)), content.getHash());
+	}
+
+	/**
+	 * Write a content byte by byte and get its detected content type
+	 */
+	private static String detect(int... bytes) throws IOException {
+		ContentOutputStream content = new ContentOutputStream(new ByteArrayOutputStream(), 0);
+		for (int b : bytes) {
+			content.write(b);
+		}
+		content.close();
+		return content.getDetectedContentType();
+	}
+
+}
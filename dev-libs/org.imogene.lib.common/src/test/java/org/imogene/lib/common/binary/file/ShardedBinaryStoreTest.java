@@ -0,0 +1,132 @@
+package org.imogene.lib.common.binary.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the sharded binary store. A synthetic set of binaries, several binaries sharing the same content, is stored
+ * in the store and in the flat directory used before, as id-fileName, to compare the disk usage and the size of the
+ * largest directory, which the backups and the listings go through.
+ *
+ * @author MEDES-IMPS
+ */
+public class ShardedBinaryStoreTest {
+
+	private static final int COUNT = 20000;
+
+	/* the number of distinct contents, each one is shared by COUNT / CONTENTS binaries */
+	private static final int CONTENTS = 5000;
+
+	private static final int SIZE = 2048;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void contentsAreStoredOnceInShards() throws Exception {
+		ShardedBinaryStore store = new ShardedBinaryStore(folder.newFolder("store"));
+		File first = write(folder.newFile(), 1);
+		String hash = BinaryFileManager.hash(first);
+		assertTrue(store.put(hash, first));
+		assertFalse(first.exists());
+
+		File content = store.getFile(hash, "");
+		assertEquals(new File(new File(new File(folder.getRoot(), "store"), hash.substring(0, 2)),
+				hash.substring(2, 4)), content.getParentFile());
+		assertTrue(content.exists());
+
+		/* the same content is not stored again */
+		File second = write(folder.newFile(), 1);
+		assertFalse(store.put(hash, second));
+		assertFalse(second.exists());
+		assertEquals(1, content.getParentFile().list().length);
+
+		/* the variants are removed with the content */
+		write(store.getFile(hash, "_thumb"), 2);
+		store.remove(hash);
+		assertFalse(content.exists());
+		assertFalse(store.getFile(hash, "_thumb").exists());
+	}
+
+	@Test
+	public void shardsReduceTheDiskUsageAndTheDirectorySizes() throws Exception {
+		File flat = folder.newFolder("flat");
+		ShardedBinaryStore store = new ShardedBinaryStore(folder.newFolder("store"));
+		String[] hashes = new String[CONTENTS];
+		for (int i = 0; i < COUNT; i++) {
+			int content = i % CONTENTS;
+			write(new File(flat, i + "-photo" + content + ".jpg"), content);
+			File upload = write(folder.newFile(), content);
+			hashes[content] = BinaryFileManager.hash(upload);
+			store.put(hashes[content], upload);
+		}
+
+		Usage flatUsage = new Usage(flat);
+		Usage shardedUsage = new Usage(store.getFile(hashes[0], "").getParentFile().getParentFile().getParentFile());
+		assertEquals((long) COUNT * SIZE, flatUsage.bytes);
+		assertEquals((long) CONTENTS * SIZE, shardedUsage.bytes);
+		assertEquals(COUNT, flatUsage.largestDirectory);
+		assertTrue(shardedUsage.largestDirectory <= 256);
+		for (String hash : hashes) {
+			assertTrue(store.getFile(hash, "").exists());
+		}
+	}
+
+	/**
+	 * Write a synthetic content
+	 *
+	 * @param file the file to write
+	 * @param content the number of the content
+	 * @return the file
+	 */
+	private static File write(File file, int content) throws IOException {
+		byte[] data = new byte[SIZE];
+		new Random(content).nextBytes(data);
+		file.getParentFile().mkdirs();
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(data);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	/**
+	 * The size of the files of a directory tree and the number of entries of its largest directory
+	 */
+	private static class Usage {
+
+		private long bytes;
+
+		private int largestDirectory;
+
+		private Usage(File directory) {
+			add(directory);
+		}
+
+		private void add(File directory) {
+			File[] files = directory.listFiles();
+			largestDirectory = Math.max(largestDirectory, files.length);
+			for (File file : files) {
+				if (file.isDirectory()) {
+					add(file);
+				} else {
+					bytes = bytes + file.length();
+				}
+			}
+		}
+	}
+
+}
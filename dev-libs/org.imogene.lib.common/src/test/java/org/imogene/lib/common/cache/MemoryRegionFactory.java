@@ -0,0 +1,246 @@
+package org.imogene.lib.common.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.spi.CacheDataDescription;
+import org.hibernate.cache.spi.CollectionRegion;
+import org.hibernate.cache.spi.EntityRegion;
+import org.hibernate.cache.spi.NaturalIdRegion;
+import org.hibernate.cache.spi.QueryResultsRegion;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cache.spi.TimestampsRegion;
+import org.hibernate.cache.spi.access.AccessType;
+import org.hibernate.cache.spi.access.EntityRegionAccessStrategy;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.cfg.Settings;
+
+/**
+ * Region factory of the tests, whose entity regions keep their entries in memory. Only the entity regions are
+ * supported.
+ *
+ * @author MEDES-IMPS
+ */
+public class MemoryRegionFactory implements RegionFactory {
+
+	private static final long serialVersionUID = 4311874102360911713L;
+
+	@Override
+	public void start(Settings settings, Properties properties) throws CacheException {
+	}
+
+	@Override
+	public void stop() {
+	}
+
+	@Override
+	public boolean isMinimalPutsEnabledByDefault() {
+		return false;
+	}
+
+	@Override
+	public AccessType getDefaultAccessType() {
+		return AccessType.READ_WRITE;
+	}
+
+	@Override
+	public long nextTimestamp() {
+		return System.currentTimeMillis();
+	}
+
+	@Override
+	public EntityRegion buildEntityRegion(String regionName, Properties properties, CacheDataDescription metadata)
+			throws CacheException {
+		return new MemoryEntityRegion(regionName, metadata);
+	}
+
+	@Override
+	public NaturalIdRegion buildNaturalIdRegion(String regionName, Properties properties,
+			CacheDataDescription metadata) throws CacheException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public CollectionRegion buildCollectionRegion(String regionName, Properties properties,
+			CacheDataDescription metadata) throws CacheException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public QueryResultsRegion buildQueryResultsRegion(String regionName, Properties properties)
+			throws CacheException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public TimestampsRegion buildTimestampsRegion(String regionName, Properties properties) throws CacheException {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Entity region that is its own access strategy, the entries are put after the inserts and updates and removed
+	 * when they are evicted
+	 */
+	private static class MemoryEntityRegion implements EntityRegion, EntityRegionAccessStrategy {
+
+		private final Map<Object, Object> entries = new ConcurrentHashMap<Object, Object>();
+
+		private final String name;
+
+		private final CacheDataDescription metadata;
+
+		private MemoryEntityRegion(String name, CacheDataDescription metadata) {
+			this.name = name;
+			this.metadata = metadata;
+		}
+
+		@Override
+		public EntityRegionAccessStrategy buildAccessStrategy(AccessType accessType) throws CacheException {
+			return this;
+		}
+
+		@Override
+		public EntityRegion getRegion() {
+			return this;
+		}
+
+		@Override
+		public boolean isTransactionAware() {
+			return false;
+		}
+
+		@Override
+		public CacheDataDescription getCacheDataDescription() {
+			return metadata;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public void destroy() throws CacheException {
+			entries.clear();
+		}
+
+		@Override
+		public boolean contains(Object key) {
+			return entries.containsKey(key);
+		}
+
+		@Override
+		public long getSizeInMemory() {
+			return -1;
+		}
+
+		@Override
+		public long getElementCountInMemory() {
+			return entries.size();
+		}
+
+		@Override
+		public long getElementCountOnDisk() {
+			return 0;
+		}
+
+		@SuppressWarnings("rawtypes")
+		@Override
+		public Map toMap() {
+			return new HashMap<Object, Object>(entries);
+		}
+
+		@Override
+		public long nextTimestamp() {
+			return System.currentTimeMillis();
+		}
+
+		@Override
+		public int getTimeout() {
+			return 0;
+		}
+
+		@Override
+		public Object get(Object key, long txTimestamp) throws CacheException {
+			return entries.get(key);
+		}
+
+		@Override
+		public boolean putFromLoad(Object key, Object value, long txTimestamp, Object version) throws CacheException {
+			entries.put(key, value);
+			return true;
+		}
+
+		@Override
+		public boolean putFromLoad(Object key, Object value, long txTimestamp, Object version,
+				boolean minimalPutOverride) throws CacheException {
+			return putFromLoad(key, value, txTimestamp, version);
+		}
+
+		@Override
+		public boolean insert(Object key, Object value, Object version) throws CacheException {
+			return false;
+		}
+
+		@Override
+		public boolean afterInsert(Object key, Object value, Object version) throws CacheException {
+			entries.put(key, value);
+			return true;
+		}
+
+		@Override
+		public boolean update(Object key, Object value, Object currentVersion, Object previousVersion)
+				throws CacheException {
+			return false;
+		}
+
+		@Override
+		public boolean afterUpdate(Object key, Object value, Object currentVersion, Object previousVersion,
+				SoftLock lock) throws CacheException {
+			entries.put(key, value);
+			return true;
+		}
+
+		@Override
+		public SoftLock lockItem(Object key, Object version) throws CacheException {
+			return null;
+		}
+
+		@Override
+		public SoftLock lockRegion() throws CacheException {
+			return null;
+		}
+
+		@Override
+		public void unlockItem(Object key, SoftLock lock) throws CacheException {
+		}
+
+		@Override
+		public void unlockRegion(SoftLock lock) throws CacheException {
+		}
+
+		@Override
+		public void remove(Object key) throws CacheException {
+			entries.remove(key);
+		}
+
+		@Override
+		public void removeAll() throws CacheException {
+			entries.clear();
+		}
+
+		@Override
+		public void evict(Object key) throws CacheException {
+			entries.remove(key);
+		}
+
+		@Override
+		public void evictAll() throws CacheException {
+			entries.clear();
+		}
+	}
+
+}
@@ -0,0 +1,122 @@
+package org.imogene.lib.common.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.imogene.lib.common.test.Patient;
+import org.imogene.lib.common.test.Site;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests of the second-level cache of the entities, only the sites are annotated with Cacheable
+ *
+ * @author MEDES-IMPS
+ */
+public class SelectiveRegionFactoryTest {
+
+	private static final String URL = "jdbc:h2:mem:cache;DB_CLOSE_DELAY=-1";
+
+	private static EntityManagerFactory factory;
+
+	private static Cache cache;
+
+	@BeforeClass
+	public static void createFactory() {
+		Map<String, String> properties = new HashMap<String, String>();
+		properties.put("hibernate.connection.url", URL);
+		properties.put("hibernate.cache.use_second_level_cache", "true");
+		properties.put("hibernate.cache.region.factory_class", SelectiveRegionFactory.class.getName());
+		properties.put(SelectiveRegionFactory.DELEGATE_FACTORY, MemoryRegionFactory.class.getName());
+		factory = Persistence.createEntityManagerFactory("test", properties);
+		cache = factory.getCache();
+	}
+
+	@AfterClass
+	public static void close() {
+		factory.close();
+	}
+
+	@After
+	public void tearDown() {
+		cache.evictAll();
+	}
+
+	@Test
+	public void storedEntitiesAreOnlyCachedWhenCacheable() {
+		Site site = new Site("CS1", "North");
+		persist(site, new Patient("CP1", "patient", 30, site));
+		assertTrue(cache.contains(Site.class, "CS1"));
+		assertFalse(cache.contains(Patient.class, "CP1"));
+
+		EntityManager em = factory.createEntityManager();
+		em.getTransaction().begin();
+		em.find(Site.class, "CS1").setName("South");
+		em.find(Patient.class, "CP1").setAge(31);
+		em.getTransaction().commit();
+		em.close();
+		assertTrue(cache.contains(Site.class, "CS1"));
+		assertFalse(cache.contains(Patient.class, "CP1"));
+	}
+
+	@Test
+	public void loadedEntitiesAreOnlyCachedWhenCacheable() {
+		Site site = new Site("CS2", "North");
+		persist(site, new Patient("CP2", "patient", 30, site));
+		cache.evictAll();
+
+		EntityManager em = factory.createEntityManager();
+		em.find(Patient.class, "CP2");
+		em.close();
+		assertTrue(cache.contains(Site.class, "CS2"));
+		assertFalse(cache.contains(Patient.class, "CP2"));
+	}
+
+	/**
+	 * The cached entities are read from the region, the other entities from the database
+	 */
+	@Test
+	public void cachedEntitiesAreReadFromTheRegion() throws SQLException {
+		Site site = new Site("CS3", "North");
+		persist(site, new Patient("CP3", "patient", 30, site));
+		Connection connection = DriverManager.getConnection(URL, "sa", "");
+		try {
+			Statement statement = connection.createStatement();
+			statement.executeUpdate("UPDATE Site SET name = 'changed' WHERE id = 'CS3'");
+			statement.executeUpdate("UPDATE Patient SET name = 'changed' WHERE id = 'CP3'");
+			statement.close();
+		} finally {
+			connection.close();
+		}
+		EntityManager em = factory.createEntityManager();
+		assertEquals("North", em.find(Site.class, "CS3").getName());
+		assertEquals("changed", em.find(Patient.class, "CP3").getName());
+		em.close();
+	}
+
+	private static void persist(Object... entities) {
+		EntityManager em = factory.createEntityManager();
+		em.getTransaction().begin();
+		for (Object entity : entities) {
+			em.persist(entity);
+		}
+		em.getTransaction().commit();
+		em.close();
+	}
+
+}
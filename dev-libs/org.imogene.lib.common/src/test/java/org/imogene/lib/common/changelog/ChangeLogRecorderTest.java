@@ -0,0 +1,142 @@
+package org.imogene.lib.common.changelog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.imogene.lib.common.test.AbstractRecorderTest;
+import org.imogene.lib.common.test.Patient;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+
+/**
+ * Tests of the change log entries recorded when the entities are stored by Spring transactions
+ *
+ * @author MEDES-IMPS
+ */
+@ContextConfiguration
+public class ChangeLogRecorderTest extends AbstractRecorderTest {
+
+	@Autowired
+	private ChangeLogDao changeLogDao;
+
+	@Test
+	public void insertsAndPlainUpdatesAreLogged() {
+		save(new Patient("C1", "patient", 30, null));
+		assertEquals(1, entries("C1").size());
+
+		modify("C1", new Modification() {
+			@Override
+			public void apply(Patient patient) {
+				patient.setAge(31);
+			}
+		});
+		List<ChangeLog> entries = entries("C1");
+		assertEquals(2, entries.size());
+		assertEquals(Patient.class.getName(), entries.get(1).getEntityType());
+		assertEquals(Integer.valueOf(31), load("C1").getAge());
+	}
+
+	@Test
+	public void anEntityIsLoggedOnceByTransaction() {
+		execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				patientDao.saveOrUpdate(new Patient("C2", "patient", 40, null), true);
+				em.flush();
+				em.find(Patient.class, "C2").setAge(41);
+				em.flush();
+				em.find(Patient.class, "C2").setName("renamed");
+			}
+		});
+		assertEquals(1, entries("C2").size());
+	}
+
+	@Test
+	public void rolledBackChangesAreNotLogged() {
+		save(new Patient("C3", "patient", 50, null));
+		execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				Patient patient = em.find(Patient.class, "C3");
+				patient.setAge(51);
+				em.flush();
+				status.setRollbackOnly();
+			}
+		});
+		assertEquals(1, entries("C3").size());
+		assertEquals(Integer.valueOf(50), load("C3").getAge());
+
+		/* the next transaction of the thread is recorded again */
+		modify("C3", new Modification() {
+			@Override
+			public void apply(Patient patient) {
+				patient.setAge(52);
+			}
+		});
+		assertEquals(2, entries("C3").size());
+	}
+
+	@Test
+	public void deletionsAreLogged() {
+		save(new Patient("C4", "patient", 60, null));
+		remove("C4");
+		assertEquals(2, entries("C4").size());
+	}
+
+	/**
+	 * The last committed sequence number is recorded by the commits, the rolled back transactions leave it unchanged
+	 */
+	@Test
+	public void theLastSequenceIsRecordedAtCommit() {
+		execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				patientDao.saveOrUpdate(new Patient("C5", "patient", 70, null), true);
+				patientDao.saveOrUpdate(new Patient("C6", "patient", 80, null), true);
+			}
+		});
+		long committed = lastSequence();
+		assertEquals(entries("C6").get(0).getSequence().longValue(), committed);
+		assertTrue(entries("C5").get(0).getSequence() < committed);
+
+		execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				em.find(Patient.class, "C5").setAge(71);
+				em.flush();
+				status.setRollbackOnly();
+			}
+		});
+		assertEquals(committed, lastSequence());
+	}
+
+	private long lastSequence() {
+		return execute(new TransactionCallback<Long>() {
+			@Override
+			public Long doInTransaction(TransactionStatus status) {
+				return changeLogDao.getLastSequence();
+			}
+		});
+	}
+
+	private Patient load(final String id) {
+		return execute(new TransactionCallback<Patient>() {
+			@Override
+			public Patient doInTransaction(TransactionStatus status) {
+				return em.find(Patient.class, id);
+			}
+		});
+	}
+
+	private List<ChangeLog> entries(String id) {
+		return em.createQuery("SELECT c FROM ChangeLog c WHERE c.entityId = :id ORDER BY c.sequence", ChangeLog.class)
+				.setParameter("id", id).getResultList();
+	}
+
+}
@@ -0,0 +1,253 @@
+package org.imogene.lib.common.criteria;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Root;
+
+import org.hibernate.EmptyInterceptor;
+import org.imogene.lib.common.constants.CriteriaConstants;
+import org.imogene.lib.common.entity.ImogBean;
+import org.imogene.lib.common.test.Patient;
+import org.imogene.lib.common.test.PatientDaoImpl;
+import org.imogene.lib.common.test.Site;
+import org.imogene.lib.common.test.SiteDaoImpl;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests of the joins and fetches of the criteria queries. The SQL statements are recorded, the joins created by
+ * DaoUtil are compared to the ones of the same queries with a join per criteria, as they were created before the
+ * joins of identical paths were shared.
+ *
+ * @author MEDES-IMPS
+ */
+public class DaoUtilJoinTest {
+
+	private static final int COUNT = 30;
+
+	private static final Pattern JOIN = Pattern.compile("\\bjoin\\b", Pattern.CASE_INSENSITIVE);
+
+	private static EntityManagerFactory factory;
+
+	private static Map<String, Integer> patientsBySite = new HashMap<String, Integer>();
+
+	private EntityManager em;
+
+	@BeforeClass
+	public static void createData() {
+		Map<String, String> properties = new HashMap<String, String>();
+		properties.put("hibernate.ejb.interceptor", StatementRecorder.class.getName());
+		factory = Persistence.createEntityManagerFactory("test", properties);
+		EntityManager em = factory.createEntityManager();
+		em.getTransaction().begin();
+		Site[] sites = new Site[] { new Site("S1", "North"), new Site("S2", "South"), new Site("S3", "East") };
+		for (Site site : sites) {
+			em.persist(site);
+		}
+		for (int i = 0; i < COUNT; i++) {
+			Site site = i % 4 == 0 ? null : sites[i % sites.length];
+			em.persist(new Patient(String.format("P%03d", i), "patient " + i, Integer.valueOf(i), site));
+			if (site != null) {
+				Integer count = patientsBySite.get(site.getId());
+				patientsBySite.put(site.getId(), count == null ? 1 : count + 1);
+			}
+		}
+		em.getTransaction().commit();
+		em.close();
+	}
+
+	@AfterClass
+	public static void close() {
+		factory.close();
+	}
+
+	@Before
+	public void setUp() {
+		em = factory.createEntityManager();
+		StatementRecorder.clear();
+	}
+
+	@After
+	public void tearDown() {
+		em.close();
+	}
+
+	/**
+	 * The criteria and the sort order on the same association path share one join
+	 */
+	@Test
+	public void identicalPathsAreJoinedOnce() {
+		ImogConjunction conjunction = new ImogConjunction();
+		conjunction.add(criteria("site.name", CriteriaConstants.STRING_OPERATOR_CONTAINS, "th"));
+		conjunction.add(criteria("site.id", CriteriaConstants.STRING_OPERATOR_STARTWITH, "S"));
+		PatientDaoImpl dao = new PatientDaoImpl();
+		dao.setEntityManager(em);
+		List<String> shared = ids(dao.load("site.name", true, conjunction));
+		int sharedJoins = joins(StatementRecorder.first());
+
+		/* the same query, with a join for each criteria and for the sort order */
+		StatementRecorder.clear();
+		em.clear();
+		CriteriaBuilder builder = em.getCriteriaBuilder();
+		CriteriaQuery<Patient> query = builder.createQuery(Patient.class);
+		Root<Patient> root = query.from(Patient.class);
+		query.select(root);
+		query.where(builder.like(builder.lower(root.join("site", JoinType.LEFT).<String> get("name")), "%th%"),
+				builder.like(root.join("site", JoinType.LEFT).<String> get("id"), "S%"));
+		query.orderBy(builder.asc(root.join("site", JoinType.LEFT).get("name")));
+		List<String> separate = ids(em.createQuery(query).getResultList());
+		int separateJoins = joins(StatementRecorder.first());
+
+		assertEquals(1, sharedJoins);
+		assertEquals(3, separateJoins);
+		/* the order of the patients of a site depends on the tie-breaker of the DAO */
+		Collections.sort(shared);
+		Collections.sort(separate);
+		assertEquals(separate, shared);
+		assertEquals(patientsBySite.get("S1") + patientsBySite.get("S2"), shared.size());
+	}
+
+	/**
+	 * Two criteria on a collection share one join, so that the rows of the collection are not multiplied by each
+	 * other
+	 */
+	@Test
+	public void collectionCriteriaDoNotMultiplyRows() {
+		ImogConjunction conjunction = new ImogConjunction();
+		conjunction.add(criteria("patients.name", CriteriaConstants.STRING_OPERATOR_STARTWITH, "patient"));
+		conjunction.add(criteria("patients.age", CriteriaConstants.INT_OPERATOR_SUP, "0"));
+		SiteDaoImpl dao = new SiteDaoImpl();
+		dao.setEntityManager(em);
+		List<Site> shared = dao.load(conjunction);
+		int sharedJoins = joins(StatementRecorder.first());
+
+		StatementRecorder.clear();
+		em.clear();
+		CriteriaBuilder builder = em.getCriteriaBuilder();
+		CriteriaQuery<Site> query = builder.createQuery(Site.class);
+		Root<Site> root = query.from(Site.class);
+		query.select(root);
+		query.where(builder.like(root.join("patients", JoinType.LEFT).<String> get("name"), "patient%"),
+				builder.ge(root.join("patients", JoinType.LEFT).<Integer> get("age"), 0));
+		List<Site> separate = em.createQuery(query).getResultList();
+		int separateJoins = joins(StatementRecorder.first());
+
+		int expectedShared = 0;
+		int expectedSeparate = 0;
+		for (int count : patientsBySite.values()) {
+			expectedShared = expectedShared + count;
+			expectedSeparate = expectedSeparate + count * count;
+		}
+		assertEquals(1, sharedJoins);
+		assertEquals(2, separateJoins);
+		assertEquals(expectedShared, shared.size());
+		assertEquals(expectedSeparate, separate.size());
+	}
+
+	/**
+	 * The fetched associations are loaded by the query that loads the entities, instead of one query per associated
+	 * entity, and the criteria on them reuse the fetch join
+	 */
+	@Test
+	public void fetchedAssociationsAreLoadedByTheQuery() {
+		PatientDaoImpl dao = new PatientDaoImpl();
+		dao.setEntityManager(em);
+		ImogConjunction conjunction = new ImogConjunction();
+		conjunction.add(criteria("site.name", CriteriaConstants.STRING_OPERATOR_CONTAINS, "t"));
+
+		List<Patient> loaded = dao.load("site.name", true, conjunction);
+		readSites(loaded);
+		int statements = StatementRecorder.count();
+
+		StatementRecorder.clear();
+		em.clear();
+		dao.setFetchedAssociations(Arrays.asList("site"));
+		List<Patient> fetched = dao.load("site.name", true, conjunction);
+		readSites(fetched);
+		int fetchedStatements = StatementRecorder.count();
+		int fetchedJoins = joins(StatementRecorder.first());
+
+		assertEquals(1 + patientsBySite.size(), statements);
+		assertEquals(1, fetchedStatements);
+		assertEquals(1, fetchedJoins);
+		assertEquals(ids(loaded), ids(fetched));
+	}
+
+	private static void readSites(List<Patient> patients) {
+		for (Patient patient : patients) {
+			patient.getSite().getName();
+		}
+	}
+
+	private static int joins(String sql) {
+		int joins = 0;
+		Matcher matcher = JOIN.matcher(sql);
+		while (matcher.find()) {
+			joins++;
+		}
+		return joins;
+	}
+
+	private static BasicCriteria criteria(String field, String operation, String value) {
+		BasicCriteria criteria = new BasicCriteria();
+		criteria.setField(field);
+		criteria.setOperation(operation);
+		criteria.setValue(value);
+		return criteria;
+	}
+
+	private static List<String> ids(List<? extends ImogBean> beans) {
+		List<String> ids = new ArrayList<String>();
+		for (ImogBean bean : beans) {
+			ids.add(bean.getId());
+		}
+		return ids;
+	}
+
+	/**
+	 * Interceptor that records the SQL statements prepared by the sessions
+	 */
+	public static class StatementRecorder extends EmptyInterceptor {
+
+		private static final long serialVersionUID = 6018238734210482547L;
+
+		private static final List<String> statements = Collections.synchronizedList(new ArrayList<String>());
+
+		@Override
+		public String onPrepareStatement(String sql) {
+			statements.add(sql);
+			return sql;
+		}
+
+		static void clear() {
+			statements.clear();
+		}
+
+		static int count() {
+			return statements.size();
+		}
+
+		static String first() {
+			return statements.get(0);
+		}
+	}
+
+}
@@ -0,0 +1,256 @@
+package org.imogene.lib.common.criteria;
+
+import static org.junit.Assert.assertEquals;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.imogene.lib.common.constants.CriteriaConstants;
+import org.imogene.lib.common.entity.ImogBean;
+import org.imogene.lib.common.test.Patient;
+import org.imogene.lib.common.test.PatientDaoImpl;
+import org.imogene.lib.common.test.Site;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests of the conversion of the criteria to predicates, by concurrent queries sharing the compiled plans
+ *
+ * @author MEDES-IMPS
+ */
+public class DaoUtilTest {
+
+	private static final int COUNT = 60;
+
+	private static final int DAYS = 30;
+
+	private static final int THREADS = 8;
+
+	private static final int QUERIES = 100;
+
+	/* the number of date criteria of the queries that check the parsing of the dates */
+	private static final int DATES = 40;
+
+	private static final String[] SITES = new String[] { "North", "South" };
+
+	private static EntityManagerFactory factory;
+
+	private static List<Patient> patients = new ArrayList<Patient>();
+
+	private static List<String> days = new ArrayList<String>();
+
+	@BeforeClass
+	public static void createData() {
+		SimpleDateFormat format = new SimpleDateFormat("dd/MM/yyyy");
+		Calendar calendar = Calendar.getInstance();
+		calendar.clear();
+		calendar.set(2012, Calendar.DECEMBER, 20);
+		for (int i = 0; i < DAYS; i++) {
+			days.add(format.format(calendar.getTime()));
+			calendar.add(Calendar.DAY_OF_MONTH, 1);
+		}
+
+		factory = Persistence.createEntityManagerFactory("test");
+		EntityManager em = factory.createEntityManager();
+		em.getTransaction().begin();
+		Site[] sites = new Site[] { new Site("S1", SITES[0]), new Site("S2", SITES[1]) };
+		for (Site site : sites) {
+			em.persist(site);
+		}
+		for (int i = 0; i < COUNT; i++) {
+			Integer age = i % 7 == 0 ? null : Integer.valueOf(i % 11);
+			Site site = i % 5 == 0 ? null : sites[i % sites.length];
+			Patient patient = new Patient(String.format("P%03d", i), "patient " + i, age, site);
+			patient.setModified(parse(days.get(i % DAYS)));
+			em.persist(patient);
+			patients.add(patient);
+		}
+		em.getTransaction().commit();
+		em.close();
+	}
+
+	@AfterClass
+	public static void close() {
+		factory.close();
+	}
+
+	/**
+	 * Queries with random criteria are run by several threads at once, the dates being parsed and the plans being
+	 * compiled concurrently, each query must select the expected patients
+	 */
+	@Test
+	public void concurrentQueriesSelectTheExpectedEntities() throws Exception {
+		runConcurrently(false);
+	}
+
+	/**
+	 * Queries made of many date criteria are run by several threads at once, a date parsed while another thread is
+	 * parsing one must not be altered
+	 */
+	@Test
+	public void concurrentDateCriteriaAreParsedCorrectly() throws Exception {
+		runConcurrently(true);
+	}
+
+	private static void runConcurrently(final boolean dates) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			final CountDownLatch start = new CountDownLatch(1);
+			List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+			for (int t = 0; t < THREADS; t++) {
+				final long seed = t;
+				results.add(executor.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						start.await();
+						return runQueries(new Random(seed), dates);
+					}
+				}));
+			}
+			start.countDown();
+			for (Future<Integer> result : results) {
+				assertEquals(QUERIES, result.get().intValue());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Run random queries and check their results
+	 *
+	 * @param dates true to run disjunctions of date criteria, false to run any criteria
+	 * @return the number of queries run
+	 */
+	private static int runQueries(Random random, boolean dates) {
+		EntityManager em = factory.createEntityManager();
+		try {
+			PatientDaoImpl dao = new PatientDaoImpl();
+			dao.setEntityManager(em);
+			for (int q = 0; q < QUERIES; q++) {
+				ImogJunction junction = random.nextBoolean() && !dates ? new ImogConjunction()
+						: new ImogDisjunction();
+				List<BasicCriteria> criteria = new ArrayList<BasicCriteria>();
+				int size = dates ? DATES : 1 + random.nextInt(3);
+				for (int c = 0; c < size; c++) {
+					BasicCriteria criterion = dates ? criteria("modified", CriteriaConstants.DATE_OPERATOR_EQUAL,
+							days.get(random.nextInt(DAYS))) : randomCriteria(random);
+					criteria.add(criterion);
+					junction.add(criterion);
+				}
+				List<String> expected = new ArrayList<String>();
+				for (Patient patient : patients) {
+					if (matches(patient, criteria, junction instanceof ImogDisjunction)) {
+						expected.add(patient.getId());
+					}
+				}
+				assertEquals(describe(junction), expected, ids(dao.load(junction)));
+				em.clear();
+			}
+			return QUERIES;
+		} finally {
+			em.close();
+		}
+	}
+
+	private static BasicCriteria randomCriteria(Random random) {
+		switch (random.nextInt(7)) {
+		case 0:
+			return criteria("modified", CriteriaConstants.DATE_OPERATOR_AFTER, days.get(random.nextInt(DAYS)));
+		case 1:
+			return criteria("modified", CriteriaConstants.DATE_OPERATOR_BEFORE, days.get(random.nextInt(DAYS)));
+		case 2:
+			return criteria("modified", CriteriaConstants.DATE_OPERATOR_EQUAL, days.get(random.nextInt(DAYS)));
+		case 3:
+			return criteria("age", CriteriaConstants.INT_OPERATOR_SUP, String.valueOf(random.nextInt(11)));
+		case 4:
+			return criteria("age", CriteriaConstants.INT_OPERATOR_INF, String.valueOf(random.nextInt(11)));
+		case 5:
+			return criteria("site.name", CriteriaConstants.STRING_OPERATOR_EQUAL, SITES[random.nextInt(2)]);
+		default:
+			return criteria("name", CriteriaConstants.STRING_OPERATOR_CONTAINS, "T " + random.nextInt(6));
+		}
+	}
+
+	/**
+	 * Evaluate the criteria as the predicates do
+	 */
+	private static boolean matches(Patient patient, List<BasicCriteria> criteria, boolean disjunction) {
+		for (BasicCriteria criterion : criteria) {
+			if (matches(patient, criterion) == disjunction) {
+				return disjunction;
+			}
+		}
+		return !disjunction;
+	}
+
+	private static boolean matches(Patient patient, BasicCriteria criterion) {
+		String operation = criterion.getOperation();
+		String value = criterion.getValue();
+		if (CriteriaConstants.DATE_OPERATOR_AFTER.equals(operation)) {
+			return !patient.getModified().before(parse(value));
+		} else if (CriteriaConstants.DATE_OPERATOR_BEFORE.equals(operation)) {
+			return !patient.getModified().after(parse(value));
+		} else if (CriteriaConstants.DATE_OPERATOR_EQUAL.equals(operation)) {
+			return patient.getModified().equals(parse(value));
+		} else if (CriteriaConstants.INT_OPERATOR_SUP.equals(operation)) {
+			return patient.getAge() != null && patient.getAge() >= Integer.parseInt(value);
+		} else if (CriteriaConstants.INT_OPERATOR_INF.equals(operation)) {
+			return patient.getAge() != null && patient.getAge() <= Integer.parseInt(value);
+		} else if (CriteriaConstants.STRING_OPERATOR_EQUAL.equals(operation)) {
+			return patient.getSite() != null && value.equals(patient.getSite().getName());
+		}
+		return patient.getName().contains(value.toLowerCase());
+	}
+
+	private static BasicCriteria criteria(String field, String operation, String value) {
+		BasicCriteria criteria = new BasicCriteria();
+		criteria.setField(field);
+		criteria.setOperation(operation);
+		criteria.setValue(value);
+		return criteria;
+	}
+
+	private static String describe(ImogJunction junction) {
+		StringBuilder builder = new StringBuilder(junction.getType());
+		for (ImogCriterion criterion : junction.getCriterions()) {
+			BasicCriteria criteria = (BasicCriteria) criterion;
+			builder.append(' ').append(criteria.getField()).append(' ').append(criteria.getOperation()).append(' ')
+					.append(criteria.getValue());
+		}
+		return builder.toString();
+	}
+
+	private static Date parse(String value) {
+		try {
+			return new SimpleDateFormat("dd/MM/yyyy").parse(value);
+		} catch (java.text.ParseException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	private static List<String> ids(List<? extends ImogBean> beans) {
+		List<String> ids = new ArrayList<String>();
+		for (ImogBean bean : beans) {
+			ids.add(bean.getId());
+		}
+		Collections.sort(ids);
+		return ids;
+	}
+
+}
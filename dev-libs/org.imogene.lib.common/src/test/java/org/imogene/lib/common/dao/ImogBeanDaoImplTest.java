@@ -0,0 +1,198 @@
+package org.imogene.lib.common.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Vector;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.imogene.lib.common.entity.ImogBean;
+import org.imogene.lib.common.test.Patient;
+import org.imogene.lib.common.test.PatientDaoImpl;
+import org.imogene.lib.common.test.Site;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests of the offset and keyset loads of the entity DAOs
+ *
+ * @author MEDES-IMPS
+ */
+public class ImogBeanDaoImplTest {
+
+	private static final int COUNT = 53;
+
+	private static final int PAGE_SIZE = 7;
+
+	private static EntityManagerFactory factory;
+
+	private EntityManager em;
+
+	private PatientDaoImpl dao;
+
+	@BeforeClass
+	public static void createData() {
+		factory = Persistence.createEntityManagerFactory("test");
+		EntityManager em = factory.createEntityManager();
+		em.getTransaction().begin();
+		Site[] sites = new Site[] { new Site("S1", "North"), new Site("S2", null), new Site("S3", "South") };
+		for (Site site : sites) {
+			em.persist(site);
+		}
+		for (int i = 0; i < COUNT; i++) {
+			/* a null age every four patients, duplicated ages, and patients without site */
+			Integer age = i % 4 == 0 ? null : Integer.valueOf(i % 9);
+			Site site = i % 5 == 0 ? null : sites[i % sites.length];
+			em.persist(new Patient(String.format("P%03d", i), "patient " + i, age, site));
+		}
+		em.getTransaction().commit();
+		em.close();
+	}
+
+	@AfterClass
+	public static void close() {
+		factory.close();
+	}
+
+	@Before
+	public void setUp() {
+		em = factory.createEntityManager();
+		dao = new PatientDaoImpl();
+		dao.setEntityManager(em);
+	}
+
+	@After
+	public void tearDown() {
+		em.close();
+	}
+
+	@Test
+	public void offsetPagesFollowTheFullOrder() {
+		for (String property : new String[] { "age", "site.name", "name" }) {
+			for (boolean asc : new boolean[] { true, false }) {
+				String order = property + (asc ? " asc" : " desc");
+				List<String> expected = ids(dao.load(0, COUNT, property, asc, null));
+				assertEquals(order, COUNT, expected.size());
+				assertEquals(order, expected, ids(dao.load(property, asc, null)));
+
+				List<String> offsets = new Vector<String>();
+				for (int first = 0; first < COUNT; first = first + PAGE_SIZE) {
+					offsets.addAll(ids(dao.load(first, PAGE_SIZE, property, asc, null)));
+				}
+				assertEquals(order, expected, offsets);
+			}
+		}
+	}
+
+	/**
+	 * The keyset pages put the null values last in both directions, then sort by descending id
+	 */
+	@Test
+	public void nullsComeLastInKeysetLoads() {
+		for (String property : new String[] { "age", "site.name", "name" }) {
+			for (boolean asc : new boolean[] { true, false }) {
+				String order = property + (asc ? " asc" : " desc");
+				List<Patient> expected = new Vector<Patient>(dao.load(property, asc, null));
+				Collections.sort(expected, new SortOrder(property, asc));
+				assertEquals(order, ids(expected), keysetIds(null, property, asc));
+			}
+		}
+	}
+
+	/**
+	 * Without null values, a list paged by offset can be continued by keyset from the last entity of a page
+	 */
+	@Test
+	public void keysetPagesFollowTheOffsetPages() {
+		for (boolean asc : new boolean[] { true, false }) {
+			List<String> expected = ids(dao.load(0, COUNT, "name", asc, null));
+			List<String> pages = ids(dao.load(0, PAGE_SIZE, "name", asc, null));
+			pages.addAll(keysetIds(KeysetCursor.after(pages.get(pages.size() - 1)), "name", asc));
+			assertEquals(expected, pages);
+		}
+	}
+
+	@Test
+	public void keysetFromACursorInTheNulls() {
+		List<String> expected = keysetIds(null, "age", true);
+		int last = COUNT - 3;
+		assertNull(dao.load(expected.get(last)).getAge());
+
+		KeysetPage<Patient> next = dao.loadAfter(KeysetCursor.after(expected.get(last)), COUNT, "age", true, null);
+		assertNotNull(next);
+		assertEquals(expected.subList(last + 1, COUNT), ids(next.getBeans()));
+	}
+
+	/**
+	 * Load the ids of all the keyset pages after a cursor
+	 */
+	private List<String> keysetIds(KeysetCursor cursor, String property, boolean asc) {
+		List<String> ids = new Vector<String>();
+		KeysetPage<Patient> page = null;
+		do {
+			page = dao.loadAfter(cursor, PAGE_SIZE, property, asc, null);
+			assertNotNull(page);
+			ids.addAll(ids(page.getBeans()));
+			cursor = page.getNext();
+		} while (page.hasNext());
+		return ids;
+	}
+
+	private static List<String> ids(List<? extends ImogBean> beans) {
+		List<String> ids = new Vector<String>();
+		for (ImogBean bean : beans) {
+			ids.add(bean.getId());
+		}
+		return ids;
+	}
+
+	/**
+	 * Order of the keyset loads: the sort value, null values last, then the descending id
+	 */
+	private static class SortOrder implements Comparator<Patient> {
+
+		private final String property;
+
+		private final boolean asc;
+
+		private SortOrder(String property, boolean asc) {
+			this.property = property;
+			this.asc = asc;
+		}
+
+		@Override
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		public int compare(Patient p1, Patient p2) {
+			Comparable v1 = value(p1);
+			Comparable v2 = value(p2);
+			if (v1 == null || v2 == null) {
+				if (v1 != v2) {
+					return v1 == null ? 1 : -1;
+				}
+			} else if (v1.compareTo(v2) != 0) {
+				return asc ? v1.compareTo(v2) : v2.compareTo(v1);
+			}
+			return p2.getId().compareTo(p1.getId());
+		}
+
+		private Comparable<?> value(Patient patient) {
+			if (property.equals("age")) {
+				return patient.getAge();
+			} else if (property.equals("site.name")) {
+				return patient.getSite() != null ? patient.getSite().getName() : null;
+			}
+			return patient.getName();
+		}
+	}
+
+}
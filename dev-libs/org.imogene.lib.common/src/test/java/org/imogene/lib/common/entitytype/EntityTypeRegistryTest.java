@@ -0,0 +1,124 @@
+package org.imogene.lib.common.entitytype;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.imogene.lib.common.dao.GenericDaoImpl;
+import org.imogene.lib.common.entity.ImogBeanImpl;
+import org.imogene.lib.common.test.AbstractRecorderTest;
+import org.imogene.lib.common.test.Patient;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+
+/**
+ * Tests of the entity classes registered when the entities are stored by Spring transactions
+ *
+ * @author MEDES-IMPS
+ */
+@ContextConfiguration
+public class EntityTypeRegistryTest extends AbstractRecorderTest {
+
+	/* more than two batches of the registration of a class */
+	private static final int UNREGISTERED = 1200;
+
+	@Autowired
+	private GenericDaoImpl genericDao;
+
+	@Autowired
+	private EntityTypeDao entityTypeDao;
+
+	@Test
+	public void storedEntitiesAreRegistered() {
+		execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				patientDao.saveOrUpdate(new Patient("T1", "patient", 30, null), true);
+				/* a managed entity only stored by the flush of the commit */
+				em.persist(new Patient("T2", "patient", 40, null));
+			}
+		});
+		assertEquals(Patient.class.getName(), entityTypeDao.getType("T1"));
+		assertEquals(Patient.class.getName(), entityTypeDao.getType("T2"));
+		assertEquals(Patient.class, EntityTypeRegistry.getType("T2"));
+		assertTrue(load("T1") instanceof Patient);
+	}
+
+	@Test
+	public void rolledBackEntitiesAreNotRegistered() {
+		execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				patientDao.saveOrUpdate(new Patient("T3", "patient", 30, null), true);
+				status.setRollbackOnly();
+			}
+		});
+		assertNull(entityTypeDao.getType("T3"));
+		assertNull(EntityTypeRegistry.getType("T3"));
+	}
+
+	/**
+	 * The entities stored before the registry has been enabled are registered by class
+	 */
+	@Test
+	public void existingEntitiesAreRegistered() {
+		EntityTypeRegistry.getInstance().setEntityTypeDao(null);
+		try {
+			execute(new TransactionCallbackWithoutResult() {
+				@Override
+				protected void doInTransactionWithoutResult(TransactionStatus status) {
+					for (int i = 0; i < UNREGISTERED; i++) {
+						em.persist(new Patient(String.format("U%04d", i), "patient", i, null));
+					}
+				}
+			});
+		} finally {
+			EntityTypeRegistry.getInstance().setEntityTypeDao(entityTypeDao);
+		}
+		assertNull(entityTypeDao.getType("U0000"));
+
+		int registered = execute(new TransactionCallback<Integer>() {
+			@Override
+			public Integer doInTransaction(TransactionStatus status) {
+				return entityTypeDao.register(Patient.class);
+			}
+		});
+		assertEquals(UNREGISTERED, registered);
+		assertEquals(Patient.class.getName(), entityTypeDao.getType(String.format("U%04d", UNREGISTERED - 1)));
+	}
+
+	/**
+	 * An entity registered with a class that cannot be loaded is loaded from the tables of all the entity classes
+	 */
+	@Test
+	public void unknownClassFallsBackToThePolymorphicLoad() {
+		EntityTypeRegistry.getInstance().setEntityTypeDao(null);
+		try {
+			execute(new TransactionCallbackWithoutResult() {
+				@Override
+				protected void doInTransactionWithoutResult(TransactionStatus status) {
+					em.persist(new Patient("T4", "patient", 50, null));
+					em.persist(new EntityTypeEntry("T4", "org.imogene.lib.common.test.Unknown"));
+				}
+			});
+		} finally {
+			EntityTypeRegistry.getInstance().setEntityTypeDao(entityTypeDao);
+		}
+		assertNull(EntityTypeRegistry.getType("T4"));
+		assertTrue(load("T4") instanceof Patient);
+	}
+
+	private ImogBeanImpl load(final String id) {
+		return execute(new TransactionCallback<ImogBeanImpl>() {
+			@Override
+			public ImogBeanImpl doInTransaction(TransactionStatus status) {
+				return genericDao.load(ImogBeanImpl.class, id);
+			}
+		});
+	}
+
+}
@@ -0,0 +1,185 @@
+package org.imogene.lib.common.enumindex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.imogene.lib.common.constants.CriteriaConstants;
+import org.imogene.lib.common.criteria.BasicCriteria;
+import org.imogene.lib.common.entity.ImogBean;
+import org.imogene.lib.common.test.AbstractRecorderTest;
+import org.imogene.lib.common.test.Doctor;
+import org.imogene.lib.common.test.Nurse;
+import org.imogene.lib.common.test.Patient;
+import org.imogene.lib.common.test.Staff;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+
+/**
+ * Tests of the enumeration index entries replaced when the entities are stored by Spring transactions
+ *
+ * @author MEDES-IMPS
+ */
+@ContextConfiguration
+public class EnumIndexRecorderTest extends AbstractRecorderTest {
+
+	@Autowired
+	private EnumIndexDao enumIndexDao;
+
+	@Test
+	public void insertsAndPlainUpdatesAreIndexed() {
+		save(patient("E1", "fever;cough"));
+		assertEquals(Arrays.asList("cough", "fever"), values("E1"));
+
+		modify("E1", new Modification() {
+			@Override
+			public void apply(Patient patient) {
+				patient.setSymptoms("cough;rash");
+			}
+		});
+		assertEquals(Arrays.asList("cough", "rash"), values("E1"));
+		assertEquals(Arrays.asList("E1"), containsOneOf("rash;headache"));
+		assertEquals(0, containsOneOf("fever").size());
+	}
+
+	@Test
+	public void theLastValuesOfATransactionAreIndexed() {
+		execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				patientDao.saveOrUpdate(patient("E2", "pain"), true);
+				em.flush();
+				em.find(Patient.class, "E2").setSymptoms("pain;nausea");
+				em.flush();
+				em.clear();
+				em.find(Patient.class, "E2").setSymptoms("nausea;vomiting");
+			}
+		});
+		assertEquals(Arrays.asList("nausea", "vomiting"), values("E2"));
+	}
+
+	@Test
+	public void rolledBackChangesAreNotIndexed() {
+		save(patient("E3", "dizziness"));
+		execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				em.find(Patient.class, "E3").setSymptoms("fatigue");
+				em.flush();
+				status.setRollbackOnly();
+			}
+		});
+		assertEquals(Arrays.asList("dizziness"), values("E3"));
+
+		/* the next transaction of the thread is recorded again */
+		modify("E3", new Modification() {
+			@Override
+			public void apply(Patient patient) {
+				patient.setSymptoms(null);
+			}
+		});
+		assertTrue(values("E3").isEmpty());
+	}
+
+	@Test
+	public void deletionsRemoveTheEntries() {
+		save(patient("E4", "chills;sweats"));
+		remove("E4");
+		assertTrue(values("E4").isEmpty());
+	}
+
+	/**
+	 * The rebuild of a type keeps the entries of the other types that inherit the same field
+	 */
+	@Test
+	public void rebuildsAreScopedToTheirType() {
+		execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				em.persist(new Doctor("D1", "fr;en"));
+				em.persist(new Nurse("N1", "es"));
+			}
+		});
+		execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				enumIndexDao.rebuild(Doctor.class);
+			}
+		});
+		assertEquals(Arrays.asList("en", "fr"), values(Staff.class.getName() + ".languages", "D1"));
+		assertEquals(Arrays.asList("es"), values(Staff.class.getName() + ".languages", "N1"));
+	}
+
+	/**
+	 * The criteria do not use an index that has not been built, the index is built when the recorder is started
+	 */
+	@Test
+	public void indexesAreUsedOnceBuilt() {
+		save(patient("E5", "hiccups"));
+		/* the patient has been stored before the index was enabled */
+		execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				em.createQuery("DELETE FROM EnumIndexEntry e WHERE e.entityId = 'E5'").executeUpdate();
+				em.createQuery("DELETE FROM EnumIndexState s").executeUpdate();
+			}
+		});
+		EnumIndexRecorder recorder = EnumIndexRecorder.getInstance();
+		recorder.setEnumIndexDao(enumIndexDao);
+		assertNull(EnumIndexRecorder.getBuiltProperty(Patient.class, "symptoms"));
+		assertEquals(Arrays.asList("E5"), containsOneOf("hiccups"));
+
+		recorder.afterPropertiesSet();
+		assertEquals(Patient.class.getName() + ".symptoms", EnumIndexRecorder.getBuiltProperty(Patient.class,
+				"symptoms"));
+		assertEquals(Arrays.asList("hiccups"), values("E5"));
+		assertEquals(Arrays.asList("E5"), containsOneOf("hiccups"));
+	}
+
+	private static Patient patient(String id, String symptoms) {
+		Patient patient = new Patient(id, "patient", 30, null);
+		patient.setSymptoms(symptoms);
+		return patient;
+	}
+
+	/**
+	 * Load the ids of the patients selected by a "contains one of" criteria, resolved with the index
+	 */
+	private List<String> containsOneOf(final String values) {
+		return execute(new TransactionCallback<List<String>>() {
+			@Override
+			public List<String> doInTransaction(TransactionStatus status) {
+				BasicCriteria criteria = new BasicCriteria();
+				criteria.setField("symptoms");
+				criteria.setOperation(CriteriaConstants.ENUM_MULT_OPERATOR_CONTAINS_ONE_OF);
+				criteria.setValue(values);
+				List<String> ids = new ArrayList<String>();
+				for (ImogBean patient : patientDao.load(criteria)) {
+					ids.add(patient.getId());
+				}
+				return ids;
+			}
+		});
+	}
+
+	private List<String> values(String id) {
+		return values(Patient.class.getName() + ".symptoms", id);
+	}
+
+	private List<String> values(String property, String id) {
+		return em
+				.createQuery(
+						"SELECT e.enumValue FROM EnumIndexEntry e WHERE e.entityId = :id AND e.property = :property"
+								+ " ORDER BY e.enumValue", String.class).setParameter("id", id)
+				.setParameter("property", property).getResultList();
+	}
+
+}
@@ -0,0 +1,152 @@
+package org.imogene.lib.common.history;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.imogene.lib.common.test.AbstractRecorderTest;
+import org.imogene.lib.common.test.Patient;
+import org.imogene.lib.common.test.PatientBck;
+import org.imogene.lib.common.test.Site;
+import org.junit.Test;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+
+/**
+ * Tests of the history snapshots taken when the entities are stored by Spring transactions and written by the
+ * background thread
+ *
+ * @author MEDES-IMPS
+ */
+@ContextConfiguration
+public class HistoryWriterTest extends AbstractRecorderTest {
+
+	/* how long the snapshots are waited for */
+	private static final long TIMEOUT = 10000;
+
+	@Test
+	public void insertsAndPlainUpdatesHaveTheirHistory() throws Exception {
+		save(new Patient("H1", "first", 30, null));
+		modify("H1", new Modification() {
+			@Override
+			public void apply(Patient patient) {
+				patient.setName("second");
+			}
+		});
+		List<PatientBck> history = awaitHistory("H1", 2);
+		assertEquals("first", history.get(0).getName());
+		assertEquals("second", history.get(1).getName());
+		assertEquals(getVersion("H1"), history.get(1).getVersion());
+	}
+
+	/**
+	 * The snapshot of a merged entity is taken from the managed instance, with the version set by the flush, not
+	 * from the detached copy given to merge
+	 */
+	@Test
+	public void mergedEntitiesAreSnapshotFromTheManagedInstance() throws Exception {
+		save(new Patient("H2", "first", 30, null));
+		final Patient detached = new Patient("H2", "merged", 31, null);
+		detached.setVersion(getVersion("H2"));
+		execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				patientDao.saveOrUpdate(detached, false);
+			}
+		});
+		List<PatientBck> history = awaitHistory("H2", 2);
+		assertEquals("merged", history.get(1).getName());
+		assertEquals(getVersion("H2"), history.get(1).getVersion());
+		assertTrue(history.get(1).getVersion() > detached.getVersion());
+	}
+
+	/**
+	 * The entities stored and then detached by the clear of the persistence context are read again for their
+	 * snapshot, an entity stored twice has one snapshot
+	 */
+	@Test
+	public void clearedEntitiesHaveTheirHistory() throws Exception {
+		execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				for (int i = 0; i < 3; i++) {
+					em.persist(new Patient("H3-" + i, "batch", i, null));
+				}
+				em.flush();
+				em.clear();
+				em.find(Patient.class, "H3-0").setName("updated");
+				em.flush();
+				em.clear();
+			}
+		});
+		assertEquals("updated", awaitHistory("H3-0", 1).get(0).getName());
+		assertEquals("batch", awaitHistory("H3-2", 1).get(0).getName());
+		assertEquals(getVersion("H3-0"), awaitHistory("H3-0", 1).get(0).getVersion());
+	}
+
+	/**
+	 * The entities of a rolled back transaction, the deleted entities and the entities without history have no
+	 * snapshot
+	 */
+	@Test
+	public void onlyTheCommittedEntitiesHaveTheirHistory() throws Exception {
+		execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				patientDao.saveOrUpdate(new Patient("H4", "rolled back", 30, null), true);
+				em.flush();
+				status.setRollbackOnly();
+			}
+		});
+		execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				em.persist(new Patient("H5", "deleted", 30, null));
+				em.flush();
+				em.remove(em.find(Patient.class, "H5"));
+				em.persist(new Site("H6", "site"));
+			}
+		});
+		/* the snapshots are written in order by one thread, the ones of a later transaction are written last */
+		execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				em.persist(new Patient("H7", "committed", 30, null));
+			}
+		});
+		awaitHistory("H7", 1);
+		assertTrue(getHistory("H4").isEmpty());
+		assertTrue(getHistory("H5").isEmpty());
+	}
+
+	private int getVersion(String id) {
+		return em.createQuery("SELECT p.version FROM Patient p WHERE p.id = :id", Integer.class).setParameter("id", id)
+				.getSingleResult();
+	}
+
+	/**
+	 * Wait until an entity has at least a number of snapshots
+	 *
+	 * @return the snapshots, ordered by version
+	 */
+	private List<PatientBck> awaitHistory(String id, int count) throws InterruptedException {
+		long end = System.currentTimeMillis() + TIMEOUT;
+		List<PatientBck> history = getHistory(id);
+		while (history.size() < count && System.currentTimeMillis() < end) {
+			Thread.sleep(20);
+			history = getHistory(id);
+		}
+		assertEquals(count, history.size());
+		return history;
+	}
+
+	private List<PatientBck> getHistory(String id) {
+		return new ArrayList<PatientBck>(em
+				.createQuery("SELECT p FROM PatientBck p WHERE p.id = :id ORDER BY p.version", PatientBck.class)
+				.setParameter("id", id).getResultList());
+	}
+
+}
@@ -0,0 +1,249 @@
+package org.imogene.lib.common.notification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests of the dispatch of the events to a notifier stub served by a local HTTP server
+ *
+ * @author MEDES-IMPS
+ */
+public class NotifierDispatcherTest {
+
+	/* how long the events are waited for */
+	private static final long TIMEOUT = 10000;
+
+	private static final String TYPE = "org.imogene.test.Patient";
+
+	private HttpServer server;
+
+	private NotifierStub notifier;
+
+	private NotifierDispatcher dispatcher;
+
+	@Before
+	public void setUp() throws Exception {
+		notifier = new NotifierStub();
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/notify", notifier);
+		server.start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (dispatcher != null) {
+			dispatcher.destroy();
+		}
+		server.stop(0);
+	}
+
+	@Test
+	public void eventsAreSentWithTheirParameters() throws Exception {
+		dispatcher = newDispatcher(10, 10);
+		dispatcher.dispatch(TYPE, "update", "P 1&2");
+		awaitSent(1);
+		assertEquals(Collections.singletonList("type=" + TYPE + "&op=update&id=P+1%262"), notifier.getQueries());
+		assertEquals(0, dispatcher.getPendingCount());
+		assertEquals(0, dispatcher.getFailedCount());
+	}
+
+	/**
+	 * The identical events dispatched during the delay are sent once, the other events are sent separately
+	 */
+	@Test
+	public void identicalEventsAreCollapsed() throws Exception {
+		dispatcher = newDispatcher(10, 300);
+		for (int i = 0; i < 20; i++) {
+			dispatcher.dispatch(TYPE, "update", "P1");
+		}
+		dispatcher.dispatch(TYPE, "delete", "P1");
+		dispatcher.dispatch(TYPE, "update", "P2");
+		awaitSent(3);
+		assertEquals(19, dispatcher.getCoalescedCount());
+		List<String> queries = notifier.getQueries();
+		Collections.sort(queries);
+		assertEquals(3, queries.size());
+		assertEquals("type=" + TYPE + "&op=delete&id=P1", queries.get(0));
+		assertEquals("type=" + TYPE + "&op=update&id=P1", queries.get(1));
+		assertEquals("type=" + TYPE + "&op=update&id=P2", queries.get(2));
+
+		/* the event is sent again once the previous one has been sent */
+		dispatcher.dispatch(TYPE, "update", "P1");
+		awaitSent(4);
+	}
+
+	/**
+	 * The events dispatched while the pending events reach the capacity are dropped and counted
+	 */
+	@Test
+	public void eventsBeyondTheCapacityAreDropped() throws Exception {
+		dispatcher = newDispatcher(5, 300);
+		for (int i = 0; i < 8; i++) {
+			dispatcher.dispatch(TYPE, "update", "P" + i);
+		}
+		assertEquals(5, dispatcher.getPendingCount());
+		assertEquals(3, dispatcher.getDroppedCount());
+		awaitSent(5);
+		assertEquals(5, notifier.getQueries().size());
+	}
+
+	/**
+	 * The events refused by the notifier are counted as failed
+	 */
+	@Test
+	public void refusedEventsAreCounted() throws Exception {
+		notifier.setStatus(500);
+		dispatcher = newDispatcher(10, 10);
+		dispatcher.dispatch(TYPE, "update", "P1");
+		dispatcher.dispatch(TYPE, "update", "P2");
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (dispatcher.getFailedCount() < 2 && System.currentTimeMillis() < end) {
+			Thread.sleep(20);
+		}
+		assertEquals(2, dispatcher.getFailedCount());
+		assertEquals(0, dispatcher.getSentCount());
+		assertEquals(2, notifier.getQueries().size());
+	}
+
+	/**
+	 * The events sent one after the other reuse the same connection, kept alive by the JDK
+	 */
+	@Test
+	public void connectionsAreReused() throws Exception {
+		dispatcher = newDispatcher(10, 10);
+		for (int i = 0; i < 5; i++) {
+			dispatcher.dispatch(TYPE, "update", "P" + i);
+			awaitSent(i + 1);
+		}
+		assertEquals(1, notifier.getClients().size());
+	}
+
+	/**
+	 * The events already dispatched are sent when the dispatcher is stopped, the next ones are dropped
+	 */
+	@Test
+	public void pendingEventsAreSentOnDestroy() throws Exception {
+		dispatcher = newDispatcher(10, 300);
+		dispatcher.dispatch(TYPE, "update", "P1");
+		dispatcher.destroy();
+		assertEquals(1, dispatcher.getSentCount());
+		dispatcher.dispatch(TYPE, "update", "P2");
+		assertEquals(1, dispatcher.getDroppedCount());
+		assertEquals(0, dispatcher.getPendingCount());
+		dispatcher = null;
+	}
+
+	/**
+	 * The events that can not be sent within the shutdown timeout are dropped and counted
+	 */
+	@Test
+	public void unsentEventsAreDroppedOnDestroy() throws Exception {
+		notifier.setDelay(2000);
+		dispatcher = new NotifierDispatcher();
+		dispatcher.setNotifierUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/notify");
+		dispatcher.setCoalesceDelay(10);
+		dispatcher.setPoolSize(1);
+		dispatcher.setShutdownTimeout(300);
+		dispatcher.afterPropertiesSet();
+		for (int i = 0; i < 5; i++) {
+			dispatcher.dispatch(TYPE, "update", "P" + i);
+		}
+		long start = System.currentTimeMillis();
+		dispatcher.destroy();
+		assertTrue(System.currentTimeMillis() - start < 2000);
+		/* the first event is being sent */
+		assertEquals(4, dispatcher.getDroppedCount());
+		assertEquals(0, dispatcher.getPendingCount());
+		dispatcher = null;
+	}
+
+	private NotifierDispatcher newDispatcher(int capacity, long coalesceDelay) throws Exception {
+		NotifierDispatcher dispatcher = new NotifierDispatcher();
+		dispatcher.setNotifierUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/notify");
+		dispatcher.setCapacity(capacity);
+		dispatcher.setCoalesceDelay(coalesceDelay);
+		dispatcher.afterPropertiesSet();
+		return dispatcher;
+	}
+
+	private void awaitSent(long count) throws InterruptedException {
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (dispatcher.getSentCount() < count && System.currentTimeMillis() < end) {
+			Thread.sleep(20);
+		}
+		assertEquals(count, dispatcher.getSentCount());
+		assertTrue(notifier.getQueries().size() >= count);
+	}
+
+	/**
+	 * Notifier that records the queries it receives and the addresses of its clients
+	 */
+	private static class NotifierStub implements HttpHandler {
+
+		private static final byte[] RESPONSE = "ok".getBytes();
+
+		private final List<String> queries = Collections.synchronizedList(new ArrayList<String>());
+
+		private final Set<String> clients = Collections.synchronizedSet(new HashSet<String>());
+
+		private volatile int status = 200;
+
+		/* the time the notifier takes to answer, in milliseconds */
+		private volatile long delay = 0;
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			if (delay > 0) {
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			queries.add(exchange.getRequestURI().getRawQuery());
+			clients.add(exchange.getRemoteAddress().toString());
+			exchange.sendResponseHeaders(status, RESPONSE.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(RESPONSE);
+			out.close();
+		}
+
+		private void setStatus(int status) {
+			this.status = status;
+		}
+
+		private void setDelay(long delay) {
+			this.delay = delay;
+		}
+
+		private List<String> getQueries() {
+			synchronized (queries) {
+				return new ArrayList<String>(queries);
+			}
+		}
+
+		private Set<String> getClients() {
+			synchronized (clients) {
+				return new HashSet<String>(clients);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,109 @@
+package org.imogene.lib.common.test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.imogene.lib.common.changelog.ChangeLogRecorder;
+import org.imogene.lib.common.entitytype.EntityTypeRegistry;
+import org.imogene.lib.common.enumindex.EnumIndexRecorder;
+import org.imogene.lib.common.history.HistoryWriter;
+import org.junit.AfterClass;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Base of the tests of the recorders called by the entity listener when the entities are stored by Spring
+ * transactions. The context of a test adds the beans of its recorder to the persistence defined by
+ * AbstractRecorderTest-context.xml.
+ *
+ * @author MEDES-IMPS
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration
+@DirtiesContext(classMode = ClassMode.AFTER_CLASS)
+public abstract class AbstractRecorderTest {
+
+	@PersistenceContext
+	protected EntityManager em;
+
+	@Autowired
+	protected PatientDaoImpl patientDao;
+
+	@Autowired
+	protected PlatformTransactionManager transactionManager;
+
+	/**
+	 * Disable the recorders configured by the context, the listener is shared by the other tests
+	 */
+	@AfterClass
+	public static void resetRecorders() {
+		ChangeLogRecorder.getInstance().setChangeLogDao(null);
+		EnumIndexRecorder.getInstance().setEnumIndexDao(null);
+		EntityTypeRegistry.getInstance().setEntityTypeDao(null);
+		HistoryWriter.getInstance().setHistoryDao(null);
+		HistoryWriter.getInstance().setCloneFactory(null);
+	}
+
+	protected void execute(TransactionCallbackWithoutResult callback) {
+		new TransactionTemplate(transactionManager).execute(callback);
+	}
+
+	protected <T> T execute(TransactionCallback<T> callback) {
+		return new TransactionTemplate(transactionManager).execute(callback);
+	}
+
+	/**
+	 * Store a new patient in its own transaction
+	 */
+	protected void save(final Patient patient) {
+		execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				patientDao.saveOrUpdate(patient, true);
+			}
+		});
+	}
+
+	/**
+	 * Modify a managed patient without flush, the modification is only stored by the flush of the commit
+	 */
+	protected void modify(final String id, final Modification modification) {
+		execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				modification.apply(em.find(Patient.class, id));
+			}
+		});
+	}
+
+	/**
+	 * Delete a patient in its own transaction
+	 */
+	protected void remove(final String id) {
+		execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				em.remove(em.find(Patient.class, id));
+			}
+		});
+	}
+
+	/**
+	 * Modification of a managed patient
+	 */
+	protected interface Modification {
+
+		public void apply(Patient patient);
+
+	}
+
+}
@@ -0,0 +1,23 @@
+package org.imogene.lib.common.test;
+
+import javax.persistence.Entity;
+
+/**
+ * Entity of the tests, which inherits the indexed enumeration of the staff
+ *
+ * @author MEDES-IMPS
+ */
+@Entity
+public class Doctor extends Staff {
+
+	private static final long serialVersionUID = -7716389201541923086L;
+
+	public Doctor() {
+	}
+
+	public Doctor(String id, String languages) {
+		setId(id);
+		setLanguages(languages);
+	}
+
+}
@@ -0,0 +1,23 @@
+package org.imogene.lib.common.test;
+
+import javax.persistence.Entity;
+
+/**
+ * Entity of the tests, which inherits the indexed enumeration of the staff
+ *
+ * @author MEDES-IMPS
+ */
+@Entity
+public class Nurse extends Staff {
+
+	private static final long serialVersionUID = 4428130696150773917L;
+
+	public Nurse() {
+	}
+
+	public Nurse(String id, String languages) {
+		setId(id);
+		setLanguages(languages);
+	}
+
+}
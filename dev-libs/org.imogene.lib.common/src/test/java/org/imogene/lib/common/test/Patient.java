@@ -0,0 +1,71 @@
+package org.imogene.lib.common.test;
+
+import javax.persistence.Entity;
+import javax.persistence.ManyToOne;
+
+import org.imogene.lib.common.entity.ImogBeanImpl;
+import org.imogene.lib.common.enumindex.IndexedEnum;
+
+/**
+ * Entity of the tests, with nullable properties, an association and an indexed multi-valued enumeration
+ *
+ * @author MEDES-IMPS
+ */
+@Entity
+public class Patient extends ImogBeanImpl {
+
+	private static final long serialVersionUID = 2213546400858106752L;
+
+	private String name;
+
+	private Integer age;
+
+	@ManyToOne
+	private Site site;
+
+	@IndexedEnum
+	private String symptoms;
+
+	public Patient() {
+	}
+
+	public Patient(String id, String name, Integer age, Site site) {
+		setId(id);
+		this.name = name;
+		this.age = age;
+		this.site = site;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public Integer getAge() {
+		return age;
+	}
+
+	public void setAge(Integer age) {
+		this.age = age;
+	}
+
+	public Site getSite() {
+		return site;
+	}
+
+	public void setSite(Site site) {
+		this.site = site;
+	}
+
+	public String getSymptoms() {
+		return symptoms;
+	}
+
+	public void setSymptoms(String symptoms) {
+		this.symptoms = symptoms;
+	}
+
+}
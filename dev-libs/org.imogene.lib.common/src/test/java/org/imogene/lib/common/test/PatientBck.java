@@ -0,0 +1,27 @@
+package org.imogene.lib.common.test;
+
+import javax.persistence.Entity;
+
+import org.imogene.lib.common.entity.ImogBeanBck;
+
+/**
+ * History snapshot of the patients of the tests
+ *
+ * @author MEDES-IMPS
+ */
+@Entity
+public class PatientBck extends ImogBeanBck {
+
+	private static final long serialVersionUID = -3851460729563811946L;
+
+	private String name;
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+}
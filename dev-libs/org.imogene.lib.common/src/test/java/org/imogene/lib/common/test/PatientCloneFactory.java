@@ -0,0 +1,29 @@
+package org.imogene.lib.common.test;
+
+import java.util.UUID;
+
+import org.imogene.lib.common.entity.CloneFactory;
+
+/**
+ * Clone factory of the tests, only the patients have a history
+ *
+ * @author MEDES-IMPS
+ */
+public class PatientCloneFactory implements CloneFactory {
+
+	@Override
+	public Object clone(Object source) {
+		if (!(source instanceof Patient)) {
+			return null;
+		}
+		Patient patient = (Patient) source;
+		PatientBck snapshot = new PatientBck();
+		snapshot.setTraceId(UUID.randomUUID().toString());
+		snapshot.setId(patient.getId());
+		snapshot.setVersion(patient.getVersion());
+		snapshot.setModified(patient.getModified());
+		snapshot.setName(patient.getName());
+		return snapshot;
+	}
+
+}
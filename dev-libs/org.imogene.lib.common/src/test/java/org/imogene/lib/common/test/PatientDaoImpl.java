@@ -0,0 +1,21 @@
+package org.imogene.lib.common.test;
+
+import org.imogene.lib.common.dao.ImogBeanDaoImpl;
+
+/**
+ * DAO of the patients of the tests
+ *
+ * @author MEDES-IMPS
+ */
+public class PatientDaoImpl extends ImogBeanDaoImpl<Patient> {
+
+	public PatientDaoImpl() {
+		super(Patient.class);
+	}
+
+	@Override
+	public void delete() {
+		em.createQuery("DELETE FROM Patient").executeUpdate();
+	}
+
+}
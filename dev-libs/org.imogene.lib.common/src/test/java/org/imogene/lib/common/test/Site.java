@@ -0,0 +1,48 @@
+package org.imogene.lib.common.test;
+
+import java.util.List;
+
+import javax.persistence.Cacheable;
+import javax.persistence.Entity;
+import javax.persistence.OneToMany;
+
+import org.imogene.lib.common.entity.ImogBeanImpl;
+
+/**
+ * Entity of the tests, referenced by the patients, with the collection of its patients. The sites are cached when
+ * the second-level cache is enabled.
+ *
+ * @author MEDES-IMPS
+ */
+@Entity
+@Cacheable
+public class Site extends ImogBeanImpl {
+
+	private static final long serialVersionUID = -4319022845471283411L;
+
+	private String name;
+
+	@OneToMany(mappedBy = "site")
+	private List<Patient> patients;
+
+	public Site() {
+	}
+
+	public Site(String id, String name) {
+		setId(id);
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public List<Patient> getPatients() {
+		return patients;
+	}
+
+}
@@ -0,0 +1,21 @@
+package org.imogene.lib.common.test;
+
+import org.imogene.lib.common.dao.ImogBeanDaoImpl;
+
+/**
+ * DAO of the sites of the tests
+ *
+ * @author MEDES-IMPS
+ */
+public class SiteDaoImpl extends ImogBeanDaoImpl<Site> {
+
+	public SiteDaoImpl() {
+		super(Site.class);
+	}
+
+	@Override
+	public void delete() {
+		em.createQuery("DELETE FROM Site").executeUpdate();
+	}
+
+}
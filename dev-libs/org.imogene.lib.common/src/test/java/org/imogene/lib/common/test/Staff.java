@@ -0,0 +1,29 @@
+package org.imogene.lib.common.test;
+
+import javax.persistence.MappedSuperclass;
+
+import org.imogene.lib.common.entity.ImogBeanImpl;
+import org.imogene.lib.common.enumindex.IndexedEnum;
+
+/**
+ * Superclass of the test entities that inherit the same indexed multi-valued enumeration
+ *
+ * @author MEDES-IMPS
+ */
+@MappedSuperclass
+public abstract class Staff extends ImogBeanImpl {
+
+	private static final long serialVersionUID = 6092617331838540524L;
+
+	@IndexedEnum
+	private String languages;
+
+	public String getLanguages() {
+		return languages;
+	}
+
+	public void setLanguages(String languages) {
+		this.languages = languages;
+	}
+
+}
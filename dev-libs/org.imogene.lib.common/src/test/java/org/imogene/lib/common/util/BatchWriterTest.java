@@ -0,0 +1,246 @@
+package org.imogene.lib.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.imogene.lib.common.util.BatchWriter.OverflowPolicy;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests of the asynchronous writer, with a store that keeps the items in memory
+ *
+ * @author MEDES-IMPS
+ */
+public class BatchWriterTest {
+
+	private static final int COUNT = 1000;
+
+	private static final int BATCH_SIZE = 20;
+
+	private MemoryWriter writer;
+
+	@After
+	public void tearDown() throws Exception {
+		if (writer != null) {
+			writer.release();
+			writer.destroy();
+		}
+	}
+
+	@Test
+	public void itemsAreStoredInBatchesInTheirOrder() throws Exception {
+		writer = newWriter(COUNT, OverflowPolicy.BLOCK);
+		for (int i = 0; i < COUNT; i++) {
+			writer.write(i);
+		}
+		writer.destroy();
+		assertEquals(range(0, COUNT), writer.getStored());
+		assertTrue(writer.getLargestBatch() <= BATCH_SIZE);
+		assertEquals(0, writer.getDiscardedCount());
+	}
+
+	/**
+	 * A batch containing an item that cannot be stored is stored item by item, only the invalid item is dropped
+	 */
+	@Test
+	public void failedBatchesAreStoredItemByItem() throws Exception {
+		writer = newWriter(COUNT, OverflowPolicy.BLOCK);
+		writer.setInvalid(123);
+		writer.hold();
+		for (int i = 0; i < COUNT; i++) {
+			writer.write(i);
+		}
+		writer.release();
+		writer.destroy();
+		List<Integer> expected = range(0, COUNT);
+		expected.remove(Integer.valueOf(123));
+		assertEquals(expected, writer.getStored());
+		assertEquals(1, writer.getDiscardedCount());
+	}
+
+	/**
+	 * The writers wait while the queue is full, nothing is lost
+	 */
+	@Test
+	public void blockPolicyWaitsForRoom() throws Exception {
+		writer = newWriter(5, OverflowPolicy.BLOCK);
+		writer.setDelay(1);
+		for (int i = 0; i < 200; i++) {
+			writer.write(i);
+		}
+		writer.destroy();
+		assertEquals(range(0, 200), writer.getStored());
+		assertEquals(0, writer.getDiscardedCount());
+	}
+
+	/**
+	 * The items written while the queue is full are dropped and counted
+	 */
+	@Test
+	public void discardPolicyCountsTheDroppedItems() throws Exception {
+		writer = newWriter(5, OverflowPolicy.DISCARD);
+		writer.hold();
+		writer.write(0);
+		/* the first item is being stored, the queue is then filled */
+		assertTrue(writer.awaitStore());
+		for (int i = 1; i < 20; i++) {
+			writer.write(i);
+		}
+		writer.release();
+		writer.destroy();
+		assertEquals(range(0, 6), writer.getStored());
+		assertEquals(14, writer.getDiscardedCount());
+	}
+
+	/**
+	 * The items written while the queue is full are stored by the threads that write them
+	 */
+	@Test
+	public void callerRunsPolicyStoresInTheCallingThread() throws Exception {
+		writer = newWriter(5, OverflowPolicy.CALLER_RUNS);
+		writer.hold();
+		writer.write(0);
+		assertTrue(writer.awaitStore());
+		for (int i = 1; i < 20; i++) {
+			writer.write(i);
+		}
+		/* the items beyond the capacity have been stored before the queued ones */
+		assertEquals(range(6, 20), writer.getStored());
+		writer.release();
+		writer.destroy();
+		List<Integer> stored = writer.getStored();
+		Collections.sort(stored);
+		assertEquals(range(0, 20), stored);
+		assertEquals(0, writer.getDiscardedCount());
+	}
+
+	/**
+	 * An item that cannot be stored by the calling thread is dropped and counted, the caller does not fail
+	 */
+	@Test
+	public void callerRunsFailuresAreCounted() throws Exception {
+		writer = newWriter(5, OverflowPolicy.CALLER_RUNS);
+		writer.setInvalid(10);
+		writer.hold();
+		writer.write(0);
+		assertTrue(writer.awaitStore());
+		for (int i = 1; i < 20; i++) {
+			writer.write(i);
+		}
+		writer.release();
+		writer.destroy();
+		List<Integer> stored = writer.getStored();
+		Collections.sort(stored);
+		List<Integer> expected = range(0, 20);
+		expected.remove(Integer.valueOf(10));
+		assertEquals(expected, stored);
+		assertEquals(1, writer.getDiscardedCount());
+	}
+
+	/**
+	 * The items written before the writer is started are stored immediately
+	 */
+	@Test
+	public void itemsAreStoredByTheCallerUntilTheWriterIsStarted() throws Exception {
+		writer = new MemoryWriter();
+		writer.write(1);
+		writer.write(2);
+		assertEquals(range(1, 3), writer.getStored());
+		writer = null;
+	}
+
+	private static MemoryWriter newWriter(int capacity, OverflowPolicy policy) throws Exception {
+		MemoryWriter writer = new MemoryWriter();
+		writer.setCapacity(capacity);
+		writer.setBatchSize(BATCH_SIZE);
+		writer.setOverflowPolicy(policy);
+		writer.afterPropertiesSet();
+		return writer;
+	}
+
+	private static List<Integer> range(int from, int to) {
+		List<Integer> range = new ArrayList<Integer>();
+		for (int i = from; i < to; i++) {
+			range.add(i);
+		}
+		return range;
+	}
+
+	/**
+	 * Writer that keeps the stored items, the stores of the writer thread can be held until they are released
+	 */
+	private static class MemoryWriter extends BatchWriter<Integer> {
+
+		private final List<Integer> stored = Collections.synchronizedList(new ArrayList<Integer>());
+
+		private final CountDownLatch storing = new CountDownLatch(1);
+
+		private volatile CountDownLatch held = new CountDownLatch(0);
+
+		private volatile int largestBatch;
+
+		private volatile Integer invalid;
+
+		private volatile long delay;
+
+		private MemoryWriter() {
+			super("test-writer");
+		}
+
+		@Override
+		protected void store(List<Integer> items) {
+			try {
+				if (Thread.currentThread().getName().equals("test-writer")) {
+					storing.countDown();
+					held.await();
+				}
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (invalid != null && items.contains(invalid)) {
+				throw new IllegalArgumentException("invalid item " + invalid);
+			}
+			largestBatch = Math.max(largestBatch, items.size());
+			stored.addAll(items);
+		}
+
+		private void hold() {
+			held = new CountDownLatch(1);
+		}
+
+		private void release() {
+			held.countDown();
+		}
+
+		private boolean awaitStore() throws InterruptedException {
+			return storing.await(5, TimeUnit.SECONDS);
+		}
+
+		private void setInvalid(Integer invalid) {
+			this.invalid = invalid;
+		}
+
+		private void setDelay(long delay) {
+			this.delay = delay;
+		}
+
+		private List<Integer> getStored() {
+			synchronized (stored) {
+				return new ArrayList<Integer>(stored);
+			}
+		}
+
+		private int getLargestBatch() {
+			return largestBatch;
+		}
+	}
+
+}
@@ -1,5 +1,7 @@
 package org.imogene.lib.media;
 
+import java.io.File;
+
 import org.imogene.lib.common.binary.Binary;
 
 /**
@@ -14,4 +16,12 @@ public interface BinaryOperation {
 	 */
 	public void operate(Binary binary);
 
+	/**
+	 * Get the thumbnail of a binary, the thumbnail is created if it does not exist yet
+	 * 
+	 * @param binary the binary
+	 * @return the thumbnail file, which does not exist if the binary has no thumbnail
+	 */
+	public File getThumbnail(Binary binary);
+
 }
@@ -1,92 +1,203 @@
 package org.imogene.lib.media;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
 import org.imogene.lib.common.binary.Binary;
 import org.imogene.lib.common.binary.file.BinaryFileManager;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 
 /**
  * Binary post treatment tasks to create flv files for video to be played in a browser or thumbnail images to be
- * embedded in forms.
+ * embedded in forms. The thumbnails are created by a bounded pool of background threads, so that the uploads and the
+ * synchronizations do not wait for them. The thumbnails that are not created yet when they are requested, because
+ * the pool was full or the application was stopped before, are created on the request. The video and audio
+ * conversions run external processes, they are handed to the transcoding service which bounds their number.
  * 
  * @author MEDES-IMPS
  * 
  */
-public class BinaryOperationImpl implements BinaryOperation {
+public class BinaryOperationImpl implements BinaryOperation, InitializingBean, DisposableBean {
 
-//	private MediaConverter videoConverter;
+	private static final Logger logger = Logger.getLogger("org.imogene.lib.media.BinaryOperationImpl");
+
+	private MediaConverter videoConverter;
 	private MediaConverter photoConverter;
-//	private MediaConverter audioConverter;
+	private MediaConverter audioConverter;
+
+	private TranscodingService transcodingService;
+
+	private int poolSize = 2;
+
+	private int capacity = 1000;
+
+	private ThreadPoolExecutor executor;
+
+	/* the ids of the binaries whose thumbnail is waiting to be created */
+	private final Set<String> pending = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(capacity), new ThreadFactory() {
+
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "binary-operation-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						thread.setPriority(Thread.MIN_PRIORITY);
+						return thread;
+					}
+				});
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		/* the thumbnails not created yet are created when they are requested */
+		executor.shutdownNow();
+	}
 
 	/**
 	 * @param binary
 	 */
 	public void operate(Binary binary) {
-		/* binary file conversion to flv 
-		if (binary.getContentType().contains("video")) {
-			File localFile = BinaryFileManager.getInstance().buildFilePath(binary);
-			File binaryPath = BinaryFileManager.getInstance().buildFlvFilePath(binary);
-			File flvFile = new File(binaryPath, "flv/" + localFile.getName() + ".flv");
-			if (!binary.getContentType().contains("x-flash-video")) {
-				videoConverter.convert(localFile, new File(binaryPath + "flv/" + localFile.getName() + ".flv"),
-						binary.getContentType());
-			} else {
-				try {
-					FileInputStream fis = new FileInputStream(localFile);
-					FileOutputStream fos = new FileOutputStream(flvFile);
-					IOUtils.copy(fis, fos);
-					fis.close();
-					fos.close();
-				} catch (FileNotFoundException e) {
-					e.printStackTrace();
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
+		/* binary file conversion to flv */
+		if (videoConverter != null && isContentType(binary, "video")) {
+			File flvFile = BinaryFileManager.getInstance().buildFlvFilePath(binary);
+			if (!flvFile.exists()) {
+				transcode(videoConverter, binary, flvFile);
 			}
-		} */
+		}
 		/* image file thumbnail */
-		if (binary.getContentType().contains("image")) {
-			File localFile = BinaryFileManager.getInstance().buildFilePath(binary);
-			File thumbnail = BinaryFileManager.getInstance().buildThumbFilePath(binary);
-			photoConverter.convert(localFile, thumbnail, binary.getContentType());
+		if (isImage(binary)) {
+			schedule(binary);
 		}
-		/* audio file
-		if (binary.getContentType().contains("audio")) {
-			File localFile = BinaryFileManager.getInstance().buildFilePath(binary);
+		/* audio file conversion to mp3 */
+		if (audioConverter != null && isContentType(binary, "audio")) {
 			File mp3File = BinaryFileManager.getInstance().buildMp3FilePath(binary);
-			if (!binary.getContentType().contains("mp3")) {
-				audioConverter.convert(localFile, mp3File, binary.getContentType());
-			} else {
-				try {
-					FileInputStream fis = new FileInputStream(localFile);
-					FileOutputStream fos = new FileOutputStream(mp3File);
-					IOUtils.copy(fis, fos);
-					fis.close();
-					fos.close();
-				} catch (FileNotFoundException e) {
-					e.printStackTrace();
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
+			if (!mp3File.exists()) {
+				transcode(audioConverter, binary, mp3File);
 			}
-		}*/
+		}
+	}
+
+	@Override
+	public File getThumbnail(Binary binary) {
+		File thumbnail = BinaryFileManager.getInstance().buildThumbFilePath(binary);
+		if (!thumbnail.exists() && isImage(binary)) {
+			createThumbnail(binary);
+		}
+		return thumbnail;
+	}
+
+	/**
+	 * Schedule the creation of the thumbnail of an image, the creation is left to the first request of the thumbnail
+	 * if too many thumbnails are waiting to be created
+	 */
+	private void schedule(final Binary binary) {
+		if (executor == null) {
+			createThumbnail(binary);
+			return;
+		}
+		final String id = binary.getId();
+		if (!pending.add(id)) {
+			return;
+		}
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					pending.remove(id);
+					try {
+						if (!BinaryFileManager.getInstance().buildThumbFilePath(binary).exists()) {
+							createThumbnail(binary);
+						}
+					} catch (RuntimeException e) {
+						logger.error("Error creating the thumbnail of the binary " + id, e);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			pending.remove(id);
+			logger.warn("Too many thumbnails waiting, the thumbnail of the binary " + id + " is created on request");
+		}
+	}
+
+	private void createThumbnail(Binary binary) {
+		File localFile = BinaryFileManager.getInstance().buildFilePath(binary);
+		File thumbnail = BinaryFileManager.getInstance().buildThumbFilePath(binary);
+		photoConverter.convert(localFile, thumbnail, binary.getContentType());
+	}
+
+	/**
+	 * Convert a binary in the background, or in the calling thread if there is no transcoding service
+	 */
+	private void transcode(MediaConverter converter, Binary binary, File output) {
+		File localFile = BinaryFileManager.getInstance().buildFilePath(binary);
+		if (transcodingService != null) {
+			transcodingService.submit(converter, localFile, output, binary.getContentType());
+		} else {
+			converter.convert(localFile, output, binary.getContentType());
+		}
+	}
+
+	private static boolean isImage(Binary binary) {
+		return isContentType(binary, "image");
+	}
+
+	private static boolean isContentType(Binary binary, String type) {
+		return binary.getContentType() != null && binary.getContentType().contains(type);
+	}
+
+	/**
+	 * Setter for bean injection
+	 * 
+	 * @param poolSize the number of threads that create the thumbnails
+	 */
+	public void setPoolSize(int poolSize) {
+		this.poolSize = poolSize;
+	}
+
+	/**
+	 * Setter for bean injection
+	 * 
+	 * @param capacity the maximum number of thumbnails waiting to be created
+	 */
+	public void setCapacity(int capacity) {
+		this.capacity = capacity;
 	}
 
 	public void setPhotoConverter(MediaConverter photoConverter) {
 		this.photoConverter = photoConverter;
 	}
 
-//	public void setVideoConverter(MediaConverter videoConverter) {
-//		this.videoConverter = videoConverter;
-//	}
+	public void setVideoConverter(MediaConverter videoConverter) {
+		this.videoConverter = videoConverter;
+	}
+
+	public void setAudioConverter(MediaConverter audioConverter) {
+		this.audioConverter = audioConverter;
+	}
 
-//	public void setAudioConverter(MediaConverter audioConverter) {
-//		this.audioConverter = audioConverter;
-//	}
+	/**
+	 * Setter for bean injection
+	 * 
+	 * @param transcodingService the service that runs the video and audio conversions
+	 */
+	public void setTranscodingService(TranscodingService transcodingService) {
+		this.transcodingService = transcodingService;
+	}
 
 }
@@ -0,0 +1,217 @@
+package org.imogene.lib.media;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Media converter that runs an external command, such as ffmpeg. The command is run without a shell, its output is
+ * read as it is produced so that the process never blocks on a full pipe, and the process is killed if it runs
+ * longer than the timeout. The command writes in a temporary file that is renamed to the output file once the
+ * command succeeds, so that a partial output is never read.
+ *
+ * @author MEDES-IMPS
+ */
+public abstract class CommandConverter implements MediaConverter {
+
+	private static final int BUFFER_SIZE = 1024;
+
+	/* the end of the output of the command kept for the error message */
+	private static final int OUTPUT_TAIL = 2048;
+
+	/* the time the output is still read once the process has exited, in milliseconds */
+	private static final long DRAIN_TIMEOUT = 1000;
+
+	/* kills the processes that run longer than their timeout */
+	private static final ScheduledExecutorService watchdog = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "media-converter-watchdog");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private String commandLine;
+
+	/* in milliseconds */
+	private long timeout = 10 * 60 * 1000;
+
+	protected CommandConverter(String commandLine) {
+		this.commandLine = commandLine;
+	}
+
+	protected abstract Logger getLogger();
+
+	/**
+	 * Convert the input file
+	 *
+	 * @return null if the conversion succeeded, the error message otherwise
+	 */
+	@Override
+	public String convert(File input, File output, String mimeType) {
+		if (!isConfigured()) {
+			getLogger().warn("No command set for the " + getClass().getSimpleName()
+					+ ", take a look to the 'application.properties' file");
+			return "No command set";
+		}
+		File temp = getTempFile(output);
+		try {
+			output.getAbsoluteFile().getParentFile().mkdirs();
+			String error = run(buildCommand(input.getAbsolutePath(), temp.getAbsolutePath()));
+			if (error != null) {
+				return error;
+			}
+			if (!temp.exists()) {
+				return "The command has not created its output";
+			}
+			output.delete();
+			if (!temp.renameTo(output)) {
+				return "Cannot rename " + temp + " to " + output;
+			}
+			return null;
+		} catch (IOException e) {
+			return e.getMessage();
+		} finally {
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Tell whether a command line is set
+	 *
+	 * @return true if the converter can run its command
+	 */
+	public boolean isConfigured() {
+		return commandLine != null && !commandLine.trim().equals("");
+	}
+
+	/**
+	 * Get the temporary output of the command, with the extension of the output since the commands usually choose the
+	 * format from it
+	 */
+	private static File getTempFile(File output) {
+		String name = output.getName();
+		int dot = name.lastIndexOf('.');
+		if (dot <= 0) {
+			return new File(output.getParentFile(), name + ".part");
+		}
+		return new File(output.getParentFile(), name.substring(0, dot) + ".part" + name.substring(dot));
+	}
+
+	/**
+	 * Split the command line in arguments and replace the input and output paths, the paths are single arguments
+	 * even when they contain spaces
+	 */
+	private List<String> buildCommand(String inFullPath, String outFullPath) {
+		List<String> command = new Vector<String>();
+		for (String token : commandLine.trim().split("\\s+")) {
+			command.add(token.replace("%IN%", inFullPath).replace("%OUT%", outFullPath));
+		}
+		return command;
+	}
+
+	/**
+	 * Run a command until it exits or is killed by the watchdog
+	 *
+	 * @return null if the command exited normally, the error message otherwise
+	 */
+	private String run(List<String> command) throws IOException {
+		getLogger().debug("Media converter : " + command);
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.redirectErrorStream(true);
+		final Process process = builder.start();
+		process.getOutputStream().close();
+		final AtomicBoolean killed = new AtomicBoolean();
+		ScheduledFuture<?> kill = watchdog.schedule(new Runnable() {
+			@Override
+			public void run() {
+				killed.set(true);
+				process.destroy();
+			}
+		}, timeout, TimeUnit.MILLISECONDS);
+		/*
+		 * the output is read by another thread, a child process left by the killed command could keep the output
+		 * open
+		 */
+		final AtomicReference<String> tail = new AtomicReference<String>("");
+		Thread drainer = new Thread("media-converter-output") {
+			@Override
+			public void run() {
+				tail.set(drain(process.getInputStream()));
+			}
+		};
+		drainer.setDaemon(true);
+		drainer.start();
+		try {
+			int exit = process.waitFor();
+			drainer.join(DRAIN_TIMEOUT);
+			if (killed.get()) {
+				return "The command has been killed after " + timeout + " ms";
+			}
+			if (exit != 0) {
+				return "The command has exited with " + exit + ": " + tail.get();
+			}
+			return null;
+		} catch (InterruptedException e) {
+			process.destroy();
+			Thread.currentThread().interrupt();
+			return "The conversion has been interrupted";
+		} finally {
+			kill.cancel(false);
+		}
+	}
+
+	/**
+	 * Read the output of the process until it ends
+	 *
+	 * @return the end of the output
+	 */
+	private static String drain(InputStream in) {
+		StringBuilder tail = new StringBuilder();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try {
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				tail.append(new String(buffer, 0, read));
+				if (tail.length() > 2 * OUTPUT_TAIL) {
+					tail.delete(0, tail.length() - OUTPUT_TAIL);
+				}
+			}
+			in.close();
+		} catch (IOException e) {
+			// the process has been killed
+		}
+		return tail.length() > OUTPUT_TAIL ? tail.substring(tail.length() - OUTPUT_TAIL) : tail.toString();
+	}
+
+	/**
+	 * Set the system command line to use
+	 *
+	 * @param pCommandLine the command line to use, %IN% and %OUT% are replaced by the input and output paths
+	 */
+	public void setCommandLine(String pCommandLine) {
+		commandLine = pCommandLine;
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param timeout the time after which the command is killed, in milliseconds
+	 */
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+}
@@ -1,24 +1,112 @@
 package org.imogene.lib.media;
 
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
 
+import javax.imageio.ImageIO;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Creates the thumbnails of the images. The image is decoded once, and scaled to each of the thumbnail widths.
+ *
+ * @author MEDES-IMPS
+ */
 public class PhotoConverter implements MediaConverter {
 
+	private static final Logger logger = Logger.getLogger("org.imogene.lib.media.PhotoConverter");
+
 	private final static int HORIZONTAL_SIZE = 65;
 
+	/* the width of the thumbnail, then the widths of the additional sizes */
+	private int[] widths = new int[] { HORIZONTAL_SIZE };
+
 	@Override
 	public String convert(File input, File output, String mimeType) {
-		ThumbnailUtility tool = new ThumbnailUtility(input.getAbsolutePath());
-		tool.getThumbnail(HORIZONTAL_SIZE, ThumbnailUtility.HORIZONTAL);
 		String type = getImageType(mimeType);
-		tool.saveThumbnail(output, type);
+		try {
+			int maxWidth = 0;
+			for (int width : widths) {
+				maxWidth = Math.max(maxWidth, width);
+			}
+			BufferedImage image = ThumbnailUtility.read(input, maxWidth);
+			if (type.equals(ThumbnailUtility.IMAGE_JPG) && image.getColorModel().hasAlpha()) {
+				image = flatten(image);
+			}
+			for (int i = 0; i < widths.length; i++) {
+				int width = widths[i];
+				int height = Math.max(1, image.getHeight() * width / image.getWidth());
+				BufferedImage thumb = ThumbnailUtility.scale(image, width, height);
+				write(thumb, type, i == 0 ? output : getSizeFile(output, width));
+			}
+		} catch (IOException e) {
+			logger.error("Error creating the thumbnail of " + input + ": " + e.getMessage());
+		}
 		return null;
 	}
 
+	/**
+	 * Get the file of an additional size of a thumbnail
+	 *
+	 * @param thumbnail the thumbnail file
+	 * @param width the width of the additional size
+	 * @return the file of the additional size
+	 */
+	public static File getSizeFile(File thumbnail, int width) {
+		return new File(thumbnail.getPath() + "." + width);
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param widths the comma separated widths of the thumbnails, the first one is the width of the thumbnail and the
+	 *            next ones the widths of the additional sizes
+	 */
+	public void setWidths(String widths) {
+		String[] values = widths.split(",");
+		this.widths = new int[values.length];
+		for (int i = 0; i < values.length; i++) {
+			this.widths[i] = Integer.parseInt(values[i].trim());
+		}
+	}
+
+	/**
+	 * Write a thumbnail in a temporary file that is then renamed, so that a thumbnail being written is never read
+	 */
+	private static void write(BufferedImage thumb, String type, File output) throws IOException {
+		File temp = File.createTempFile("thumb", ".tmp", output.getAbsoluteFile().getParentFile());
+		try {
+			if (!ImageIO.write(thumb, type, temp)) {
+				throw new IOException("No writer for " + type);
+			}
+			if (!temp.renameTo(output)) {
+				output.delete();
+				if (!temp.renameTo(output)) {
+					throw new IOException("Cannot rename " + temp + " to " + output);
+				}
+			}
+		} finally {
+			temp.delete();
+		}
+	}
+
+	private static BufferedImage flatten(BufferedImage image) {
+		BufferedImage result = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = result.createGraphics();
+		g.setColor(Color.WHITE);
+		g.fillRect(0, 0, image.getWidth(), image.getHeight());
+		g.drawImage(image, 0, 0, null);
+		g.dispose();
+		return result;
+	}
+
 	private static String getImageType(String mimeType) {
 		if (mimeType.toLowerCase().contains("png")) {
 			return ThumbnailUtility.IMAGE_PNG;
 		}
 		return ThumbnailUtility.IMAGE_JPG;
 	}
-}
\ No newline at end of file
+}
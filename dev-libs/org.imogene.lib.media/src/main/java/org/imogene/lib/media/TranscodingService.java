@@ -0,0 +1,203 @@
+package org.imogene.lib.media;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Runs the media conversions in the background, with at most maxProcesses conversions running at the same time and
+ * at most capacity conversions waiting. The status of a conversion is kept next to its output: the output exists once
+ * the conversion has succeeded, and a ".failed" file holds the error of a conversion that has failed, so that it is
+ * not run again on each request, even after a restart. The conversions interrupted by the stop of the service and the
+ * ones of a converter without command are not failed, they are requested again.
+ *
+ * @author MEDES-IMPS
+ */
+public class TranscodingService implements InitializingBean, DisposableBean {
+
+	private static final Logger logger = Logger.getLogger("org.imogene.lib.media.TranscodingService");
+
+	public static final String FAILED_SUFFIX = ".failed";
+
+	/**
+	 * Status of a conversion
+	 */
+	public enum Status {
+		/* no conversion has been requested */
+		NONE,
+		/* the conversion is waiting for a process */
+		PENDING,
+		/* the conversion is running */
+		RUNNING,
+		/* the output is available */
+		DONE,
+		/* the conversion has failed */
+		FAILED
+	}
+
+	private int maxProcesses = 2;
+
+	private int capacity = 100;
+
+	private ThreadPoolExecutor executor;
+
+	/* the conversions waiting or running, by output path */
+	private final ConcurrentMap<String, Status> jobs = new ConcurrentHashMap<String, Status>();
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		executor = new ThreadPoolExecutor(maxProcesses, maxProcesses, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(capacity), new ThreadFactory() {
+
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "transcoding-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						thread.setPriority(Thread.MIN_PRIORITY);
+						return thread;
+					}
+				});
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		/* the running processes are killed, their conversions are requested again with the binaries */
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Request a conversion, nothing is done if the conversion is already waiting, running, done or failed
+	 *
+	 * @param converter the converter
+	 * @param input the file to convert
+	 * @param output the converted file
+	 * @param mimeType the mime type of the file to convert
+	 * @return the status of the conversion
+	 */
+	public Status submit(final MediaConverter converter, final File input, final File output, final String mimeType) {
+		Status status = getStatus(output);
+		if (status != Status.NONE) {
+			return status;
+		}
+		if (converter instanceof CommandConverter && !((CommandConverter) converter).isConfigured()) {
+			logger.warn("No command set for the " + converter.getClass().getSimpleName() + ", " + output
+					+ " is converted on a next request");
+			return Status.NONE;
+		}
+		final String key = output.getAbsolutePath();
+		if (jobs.putIfAbsent(key, Status.PENDING) != null) {
+			return getStatus(output);
+		}
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					jobs.put(key, Status.RUNNING);
+					try {
+						String error = converter.convert(input, output, mimeType);
+						if (error != null && Thread.currentThread().isInterrupted()) {
+							/* the service has been stopped, the conversion is requested again */
+							logger.info("Conversion of " + output + " interrupted: " + error);
+						} else if (error != null) {
+							fail(output, error);
+						}
+					} catch (RuntimeException e) {
+						fail(output, String.valueOf(e.getMessage()));
+					} finally {
+						jobs.remove(key);
+					}
+				}
+			});
+			return Status.PENDING;
+		} catch (RejectedExecutionException e) {
+			jobs.remove(key);
+			logger.warn("Too many conversions waiting, " + output + " is converted on a next request");
+			return Status.NONE;
+		}
+	}
+
+	/**
+	 * Get the status of a conversion
+	 *
+	 * @param output the converted file
+	 * @return the status
+	 */
+	public Status getStatus(File output) {
+		Status status = jobs.get(output.getAbsolutePath());
+		if (status != null) {
+			return status;
+		}
+		if (output.exists()) {
+			return Status.DONE;
+		}
+		if (getFailedFile(output).exists()) {
+			return Status.FAILED;
+		}
+		return Status.NONE;
+	}
+
+	/**
+	 * Get the number of conversions waiting or running
+	 */
+	public int getJobCount() {
+		return jobs.size();
+	}
+
+	/**
+	 * Get the file that holds the error of a failed conversion
+	 *
+	 * @param output the converted file
+	 * @return the error file
+	 */
+	public static File getFailedFile(File output) {
+		return new File(output.getPath() + FAILED_SUFFIX);
+	}
+
+	private void fail(File output, String error) {
+		logger.error("Error converting " + output + ": " + error);
+		try {
+			OutputStream out = new FileOutputStream(getFailedFile(output));
+			try {
+				out.write(error.getBytes("UTF-8"));
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			logger.error(e.getMessage());
+		}
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param maxProcesses the maximum number of conversions running at the same time
+	 */
+	public void setMaxProcesses(int maxProcesses) {
+		this.maxProcesses = maxProcesses;
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param capacity the maximum number of conversions waiting
+	 */
+	public void setCapacity(int capacity) {
+		this.capacity = capacity;
+	}
+
+}
@@ -1,11 +1,8 @@
 package org.imogene.lib.media;
 
-import java.io.File;
-import java.io.IOException;
-
 import org.apache.log4j.Logger;
 
-public class VideoConverter implements MediaConverter {
+public class VideoConverter extends CommandConverter {
 
 	private static final Logger logger = Logger.getLogger("org.imogene.web.server.util.VideoConverter");
 
@@ -14,34 +11,13 @@ public class VideoConverter implements MediaConverter {
 
 	private static final String DEFAULT_COMMAND = "ffmpeg -i %IN% -f flv %OUT%";
 
-	private String commandLine = DEFAULT_COMMAND;
-
-	public String convert(File input, File output, String mimeType) {
-		runCommand(input.getAbsolutePath(), output.getAbsolutePath());
-		return null;
-	}
-
-	/**
-	 * Set the system command line to user
-	 * 
-	 * @param pCommandLine the command line to user
-	 */
-	public void setCommandLine(String pCommandLine) {
-		commandLine = pCommandLine;
+	public VideoConverter() {
+		super(DEFAULT_COMMAND);
 	}
 
-	private void runCommand(String inFullPath, String outFullPath) {
-		try {
-			if (commandLine == null || commandLine.equals(""))
-				logger.warn("No command set for the video converter, take a look to the 'application.properties' file");
-			else {
-				String cmd = commandLine.replace("%IN%", inFullPath).replace("%OUT%", outFullPath);
-				logger.debug("Video converter : " + cmd);
-				Runtime.getRuntime().exec(cmd);
-			}
-		} catch (IOException ioe) {
-			ioe.printStackTrace();
-		}
+	@Override
+	protected Logger getLogger() {
+		return logger;
 	}
 
 }
@@ -0,0 +1,138 @@
+package org.imogene.lib.media;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.log4j.Logger;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the command converters, with stub scripts in place of ffmpeg
+ *
+ * @author MEDES-IMPS
+ */
+public class CommandConverterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File input;
+
+	private File output;
+
+	@Before
+	public void setUp() throws Exception {
+		Assume.assumeTrue(new File("/bin/sh").exists());
+		File directory = folder.newFolder("with spaces");
+		input = write(new File(directory, "input video.3gp"), "video");
+		output = new File(directory, "output video.flv");
+	}
+
+	/**
+	 * The paths are single arguments even when they contain spaces, the output is renamed from its temporary file
+	 */
+	@Test
+	public void theOutputIsWrittenByTheCommand() throws Exception {
+		assertNull(stub("copy.sh %IN% %OUT%").convert(input, output, null));
+		assertTrue(output.exists());
+		assertEquals(input.length(), output.length());
+		assertEquals(2, output.getParentFile().list().length);
+	}
+
+	/**
+	 * The output of the command is read while it runs, its end is returned with the exit code
+	 */
+	@Test
+	public void failuresReturnTheEndOfTheOutput() throws Exception {
+		String error = stub("fail.sh %IN% %OUT%").convert(input, output, null);
+		assertTrue(error, error.startsWith("The command has exited with 3: "));
+		assertTrue(error, error.trim().endsWith("stub failure"));
+		assertTrue(error.length() < 4096);
+		assertFalse(output.exists());
+		assertEquals(1, output.getParentFile().list().length);
+	}
+
+	@Test
+	public void commandsAreKilledAfterTheTimeout() throws Exception {
+		CommandConverter converter = stub("hang.sh %IN% %OUT%");
+		converter.setTimeout(500);
+		long start = System.currentTimeMillis();
+		String error = converter.convert(input, output, null);
+		long duration = System.currentTimeMillis() - start;
+		assertEquals("The command has been killed after 500 ms", error);
+		assertTrue("killed after " + duration + " ms", duration < 5000);
+		assertFalse(output.exists());
+	}
+
+	@Test
+	public void missingOutputsAreErrors() throws Exception {
+		assertEquals("The command has not created its output", stub("noop.sh %IN% %OUT%").convert(input, output,
+				null));
+		assertFalse(output.exists());
+	}
+
+	@Test
+	public void convertersWithoutCommandDoNothing() throws Exception {
+		VideoConverter converter = new VideoConverter();
+		converter.setCommandLine("");
+		assertEquals("No command set", converter.convert(input, output, null));
+		assertFalse(output.exists());
+	}
+
+	/**
+	 * Create a converter that runs a stub script
+	 *
+	 * @param commandLine the script and its arguments
+	 */
+	static CommandConverter stub(String commandLine) throws Exception {
+		StubConverter converter = new StubConverter();
+		converter.setCommandLine("/bin/sh " + getScript(commandLine));
+		return converter;
+	}
+
+	private static String getScript(String commandLine) throws Exception {
+		int space = commandLine.indexOf(' ');
+		String script = commandLine.substring(0, space);
+		return new File(CommandConverterTest.class.getResource(script).toURI()).getPath()
+				+ commandLine.substring(space);
+	}
+
+	static File write(File file, String content) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Converter that runs the stub scripts
+	 */
+	static class StubConverter extends CommandConverter {
+
+		private static final Logger logger = Logger.getLogger("org.imogene.lib.media.StubConverter");
+
+		StubConverter() {
+			super(null);
+		}
+
+		@Override
+		protected Logger getLogger() {
+			return logger;
+		}
+	}
+
+}
@@ -0,0 +1,213 @@
+package org.imogene.lib.media;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.imogene.lib.media.TranscodingService.Status;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the transcoding service, with stub scripts in place of ffmpeg
+ *
+ * @author MEDES-IMPS
+ */
+public class TranscodingServiceTest {
+
+	/* how long the conversions are waited for */
+	private static final long TIMEOUT = 20000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File input;
+
+	private TranscodingService service;
+
+	@Before
+	public void setUp() throws Exception {
+		Assume.assumeTrue(new File("/bin/sh").exists());
+		input = CommandConverterTest.write(folder.newFile("input.3gp"), "video");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (service != null) {
+			service.destroy();
+		}
+	}
+
+	/**
+	 * No more than maxProcesses commands run at the same time, the other conversions wait
+	 */
+	@Test
+	public void runningProcessesAreBounded() throws Exception {
+		service = newService(2, 100);
+		CountingConverter converter = new CountingConverter(CommandConverterTest.stub("copy.sh %IN% %OUT% 0.2"));
+		File[] outputs = new File[10];
+		for (int i = 0; i < outputs.length; i++) {
+			outputs[i] = new File(folder.getRoot(), "output" + i + ".flv");
+			assertEquals(Status.PENDING, service.submit(converter, input, outputs[i], null));
+		}
+		for (File output : outputs) {
+			awaitStatus(output, Status.DONE);
+		}
+		assertEquals(2, converter.getMaxRunning());
+		assertEquals(outputs.length, converter.getCount());
+		assertEquals(0, service.getJobCount());
+	}
+
+	/**
+	 * A conversion requested again while it waits or runs, or once it is done, is not run again
+	 */
+	@Test
+	public void conversionsAreRunOnce() throws Exception {
+		service = newService(1, 100);
+		CountingConverter converter = new CountingConverter(CommandConverterTest.stub("copy.sh %IN% %OUT% 0.3"));
+		File output = new File(folder.getRoot(), "output.flv");
+		assertEquals(Status.PENDING, service.submit(converter, input, output, null));
+		Status again = service.submit(converter, input, output, null);
+		assertTrue(again == Status.PENDING || again == Status.RUNNING);
+		awaitStatus(output, Status.DONE);
+		assertEquals(Status.DONE, service.submit(converter, input, output, null));
+		assertEquals(1, converter.getCount());
+	}
+
+	/**
+	 * A failed conversion is kept failed, even by a new service after a restart
+	 */
+	@Test
+	public void failuresArePersisted() throws Exception {
+		service = newService(1, 100);
+		CountingConverter converter = new CountingConverter(CommandConverterTest.stub("fail.sh %IN% %OUT%"));
+		File output = new File(folder.getRoot(), "output.flv");
+		service.submit(converter, input, output, null);
+		awaitStatus(output, Status.FAILED);
+		assertTrue(TranscodingService.getFailedFile(output).length() > 0);
+
+		service.destroy();
+		service = newService(1, 100);
+		assertEquals(Status.FAILED, service.submit(converter, input, output, null));
+		assertEquals(1, converter.getCount());
+	}
+
+	/**
+	 * A conversion interrupted by the stop of the service is not failed, it is run again by a new service
+	 */
+	@Test
+	public void interruptedConversionsAreRequestedAgain() throws Exception {
+		service = newService(1, 100);
+		File output = new File(folder.getRoot(), "output.flv");
+		service.submit(CommandConverterTest.stub("hang.sh %IN% %OUT%"), input, output, null);
+		awaitStatus(output, Status.RUNNING);
+		service.destroy();
+		awaitStatus(output, Status.NONE);
+		assertFalse(TranscodingService.getFailedFile(output).exists());
+
+		service = newService(1, 100);
+		assertEquals(Status.PENDING, service.submit(CommandConverterTest.stub("copy.sh %IN% %OUT%"), input, output,
+				null));
+		awaitStatus(output, Status.DONE);
+	}
+
+	/**
+	 * A converter without command is a configuration error, its conversions are not failed
+	 */
+	@Test
+	public void conversionsWithoutCommandAreNotFailed() throws Exception {
+		service = newService(1, 100);
+		VideoConverter converter = new VideoConverter();
+		converter.setCommandLine(null);
+		File output = new File(folder.getRoot(), "output.flv");
+		assertEquals(Status.NONE, service.submit(converter, input, output, null));
+		assertEquals(0, service.getJobCount());
+		assertFalse(TranscodingService.getFailedFile(output).exists());
+	}
+
+	/**
+	 * The conversions requested while the queue is full are refused, they are requested again later
+	 */
+	@Test
+	public void conversionsBeyondTheCapacityAreRefused() throws Exception {
+		service = newService(1, 1);
+		CommandConverter converter = CommandConverterTest.stub("hang.sh %IN% %OUT%");
+		converter.setTimeout(1000);
+		File running = new File(folder.getRoot(), "running.flv");
+		File waiting = new File(folder.getRoot(), "waiting.flv");
+		File refused = new File(folder.getRoot(), "refused.flv");
+		service.submit(converter, input, running, null);
+		awaitStatus(running, Status.RUNNING);
+		assertEquals(Status.PENDING, service.submit(converter, input, waiting, null));
+		assertEquals(Status.NONE, service.submit(converter, input, refused, null));
+		assertEquals(Status.NONE, service.getStatus(refused));
+		/* the hanging commands are killed, their conversions fail */
+		awaitStatus(waiting, Status.FAILED);
+		assertEquals(Status.FAILED, service.getStatus(running));
+	}
+
+	private static TranscodingService newService(int maxProcesses, int capacity) throws Exception {
+		TranscodingService service = new TranscodingService();
+		service.setMaxProcesses(maxProcesses);
+		service.setCapacity(capacity);
+		service.afterPropertiesSet();
+		return service;
+	}
+
+	private void awaitStatus(File output, Status status) throws InterruptedException {
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (service.getStatus(output) != status && System.currentTimeMillis() < end) {
+			Thread.sleep(20);
+		}
+		assertEquals(status, service.getStatus(output));
+	}
+
+	/**
+	 * Converter that counts the conversions and the ones running at the same time
+	 */
+	private static class CountingConverter implements MediaConverter {
+
+		private final MediaConverter converter;
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		private final AtomicInteger running = new AtomicInteger();
+
+		private final AtomicInteger maxRunning = new AtomicInteger();
+
+		private CountingConverter(MediaConverter converter) {
+			this.converter = converter;
+		}
+
+		@Override
+		public String convert(File input, File output, String mimeType) {
+			count.incrementAndGet();
+			int current = running.incrementAndGet();
+			int max;
+			do {
+				max = maxRunning.get();
+			} while (current > max && !maxRunning.compareAndSet(max, current));
+			try {
+				return converter.convert(input, output, mimeType);
+			} finally {
+				running.decrementAndGet();
+			}
+		}
+
+		private int getCount() {
+			return count.get();
+		}
+
+		private int getMaxRunning() {
+			return maxRunning.get();
+		}
+	}
+
+}
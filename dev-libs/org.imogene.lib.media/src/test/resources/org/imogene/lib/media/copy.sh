@@ -0,0 +1,6 @@
+#!/bin/sh
+# stub converter: copies the input to the output after an optional delay in seconds
+if [ -n "$3" ]; then
+	sleep "$3"
+fi
+cp "$1" "$2"
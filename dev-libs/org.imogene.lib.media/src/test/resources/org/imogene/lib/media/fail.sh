@@ -0,0 +1,6 @@
+#!/bin/sh
+# stub converter: writes 5 MB of output, then fails
+head -c 5000000 /dev/zero | tr "\\000" "x"
+echo
+echo "stub failure"
+exit 3
@@ -0,0 +1,3 @@
+#!/bin/sh
+# stub converter: never ends
+exec sleep 60
@@ -0,0 +1,3 @@
+#!/bin/sh
+# stub converter: succeeds without writing its output
+exit 0
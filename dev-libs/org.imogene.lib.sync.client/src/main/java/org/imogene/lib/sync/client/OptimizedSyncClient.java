@@ -21,11 +21,22 @@ public interface OptimizedSyncClient {
 	public static final String HEADER_NAME = "medoo-sync";
 	public static final String HEADER_VALUE = "synchro";
 
+	/* compression, the client modifications are sent deflated with a specific content type */
+	public static final String HEADER_ENCODING = "medoo-sync-encoding";
+	public static final String ENCODING_GZIP = "gzip";
+	public static final String ENCODING_DEFLATE = "deflate";
+	public static final String CONTENT_TYPE_DEFLATE = "application/x-medoo-deflate";
+
+	/* binaries, their content can be sent in binary frames instead of being base64 encoded in the XML */
+	public static final String HEADER_BINARY = "medoo-sync-binary";
+	public static final String BINARY_FRAMED = "framed";
+
 	/* parameters constants */
 	public static final String PARAM_CMD = "cmd";
 	public static final String PARAM_TERMINALID = "terminal";
 	public static final String PARAM_LENGTH = "len";
 	public static final String PARAM_SESSION = "session";
+	public static final String PARAM_DIRECT = "direct";
 
 	/* command constants */
 	public static final String CMD_AUTH = "auth";
@@ -76,10 +87,11 @@ public interface OptimizedSyncClient {
 	 * 
 	 * @param sessionId the session id
 	 * @param bytesReceived number of bytes already received
-	 * @return Acknowledge or Error
+	 * @return the number of bytes after which the server modifications are resumed, lower than the number of bytes
+	 *         received if the server can not resume the transfer after them
 	 * @throws AuthenticationException
 	 */
-	public void resumeReceive(String sessionId, long bytesReceived) throws SynchronizationException,
+	public long resumeReceive(String sessionId, long bytesReceived) throws SynchronizationException,
 			AuthenticationException;
 
 	/**
@@ -142,4 +154,12 @@ public interface OptimizedSyncClient {
 	 */
 	public int directSend(String sessionId, InputStream out) throws Exception;
 
+	/**
+	 * Check if the server reads the client modifications written as framed documents, in which the content of the
+	 * binaries is not base64 encoded. The server capabilities are known once a session has been initialized.
+	 * 
+	 * @return {@code true} if the client modifications can be written with a FramedOutputStream
+	 */
+	public boolean acceptsFramedBinaries();
+
 }
@@ -3,6 +3,9 @@ package org.imogene.lib.sync.client.http;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.GZIPInputStream;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.httpclient.Header;
@@ -34,6 +37,15 @@ public class OptimizedSyncClientHttp implements OptimizedSyncClient {
 	private String password;
 	private String terminalId;
 
+	/* true to compress the transferred data, when the server supports it */
+	private boolean compression = true;
+	/* true if the server accepts deflated client modifications */
+	private boolean deflateAccepted = false;
+	/* true if the server accepts client modifications written as framed documents */
+	private boolean framedAccepted = false;
+	/* true to receive the server modifications without a work file on the server, they can not be resumed then */
+	private boolean direct = false;
+
 	/**
 	 * By using this constructor, you specify that you want to use the HTTP authentication based on the specified login
 	 * and password. This authentication will be set in all requests.
@@ -50,6 +62,27 @@ public class OptimizedSyncClientHttp implements OptimizedSyncClient {
 		this.terminalId = terminalId;
 	}
 
+	/**
+	 * Enable or disable the compression of the transferred data, the compression is only used when the server
+	 * supports it
+	 * 
+	 * @param compression true to compress the transferred data
+	 */
+	public void setCompression(boolean compression) {
+		this.compression = compression;
+	}
+
+	/**
+	 * Ask the server to stream its modifications straight into the response, without writing them in a work file
+	 * first. The transfer starts sooner but can not be resumed, it suits the clients that do not use the resume
+	 * commands.
+	 * 
+	 * @param direct true to receive the server modifications directly
+	 */
+	public void setDirect(boolean direct) {
+		this.direct = direct;
+	}
+
 	@Override
 	public void setUrl(String url) {
 		this.url = url.endsWith("html") ? url : (url.endsWith("/") ? url + "sync.html" : url + "/sync.html");
@@ -142,7 +175,7 @@ public class OptimizedSyncClientHttp implements OptimizedSyncClient {
 	}
 
 	@Override
-	public void resumeReceive(String sessionId, long bytesReceived) throws SynchronizationException,
+	public long resumeReceive(String sessionId, long bytesReceived) throws SynchronizationException,
 			AuthenticationException {
 		try {
 			// request construction
@@ -161,7 +194,14 @@ public class OptimizedSyncClientHttp implements OptimizedSyncClient {
 			checkResponseCode(code);
 			checkHeader(method);
 
-			if (!RESPONSE_OK.equals(method.getResponseBodyAsString())) {
+			String response = method.getResponseBodyAsString();
+			if (RESPONSE_OK.equals(response)) {
+				return bytesReceived;
+			}
+			/* the server can not resume after the bytes received, it gives the offset to resume from */
+			try {
+				return Long.parseLong(response);
+			} catch (NumberFormatException e) {
 				throw new SynchronizationException("The server return an error code",
 						SynchronizationException.ERROR_RECEIVE);
 			}
@@ -185,6 +225,8 @@ public class OptimizedSyncClientHttp implements OptimizedSyncClient {
 			NameValuePair[] params = new NameValuePair[] { sessionParam, cmdParam, lengthParam };
 			GetMethod method = httpGetMethod(url);
 			method.setQueryString(params);
+			acceptCompression(method);
+			acceptFramedBinaries(method);
 			HttpClient client = new HttpClient();
 
 			// request execution
@@ -194,10 +236,8 @@ public class OptimizedSyncClientHttp implements OptimizedSyncClient {
 			checkResponseCode(code);
 			checkHeader(method);
 
-			// read data sent by the server
-			long expectedLength = method.getResponseContentLength();
-			InputStream is = method.getResponseBodyAsStream();
-			writeInFile(is, out, expectedLength);
+			// read data sent by the server, the offset refers to the uncompressed data
+			writeInFile(method, out);
 			return 0;
 		} catch (AuthenticationException e) {
 			throw e;
@@ -251,9 +291,16 @@ public class OptimizedSyncClientHttp implements OptimizedSyncClient {
 			// request construction
 			NameValuePair sessionParam = new NameValuePair(PARAM_SESSION, sessionId);
 			NameValuePair cmdParam = new NameValuePair(PARAM_CMD, CMD_SERVERMODIF);
-			NameValuePair[] params = new NameValuePair[] { sessionParam, cmdParam };
+			NameValuePair[] params = null;
+			if (direct) {
+				params = new NameValuePair[] { sessionParam, cmdParam, new NameValuePair(PARAM_DIRECT, "true") };
+			} else {
+				params = new NameValuePair[] { sessionParam, cmdParam };
+			}
 			GetMethod method = httpGetMethod(url);
 			method.setQueryString(params);
+			acceptCompression(method);
+			acceptFramedBinaries(method);
 			HttpClient client = new HttpClient();
 
 			// request execution
@@ -264,10 +311,7 @@ public class OptimizedSyncClientHttp implements OptimizedSyncClient {
 			checkHeader(method);
 
 			// read data sent by the server
-			long expectedLength = method.getResponseContentLength();
-			// System.out.println("Lenght of the result :"+expectedLength);
-			InputStream is = method.getResponseBodyAsStream();
-			writeInFile(is, out, expectedLength);
+			writeInFile(method, out);
 		} catch (AuthenticationException e) {
 			throw e;
 		} catch (SynchronizationException e) {
@@ -300,13 +344,23 @@ public class OptimizedSyncClientHttp implements OptimizedSyncClient {
 	 */
 	private int sendData(String sessionId, String cmd, InputStream data) throws SynchronizationException,
 			AuthenticationException {
+		Deflater deflater = null;
 		try {
 			/* request construction */
 			PostMethod method = httpPostMethod(url);
 			StringPart sessionParam = new StringPart(PARAM_SESSION, sessionId);
 			StringPart cmdParam = new StringPart(PARAM_CMD, cmd);
-			SyncPartSource dataSource = new SyncPartSource(data, sessionId + ".cmodif", data.available());
-			FilePart dataFile = new FilePart("data", dataSource);
+			FilePart dataFile = null;
+			if (compression && deflateAccepted) {
+				/* the compressed length is not known in advance, the request is chunked */
+				deflater = new Deflater();
+				SyncPartSource dataSource = new SyncPartSource(new DeflaterInputStream(data, deflater), sessionId
+						+ ".cmodif", -1);
+				dataFile = new FilePart("data", dataSource, CONTENT_TYPE_DEFLATE, null);
+			} else {
+				SyncPartSource dataSource = new SyncPartSource(data, sessionId + ".cmodif", data.available());
+				dataFile = new FilePart("data", dataSource);
+			}
 			Part[] parts = { sessionParam, cmdParam, dataFile };
 			logger.debug("send data to url : " + url + " cmd : " + cmd);
 			/* execute the request */
@@ -332,6 +386,10 @@ public class OptimizedSyncClientHttp implements OptimizedSyncClient {
 		} catch (Exception e) {
 			throw new SynchronizationException("Command 'send': " + e.getLocalizedMessage(), e,
 					SynchronizationException.ERROR_SEND);
+		} finally {
+			if (deflater != null) {
+				deflater.end();
+			}
 		}
 	}
 
@@ -362,11 +420,49 @@ public class OptimizedSyncClientHttp implements OptimizedSyncClient {
 		}
 	}
 
-	private static void checkHeader(HttpMethod method) throws SynchronizationException {
+	private void checkHeader(HttpMethod method) throws SynchronizationException {
 		Header header = method.getResponseHeader(HEADER_NAME);
 		if (header == null || !HEADER_VALUE.equals(header.getValue())) {
 			throw new SynchronizationException("HTTP header is invalid", SynchronizationException.ERROR_AUTH);
 		}
+		Header encoding = method.getResponseHeader(HEADER_ENCODING);
+		deflateAccepted = encoding != null && encoding.getValue().contains(ENCODING_DEFLATE);
+		Header binary = method.getResponseHeader(HEADER_BINARY);
+		framedAccepted = binary != null && binary.getValue().contains(BINARY_FRAMED);
+	}
+
+	private void acceptCompression(HttpMethod method) {
+		if (compression) {
+			method.setRequestHeader("Accept-Encoding", ENCODING_GZIP);
+		}
+	}
+
+	/* the server modifications are read with FramedInputStream.open, whatever their format */
+	private void acceptFramedBinaries(HttpMethod method) {
+		method.setRequestHeader(HEADER_BINARY, BINARY_FRAMED);
+	}
+
+	@Override
+	public boolean acceptsFramedBinaries() {
+		return framedAccepted;
+	}
+
+	/**
+	 * Write the response data of a request into the output stream, the data are uncompressed if they have been
+	 * gzipped by the server
+	 * 
+	 * @param method the executed request
+	 * @param out the outputStream
+	 * @return 0 if done with success, -1 otherwise
+	 */
+	private static int writeInFile(HttpMethodBase method, OutputStream out) throws IOException {
+		InputStream is = method.getResponseBodyAsStream();
+		Header encoding = method.getResponseHeader("Content-Encoding");
+		if (encoding != null && ENCODING_GZIP.equals(encoding.getValue())) {
+			/* the uncompressed length is not known, the data are read up to the end of the stream */
+			return writeInFile(new GZIPInputStream(is), out, -1);
+		}
+		return writeInFile(is, out, method.getResponseContentLength());
 	}
 
 	/**
@@ -398,8 +494,11 @@ public class OptimizedSyncClientHttp implements OptimizedSyncClient {
 				out.write(buffer, 0, i);
 				nbAttemps = 0;
 			}
-			/* is the reading process finished ? */
-			finished = ((bytesRead >= expectedLength && expectedLength != -1) || ++nbAttemps > maxAttempts);
+			/*
+			 * is the reading process finished ? when the length is unknown (streamed response), the end of the stream
+			 * means that all the data have been read
+			 */
+			finished = (expectedLength == -1 || bytesRead >= expectedLength || ++nbAttemps > maxAttempts);
 
 			/* if not finish we wait and we retry */
 			if (!finished) {
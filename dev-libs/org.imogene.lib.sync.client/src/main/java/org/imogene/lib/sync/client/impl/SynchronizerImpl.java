@@ -1,11 +1,13 @@
 package org.imogene.lib.sync.client.impl;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -31,6 +33,7 @@ import org.imogene.lib.sync.handler.DataHandlerManager;
 import org.imogene.lib.sync.handler.ImogBeanHandler;
 import org.imogene.lib.sync.history.SyncHistory;
 import org.imogene.lib.sync.history.SyncHistoryDao;
+import org.imogene.lib.sync.serializer.FramedOutputStream;
 import org.imogene.lib.sync.serializer.ImogSerializationException;
 import org.imogene.lib.sync.serializer.ImogSerializer;
 import org.springframework.transaction.annotation.Transactional;
@@ -172,7 +175,10 @@ public class SynchronizerImpl implements Synchronizer {
 
 			/* 2 - send client modification */
 			File outFile = new File(directory, sessionId + ".lmodif");
-			FileOutputStream fos = new FileOutputStream(outFile);
+			OutputStream fos = new FileOutputStream(outFile);
+			if (syncClient.acceptsFramedBinaries()) {
+				fos = new FramedOutputStream(new BufferedOutputStream(fos));
+			}
 
 			// we take the date just before to access the database and to serialize
 			Date tempDate = offset != null ? new Date(System.currentTimeMillis() + offset) : new Date();
@@ -272,13 +278,31 @@ public class SynchronizerImpl implements Synchronizer {
 				tmp.delete();
 			}
 			File inFile = new File(directory, error.getId() + ".smodif");
-			syncClient.resumeReceive(error.getId(), inFile.length());
+			long bytesReceived = syncClient.resumeReceive(error.getId(), inFile.length());
+			if (bytesReceived < inFile.length()) {
+				/* the server sends the modifications again from this offset, the data received after are dropped */
+				logger.debug("The server resumes the receive operation after " + bytesReceived + " bytes");
+				RandomAccessFile raf = new RandomAccessFile(inFile, "rw");
+				try {
+					raf.setLength(bytesReceived);
+				} finally {
+					raf.close();
+				}
+			}
 
 			/* 2 - receiving data */
 			FileOutputStream fos = new FileOutputStream(inFile, true);
-			syncClient.resumeRequestModification(error.getId(), fos, inFile.length());
+			try {
+				syncClient.resumeRequestModification(error.getId(), fos, bytesReceived);
+			} finally {
+				fos.close();
+			}
 			FileInputStream sFis = new FileInputStream(inFile);
-			applyIncomingModifications(sFis);
+			try {
+				applyIncomingModifications(sFis);
+			} finally {
+				sFis.close();
+			}
 			error.setStatus(SyncHistory.STATUS_OK);
 			historyDao.saveOrUpdate(error);
 
@@ -10,9 +10,8 @@ public class ImogXmlSerializerImpl extends ImogXmlSerializer {
 
 	@Override
 	@SuppressWarnings("unchecked")
-	protected <T extends ImogBean> boolean save(T entity, ImogActor user) {
+	protected <T extends ImogBean> boolean save(T entity, ImogBean exist, ImogActor user) {
 		ImogBeanHandler<T> handler = (ImogBeanHandler<T>) dataHandlerManager.getHandler(entity.getClass());
-		ImogBean exist = handler.loadEntity(entity.getId());
 		handler.saveOrUpdate(entity, user, exist == null || SyncConstants.SYNC_ID_SYS.equals(exist.getModifiedFrom()));
 		return true;
 	}
@@ -0,0 +1,92 @@
+package org.imogene.lib.sync.client.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Vector;
+
+import org.imogene.lib.sync.client.OptimizedSyncClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests of the requests sent by the HTTP synchronization client
+ *
+ * @author MEDES-IMPS
+ */
+public class OptimizedSyncClientHttpTest {
+
+	private HttpServer server;
+
+	private final List<String> queries = new Vector<String>();
+
+	private byte[] modifications;
+
+	@Before
+	public void setUp() throws IOException {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			builder.append("<entity id=\"").append(i).append("\"/>\n");
+		}
+		modifications = builder.toString().getBytes("UTF-8");
+
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				queries.add(exchange.getRequestURI().getQuery());
+				exchange.getResponseHeaders().set(OptimizedSyncClient.HEADER_NAME, OptimizedSyncClient.HEADER_VALUE);
+				/* streamed response, without Content-Length, as the direct transfers are */
+				exchange.sendResponseHeaders(200, 0);
+				OutputStream out = exchange.getResponseBody();
+				out.write(modifications);
+				out.close();
+			}
+		});
+		server.start();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	@Test
+	public void directTransferIsRequested() throws Exception {
+		OptimizedSyncClientHttp client = newClient();
+		client.setDirect(true);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		client.requestServerModifications("s1", out);
+
+		assertTrue(queries.get(0).contains(OptimizedSyncClient.PARAM_DIRECT + "=true"));
+		assertArrayEquals(modifications, out.toByteArray());
+	}
+
+	@Test
+	public void resumableTransferByDefault() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		newClient().requestServerModifications("s1", out);
+
+		assertFalse(queries.get(0).contains(OptimizedSyncClient.PARAM_DIRECT));
+		assertArrayEquals(modifications, out.toByteArray());
+	}
+
+	private OptimizedSyncClientHttp newClient() {
+		OptimizedSyncClientHttp client = new OptimizedSyncClientHttp("http://localhost:" + server.getAddress().getPort()
+				+ "/", "login", "password", "term");
+		client.setCompression(false);
+		return client;
+	}
+
+}
@@ -16,6 +16,8 @@ import org.apache.log4j.Logger;
 import org.imogene.lib.common.binary.Binary;
 import org.imogene.lib.common.binary.file.BinaryFile;
 import org.imogene.lib.common.binary.file.BinaryFileManager;
+import org.imogene.lib.sync.serializer.FramedInputStream;
+import org.imogene.lib.sync.serializer.FramedOutputStream;
 
 import com.thoughtworks.xstream.converters.Converter;
 import com.thoughtworks.xstream.converters.MarshallingContext;
@@ -24,7 +26,9 @@ import com.thoughtworks.xstream.io.HierarchicalStreamReader;
 import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
 
 /**
- * XStream converter for Binary.
+ * XStream converter for Binary. The content is base64 encoded in the XML, unless the document is written in a
+ * FramedOutputStream, in which case the content is written in a binary frame and the XML only references it by the
+ * binary id and the hash of the content.
  * 
  * @author MEDES-IMPS
  */
@@ -93,6 +97,11 @@ public class BinaryFileConverter implements Converter {
 		writer.endNode();
 
 		// content
+		FramedOutputStream framed = (FramedOutputStream) context.get(FramedOutputStream.class);
+		if (framed != null) {
+			marshalFramed(binary, writer, framed);
+			return;
+		}
 		writer.startNode("content");
 		if (binary.getLength() > 0) {
 
@@ -191,9 +200,12 @@ public class BinaryFileConverter implements Converter {
 
 		// content
 		reader.moveDown();
-		if (reader.hasMoreChildren()) {
+		String hash = reader.getAttribute("hash");
+		if (hash != null) {
+			unmarshalFramed(binary, hash, (FramedInputStream) context.get(FramedInputStream.class));
+		} else if (reader.hasMoreChildren()) {
 			try {
-				File resultFile = BinaryFileManager.getInstance().buildFilePath(id, fileName);
+				File resultFile = BinaryFileManager.getInstance().createTempFile();
 				OutputStream out = new FileOutputStream(resultFile);
 
 				// write content from xml to temp file
@@ -215,18 +227,79 @@ public class BinaryFileConverter implements Converter {
 					reader.moveUp();
 				}
 				out.close();
+				BinaryFileManager.getInstance().store(binary, resultFile);
 
 			} catch (FileNotFoundException e) {
 				logger.error(e.getMessage());
 			} catch (IOException e) {
 				logger.error(e.getMessage());
 			}
+		} else {
+			/* the content is unchanged */
+			binary.setContentHash(BinaryFileManager.getInstance().getContentHash(id));
 		}
 		reader.moveUp();
 
 		return binary;
 	}
 
+	/**
+	 * Write the content of a binary in a binary frame, before the content node that references it
+	 * 
+	 * @param binary the binary
+	 * @param writer the XML writer
+	 * @param framed the framed document
+	 */
+	private void marshalFramed(BinaryFile binary, HierarchicalStreamWriter writer, FramedOutputStream framed) {
+		String hash = null;
+		if (binary.getLength() > 0) {
+			InputStream is = binary.createInputStream();
+			if (is != null) {
+				try {
+					/* the XML written so far has to be framed before the binary */
+					writer.flush();
+					hash = framed.writeBinary(binary.getId(), is);
+				} catch (IOException e) {
+					logger.error(e.getMessage());
+				} finally {
+					try {
+						is.close();
+					} catch (IOException e) {
+						logger.error(e.getMessage());
+					}
+				}
+			}
+		}
+		writer.startNode("content");
+		if (hash != null) {
+			writer.addAttribute("hash", hash);
+		}
+		writer.endNode();
+	}
+
+	/**
+	 * Store the content of a binary received in a binary frame, the hash of the frame is the hash of the content in
+	 * the binary store
+	 * 
+	 * @param binary the binary
+	 * @param hash the hash of the content
+	 * @param framed the framed document, null if the document is not framed
+	 */
+	private void unmarshalFramed(BinaryFile binary, String hash, FramedInputStream framed) {
+		File received = framed != null ? framed.takeBinary(binary.getId(), hash) : null;
+		if (received == null) {
+			logger.error("The content of the binary " + binary.getId() + " has not been received");
+			binary.setContentHash(BinaryFileManager.getInstance().getContentHash(binary.getId()));
+			return;
+		}
+		try {
+			BinaryFileManager.getInstance().store(binary, received, hash);
+		} catch (IOException e) {
+			logger.error(e.getMessage());
+			received.delete();
+		}
+	}
+
 	@SuppressWarnings("rawtypes")
 	@Override
 	public boolean canConvert(Class cl) {
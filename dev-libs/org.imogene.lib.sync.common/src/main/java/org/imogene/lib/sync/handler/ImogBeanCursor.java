@@ -0,0 +1,115 @@
+package org.imogene.lib.sync.handler;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Vector;
+
+import org.imogene.lib.common.criteria.ImogCriterion;
+import org.imogene.lib.common.dao.ImogBeanDao;
+import org.imogene.lib.common.entity.ImogBean;
+import org.imogene.lib.common.security.ImogBeanFilter;
+
+/**
+ * Cursor that walks through the entities to synchronize page by page, so that they do not have to be all loaded in
+ * memory at the same time. The pages are loaded with a seek on the entity id, so that the cost of a page does not grow
+ * with its position. The cursor can also walk through a given list of entity ids, which are then loaded page by page.
+ * The entities of a page are detached from the persistence context when the next page is requested or when the cursor
+ * is closed.
+ *
+ * @author MEDES-IMPS
+ */
+public class ImogBeanCursor<T extends ImogBean> {
+
+	private final ImogBeanDao<T> dao;
+	private final ImogBeanFilter filter;
+	private final Date date;
+	private final ImogCriterion criterion;
+	private final int pageSize;
+	private final List<String> ids;
+
+	private String lastId = null;
+	private int position = 0;
+	private boolean exhausted = false;
+	private List<T> current;
+
+	/**
+	 * @param dao the DAO used to load the pages
+	 * @param filter the filter used to secure the entities (if null, no filtering)
+	 * @param date the upload date since which entities are searched (if null, all the entities are searched)
+	 * @param criterion request criteria
+	 * @param pageSize the maximum number of entities of a page
+	 */
+	public ImogBeanCursor(ImogBeanDao<T> dao, ImogBeanFilter filter, Date date, ImogCriterion criterion, int pageSize) {
+		this.dao = dao;
+		this.filter = filter;
+		this.date = date;
+		this.criterion = criterion;
+		this.pageSize = pageSize;
+		this.ids = null;
+	}
+
+	/**
+	 * @param dao the DAO used to load the pages
+	 * @param filter the filter used to secure the entities (if null, no filtering)
+	 * @param ids the ids of the entities to walk through
+	 * @param criterion request criteria
+	 * @param pageSize the maximum number of entities of a page
+	 */
+	public ImogBeanCursor(ImogBeanDao<T> dao, ImogBeanFilter filter, List<String> ids, ImogCriterion criterion,
+			int pageSize) {
+		this.dao = dao;
+		this.filter = filter;
+		this.date = null;
+		this.criterion = criterion;
+		this.pageSize = pageSize;
+		this.ids = ids;
+		this.exhausted = ids.isEmpty();
+	}
+
+	/**
+	 * Indicates if there are remaining pages to load
+	 *
+	 * @return true if the next page may contain entities
+	 */
+	public boolean hasNext() {
+		return !exhausted;
+	}
+
+	/**
+	 * Load the next page of entities, the entities of the previous page are detached.
+	 *
+	 * @return the entities of the page, may be empty if all the entities of the page have been filtered
+	 */
+	public List<T> next() {
+		close();
+		if (ids != null) {
+			int end = Math.min(position + pageSize, ids.size());
+			current = dao.load(new Vector<String>(ids.subList(position, end)), criterion);
+			position = end;
+			exhausted = position == ids.size();
+		} else {
+			current = dao.loadUploadedAfter(lastId, pageSize, date, criterion);
+			if (!current.isEmpty()) {
+				lastId = current.get(current.size() - 1).getId();
+			}
+			exhausted = current.size() < pageSize;
+		}
+		if (filter != null) {
+			return filter.<T> toSecure(current);
+		}
+		return current;
+	}
+
+	/**
+	 * Detach the entities of the current page from the persistence context.
+	 */
+	public void close() {
+		if (current != null) {
+			for (T entity : current) {
+				dao.detach(entity);
+			}
+			current = null;
+		}
+	}
+
+}
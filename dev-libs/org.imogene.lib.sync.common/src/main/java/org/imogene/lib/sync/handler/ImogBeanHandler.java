@@ -31,6 +31,14 @@ public interface ImogBeanHandler<T extends ImogBean> {
 	 */
 	public T loadEntity(String entityId, ImogActor user);
 
+	/**
+	 * Load the ImogBeans with the specified ids from the database
+	 * 
+	 * @param entityIds the Entity ids
+	 * @return the Entities that are in the database
+	 */
+	public List<T> loadEntities(List<String> entityIds);
+
 	/**
 	 * Gets a list of entities whose fields are filtered depending on the user
 	 * privileges and user defined clients filters
@@ -85,6 +93,33 @@ public interface ImogBeanHandler<T extends ImogBean> {
 	 */
 	public T loadUploaded(String entityId, Date date, ImogActor user);
 
+	/**
+	 * Open a cursor on the Entities uploaded since the specified date depending
+	 * on the user privileges and user defined clients filters
+	 * 
+	 * @param date the modification date (if null, all the entities are
+	 *            searched)
+	 * @param user the user which is performing the data access
+	 * @param terminalId Id of the terminal the current user is using
+	 * @param pageSize the number of entities loaded at once
+	 * @return a cursor on the Entities modified since the specified date
+	 */
+	public ImogBeanCursor<T> openCursor(Date date, ImogActor user, String terminalId, int pageSize);
+
+	/**
+	 * Open a cursor on the Entities with the specified ids depending on
+	 * the user privileges and user defined clients filters. If a client
+	 * filter has been defined since the last synchronization, all the
+	 * entities are searched.
+	 * 
+	 * @param entityIds the ids of the Entities to search
+	 * @param user the user which is performing the data access
+	 * @param terminalId Id of the terminal the current user is using
+	 * @param pageSize the number of entities loaded at once
+	 * @return a cursor on the Entities
+	 */
+	public ImogBeanCursor<T> openCursor(List<String> entityIds, ImogActor user, String terminalId, int pageSize);
+
 	/**
 	 * Create an empty entity with this id, waiting for the update incoming in
 	 * this synchronization session.
@@ -93,6 +128,14 @@ public interface ImogBeanHandler<T extends ImogBean> {
 	 * @return the new entity created
 	 */
 	public T createNewEntity(String id);
+
+	/**
+	 * Store new entities in the database, the stored instances become
+	 * managed by the current persistence context.
+	 * 
+	 * @param entities the entities to store
+	 */
+	public void persist(List<T> entities);
 	
 	/**
 	 * Store or update an entity in the database
@@ -44,6 +44,11 @@ public abstract class ImogBeanHandlerImpl<T extends ImogBean> implements ImogBea
 		}
 	}
 
+	@Override
+	public List<T> loadEntities(List<String> entityIds) {
+		return getDao().load(entityIds);
+	}
+
 	@Override
 	public List<T> loadEntities(ImogActor user, String terminalId) {
 		if (user != null) {
@@ -127,6 +132,52 @@ public abstract class ImogBeanHandlerImpl<T extends ImogBean> implements ImogBea
 		}
 	}
 
+	@Override
+	public ImogBeanCursor<T> openCursor(Date date, ImogActor user, String terminalId, int pageSize) {
+		if (user != null) {
+			ImogConjunction conj = new ImogConjunction();
+			conj.add(createFilterJuntion(user));
+			ImogJunction clientFilterJunction = createClientFilterJuntion(user.getLogin(), terminalId);
+
+			if (clientFilterJunction != null) {
+				conj.add(clientFilterJunction);
+				/*
+				 * if new client filter, send all cardentities, not only last modified ones
+				 */
+				if (hasNewClientFilter) {
+					hasNewClientFilter = false;
+					date = null;
+				}
+			}
+			return new ImogBeanCursor<T>(getDao(), filter, date, conj, pageSize);
+		} else {
+			return new ImogBeanCursor<T>(getDao(), null, date, null, pageSize);
+		}
+	}
+
+	@Override
+	public ImogBeanCursor<T> openCursor(List<String> entityIds, ImogActor user, String terminalId, int pageSize) {
+		if (user != null) {
+			ImogConjunction conj = new ImogConjunction();
+			conj.add(createFilterJuntion(user));
+			ImogJunction clientFilterJunction = createClientFilterJuntion(user.getLogin(), terminalId);
+
+			if (clientFilterJunction != null) {
+				conj.add(clientFilterJunction);
+				/*
+				 * if new client filter, send all cardentities, not only last modified ones
+				 */
+				if (hasNewClientFilter) {
+					hasNewClientFilter = false;
+					return new ImogBeanCursor<T>(getDao(), filter, (Date) null, conj, pageSize);
+				}
+			}
+			return new ImogBeanCursor<T>(getDao(), filter, entityIds, conj, pageSize);
+		} else {
+			return new ImogBeanCursor<T>(getDao(), null, entityIds, null, pageSize);
+		}
+	}
+
 	protected void saveOrUpdate(T entity, boolean neu) {
 		getDao().saveOrUpdate(entity, neu);
 	};
@@ -143,6 +194,13 @@ public abstract class ImogBeanHandlerImpl<T extends ImogBean> implements ImogBea
 		}
 	}
 
+	@Override
+	public void persist(List<T> entities) {
+		for (T entity : entities) {
+			getDao().persist(entity);
+		}
+	}
+
 	@Override
 	public T merge(T entity, boolean neu) {
 		return getDao().merge(entity, neu);
@@ -39,6 +39,8 @@ public class SyncHistory implements Serializable {
 
 	private int level;
 
+	private Long sequence;
+
 	@Column(name = "imogversion")
 	private Integer version;
 
@@ -82,6 +84,14 @@ public class SyncHistory implements Serializable {
 		this.level = level;
 	}
 
+	public Long getSequence() {
+		return sequence;
+	}
+
+	public void setSequence(Long sequence) {
+		this.sequence = sequence;
+	}
+
 	public Integer getVersion() {
 		return version;
 	}
@@ -0,0 +1,235 @@
+package org.imogene.lib.sync.serializer;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * Input stream that reads a synchronization document written with a FramedOutputStream. The stream gives the bytes of
+ * the XML frames, the binary frames being stored in temporary files as they are met. A binary frame is written before
+ * the XML that references it, so its content is stored when the binary is unserialized, and it is then taken with
+ * takeBinary.
+ *
+ * @author MEDES-IMPS
+ */
+public class FramedInputStream extends FilterInputStream {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final DataInputStream data;
+
+	/* directory of the temporary files, null for the default one */
+	private final File directory;
+
+	/* the received binaries and the hash of their content, by binary id */
+	private final Map<String, File> binaries = new HashMap<String, File>();
+	private final Map<String, String> hashes = new HashMap<String, String>();
+
+	/* number of bytes left in the current XML frame */
+	private int remaining = 0;
+	private boolean ended = false;
+
+	/**
+	 * @param in the underlying input stream, positioned after the header
+	 * @param directory the directory where the binaries are stored, null for the default temporary directory
+	 */
+	public FramedInputStream(InputStream in, File directory) {
+		super(in);
+		this.data = new DataInputStream(in);
+		this.directory = directory;
+	}
+
+	/**
+	 * Open a synchronization document, which is either a framed document or a plain XML document
+	 *
+	 * @param in the document
+	 * @return a FramedInputStream if the document is framed, otherwise a stream that gives the plain document
+	 * @throws IOException
+	 */
+	public static InputStream open(InputStream in) throws IOException {
+		InputStream buffered = in.markSupported() ? in : new BufferedInputStream(in, BUFFER_SIZE);
+		byte[] header = FramedOutputStream.HEADER;
+		buffered.mark(header.length);
+		int i = 0;
+		while (i < header.length && buffered.read() == header[i]) {
+			i++;
+		}
+		if (i == header.length) {
+			return new FramedInputStream(buffered, null);
+		}
+		buffered.reset();
+		return buffered;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!nextXmlFrame()) {
+			return -1;
+		}
+		int b = data.read();
+		if (b == -1) {
+			throw new EOFException("Truncated XML frame");
+		}
+		remaining--;
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!nextXmlFrame()) {
+			return -1;
+		}
+		int read = data.read(b, off, Math.min(len, remaining));
+		if (read == -1) {
+			throw new EOFException("Truncated XML frame");
+		}
+		remaining = remaining - read;
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		byte[] skipped = new byte[BUFFER_SIZE];
+		long total = 0;
+		while (total < n) {
+			int read = read(skipped, 0, (int) Math.min(skipped.length, n - total));
+			if (read == -1) {
+				break;
+			}
+			total = total + read;
+		}
+		return total;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return Math.min(remaining, in.available());
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		throw new IOException("mark/reset not supported");
+	}
+
+	/**
+	 * Take the content of a binary received in the document. The returned file is no more managed by this stream.
+	 *
+	 * @param id the binary id
+	 * @param hash the expected hash of the binary content
+	 * @return the file that contains the binary content, or null if it has not been received or if its hash does not
+	 *         match
+	 */
+	public File takeBinary(String id, String hash) {
+		File file = binaries.remove(id);
+		String received = hashes.remove(id);
+		if (file != null && !received.equalsIgnoreCase(hash)) {
+			file.delete();
+			return null;
+		}
+		return file;
+	}
+
+	/**
+	 * Delete the received binaries that have not been taken
+	 */
+	public void release() {
+		for (File file : binaries.values()) {
+			file.delete();
+		}
+		binaries.clear();
+		hashes.clear();
+	}
+
+	/**
+	 * Move to the next XML frame, storing the binary frames that are met
+	 *
+	 * @return false if the end of the document has been reached
+	 * @throws IOException
+	 */
+	private boolean nextXmlFrame() throws IOException {
+		while (remaining == 0) {
+			if (ended) {
+				return false;
+			}
+			int type = data.read();
+			if (type == -1) {
+				ended = true;
+			} else if (type == FramedOutputStream.XML_FRAME) {
+				remaining = data.readInt();
+			} else if (type == FramedOutputStream.BINARY_FRAME) {
+				readBinaryFrame();
+			} else {
+				throw new IOException("Unknown frame type: " + type);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Store the content of a binary frame in a temporary file
+	 *
+	 * @throws IOException
+	 */
+	private void readBinaryFrame() throws IOException {
+		String id = data.readUTF();
+		MessageDigest digest = FramedOutputStream.createDigest();
+		File file = File.createTempFile("imogbin", ".tmp", directory);
+		boolean stored = false;
+		try {
+			OutputStream out = new FileOutputStream(file);
+			try {
+				byte[] chunk = new byte[BUFFER_SIZE];
+				int length;
+				while ((length = data.readInt()) > 0) {
+					while (length > 0) {
+						int read = data.read(chunk, 0, Math.min(length, chunk.length));
+						if (read == -1) {
+							throw new EOFException("Truncated binary frame");
+						}
+						out.write(chunk, 0, read);
+						digest.update(chunk, 0, read);
+						length = length - read;
+					}
+				}
+			} finally {
+				out.close();
+			}
+			stored = true;
+		} finally {
+			/* the partial content is deleted whatever the failure, as an I/O error or a runtime exception */
+			if (!stored) {
+				file.delete();
+			}
+		}
+
+		File previous = binaries.put(id, file);
+		if (previous != null) {
+			previous.delete();
+		}
+		hashes.put(id, new String(Hex.encodeHex(digest.digest())));
+	}
+
+}
@@ -0,0 +1,176 @@
+package org.imogene.lib.sync.serializer;
+
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * Output stream that writes a synchronization document as a sequence of frames, so that the content of the binaries
+ * is transferred as raw bytes beside the XML instead of being base64 encoded inside it. The bytes written to the
+ * stream are sent in XML frames, the content of a binary is sent in a binary frame with writeBinary, and the XML
+ * only references it by id and hash. When a document is serialized in such a stream, the serializer writes the
+ * binaries as frames.
+ * <p>
+ * The document starts with the HEADER bytes and is followed by the frames:
+ * <ul>
+ * <li>XML frame: 'X', length (int), bytes</li>
+ * <li>binary frame: 'B', binary id (UTF), then chunks of length (int) and bytes, ended by a zero length</li>
+ * </ul>
+ *
+ * @author MEDES-IMPS
+ */
+public class FramedOutputStream extends FilterOutputStream {
+
+	/* the bytes that start a framed document, a plain XML document can not start with them */
+	public static final byte[] HEADER = { '#', 'i', 'm', 'o', 'g', '-', 'f', 'r', 'a', 'm', 'e', 's', '\n' };
+
+	/* the algorithm of the hash of the binaries */
+	public static final String HASH_ALGORITHM = "SHA-1";
+
+	static final int XML_FRAME = 'X';
+	static final int BINARY_FRAME = 'B';
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final DataOutputStream data;
+
+	/* the XML bytes that are not framed yet */
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int count = 0;
+
+	/**
+	 * Start a framed document
+	 *
+	 * @param out the underlying output stream
+	 * @throws IOException
+	 */
+	public FramedOutputStream(OutputStream out) throws IOException {
+		this(out, true);
+	}
+
+	/**
+	 * @param out the underlying output stream
+	 * @param header true to start a framed document, false to write a part of a document that is then copied in the
+	 *            document with writeFrames
+	 * @throws IOException
+	 */
+	public FramedOutputStream(OutputStream out, boolean header) throws IOException {
+		super(out);
+		data = new DataOutputStream(out);
+		if (header) {
+			data.write(HEADER);
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (count == buffer.length) {
+			writeXmlFrame();
+		}
+		buffer[count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (len > buffer.length - count) {
+			writeXmlFrame();
+		}
+		if (len >= buffer.length) {
+			data.writeByte(XML_FRAME);
+			data.writeInt(len);
+			data.write(b, off, len);
+		} else {
+			System.arraycopy(b, off, buffer, count, len);
+			count = count + len;
+		}
+	}
+
+	/**
+	 * Write the content of a binary in a binary frame, the XML written so far is framed first
+	 *
+	 * @param id the binary id
+	 * @param in the binary content, which is not closed
+	 * @return the hexadecimal hash of the content
+	 * @throws IOException
+	 */
+	public String writeBinary(String id, InputStream in) throws IOException {
+		writeXmlFrame();
+		MessageDigest digest = createDigest();
+		data.writeByte(BINARY_FRAME);
+		data.writeUTF(id);
+		byte[] chunk = new byte[BUFFER_SIZE];
+		try {
+			int read;
+			while ((read = in.read(chunk)) != -1) {
+				if (read > 0) {
+					data.writeInt(read);
+					data.write(chunk, 0, read);
+					digest.update(chunk, 0, read);
+				}
+			}
+		} finally {
+			/* the frame is ended even if the content can not be read entirely, so that the document stays readable */
+			data.writeInt(0);
+		}
+		return new String(Hex.encodeHex(digest.digest()));
+	}
+
+	/**
+	 * Copy the frames of a part of a document written with a FramedOutputStream without header
+	 *
+	 * @param in the frames to copy, which are not closed
+	 * @throws IOException
+	 */
+	public void writeFrames(InputStream in) throws IOException {
+		writeXmlFrame();
+		byte[] chunk = new byte[BUFFER_SIZE];
+		int read;
+		while ((read = in.read(chunk)) != -1) {
+			data.write(chunk, 0, read);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		writeXmlFrame();
+		data.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			out.close();
+		}
+	}
+
+	private void writeXmlFrame() throws IOException {
+		if (count > 0) {
+			data.writeByte(XML_FRAME);
+			data.writeInt(count);
+			data.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+
+	/**
+	 * Create the digest used to hash the content of the binaries
+	 *
+	 * @return a new digest
+	 */
+	static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
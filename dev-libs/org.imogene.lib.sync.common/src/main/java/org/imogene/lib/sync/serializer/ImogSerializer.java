@@ -31,6 +31,31 @@ public interface ImogSerializer {
 	 */
 	public <T extends ImogBean> void serialize(List<T> entities, OutputStream data) throws ImogSerializationException;
 
+	/**
+	 * Start a document in the specified output stream, in which entities are
+	 * then serialized by successive calls to serializeMulti
+	 * 
+	 * @param data the output stream
+	 */
+	public void startMulti(OutputStream data) throws ImogSerializationException;
+
+	/**
+	 * Serialize a list of entities in a document previously started with
+	 * startMulti
+	 * 
+	 * @param entities entities to serialize
+	 * @param data the output stream
+	 */
+	public <T extends ImogBean> void serializeMulti(List<T> entities, OutputStream data)
+			throws ImogSerializationException;
+
+	/**
+	 * End a document previously started with startMulti
+	 * 
+	 * @param data the output stream
+	 */
+	public void endMulti(OutputStream data) throws ImogSerializationException;
+
 	/**
 	 * Unserialize an entity, reading the input stream
 	 * 
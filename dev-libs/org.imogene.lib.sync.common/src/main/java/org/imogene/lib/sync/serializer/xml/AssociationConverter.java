@@ -29,10 +29,17 @@ public class AssociationConverter implements Converter {
 
 	@Override
 	public Object unmarshal(HierarchicalStreamReader reader, UnmarshallingContext context) {
+		String fieldName = reader.getNodeName();
 		reader.moveDown();
 		String className = reader.getNodeName();
 		String id = reader.getAttribute(0);
 		reader.moveUp();
+
+		/* if the import has a resolution context, the references are resolved by batch */
+		ReferenceResolver resolver = (ReferenceResolver) context.get(ReferenceResolver.class);
+		if (resolver != null) {
+			return resolver.association(fieldName, className, id);
+		}
 		return loadOrCreate(className, id);
 	}
 	
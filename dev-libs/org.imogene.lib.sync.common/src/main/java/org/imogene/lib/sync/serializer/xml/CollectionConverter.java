@@ -41,6 +41,9 @@ public class CollectionConverter implements Converter {
 	@Override
 	public Object unmarshal(HierarchicalStreamReader reader, UnmarshallingContext context) {
 
+		/* if the import has a resolution context, the references are resolved by batch */
+		ReferenceResolver resolver = (ReferenceResolver) context.get(ReferenceResolver.class);
+
 		reader.moveDown();
 
 		List<ImogBean> entities = new Vector<ImogBean>();
@@ -51,9 +54,16 @@ public class CollectionConverter implements Converter {
 			String id = reader.getAttribute(0);
 			reader.moveUp();
 
-			entities.add(loadOrCreate(className, id));
+			if (resolver != null) {
+				entities.add(resolver.reference(className, id));
+			} else {
+				entities.add(loadOrCreate(className, id));
+			}
 		}
 		reader.moveUp();
+		if (resolver != null) {
+			resolver.collection(entities);
+		}
 		return entities;
 	}
 
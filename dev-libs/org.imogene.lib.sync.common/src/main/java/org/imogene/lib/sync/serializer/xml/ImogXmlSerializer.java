@@ -1,39 +1,36 @@
 package org.imogene.lib.sync.serializer.xml;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-
 import org.apache.log4j.Logger;
 import org.imogene.lib.common.binary.Binary;
+import org.imogene.lib.common.dao.GenericDao;
+import org.imogene.lib.common.dao.NewEntityRegistry;
 import org.imogene.lib.common.entity.ImogActor;
 import org.imogene.lib.common.entity.ImogBean;
 import org.imogene.lib.media.BinaryOperation;
 import org.imogene.lib.sync.SyncConstants;
 import org.imogene.lib.sync.handler.DataHandlerManager;
+import org.imogene.lib.sync.serializer.FramedInputStream;
+import org.imogene.lib.sync.serializer.FramedOutputStream;
 import org.imogene.lib.sync.serializer.ImogSerializationException;
 import org.imogene.lib.sync.serializer.ImogSerializer;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 import com.thoughtworks.xstream.XStream;
 import com.thoughtworks.xstream.converters.Converter;
+import com.thoughtworks.xstream.converters.DataHolder;
+import com.thoughtworks.xstream.io.HierarchicalStreamDriver;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
 import com.thoughtworks.xstream.io.xml.DomDriver;
+import com.thoughtworks.xstream.io.xml.StaxDriver;
 
 /**
  * Static class that helps to the bean XML serialization.
@@ -46,11 +43,20 @@ public abstract class ImogXmlSerializer implements ImogSerializer {
 
 	private XStream xstream;
 
+	private HierarchicalStreamDriver writerDriver = new DomDriver("UTF-8");
+
+	/* pull parser driver used to read multi-entities documents without loading them in memory */
+	private HierarchicalStreamDriver streamDriver = new StaxDriver();
+
 	protected DataHandlerManager dataHandlerManager;
 	private BinaryOperation binaryOperation;
+	private GenericDao genericDao;
+
+	/* number of entities whose references are resolved and saved together */
+	private int batchSize = 100;
 
 	public ImogXmlSerializer() {
-		xstream = new XStream(new DomDriver("UTF-8"));
+		xstream = new XStream(writerDriver);
 		xstream.setMode(XStream.NO_REFERENCES);
 		xstream.autodetectAnnotations(true);
 		xstream.aliasSystemAttribute(null, "class");
@@ -62,7 +68,8 @@ public abstract class ImogXmlSerializer implements ImogSerializer {
 	}
 
 	/**
-	 * Serialize a synchronizable entity.
+	 * Serialize a synchronizable entity. If the output stream is a FramedOutputStream, the content of the binaries is
+	 * written in binary frames instead of being base64 encoded in the XML.
 	 * 
 	 * @param entity the entity to serialize.
 	 * @return the string xml representation of the entity.
@@ -70,8 +77,7 @@ public abstract class ImogXmlSerializer implements ImogSerializer {
 	@Override
 	public <T extends ImogBean> void serialize(T entity, OutputStream xml) throws ImogSerializationException {
 		if (!entity.getCreatedBy().equals(SyncConstants.SYNC_ID_SYS)) {
-			xstream.toXML(entity, xml);
-			logger.debug(xstream.toXML(entity));
+			marshal(entity, xml);
 		}
 	}
 
@@ -84,15 +90,38 @@ public abstract class ImogXmlSerializer implements ImogSerializer {
 	 */
 	@Override
 	public <T extends ImogBean> void serialize(List<T> entities, OutputStream xml) throws ImogSerializationException {
+		startMulti(xml);
+		serializeMulti(entities, xml);
+		endMulti(xml);
+	}
 
+	@Override
+	public void startMulti(OutputStream xml) throws ImogSerializationException {
 		try {
 			xml.write("<entities>".getBytes());
+		} catch (Exception e) {
+			throw new ImogSerializationException(e);
+		}
+	}
+
+	@Override
+	public <T extends ImogBean> void serializeMulti(List<T> entities, OutputStream xml)
+			throws ImogSerializationException {
+		try {
 			for (T entity : entities) {
 				if (!entity.getCreatedBy().equals(SyncConstants.SYNC_ID_SYS)) {
-					xstream.toXML(entity, xml);
+					marshal(entity, xml);
 					// logger.debug(xstream.toXML(entity));
 				}
 			}
+		} catch (Exception e) {
+			throw new ImogSerializationException(e);
+		}
+	}
+
+	@Override
+	public void endMulti(OutputStream xml) throws ImogSerializationException {
+		try {
 			xml.write("</entities>".getBytes());
 		} catch (Exception e) {
 			throw new ImogSerializationException(e);
@@ -121,66 +150,107 @@ public abstract class ImogXmlSerializer implements ImogSerializer {
 	public List<ImogBean> deSerializeMulti(InputStream xml) throws ImogSerializationException {
 		List<ImogBean> list = new Vector<ImogBean>();
 
+		InputStream input = null;
 		try {
-			/* create a document from the xml string */
-			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-			DocumentBuilder domBuilder = factory.newDocumentBuilder();
-			TransformerFactory transFactory = TransformerFactory.newInstance();
-			Transformer trans = transFactory.newTransformer();
-			trans.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-			Document dom = domBuilder.parse(xml);
-
-			/*
-			 * each parent node is an entity, we export it in a temporary file
-			 */
-			NodeList entities = dom.getDocumentElement().getChildNodes();
-			for (int i = 0; i < entities.getLength(); i++) {
-				Node current = entities.item(i);
-				File tempFile = File.createTempFile("receive", ".imogobject");
-				StreamResult result = new StreamResult(new FileOutputStream(tempFile));
-				DOMSource source = new DOMSource(current);
-				trans.transform(source, result);
-				list.add(deSerialize(new FileInputStream(tempFile)));
-				tempFile.delete();
+			input = FramedInputStream.open(xml);
+			ReferenceResolver resolver = new ReferenceResolver(dataHandlerManager, xstream.getMapper());
+			DataHolder holder = createDataHolder(resolver, input);
+			HierarchicalStreamReader reader = streamDriver.createReader(input);
+			try {
+				/* each child of the root node is an entity */
+				while (reader.hasMoreChildren()) {
+					ImogBean entity = readEntity(reader, holder);
+					resolver.entity(entity);
+					list.add(entity);
+				}
+			} finally {
+				reader.close();
 			}
-
+			resolver.resolve();
+			resolver.clear();
 		} catch (Exception ex) {
 			throw new ImogSerializationException(ex);
+		} finally {
+			release(input);
 		}
 		return list;
 	}
 
 	@Override
 	public int processMulti(InputStream xml, ImogActor user) throws ImogSerializationException {
+		int j = 0;
+		InputStream input = null;
+		try {
+			input = FramedInputStream.open(xml);
+			ReferenceResolver resolver = new ReferenceResolver(dataHandlerManager, xstream.getMapper());
+			DataHolder holder = createDataHolder(resolver, input);
+			List<ImogBean> batch = new Vector<ImogBean>();
+			HierarchicalStreamReader reader = streamDriver.createReader(input);
+			try {
+				/*
+				 * each child of the root node is an entity, the entities are unserialized and saved by batch, the
+				 * references of a batch being resolved before it is saved
+				 */
+				while (reader.hasMoreChildren()) {
+					ImogBean entity = readEntity(reader, holder);
+					if (entity != null) {
+						resolver.entity(entity);
+						batch.add(entity);
+					}
+					if (batch.size() >= batchSize) {
+						j = j + saveBatch(batch, resolver, user);
+					}
+				}
+				j = j + saveBatch(batch, resolver, user);
+			} finally {
+				reader.close();
+			}
+		} catch (Exception ex) {
+			ex.printStackTrace();
+			throw new ImogSerializationException(ex);
+		} finally {
+			release(input);
+		}
+		return j;
+	}
+
+	/**
+	 * Resolve the references of a batch of entities, then save them grouped by type. The entities that are not in the
+	 * database are registered as new so that they are persisted without being searched, and the persistence context is
+	 * flushed and cleared once the batch is saved, so that the statements are sent by JDBC batches and the memory does
+	 * not grow with the number of entities.
+	 * 
+	 * @param batch the entities to save, the list is cleared
+	 * @param resolver the resolution context of the batch
+	 * @param user the user performing the import
+	 * @return the number of entities saved
+	 */
+	private int saveBatch(List<ImogBean> batch, ReferenceResolver resolver, ImogActor user) {
+		resolver.resolve();
+
+		Map<Class<?>, List<ImogBean>> byType = new LinkedHashMap<Class<?>, List<ImogBean>>();
+		for (ImogBean entity : batch) {
+			List<ImogBean> entities = byType.get(entity.getClass());
+			if (entities == null) {
+				entities = new Vector<ImogBean>();
+				byType.put(entity.getClass(), entities);
+			}
+			entities.add(entity);
+		}
+
 		int j = 0;
 		try {
-			/* create a document from the xml string */
-			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-			DocumentBuilder domBuilder = factory.newDocumentBuilder();
-			TransformerFactory transFactory = TransformerFactory.newInstance();
-			Transformer trans = transFactory.newTransformer();
-			trans.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-			Document dom = domBuilder.parse(xml);
-
-			/*
-			 * each parent node is an entity, we export it in a temporary file
-			 */
-			NodeList entities = dom.getDocumentElement().getChildNodes();
-			for (int i = 0; i < entities.getLength(); i++) {
-				Node current = entities.item(i);
-				File tempFile = File.createTempFile("receive", ".imogobject");
-				StreamResult result = new StreamResult(new FileOutputStream(tempFile));
-				DOMSource source = new DOMSource(current);
-				trans.transform(source, result);
-
-				// unserialize entity
-				ImogBean entity = deSerialize(new FileInputStream(tempFile));
-				tempFile.delete();
-
-				// save entity
-				if (entity != null) {
-					if (save(entity, user)) {
+			for (List<ImogBean> entities : byType.values()) {
+				for (ImogBean entity : entities) {
+					ImogBean exist = resolver.getStored(entity);
+					if (exist == null) {
+						NewEntityRegistry.register(entity);
+					}
+					if (save(entity, exist, user)) {
 						j++;
+						if (exist == null) {
+							resolver.stored(entity);
+						}
 						if (entity instanceof Binary) {
 							try {
 								binaryOperation.operate((Binary) entity);
@@ -189,16 +259,88 @@ public abstract class ImogXmlSerializer implements ImogSerializer {
 							}
 						}
 					}
+					NewEntityRegistry.remove(entity);
 				}
 			}
-		} catch (Exception ex) {
-			ex.printStackTrace();
-			throw new ImogSerializationException(ex);
+			if (genericDao != null) {
+				genericDao.flush();
+				genericDao.clear();
+			}
+		} finally {
+			NewEntityRegistry.clear();
+			resolver.clear();
+			batch.clear();
 		}
 		return j;
 	}
 
-	abstract protected <T extends ImogBean> boolean save(T entity, ImogActor user);
+	/**
+	 * Create the data holder that gives access to the resolution context and to the received binaries to the
+	 * converters
+	 * 
+	 * @param resolver the resolution context
+	 * @param input the document being read
+	 * @return the data holder
+	 */
+	private DataHolder createDataHolder(ReferenceResolver resolver, InputStream input) {
+		DataHolder holder = xstream.newDataHolder();
+		holder.put(ReferenceResolver.class, resolver);
+		if (input instanceof FramedInputStream) {
+			holder.put(FramedInputStream.class, input);
+		}
+		return holder;
+	}
+
+	/**
+	 * Delete the received binaries that have not been unserialized
+	 * 
+	 * @param input the document that has been read
+	 */
+	private void release(InputStream input) {
+		if (input instanceof FramedInputStream) {
+			((FramedInputStream) input).release();
+		}
+	}
+
+	/**
+	 * Serialize an entity, giving access to the framed output stream to the converters
+	 * 
+	 * @param entity the entity to serialize
+	 * @param xml the output stream
+	 */
+	private void marshal(ImogBean entity, OutputStream xml) {
+		HierarchicalStreamWriter writer = writerDriver.createWriter(xml);
+		DataHolder holder = xstream.newDataHolder();
+		if (xml instanceof FramedOutputStream) {
+			holder.put(FramedOutputStream.class, xml);
+		}
+		xstream.marshal(entity, writer, holder);
+		writer.flush();
+	}
+
+	/**
+	 * Unserialize the next entity of a multi-entities document, the reader being positioned on the root node.
+	 * 
+	 * @param reader the reader positioned on the root node
+	 * @param holder the data holder given to the converters
+	 * @return the unserialized entity
+	 */
+	private ImogBean readEntity(HierarchicalStreamReader reader, DataHolder holder) {
+		reader.moveDown();
+		ImogBean entity = (ImogBean) xstream.unmarshal(reader, null, holder);
+		reader.moveUp();
+		return entity;
+	}
+
+	/**
+	 * Save an unserialized entity, depending on the synchronization policy
+	 * 
+	 * @param entity the entity to save
+	 * @param exist the persistent entity with the same id, or null if the entity is not in the database
+	 * @param user the user performing the import
+	 * @return true if the entity has been saved
+	 */
+	abstract protected <T extends ImogBean> boolean save(T entity, ImogBean exist, ImogActor user);
 
 	/* Setters for bean injection */
 
@@ -211,6 +353,24 @@ public abstract class ImogXmlSerializer implements ImogSerializer {
 		this.dataHandlerManager = dataHandlerManager;
 	}
 
+	/**
+	 * Set the DAO used to flush and clear the persistence context after each batch of imported entities
+	 * 
+	 * @param genericDao the generic DAO
+	 */
+	public void setGenericDao(GenericDao genericDao) {
+		this.genericDao = genericDao;
+	}
+
+	/**
+	 * Set the number of entities whose references are resolved together
+	 * 
+	 * @param batchSize the number of entities of a batch
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
 	/**
 	 * 
 	 * @param binaryOperation
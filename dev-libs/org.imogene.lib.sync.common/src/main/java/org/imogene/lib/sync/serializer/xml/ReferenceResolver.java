@@ -0,0 +1,311 @@
+package org.imogene.lib.sync.serializer.xml;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+
+import org.apache.log4j.Logger;
+import org.imogene.lib.common.entity.ImogBean;
+import org.imogene.lib.sync.handler.DataHandlerManager;
+import org.imogene.lib.sync.handler.ImogBeanHandler;
+
+import com.thoughtworks.xstream.mapper.Mapper;
+
+/**
+ * Resolution context of the entity references read during an import. The association and collection converters do
+ * not load the referenced entities one by one, they get a placeholder from this context. When a batch of entities has
+ * been read, the referenced ids are loaded with one query per entity type, the missing entities are created, and the
+ * placeholders are replaced by the persistent entities.
+ *
+ * @author MEDES-IMPS
+ */
+public class ReferenceResolver {
+
+	private Logger logger = Logger.getLogger("org.imogene.sync.serializer.xml");
+
+	/* maximum number of ids in the IN clause of a query */
+	private static final int MAX_IDS_PER_QUERY = 500;
+
+	private final DataHandlerManager dataHandlerManager;
+	private final Mapper mapper;
+
+	/* placeholders of the referenced entities, by class name and id */
+	private final Map<String, Map<String, ImogBean>> placeholders = new LinkedHashMap<String, Map<String, ImogBean>>();
+
+	/* ids of the read entities, loaded with the referenced ones */
+	private final Map<String, Set<String>> entityIds = new HashMap<String, Set<String>>();
+
+	/* persistent entities by class name and id, once the references have been resolved */
+	private final Map<String, Map<String, ImogBean>> stored = new HashMap<String, Map<String, ImogBean>>();
+
+	private final List<List<ImogBean>> collections = new Vector<List<ImogBean>>();
+	private final List<Association> associations = new Vector<Association>();
+	private final List<Association> pendingAssociations = new Vector<Association>();
+
+	/**
+	 * @param dataHandlerManager the manager of the handlers used to load and store the entities
+	 * @param mapper the mapper used to get the field names from the XML node names
+	 */
+	public ReferenceResolver(DataHandlerManager dataHandlerManager, Mapper mapper) {
+		this.dataHandlerManager = dataHandlerManager;
+		this.mapper = mapper;
+	}
+
+	/**
+	 * Get the placeholder of a referenced entity, the same placeholder is returned for the same entity during a batch
+	 *
+	 * @param className the class name of the referenced entity
+	 * @param id the id of the referenced entity
+	 * @return the placeholder
+	 */
+	public ImogBean reference(String className, String id) {
+		Map<String, ImogBean> byId = placeholders.get(className);
+		if (byId == null) {
+			byId = new LinkedHashMap<String, ImogBean>();
+			placeholders.put(className, byId);
+		}
+		ImogBean placeholder = byId.get(id);
+		if (placeholder == null) {
+			placeholder = dataHandlerManager.getHandler(className).createNewEntity(id);
+			byId.put(id, placeholder);
+		}
+		return placeholder;
+	}
+
+	/**
+	 * Get the placeholder of an entity referenced by an association of the entity being read
+	 *
+	 * @param fieldName the XML node name of the association
+	 * @param className the class name of the referenced entity
+	 * @param id the id of the referenced entity
+	 * @return the placeholder
+	 */
+	public ImogBean association(String fieldName, String className, String id) {
+		ImogBean placeholder = reference(className, id);
+		pendingAssociations.add(new Association(fieldName, placeholder));
+		return placeholder;
+	}
+
+	/**
+	 * Register a collection of placeholders, its elements are replaced when the references are resolved
+	 *
+	 * @param collection the collection of placeholders
+	 */
+	public void collection(List<ImogBean> collection) {
+		collections.add(collection);
+	}
+
+	/**
+	 * Register an entity that has been read, the associations read since the previous entity are bound to it and the
+	 * entity is loaded with the referenced ones, so that its existence can then be checked without a query
+	 *
+	 * @param entity the entity that has been read
+	 */
+	public void entity(ImogBean entity) {
+		for (Association association : pendingAssociations) {
+			association.owner = entity;
+			associations.add(association);
+		}
+		pendingAssociations.clear();
+
+		String className = entity.getClass().getName();
+		Set<String> ids = entityIds.get(className);
+		if (ids == null) {
+			ids = new LinkedHashSet<String>();
+			entityIds.put(className, ids);
+		}
+		ids.add(entity.getId());
+	}
+
+	/**
+	 * Load the referenced entities with one query per entity type, store the missing ones and replace the
+	 * placeholders by the persistent entities. The context has to be cleared before the next batch.
+	 */
+	public void resolve() {
+		Map<ImogBean, ImogBean> resolved = new IdentityHashMap<ImogBean, ImogBean>();
+
+		Set<String> classNames = new LinkedHashSet<String>(placeholders.keySet());
+		classNames.addAll(entityIds.keySet());
+		for (String className : classNames) {
+			resolve(className, resolved);
+		}
+
+		for (List<ImogBean> collection : collections) {
+			for (int i = 0; i < collection.size(); i++) {
+				ImogBean entity = resolved.get(collection.get(i));
+				if (entity != null) {
+					collection.set(i, entity);
+				}
+			}
+		}
+		for (Association association : associations) {
+			ImogBean entity = resolved.get(association.placeholder);
+			if (entity != null && association.owner != null) {
+				association.replace(entity);
+			}
+		}
+	}
+
+	/**
+	 * Get the persistent entity that has the same id as a read entity, once the references have been resolved
+	 *
+	 * @param entity the read entity
+	 * @return the persistent entity, or null if the entity is not in the database
+	 */
+	public ImogBean getStored(ImogBean entity) {
+		Map<String, ImogBean> byId = stored.get(entity.getClass().getName());
+		return byId != null ? byId.get(entity.getId()) : null;
+	}
+
+	/**
+	 * Register an entity that has just been stored
+	 *
+	 * @param entity the stored entity
+	 */
+	public void stored(ImogBean entity) {
+		storedById(entity.getClass().getName()).put(entity.getId(), entity);
+	}
+
+	private Map<String, ImogBean> storedById(String className) {
+		Map<String, ImogBean> byId = stored.get(className);
+		if (byId == null) {
+			byId = new HashMap<String, ImogBean>();
+			stored.put(className, byId);
+		}
+		return byId;
+	}
+
+	/**
+	 * Clear the context
+	 */
+	public void clear() {
+		placeholders.clear();
+		entityIds.clear();
+		stored.clear();
+		collections.clear();
+		associations.clear();
+		pendingAssociations.clear();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void resolve(String className, Map<ImogBean, ImogBean> resolved) {
+		ImogBeanHandler<ImogBean> handler = (ImogBeanHandler<ImogBean>) dataHandlerManager.getHandler(className);
+
+		Map<String, ImogBean> byId = placeholders.get(className);
+		Set<String> ids = new LinkedHashSet<String>();
+		if (byId != null) {
+			ids.addAll(byId.keySet());
+		}
+		if (entityIds.containsKey(className)) {
+			ids.addAll(entityIds.get(className));
+		}
+
+		Map<String, ImogBean> loaded = new HashMap<String, ImogBean>();
+		List<String> chunk = new ArrayList<String>(Math.min(ids.size(), MAX_IDS_PER_QUERY));
+		for (String id : ids) {
+			chunk.add(id);
+			if (chunk.size() == MAX_IDS_PER_QUERY) {
+				load(handler, chunk, loaded);
+				chunk.clear();
+			}
+		}
+		if (!chunk.isEmpty()) {
+			load(handler, chunk, loaded);
+		}
+
+		Map<String, ImogBean> storedById = storedById(className);
+		storedById.putAll(loaded);
+
+		if (byId != null) {
+			List<ImogBean> missing = new Vector<ImogBean>();
+			for (Map.Entry<String, ImogBean> entry : byId.entrySet()) {
+				ImogBean entity = loaded.get(entry.getKey());
+				if (entity == null) {
+					/* the placeholder is stored, waiting for the update of the entity */
+					missing.add(entry.getValue());
+					storedById.put(entry.getKey(), entry.getValue());
+				} else {
+					resolved.put(entry.getValue(), entity);
+				}
+			}
+			if (!missing.isEmpty()) {
+				handler.persist(missing);
+			}
+			logger.debug(className + ": " + byId.size() + " references resolved, " + missing.size() + " created");
+		}
+	}
+
+	private void load(ImogBeanHandler<ImogBean> handler, List<String> ids, Map<String, ImogBean> loaded) {
+		for (ImogBean entity : handler.loadEntities(ids)) {
+			loaded.put(entity.getId(), entity);
+		}
+	}
+
+	/**
+	 * An association of an entity that refers to a placeholder
+	 */
+	private class Association {
+
+		private final String nodeName;
+		private final ImogBean placeholder;
+		private ImogBean owner;
+
+		private Association(String nodeName, ImogBean placeholder) {
+			this.nodeName = nodeName;
+			this.placeholder = placeholder;
+		}
+
+		/**
+		 * Replace the placeholder by the persistent entity if the owner property still refers to the placeholder. The
+		 * property is read and written with the accessors of the owner.
+		 *
+		 * @param entity the persistent entity
+		 */
+		private void replace(ImogBean entity) {
+			String propertyName = mapper.realMember(owner.getClass(), nodeName);
+			PropertyDescriptor property = getProperty(owner.getClass(), propertyName);
+			if (property == null || property.getReadMethod() == null || property.getWriteMethod() == null) {
+				/* association of an object nested in the entity, resolved by id when the entity is stored */
+				logger.debug("Property " + propertyName + " not found in " + owner.getClass().getName());
+				return;
+			}
+			try {
+				if (property.getReadMethod().invoke(owner) == placeholder) {
+					property.getWriteMethod().invoke(owner, entity);
+				}
+			} catch (Exception e) {
+				logger.error("Error resolving the reference " + owner.getClass().getName() + "." + propertyName, e);
+			}
+		}
+	}
+
+	/**
+	 * Get the description of a property of an entity class
+	 *
+	 * @param type the entity class
+	 * @param propertyName the name of the property
+	 * @return the property, or null if the class has no such property
+	 */
+	private PropertyDescriptor getProperty(Class<?> type, String propertyName) {
+		try {
+			for (PropertyDescriptor property : Introspector.getBeanInfo(type).getPropertyDescriptors()) {
+				if (property.getName().equals(propertyName)) {
+					return property;
+				}
+			}
+		} catch (IntrospectionException e) {
+			logger.error("Error reading the properties of " + type.getName(), e);
+		}
+		return null;
+	}
+
+}
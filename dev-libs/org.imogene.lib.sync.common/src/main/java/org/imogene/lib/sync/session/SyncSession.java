@@ -37,6 +37,16 @@ public class SyncSession implements Serializable {
 
 	private String userId;
 
+	private Long sequence;
+
+	/* length and CRC32 checksum of the client modifications received and acknowledged */
+	private Long receivedLength;
+	private Long receivedChecksum;
+
+	/* length and CRC32 checksum of the work file of the server modifications */
+	private Long sentLength;
+	private Long sentChecksum;
+
 	@Column(name = "imogversion")
 	private Integer version;
 
@@ -130,6 +140,98 @@ public class SyncSession implements Serializable {
 		this.userId = userId;
 	}
 
+	/**
+	 * Get the sequence number of the change log up to which the server modifications have been sent.
+	 * 
+	 * @return the sequence number, or null if the server modifications have not been sent
+	 */
+	public Long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Set the sequence number of the change log up to which the server modifications have been sent.
+	 * 
+	 * @param sequence the sequence number
+	 */
+	public void setSequence(Long sequence) {
+		this.sequence = sequence;
+	}
+
+	/**
+	 * Get the number of bytes of the client modifications that have been received and acknowledged, from which a
+	 * 'send' task is resumed.
+	 * 
+	 * @return the number of bytes, or null if nothing has been acknowledged
+	 */
+	public Long getReceivedLength() {
+		return receivedLength;
+	}
+
+	/**
+	 * Set the number of bytes of the client modifications that have been received and acknowledged.
+	 * 
+	 * @param receivedLength the number of bytes
+	 */
+	public void setReceivedLength(Long receivedLength) {
+		this.receivedLength = receivedLength;
+	}
+
+	/**
+	 * Get the CRC32 checksum of the client modifications that have been received and acknowledged.
+	 * 
+	 * @return the checksum, or null if nothing has been acknowledged
+	 */
+	public Long getReceivedChecksum() {
+		return receivedChecksum;
+	}
+
+	/**
+	 * Set the CRC32 checksum of the client modifications that have been received and acknowledged.
+	 * 
+	 * @param receivedChecksum the checksum
+	 */
+	public void setReceivedChecksum(Long receivedChecksum) {
+		this.receivedChecksum = receivedChecksum;
+	}
+
+	/**
+	 * Get the length of the work file in which the server modifications have been written, in which a 'receive'
+	 * task is resumed.
+	 * 
+	 * @return the number of bytes, or null if the work file has not been written entirely
+	 */
+	public Long getSentLength() {
+		return sentLength;
+	}
+
+	/**
+	 * Set the length of the work file in which the server modifications have been written.
+	 * 
+	 * @param sentLength the number of bytes
+	 */
+	public void setSentLength(Long sentLength) {
+		this.sentLength = sentLength;
+	}
+
+	/**
+	 * Get the CRC32 checksum of the work file in which the server modifications have been written.
+	 * 
+	 * @return the checksum, or null if the work file has not been written entirely
+	 */
+	public Long getSentChecksum() {
+		return sentChecksum;
+	}
+
+	/**
+	 * Set the CRC32 checksum of the work file in which the server modifications have been written.
+	 * 
+	 * @param sentChecksum the checksum
+	 */
+	public void setSentChecksum(Long sentChecksum) {
+		this.sentChecksum = sentChecksum;
+	}
+
 	public Integer getVersion() {
 		return version;
 	}
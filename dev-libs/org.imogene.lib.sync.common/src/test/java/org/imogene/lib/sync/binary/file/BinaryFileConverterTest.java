@@ -0,0 +1,257 @@
+package org.imogene.lib.sync.binary.file;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import org.imogene.lib.common.binary.file.BinaryContentDao;
+import org.imogene.lib.common.binary.file.BinaryFile;
+import org.imogene.lib.common.binary.file.BinaryFileManager;
+import org.imogene.lib.common.binary.file.ShardedBinaryStore;
+import org.imogene.lib.sync.serializer.FramedInputStream;
+import org.imogene.lib.sync.serializer.FramedOutputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.converters.DataHolder;
+import com.thoughtworks.xstream.io.HierarchicalStreamDriver;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+import com.thoughtworks.xstream.io.xml.DomDriver;
+import com.thoughtworks.xstream.io.xml.StaxDriver;
+
+/**
+ * Tests of the binaries written in binary frames by the converter, in documents that mix them with XML
+ *
+ * @author MEDES-IMPS
+ */
+public class BinaryFileConverterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private BinaryFileManager manager;
+
+	private MemoryContentDao contentDao;
+
+	private XStream xstream;
+
+	private HierarchicalStreamDriver writerDriver = new DomDriver("UTF-8");
+
+	private File received;
+
+	@Before
+	public void setUp() throws Exception {
+		manager = BinaryFileManager.getInstance();
+		manager.setBinaryStore(new ShardedBinaryStore(folder.newFolder("content")));
+		manager.setBinaryPath(folder.newFolder("binaries").getPath());
+		contentDao = new MemoryContentDao();
+		manager.setBinaryContentDao(contentDao);
+		received = folder.newFolder("received");
+
+		xstream = new XStream(writerDriver);
+		xstream.setMode(XStream.NO_REFERENCES);
+		xstream.registerConverter(new BinaryFileConverter());
+	}
+
+	/**
+	 * The contents are written in binary frames and stored again when the binaries are read, the binaries without
+	 * content are only referenced
+	 */
+	@Test
+	public void framedBinariesAreReadBack() throws Exception {
+		byte[] large = new byte[3 * 8192 + 17];
+		Arrays.fill(large, (byte) 7);
+		BinaryFile first = binary("B1", "abc".getBytes("UTF-8"));
+		BinaryFile second = binary("B2", large);
+		BinaryFile empty = binary("B3", new byte[0]);
+
+		List<BinaryFile> binaries = read(open(write(first, second, empty)));
+		assertEquals(3, binaries.size());
+		assertReceived(first, binaries.get(0));
+		assertReceived(second, binaries.get(1));
+		assertEquals("B3", binaries.get(2).getId());
+		assertNull(binaries.get(2).getContentHash());
+		assertEquals(0, received.list().length);
+	}
+
+	/**
+	 * A document truncated in a binary frame can not be read, and the partial content is not kept
+	 */
+	@Test
+	public void truncatedBinariesAreNotStored() throws Exception {
+		byte[] large = new byte[3 * 8192 + 17];
+		Arrays.fill(large, (byte) 7);
+		BinaryFile first = binary("B1", "abc".getBytes("UTF-8"));
+		BinaryFile second = binary("B2", large);
+		byte[] document = write(first, second);
+
+		FramedInputStream in = open(Arrays.copyOf(document, document.length - 8192));
+		try {
+			read(in);
+			fail("The truncated document has been read");
+		} catch (RuntimeException e) {
+			// expected
+		} finally {
+			in.release();
+		}
+		assertEquals(0, received.list().length);
+		assertEquals(Integer.valueOf(1), contentDao.refCounts.get(second.getContentHash()));
+	}
+
+	private BinaryFile binary(String id, byte[] content) throws IOException {
+		BinaryFile binary = new BinaryFile();
+		binary.setId(id);
+		binary.setCreated(new Date());
+		binary.setCreatedBy("test");
+		binary.setModified(new Date());
+		binary.setFileName(id + ".bin");
+		binary.setContentType("application/octet-stream");
+		binary.setLength(content.length);
+		if (content.length > 0) {
+			File file = manager.createTempFile();
+			OutputStream out = new FileOutputStream(file);
+			try {
+				out.write(content);
+			} finally {
+				out.close();
+			}
+			manager.store(binary, file);
+		}
+		return binary;
+	}
+
+	/**
+	 * Serialize binaries as the serializer does, each in the framed document
+	 */
+	private byte[] write(BinaryFile... binaries) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		FramedOutputStream out = new FramedOutputStream(bytes);
+		out.write("<entities>".getBytes());
+		for (BinaryFile binary : binaries) {
+			HierarchicalStreamWriter writer = writerDriver.createWriter(out);
+			DataHolder holder = xstream.newDataHolder();
+			holder.put(FramedOutputStream.class, out);
+			xstream.marshal(binary, writer, holder);
+			writer.flush();
+		}
+		out.write("</entities>".getBytes());
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Read a framed document, storing the received binaries in their temporary folder
+	 */
+	private FramedInputStream open(byte[] document) {
+		InputStream in = new ByteArrayInputStream(document, FramedOutputStream.HEADER.length, document.length);
+		return new FramedInputStream(in, received);
+	}
+
+	/**
+	 * Unserialize the binaries of a framed document as the serializer does
+	 */
+	private List<BinaryFile> read(FramedInputStream in) {
+		List<BinaryFile> binaries = new Vector<BinaryFile>();
+		HierarchicalStreamReader reader = new StaxDriver().createReader(in);
+		DataHolder holder = xstream.newDataHolder();
+		holder.put(FramedInputStream.class, in);
+		while (reader.hasMoreChildren()) {
+			reader.moveDown();
+			binaries.add((BinaryFile) xstream.unmarshal(reader, null, holder));
+			reader.moveUp();
+		}
+		reader.close();
+		in.release();
+		return binaries;
+	}
+
+	private void assertReceived(BinaryFile sent, BinaryFile binary) throws IOException {
+		assertEquals(sent.getId(), binary.getId());
+		assertEquals(sent.getFileName(), binary.getFileName());
+		assertEquals(sent.getLength(), binary.getLength());
+		assertNotNull(sent.getContentHash());
+		assertEquals(sent.getContentHash(), binary.getContentHash());
+		assertArrayEquals(content(sent), content(binary));
+		/* the content is referenced by the sent binary and by the received one */
+		assertEquals(Integer.valueOf(2), contentDao.refCounts.get(binary.getContentHash()));
+	}
+
+	private byte[] content(BinaryFile binary) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		InputStream in = new FileInputStream(manager.buildFilePath(binary));
+		try {
+			byte[] chunk = new byte[8192];
+			int read;
+			while ((read = in.read(chunk)) != -1) {
+				out.write(chunk, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Content DAO that counts the references in memory, the binaries have no previous content
+	 */
+	private static class MemoryContentDao implements BinaryContentDao {
+
+		private final Map<String, Integer> refCounts = new HashMap<String, Integer>();
+
+		@Override
+		public void acquire(String hash, long length) {
+			if (!increment(hash)) {
+				refCounts.put(hash, 1);
+			}
+		}
+
+		@Override
+		public boolean increment(String hash) {
+			Integer refCount = refCounts.get(hash);
+			if (refCount == null) {
+				return false;
+			}
+			refCounts.put(hash, refCount + 1);
+			return true;
+		}
+
+		@Override
+		public int release(String hash) {
+			Integer refCount = refCounts.get(hash);
+			int left = refCount == null ? 0 : refCount - 1;
+			if (left <= 0) {
+				refCounts.remove(hash);
+			} else {
+				refCounts.put(hash, left);
+			}
+			return left;
+		}
+
+		@Override
+		public String getContentHash(String binaryId) {
+			return null;
+		}
+	}
+
+}
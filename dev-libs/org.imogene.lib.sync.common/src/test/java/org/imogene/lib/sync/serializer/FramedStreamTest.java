@@ -0,0 +1,270 @@
+package org.imogene.lib.sync.serializer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the framed synchronization documents, written with a FramedOutputStream and read with a
+ * FramedInputStream
+ *
+ * @author MEDES-IMPS
+ */
+public class FramedStreamTest {
+
+	private static final String SHA1_OF_ABC = "a9993e364706816aba3e25717850c26c9cd0d89d";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * The XML frames give the document back, the binary frames met between them are stored with their hash
+	 */
+	@Test
+	public void mixedFramesAreReadBack() throws Exception {
+		byte[] large = content(3 * 8192 + 17);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		FramedOutputStream out = new FramedOutputStream(bytes);
+		out.write(bytes("<entities><binary id=\"B1\">"));
+		String firstHash = out.writeBinary("B1", new ByteArrayInputStream(bytes("abc")));
+		out.write(bytes("</binary><binary id=\"B2\">"));
+		String secondHash = out.writeBinary("B2", new ByteArrayInputStream(large));
+		out.write(large);
+		out.write(bytes("</binary></entities>"));
+		out.close();
+		assertEquals(SHA1_OF_ABC, firstHash);
+
+		InputStream opened = FramedInputStream.open(new ByteArrayInputStream(bytes.toByteArray()));
+		assertTrue(opened instanceof FramedInputStream);
+		FramedInputStream in = (FramedInputStream) opened;
+		ByteArrayOutputStream xml = new ByteArrayOutputStream();
+		xml.write(bytes("<entities><binary id=\"B1\"></binary><binary id=\"B2\">"));
+		xml.write(large);
+		xml.write(bytes("</binary></entities>"));
+		assertArrayEquals(xml.toByteArray(), read(in));
+
+		assertNull(in.takeBinary("B2", firstHash));
+		File first = in.takeBinary("B1", firstHash.toUpperCase());
+		assertArrayEquals(bytes("abc"), read(new FileInputStream(first)));
+		assertNull(in.takeBinary("B1", firstHash));
+		assertNull(in.takeBinary("B2", secondHash));
+		first.delete();
+	}
+
+	/**
+	 * The parts written without header are copied as frames in the document
+	 */
+	@Test
+	public void partsAreCopiedAsFrames() throws Exception {
+		ByteArrayOutputStream part = new ByteArrayOutputStream();
+		FramedOutputStream partOut = new FramedOutputStream(part, false);
+		partOut.write(bytes("<binary>"));
+		String hash = partOut.writeBinary("B1", new ByteArrayInputStream(bytes("abc")));
+		partOut.write(bytes("</binary>"));
+		partOut.close();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		FramedOutputStream out = new FramedOutputStream(bytes);
+		out.write(bytes("<entities>"));
+		out.writeFrames(new ByteArrayInputStream(part.toByteArray()));
+		out.write(bytes("</entities>"));
+		out.close();
+
+		FramedInputStream in = open(bytes.toByteArray());
+		assertArrayEquals(bytes("<entities><binary></binary></entities>"), read(in));
+		File binary = in.takeBinary("B1", hash);
+		assertArrayEquals(bytes("abc"), read(new FileInputStream(binary)));
+		binary.delete();
+	}
+
+	/**
+	 * A plain XML document is read as it is
+	 */
+	@Test
+	public void plainDocumentsAreNotFramed() throws Exception {
+		byte[] xml = bytes("<entities></entities>");
+		InputStream in = FramedInputStream.open(new ByteArrayInputStream(xml));
+		assertFalse(in instanceof FramedInputStream);
+		assertArrayEquals(xml, read(in));
+	}
+
+	/**
+	 * The binaries that are not taken are deleted on release
+	 */
+	@Test
+	public void untakenBinariesAreReleased() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		FramedOutputStream out = new FramedOutputStream(bytes);
+		out.writeBinary("B1", new ByteArrayInputStream(bytes("abc")));
+		out.close();
+
+		FramedInputStream in = open(bytes.toByteArray());
+		assertEquals(-1, in.read());
+		assertEquals(1, folder.getRoot().list().length);
+		in.release();
+		assertEquals(0, folder.getRoot().list().length);
+		assertNull(in.takeBinary("B1", SHA1_OF_ABC));
+	}
+
+	@Test
+	public void truncatedXmlFramesAreErrors() throws Exception {
+		byte[] document = document();
+		int end = indexOf(document, bytes("</entities>")) + 3;
+		FramedInputStream in = open(Arrays.copyOf(document, end));
+		try {
+			read(in);
+			fail("The truncated XML frame has been read");
+		} catch (EOFException e) {
+			assertEquals("Truncated XML frame", e.getMessage());
+		}
+		in.release();
+		assertEquals(0, folder.getRoot().list().length);
+	}
+
+	/**
+	 * The partial content of a truncated binary frame is not kept
+	 */
+	@Test
+	public void truncatedBinaryFramesAreErrors() throws Exception {
+		byte[] document = document();
+		int end = indexOf(document, bytes("abc")) + 2;
+		FramedInputStream in = open(Arrays.copyOf(document, end));
+		try {
+			read(in);
+			fail("The truncated binary frame has been read");
+		} catch (EOFException e) {
+			assertEquals("Truncated binary frame", e.getMessage());
+		}
+		assertEquals(0, folder.getRoot().list().length);
+	}
+
+	/**
+	 * A binary frame ended before its chunk length is an error, its partial content is not kept
+	 */
+	@Test
+	public void binaryFramesWithoutEndAreErrors() throws Exception {
+		byte[] document = document();
+		int end = indexOf(document, bytes("abc")) + 3;
+		FramedInputStream in = open(Arrays.copyOf(document, end));
+		try {
+			read(in);
+			fail("The binary frame without end has been read");
+		} catch (EOFException e) {
+			// expected
+		}
+		assertEquals(0, folder.getRoot().list().length);
+	}
+
+	/**
+	 * The partial content of a binary frame is not kept when its reading fails on a runtime exception
+	 */
+	@Test
+	public void failedBinaryFramesAreDeleted() throws Exception {
+		byte[] document = document();
+		final int end = indexOf(document, bytes("abc")) + 2;
+		InputStream failing = new ByteArrayInputStream(document, FramedOutputStream.HEADER.length, document.length) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				if (pos >= end) {
+					throw new IllegalStateException("connection reset");
+				}
+				return super.read(b, off, Math.min(len, end - pos));
+			}
+		};
+		FramedInputStream in = new FramedInputStream(failing, folder.getRoot());
+		try {
+			read(in);
+			fail("The failed binary frame has been read");
+		} catch (IllegalStateException e) {
+			assertEquals("connection reset", e.getMessage());
+		}
+		assertEquals(0, folder.getRoot().list().length);
+	}
+
+	@Test
+	public void unknownFramesAreErrors() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		bytes.write(FramedOutputStream.HEADER);
+		bytes.write('Z');
+		FramedInputStream in = open(bytes.toByteArray());
+		try {
+			in.read();
+			fail("The unknown frame has been read");
+		} catch (IOException e) {
+			assertEquals("Unknown frame type: " + (int) 'Z', e.getMessage());
+		}
+	}
+
+	/**
+	 * Write a document with an XML frame, a binary frame with the content "abc" and a last XML frame
+	 */
+	private static byte[] document() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		FramedOutputStream out = new FramedOutputStream(bytes);
+		out.write(bytes("<entities>"));
+		out.writeBinary("B1", new ByteArrayInputStream(bytes("abc")));
+		out.write(bytes("</entities>"));
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Read a framed document, storing its binaries in the temporary folder
+	 */
+	private FramedInputStream open(byte[] document) {
+		InputStream in = new ByteArrayInputStream(document, FramedOutputStream.HEADER.length, document.length);
+		return new FramedInputStream(in, folder.getRoot());
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			byte[] chunk = new byte[1000];
+			int read;
+			while ((read = in.read(chunk)) != -1) {
+				out.write(chunk, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		return out.toByteArray();
+	}
+
+	private static int indexOf(byte[] bytes, byte[] searched) {
+		for (int i = 0; i + searched.length <= bytes.length; i++) {
+			if (Arrays.equals(searched, Arrays.copyOfRange(bytes, i, i + searched.length))) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("Not found");
+	}
+
+	private static byte[] content(int length) {
+		byte[] content = new byte[length];
+		for (int i = 0; i < length; i++) {
+			content[i] = (byte) (i * 31);
+		}
+		return content;
+	}
+
+	private static byte[] bytes(String value) throws IOException {
+		return value.getBytes("UTF-8");
+	}
+
+}
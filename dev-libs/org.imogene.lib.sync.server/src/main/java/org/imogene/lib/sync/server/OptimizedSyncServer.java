@@ -4,7 +4,6 @@ import java.io.File;
 import java.io.InputStream;
 import java.io.OutputStream;
 
-import org.imogene.lib.common.entity.ImogActor;
 import org.imogene.lib.sync.serializer.ImogSerializationException;
 
 /**
@@ -32,46 +31,46 @@ public interface OptimizedSyncServer {
 	public String initSession(String termId);
 
 	/**
-	 * Resume a 'send' task of a previous session.
+	 * Resume a 'send' task of a previous session. The client modifications already received are checked against the
+	 * length and checksum acknowledged for the session, and are discarded if they do not match. The bytes received
+	 * are then acknowledged.
 	 * 
-	 * @param termiId the terminal id
-	 * @param type the session type
-	 * @param user the user
 	 * @param sessionId the session id
-	 * @return The number of bytes previously received or an error code
+	 * @param received the work file of the client modifications
+	 * @return The number of bytes previously received, from which the client resumes the sending, or -1 if the
+	 *         session is invalid
 	 */
-	public String initResumeSendSession(String termiId, String type, ImogActor user, String sessionId);
+	public long initResumeSendSession(String sessionId, File received);
 
 	/**
-	 * Resume a 'receive' task of a previous session.
+	 * Resume a 'receive' task of a previous session. The work file of the server modifications is checked against
+	 * the length and checksum recorded when it has been written, it is deleted if the transfer can not be resumed.
 	 * 
-	 * @param termiId the terminal id
-	 * @param type the session type
-	 * @param user the user
 	 * @param sessionId the session id
+	 * @param modifications the work file of the server modifications
 	 * @param bytesReceived number of bytes previously received
-	 * @return Acknowledge or an error code
+	 * @return true if the transfer can be resumed after the bytes received, false if the server modifications have
+	 *         to be received from the beginning
 	 */
-	public String initResumeRequestSession(String termiId, String type, ImogActor user, String sessionId,
-			long bytesReceived);
+	public boolean initResumeRequestSession(String sessionId, File modifications, long bytesReceived);
 
 	/**
-	 * Apply modification sent by the client.
+	 * Acknowledge the client modifications received so far, recording their length and checksum in the session once
+	 * they are on the disk.
 	 * 
 	 * @param sessionId the current synchronization session id.
-	 * @param data Data to synchronize serialized stream.
-	 * @return The number of documents added or -1 if an error occurred.
+	 * @param received the work file of the client modifications
 	 */
-	public int applyClientModifications(String sessionId, InputStream data) throws ImogSerializationException;
+	public void acknowledgeClientModifications(String sessionId, File received);
 
 	/**
-	 * Resume a sent operation and apply modification sent by the client.
+	 * Apply modification sent by the client.
 	 * 
 	 * @param sessionId the current synchronization session id.
 	 * @param data Data to synchronize serialized stream.
 	 * @return The number of documents added or -1 if an error occurred.
 	 */
-	public int resumeApplyClientModifications(String sessionId, InputStream data) throws ImogSerializationException;
+	public int applyClientModifications(String sessionId, InputStream data) throws ImogSerializationException;
 
 	/**
 	 * Retrieve the current modification that have been to send to the client.
@@ -82,14 +81,14 @@ public interface OptimizedSyncServer {
 	public void getServerModifications(String sessionId, OutputStream out) throws ImogSerializationException;
 
 	/**
-	 * Retrieve the current modification that have been to send to the client.
+	 * Record the length and checksum of the work file in which the server modifications have been written, so that
+	 * their transfer can be resumed.
 	 * 
 	 * @param sessionId The id of the synchronization session.
-	 * @param out The output stream where to serialize the data
-	 * @param bytesToSkip number of bytes to skip because already sent and received
+	 * @param length the length of the work file
+	 * @param checksum the CRC32 checksum of the work file
 	 */
-	public void resumeGetServerModifications(String sessionId, OutputStream out, long bytesToSkip)
-			throws ImogSerializationException;
+	public void serverModificationsWritten(String sessionId, long length, long checksum);
 
 	/**
 	 * Close the synchronization session.
@@ -1,16 +1,37 @@
 package org.imogene.lib.sync.server;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
 
 import org.apache.log4j.Logger;
 import org.imogene.lib.common.binary.Binary;
 import org.imogene.lib.common.binary.file.BinaryFile;
+import org.imogene.lib.common.changelog.ChangeLog;
+import org.imogene.lib.common.changelog.ChangeLogDao;
 import org.imogene.lib.common.dao.GenericDao;
 import org.imogene.lib.common.dynamicfields.DynamicFieldInstance;
 import org.imogene.lib.common.entity.ImogActor;
@@ -22,15 +43,22 @@ import org.imogene.lib.common.model.CardEntity;
 import org.imogene.lib.sync.SyncConstants;
 import org.imogene.lib.sync.handler.BeanKeyGenerator;
 import org.imogene.lib.sync.handler.DataHandlerManager;
+import org.imogene.lib.sync.handler.ImogBeanCursor;
 import org.imogene.lib.sync.handler.ImogBeanHandler;
 import org.imogene.lib.sync.history.SyncHistory;
 import org.imogene.lib.sync.history.SyncHistoryDao;
+import org.imogene.lib.sync.serializer.FramedOutputStream;
 import org.imogene.lib.sync.serializer.ImogSerializationException;
 import org.imogene.lib.sync.serializer.ImogSerializer;
+import org.imogene.lib.sync.server.session.SyncSessionRegistry;
 import org.imogene.lib.sync.server.util.HttpSessionUtil;
 import org.imogene.lib.sync.session.SyncSession;
 import org.imogene.lib.sync.session.SyncSessionDao;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /**
  * Implementation of a synchronization server.
@@ -45,6 +73,8 @@ public class OptimizedSyncServerImpl implements OptimizedSyncServer {
 	private GenericDao genericDao;
 	private SyncHistoryDao historyDao;
 	private SyncSessionDao sessionDao;
+	private ChangeLogDao changeLogDao;
+	private SyncSessionRegistry sessionRegistry = new SyncSessionRegistry();
 
 	private DataHandlerManager dataHandlerManager;
 
@@ -52,10 +82,20 @@ public class OptimizedSyncServerImpl implements OptimizedSyncServer {
 
 	private EntityHelper entityHelper;
 
+	/* number of entities loaded at once when the server modifications are serialized */
+	private int pageSize = 100;
+
+	/* number of change log entries read at once */
+	private int changeLogPageSize = 1000;
+
+	/* executor of the entity types loaded concurrently, null to load them one after another */
+	private ExecutorService executor;
+	private TransactionTemplate transactionTemplate;
+
 	@Override
 	public int applyClientModifications(String sessionId, InputStream data) throws ImogSerializationException {
 		if (checkSession(sessionId)) {
-			SyncSession session = sessionDao.load(sessionId);
+			SyncSessionRegistry.Entry session = sessionRegistry.get(sessionId);
 			ImogActor currentUser = genericDao.load(ImogActorImpl.class, session.getUserId());
 			return serializer.processMulti(data, currentUser);
 		}
@@ -64,12 +104,7 @@ public class OptimizedSyncServerImpl implements OptimizedSyncServer {
 
 	@Override
 	public boolean checkSession(String sessionId) {
-		try {
-			Thread.sleep(1000);
-		} catch (Exception ex) {
-			ex.printStackTrace();
-		}
-		return sessionDao.isValid(sessionId);
+		return sessionRegistry.isValid(sessionId);
 	}
 
 	@Override
@@ -81,8 +116,10 @@ public class OptimizedSyncServerImpl implements OptimizedSyncServer {
 		history.setTerminalId(session.getTerminalId());
 		history.setTime(session.getSendDate());
 		history.setStatus(status);
+		history.setSequence(session.getSequence());
 		historyDao.saveOrUpdate(history);
 		historyDao.deleteOld(session.getTerminalId());
+		sessionRegistry.evict(sessionId);
 		return 0;
 	}
 
@@ -99,86 +136,58 @@ public class OptimizedSyncServerImpl implements OptimizedSyncServer {
 	@Override
 	public void getServerModifications(String sessionId, OutputStream out) throws ImogSerializationException {
 		if (checkSession(sessionId)) {
-			SyncSession session = sessionDao.load(sessionId);
+			SyncSessionRegistry.Entry session = sessionRegistry.get(sessionId);
 			ImogActor currentUser = genericDao.load(ImogActorImpl.class, session.getUserId());
 
-			List<ImogBean> allEntities = new Vector<ImogBean>();
 			List<CardEntity> synchronizables = currentUser.getSynchronizables();
-			Date lastDate = computeLastDate(session.getTerminalId());
+			SyncHistory last = historyDao.loadLastOk(session.getTerminalId());
+			Date lastDate = last != null ? last.getTime() : null;
 
 			boolean allowBinaries = false;
-
-			// serialize entities
 			for (CardEntity synchronizable : synchronizables) {
 				if (BinaryFile.class.getName().equals(synchronizable.getClassName())) {
 					allowBinaries = true;
-					continue;
-				} else if (DynamicFieldInstance.class.getName().equals(synchronizable.getClassName())) {
-					continue;
-				} else {
-					ImogBeanHandler<? extends ImogBean> handler = dataHandlerManager.getHandler(synchronizable
-							.getClassName());
-					if (handler != null) {
-						List<? extends ImogBean> modified = null;
-						if (lastDate == null) {
-							modified = handler.loadEntities(currentUser, session.getTerminalId());
-						} else {
-							modified = handler.loadUploaded(lastDate, currentUser, session.getTerminalId());
-						}
-
-						if (modified != null && modified.size() > 0) {
-							allEntities.addAll(modified);
-						}
-					}
 				}
 			}
 
-			logger.debug("SeMo: " + allEntities.size() + " entities loaded, before filtering with the terminal id");
-
-			// removes entities that have just been sent by the client terminal
-			List<ImogBean> toBeRemoved = new Vector<ImogBean>();
-			for (ImogBean entity : allEntities) {
-				if (entity.getModifiedFrom().equals(SyncConstants.SYNC_ID_SYS)
-						|| entity.getModifiedFrom().equals(session.getTerminalId())) {
-					toBeRemoved.add(entity);
+			List<String> classNames = new Vector<String>();
+			for (CardEntity synchronizable : synchronizables) {
+				if (!BinaryFile.class.getName().equals(synchronizable.getClassName())
+						&& !DynamicFieldInstance.class.getName().equals(synchronizable.getClassName())) {
+					classNames.add(synchronizable.getClassName());
 				}
 			}
-			allEntities.removeAll(toBeRemoved);
 
-			// Add dynamic field instances
-			List<DynamicFieldInstance> instances = new Vector<DynamicFieldInstance>();
-			for (ImogBean bean : allEntities) {
-				if (bean instanceof ImogEntity) {
-					if (lastDate == null) {
-						List<DynamicFieldInstance> toAdd = ((ImogEntity) bean).getDynamicFieldValues();
-						if (toAdd != null && !toAdd.isEmpty()) {
-							instances.addAll(toAdd);
-						}
-					} else {
-						List<DynamicFieldInstance> internalInstances = ((ImogEntity) bean).getDynamicFieldValues();
-						if (internalInstances != null && internalInstances.size() > 0) {
-							for (DynamicFieldInstance instance : internalInstances) {
-								if (instance.getUploadDate().after(lastDate)) {
-									instances.add(instance);
-								}
-							}
-						}
-					}
+			// the ids of the modified entities are read from the change log, once the terminal has a sequence number
+			Map<String, List<String>> changedIds = null;
+			if (changeLogDao != null) {
+				/*
+				 * the entries up to the last committed one are all committed, it is read before the entries so that
+				 * the entries committed meanwhile are sent again next time rather than skipped
+				 */
+				long committed = changeLogDao.getLastSequence();
+				if (lastDate != null && last.getSequence() != null) {
+					changedIds = loadChangedIds(last.getSequence(), classNames, session.getTerminalId());
 				}
-			}
-			if (!instances.isEmpty()) {
-				allEntities.addAll(instances);
+				SyncSession stored = sessionDao.load(sessionId);
+				stored.setSequence(committed);
+				sessionDao.saveOrUpdate(stored);
 			}
 
-			if (allowBinaries) {
-				List<Binary> binaries = null;
-				if (lastDate == null) {
-					binaries = entityHelper.getAssociatedBinaries(allEntities);
-				} else {
-					binaries = entityHelper.getAssociatedBinariesUploaded(allEntities, lastDate);
-				}
-				if (binaries != null && binaries.size() > 0) {
-					allEntities.addAll(binaries);
+			// serialize entities, page by page for each entity type
+			int count = 0;
+			/* the binaries and dynamic field instances shared by several entities are written once in the stream */
+			Set<String> written = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+			serializer.startMulti(out);
+			if (executor != null && transactionTemplate != null && classNames.size() > 1) {
+				count = serializeConcurrently(classNames, changedIds, session, lastDate, allowBinaries, written, out);
+			} else {
+				for (String className : classNames) {
+					ImogBeanHandler<? extends ImogBean> handler = dataHandlerManager.getHandler(className);
+					if (handler != null) {
+						count = count + serializeServerModifications(handler, session, currentUser, lastDate,
+								getChangedIds(changedIds, className), allowBinaries, written, out);
+					}
 				}
 			}
 
@@ -191,9 +200,184 @@ public class OptimizedSyncServerImpl implements OptimizedSyncServer {
 			 * 
 			 * if (modifiedUser!=null) allEntities.add(modifiedUser); }
 			 */
-			logger.debug("SeMo: " + allEntities.size() + " entities kept, before the serialization");
-			serializer.serialize(allEntities, out);
+			serializer.endMulti(out);
+			logger.debug("SeMo: " + count + " entities serialized");
+		}
+	}
+
+	/**
+	 * Serialize the modifications of the entity types concurrently. Each entity type is serialized in a temporary file
+	 * by a task of the executor, in its own transaction, and the files are copied to the output stream in the order of
+	 * the entity types, so that the output is the same as when the types are serialized one after another. If the
+	 * output stream is framed, the files contain frames that are copied as they are.
+	 * 
+	 * @param classNames the class names of the entity types
+	 * @param changedIds the ids of the modified entities by class name, or null to search them by date
+	 * @param session the values of the synchronization session
+	 * @param lastDate the date of the last synchronization, or null if it is the first synchronization
+	 * @param allowBinaries true if the associated binaries have to be serialized
+	 * @param written the ids of the binaries and dynamic field instances already written in the stream
+	 * @param out The output stream where to serialize the data
+	 * @return the number of serialized entities
+	 */
+	private int serializeConcurrently(List<String> classNames, Map<String, List<String>> changedIds,
+			SyncSessionRegistry.Entry session, Date lastDate, boolean allowBinaries, Set<String> written,
+			OutputStream out) throws ImogSerializationException {
+		List<File> files = new Vector<File>();
+		List<Future<Integer>> results = new Vector<Future<Integer>>();
+		try {
+			for (String className : classNames) {
+				ImogBeanHandler<? extends ImogBean> handler = dataHandlerManager.getHandler(className);
+				if (handler != null) {
+					File file = File.createTempFile("imogsync", ".xml");
+					files.add(file);
+					results.add(executor.submit(new SerializationTask(handler, session, lastDate, getChangedIds(
+							changedIds, className), allowBinaries, written, file, out instanceof FramedOutputStream)));
+				}
+			}
+
+			int count = 0;
+			byte[] buffer = new byte[8192];
+			for (int i = 0; i < results.size(); i++) {
+				count = count + results.get(i).get();
+				InputStream in = new BufferedInputStream(new FileInputStream(files.get(i)));
+				try {
+					if (out instanceof FramedOutputStream) {
+						((FramedOutputStream) out).writeFrames(in);
+					} else {
+						int read;
+						while ((read = in.read(buffer)) != -1) {
+							out.write(buffer, 0, read);
+						}
+					}
+				} finally {
+					in.close();
+				}
+				files.get(i).delete();
+			}
+			return count;
+		} catch (IOException e) {
+			throw new ImogSerializationException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ImogSerializationException(e);
+		} catch (ExecutionException e) {
+			throw new ImogSerializationException(e.getCause());
+		} finally {
+			for (Future<Integer> result : results) {
+				result.cancel(true);
+			}
+			for (File file : files) {
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * Get the ids of the modified entities of an entity type
+	 * 
+	 * @param changedIds the ids of the modified entities by class name, or null to search them by date
+	 * @param className the class name of the entity type
+	 * @return the ids, or null to search them by date
+	 */
+	private List<String> getChangedIds(Map<String, List<String>> changedIds, String className) {
+		if (changedIds == null) {
+			return null;
+		}
+		return changedIds.containsKey(className) ? changedIds.get(className) : new Vector<String>();
+	}
+
+	/**
+	 * Serialize the modifications of an entity type, page by page. Each page is completed with its dynamic field
+	 * instances and binaries not written yet in the stream, written to the output stream and then detached from the
+	 * persistence context.
+	 * 
+	 * @param handler the handler of the entity type
+	 * @param session the values of the synchronization session
+	 * @param currentUser the user which is performing the synchronization
+	 * @param lastDate the date of the last synchronization, or null if it is the first synchronization
+	 * @param ids the ids of the entities modified since the last synchronization, or null to search them by date
+	 * @param allowBinaries true if the associated binaries have to be serialized
+	 * @param written the ids of the binaries and dynamic field instances already written in the stream, completed
+	 *            with the ones written by this type
+	 * @param out The output stream where to serialize the data
+	 * @return the number of serialized entities
+	 */
+	private <T extends ImogBean> int serializeServerModifications(ImogBeanHandler<T> handler,
+			SyncSessionRegistry.Entry session, ImogActor currentUser, Date lastDate, List<String> ids,
+			boolean allowBinaries, Set<String> written, OutputStream out) throws ImogSerializationException {
+		int count = 0;
+		ImogBeanCursor<T> cursor = null;
+		if (ids != null) {
+			cursor = handler.openCursor(ids, currentUser, session.getTerminalId(), pageSize);
+		} else {
+			cursor = handler.openCursor(lastDate, currentUser, session.getTerminalId(), pageSize);
+		}
+		try {
+			while (cursor.hasNext()) {
+				// removes entities that have just been sent by the client terminal
+				List<ImogBean> page = new Vector<ImogBean>();
+				for (T entity : cursor.next()) {
+					if (!entity.getModifiedFrom().equals(SyncConstants.SYNC_ID_SYS)
+							&& !entity.getModifiedFrom().equals(session.getTerminalId())) {
+						page.add(entity);
+					}
+				}
+				if (page.isEmpty()) {
+					continue;
+				}
+
+				// Add dynamic field instances
+				List<ImogBean> related = new Vector<ImogBean>();
+				for (ImogBean bean : page) {
+					if (bean instanceof ImogEntity) {
+						List<DynamicFieldInstance> instances = ((ImogEntity) bean).getDynamicFieldValues();
+						if (instances != null && !instances.isEmpty()) {
+							for (DynamicFieldInstance instance : instances) {
+								if ((lastDate == null || instance.getUploadDate().after(lastDate))
+										&& written.add(instance.getId())) {
+									related.add(instance);
+								}
+							}
+						}
+					}
+				}
+
+				if (allowBinaries) {
+					List<ImogBean> withInstances = new Vector<ImogBean>(page);
+					withInstances.addAll(related);
+					List<Binary> binaries = null;
+					if (lastDate == null) {
+						binaries = entityHelper.getAssociatedBinaries(withInstances);
+					} else {
+						binaries = entityHelper.getAssociatedBinariesUploaded(withInstances, lastDate);
+					}
+					if (binaries != null) {
+						for (Binary binary : binaries) {
+							if (binary != null) {
+								if (written.add(binary.getId())) {
+									related.add(binary);
+								} else {
+									genericDao.detach(binary);
+								}
+							}
+						}
+					}
+				}
+
+				serializer.serializeMulti(page, out);
+				serializer.serializeMulti(related, out);
+				count = count + page.size() + related.size();
+
+				// the page entities are detached by the cursor
+				for (ImogBean bean : related) {
+					genericDao.detach(bean);
+				}
+			}
+		} finally {
+			cursor.close();
 		}
+		return count;
 	}
 
 	@Override
@@ -209,47 +393,183 @@ public class OptimizedSyncServerImpl implements OptimizedSyncServer {
 		session.setInitDate(new Date(System.currentTimeMillis()));
 		session.setSendDate(new Date(System.currentTimeMillis()));
 		sessionDao.saveOrUpdate(session);
+		sessionRegistry.register(session);
 		return session.getId().toString();
 	}
 
 	@Override
-	public String initResumeSendSession(String termiId, String type, ImogActor user, String sessionId) {
-		return null;
+	public long initResumeSendSession(String sessionId, File received) {
+		SyncSession session = sessionDao.load(sessionId);
+		if (session == null) {
+			return -1;
+		}
+		try {
+			long length = 0;
+			long checksum = 0;
+			if (received.exists()) {
+				checksum = checksum(received, session.getReceivedLength(), session.getReceivedChecksum());
+				if (checksum < 0) {
+					logger.warn("ResSend: the client modifications received for the session " + sessionId
+							+ " do not match the acknowledged ones, they are received again");
+					received.delete();
+					checksum = 0;
+				} else {
+					length = received.length();
+					sync(received);
+				}
+			}
+			session.setReceivedLength(length);
+			session.setReceivedChecksum(checksum);
+			sessionDao.saveOrUpdate(session);
+			return length;
+		} catch (IOException e) {
+			logger.error("Error checking the client modifications received for the session " + sessionId, e);
+			return -1;
+		}
 	}
 
 	@Override
-	public String initResumeRequestSession(String termiId, String type, ImogActor user, String sessionId,
-			long bytesReceived) {
-		return "OK";
+	public boolean initResumeRequestSession(String sessionId, File modifications, long bytesReceived) {
+		if (bytesReceived == 0) {
+			return true;
+		}
+		SyncSession session = sessionDao.load(sessionId);
+		boolean valid = false;
+		if (session != null && session.getSentLength() != null && modifications.exists()
+				&& modifications.length() == session.getSentLength() && bytesReceived <= session.getSentLength()) {
+			try {
+				valid = checksum(modifications, null, null) == session.getSentChecksum();
+			} catch (IOException e) {
+				logger.error("Error checking the server modifications of the session " + sessionId, e);
+			}
+		}
+		if (!valid) {
+			logger.warn("ResRec: the server modifications of the session " + sessionId
+					+ " can not be resumed after " + bytesReceived + " bytes, they are sent again");
+			modifications.delete();
+			if (session != null) {
+				session.setSentLength(null);
+				session.setSentChecksum(null);
+				sessionDao.saveOrUpdate(session);
+			}
+		}
+		return valid;
 	}
 
 	@Override
-	public File getFileDirectory() {
-		throw new RuntimeException("Not impelmented.");
+	public void acknowledgeClientModifications(String sessionId, File received) {
+		SyncSession session = sessionDao.load(sessionId);
+		if (session == null || !received.exists()) {
+			return;
+		}
+		try {
+			session.setReceivedChecksum(checksum(received, null, null));
+			session.setReceivedLength(received.length());
+			sync(received);
+			sessionDao.saveOrUpdate(session);
+		} catch (IOException e) {
+			logger.error("Error acknowledging the client modifications of the session " + sessionId, e);
+		}
 	}
 
 	@Override
-	public int resumeApplyClientModifications(String sessionId, InputStream data) throws ImogSerializationException {
-		return 0;
+	public void serverModificationsWritten(String sessionId, long length, long checksum) {
+		SyncSession session = sessionDao.load(sessionId);
+		if (session != null) {
+			session.setSentLength(length);
+			session.setSentChecksum(checksum);
+			sessionDao.saveOrUpdate(session);
+		}
+	}
+
+	/**
+	 * Compute the CRC32 checksum of a work file, checking on the way that its first bytes are the acknowledged ones
+	 * 
+	 * @param file the work file
+	 * @param acknowledgedLength the number of bytes acknowledged, or null if nothing has been acknowledged
+	 * @param acknowledgedChecksum the checksum of the bytes acknowledged
+	 * @return the checksum of the whole file, or -1 if the first bytes are not the acknowledged ones
+	 * @throws IOException
+	 */
+	private long checksum(File file, Long acknowledgedLength, Long acknowledgedChecksum) throws IOException {
+		long acknowledged = acknowledgedLength != null && acknowledgedChecksum != null ? acknowledgedLength : 0;
+		if (file.length() < acknowledged) {
+			return -1;
+		}
+		CRC32 crc = new CRC32();
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[8192];
+			long position = 0;
+			int read;
+			/* the reads stop at the acknowledged length, so that the checksum can be compared there */
+			while ((read = in.read(buffer, 0, position < acknowledged ? (int) Math.min(buffer.length, acknowledged
+					- position) : buffer.length)) != -1) {
+				crc.update(buffer, 0, read);
+				position = position + read;
+				if (acknowledged > 0 && position == acknowledged && crc.getValue() != acknowledgedChecksum) {
+					return -1;
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Force the content of a work file to the disk
+	 * 
+	 * @param file the work file
+	 * @throws IOException
+	 */
+	private void sync(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.getFD().sync();
+		} finally {
+			raf.close();
+		}
 	}
 
 	@Override
-	public void resumeGetServerModifications(String sessionId, OutputStream out, long bytesToSkip)
-			throws ImogSerializationException {
+	public File getFileDirectory() {
+		throw new RuntimeException("Not impelmented.");
 	}
 
 	/**
-	 * Compute the date of the last synchronization of the specified terminal;
+	 * Read the change log entries recorded since a sequence number, except the ones of the modifications sent by the
+	 * terminal.
 	 * 
+	 * @param sequence the sequence number of the last synchronization
+	 * @param classNames the class names of the entities to synchronize
 	 * @param terminalId the terminal id
-	 * @return the date or null if it is the first synchronization.
+	 * @return the ids of the modified entities, by class name
 	 */
-	private Date computeLastDate(String terminalId) {
-		SyncHistory last = historyDao.loadLastOk(terminalId);
-		if (last != null) {
-			return last.getTime();
+	private Map<String, List<String>> loadChangedIds(long sequence, List<String> classNames, String terminalId) {
+		Map<String, Set<String>> ids = new HashMap<String, Set<String>>();
+		if (!classNames.isEmpty()) {
+			List<String> excludedOrigins = Arrays.asList(SyncConstants.SYNC_ID_SYS, terminalId);
+			List<ChangeLog> entries = null;
+			do {
+				entries = changeLogDao.loadAfter(sequence, changeLogPageSize, classNames, excludedOrigins);
+				for (ChangeLog entry : entries) {
+					Set<String> byType = ids.get(entry.getEntityType());
+					if (byType == null) {
+						byType = new LinkedHashSet<String>();
+						ids.put(entry.getEntityType(), byType);
+					}
+					byType.add(entry.getEntityId());
+					sequence = entry.getSequence();
+				}
+			} while (entries.size() == changeLogPageSize);
 		}
-		return null;
+
+		Map<String, List<String>> result = new HashMap<String, List<String>>();
+		for (Map.Entry<String, Set<String>> entry : ids.entrySet()) {
+			result.put(entry.getKey(), new Vector<String>(entry.getValue()));
+		}
+		return result;
 	}
 
 	/**
@@ -267,7 +587,62 @@ public class OptimizedSyncServerImpl implements OptimizedSyncServer {
 	 * @param historyHandler
 	 */
 	public void setSessionDao(SyncSessionDao pSessionDao) {
-		this.sessionDao = pSessionDao;
+		/* the sessions are loaded and deleted through the registry, that evicts the deleted ones */
+		sessionRegistry.setSessionDao(pSessionDao);
+		this.sessionDao = sessionRegistry;
+	}
+
+	/**
+	 * Setter for bean injection
+	 * 
+	 * @param parallelism the number of entity types loaded concurrently, 1 to load them one after another
+	 */
+	public void setParallelism(int parallelism) {
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+		if (parallelism > 1) {
+			executor = Executors.newFixedThreadPool(parallelism);
+		}
+	}
+
+	/**
+	 * Setter for bean injection
+	 * 
+	 * @param transactionManager the transaction manager of the entity types loaded concurrently
+	 */
+	public void setTransactionManager(PlatformTransactionManager transactionManager) {
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		/* the entity types are only read, the serialization must not flush the persistence contexts */
+		this.transactionTemplate.setReadOnly(true);
+	}
+
+	/**
+	 * Stop the executor of the entity types loaded concurrently
+	 */
+	public void destroy() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Setter for bean injection
+	 * 
+	 * @param changeLogDao
+	 */
+	public void setChangeLogDao(ChangeLogDao changeLogDao) {
+		this.changeLogDao = changeLogDao;
+	}
+
+	/**
+	 * Setter for bean injection
+	 * 
+	 * @param timeout time in milliseconds during which a session is kept in memory once validated
+	 */
+	public void setSessionTimeout(long timeout) {
+		sessionRegistry.setTimeout(timeout);
 	}
 
 	/**
@@ -306,4 +681,70 @@ public class OptimizedSyncServerImpl implements OptimizedSyncServer {
 		this.entityHelper = helper;
 	}
 
+	/**
+	 * Setter for bean injection
+	 * 
+	 * @param pageSize the number of entities loaded at once when the server modifications are serialized
+	 */
+	public void setPageSize(int pageSize) {
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * Task that serializes the modifications of an entity type in a file, in its own transaction and persistence
+	 * context
+	 */
+	private class SerializationTask implements Callable<Integer> {
+
+		private final ImogBeanHandler<? extends ImogBean> handler;
+		private final SyncSessionRegistry.Entry session;
+		private final Date lastDate;
+		private final List<String> ids;
+		private final boolean allowBinaries;
+		private final Set<String> written;
+		private final File file;
+		private final boolean framed;
+
+		private SerializationTask(ImogBeanHandler<? extends ImogBean> handler, SyncSessionRegistry.Entry session,
+				Date lastDate, List<String> ids, boolean allowBinaries, Set<String> written, File file, boolean framed) {
+			this.handler = handler;
+			this.session = session;
+			this.lastDate = lastDate;
+			this.ids = ids;
+			this.allowBinaries = allowBinaries;
+			this.written = written;
+			this.file = file;
+			this.framed = framed;
+		}
+
+		@Override
+		public Integer call() throws Exception {
+			return transactionTemplate.execute(new TransactionCallback<Integer>() {
+
+				@Override
+				public Integer doInTransaction(TransactionStatus status) {
+					genericDao.setReadOnly();
+					try {
+						/* the user is loaded again, the entities can not be shared between persistence contexts */
+						ImogActor currentUser = genericDao.load(ImogActorImpl.class, session.getUserId());
+						OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+						if (framed) {
+							out = new FramedOutputStream(out, false);
+						}
+						try {
+							return serializeServerModifications(handler, session, currentUser, lastDate, ids,
+									allowBinaries, written, out);
+						} finally {
+							out.close();
+						}
+					} catch (IOException e) {
+						throw new IllegalStateException(e);
+					} catch (ImogSerializationException e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			});
+		}
+	}
+
 }
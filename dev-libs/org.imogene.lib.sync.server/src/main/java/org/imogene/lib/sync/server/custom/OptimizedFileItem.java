@@ -9,11 +9,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.zip.InflaterOutputStream;
 
 import org.apache.commons.fileupload.FileItem;
 import org.apache.commons.fileupload.FileItemHeaders;
 import org.apache.commons.fileupload.FileUploadException;
 import org.apache.commons.io.IOUtils;
+import org.imogene.lib.common.binary.file.ContentOutputStream;
+import org.imogene.lib.sync.server.http.OptimizedSyncController;
 
 public class OptimizedFileItem implements FileItem {
 
@@ -35,6 +38,9 @@ public class OptimizedFileItem implements FileItem {
 
 	private File repository;
 
+	/* the maximum size of the stored file, once uncompressed, 0 or less for no maximum */
+	private long maxStoredSize;
+
 	public OptimizedFileItem(String fieldName, String contentType, boolean isFormField, String fileName,
 			int sizeThreshold, File repository) {
 		this.fieldName = fieldName;
@@ -140,9 +146,17 @@ public class OptimizedFileItem implements FileItem {
 			if (fileName == null)
 				throw new RuntimeException("filename is null !!!!!!");
 			medooFile = new File(repository, fileName);
-			if (medooFile.exists())
-				return os = new FileOutputStream(medooFile, true);
-			return new FileOutputStream(medooFile);
+			boolean resumed = medooFile.exists();
+			/* the size is checked as the upload is written, including the part stored by the previous sessions */
+			os = new ContentOutputStream(new FileOutputStream(medooFile, resumed), resumed ? medooFile.length() : 0,
+					maxStoredSize);
+			/*
+			 * a compressed upload is stored uncompressed, so that the size of the file is the offset from which the
+			 * upload is resumed, the content type of the part may be followed by a charset
+			 */
+			if (contentType != null && contentType.startsWith(OptimizedSyncController.CONTENT_TYPE_DEFLATE)) {
+				os = new InflaterOutputStream(os);
+			}
 		}
 		return os;
 	}
@@ -207,6 +221,14 @@ public class OptimizedFileItem implements FileItem {
 		this.sizeThreshold = sizeThreshold;
 	}
 
+	public long getMaxStoredSize() {
+		return maxStoredSize;
+	}
+
+	public void setMaxStoredSize(long maxStoredSize) {
+		this.maxStoredSize = maxStoredSize;
+	}
+
 	public File getRepository() {
 		return repository;
 	}
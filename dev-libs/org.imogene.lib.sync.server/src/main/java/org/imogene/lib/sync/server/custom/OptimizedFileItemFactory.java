@@ -6,12 +6,24 @@ import org.apache.commons.fileupload.disk.DiskFileItemFactory;
 
 public class OptimizedFileItemFactory extends DiskFileItemFactory {
 
+	private long maxStoredSize = -1;
+
 	@Override
 	public FileItem createItem(String fieldName, String contentType,
 			boolean isFormField, String fileName) {		
-		if("data".equals(fieldName))
-			return new OptimizedFileItem(fieldName, contentType, isFormField, fileName,-1, getRepository());
+		if("data".equals(fieldName)) {
+			OptimizedFileItem item = new OptimizedFileItem(fieldName, contentType, isFormField, fileName,-1, getRepository());
+			item.setMaxStoredSize(maxStoredSize);
+			return item;
+		}
 		return super.createItem(fieldName, contentType, isFormField, fileName);		
 	}
+
+	/**
+	 * @param maxStoredSize the maximum size of an uploaded file once uncompressed, -1 for no maximum
+	 */
+	public void setMaxStoredSize(long maxStoredSize) {
+		this.maxStoredSize = maxStoredSize;
+	}
 	
 }
@@ -19,6 +19,14 @@ public class OptimizedMultiPartResolver extends CommonsMultipartResolver{
 	protected DiskFileItemFactory newFileItemFactory() {		
 		return new OptimizedFileItemFactory();
 	}
+
+	/**
+	 * Set the maximum size of an uploaded file once uncompressed, the upload fails as soon as it is reached
+	 * @param maxStoredSize the maximum size in bytes, -1 for no maximum
+	 */
+	public void setMaxStoredSize(long maxStoredSize) {
+		((OptimizedFileItemFactory) getFileItemFactory()).setMaxStoredSize(maxStoredSize);
+	}
 	
 	/**
 	 * Create the sync work directory
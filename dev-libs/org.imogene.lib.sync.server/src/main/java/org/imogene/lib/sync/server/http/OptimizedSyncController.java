@@ -1,17 +1,24 @@
 package org.imogene.lib.sync.server.http;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.log4j.Logger;
+import org.imogene.lib.sync.serializer.FramedOutputStream;
 import org.imogene.lib.sync.serializer.ImogSerializationException;
 import org.imogene.lib.sync.server.OptimizedSyncServer;
 import org.imogene.lib.sync.server.http.command.ClientUploadCommand;
@@ -36,6 +43,18 @@ public class OptimizedSyncController extends MultiActionController {
 	/* response messages */
 	public static final String RESPONSE_OK = "OK";
 
+	/* compression, the client modifications are sent deflated with a specific content type */
+	public static final String HEADER_ENCODING = "medoo-sync-encoding";
+	public static final String ENCODING_GZIP = "gzip";
+	public static final String ENCODING_DEFLATE = "deflate";
+	public static final String CONTENT_TYPE_DEFLATE = "application/x-medoo-deflate";
+
+	/* binaries, their content can be sent in binary frames instead of being base64 encoded in the XML */
+	public static final String HEADER_BINARY = "medoo-sync-binary";
+	public static final String BINARY_FRAMED = "framed";
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
 	private Logger logger = Logger.getLogger("org.imogene.sync.server.http");
 
 	private OptimizedSyncServer syncServer;
@@ -111,20 +130,27 @@ public class OptimizedSyncController extends MultiActionController {
 	}
 
 	/**
-	 * Initialize a resume 'receive' session
+	 * Initialize a resume 'receive' session. The response is OK if the transfer can be resumed after the bytes
+	 * received by the client, otherwise it is the number of bytes from which it is resumed, that is 0.
 	 * 
 	 * @param req The HTTP servlet request
 	 * @param resp The HTTP servlet response
+	 * @param The command created from the request parameters
 	 */
-	public void initresumereceive(HttpServletRequest req, HttpServletResponse resp) {
+	public void initresumereceive(HttpServletRequest req, HttpServletResponse resp, SessionCommand command) {
 		setHeader(resp);
+		File modifications = new File(getSyncWorkDirectory(req), command.getSession() + ".smodif");
+		String response = RESPONSE_OK;
+		if (!syncServer.initResumeRequestSession(command.getSession(), modifications, command.getLen())) {
+			response = "0";
+		}
 		try {
-			resp.setContentLength(RESPONSE_OK.getBytes().length);
+			resp.setContentLength(response.getBytes().length);
 			OutputStream out = resp.getOutputStream();
-			out.write(RESPONSE_OK.getBytes());
+			out.write(response.getBytes());
 			out.flush();
 			out.close();
-			logger.debug("ResRec: Initialization of a resumed session ");
+			logger.debug("ResRec: Initialization of a resumed session, response " + response);
 		} catch (IOException e) {
 			logger.error("Init resume session receive error", e);
 		}
@@ -140,12 +166,14 @@ public class OptimizedSyncController extends MultiActionController {
 	public void initresumesend(HttpServletRequest req, HttpServletResponse resp, SessionCommand command) {
 		setHeader(resp);
 		String sessionId = command.getSession();
-		long bytesReceived = 0;
 		File received = new File(getSyncWorkDirectory(req), sessionId + ".cmodif");
 		logger.debug("ResSend: Initialize a resumed 'send' session");
-		if (received.exists())
-			bytesReceived = received.length();
+		long bytesReceived = syncServer.initResumeSendSession(sessionId, received);
 		try {
+			if (bytesReceived < 0) {
+				resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+				return;
+			}
 			logger.debug("ResSend: I already received " + bytesReceived);
 			resp.setContentLength(String.valueOf(bytesReceived).getBytes().length);
 			OutputStream out = resp.getOutputStream();
@@ -165,25 +193,25 @@ public class OptimizedSyncController extends MultiActionController {
 
 		try {
 			File tempFile = File.createTempFile("medoo", "search");
-			OutputStream fos = new FileOutputStream(tempFile);
-			syncServer.searchEntity(command.getSearchedid(), fos);
+			OutputStream fos = openModifications(new BufferedOutputStream(new FileOutputStream(tempFile)), req);
+			try {
+				syncServer.searchEntity(command.getSearchedid(), fos);
+			} finally {
+				fos.close();
+			}
 
 			/* sending the result */
-			InputStream fis = new FileInputStream(tempFile);
-			resp.setContentLength(fis.available());
-			while (fis.available() > 0) {
-				resp.getOutputStream().write(fis.read());
-			}
-			resp.getOutputStream().flush();
-			resp.flushBuffer();
-			fis.close();
+			sendFile(tempFile, 0, req, resp);
+			tempFile.delete();
 		} catch (Exception e) {
 			logger.error("Search entity error", e);
 		}
 	}
 
 	/**
-	 * Method that handles the server modification request command
+	 * Method that handles the server modification request command. If the client asks for a direct transfer, the
+	 * modifications are serialized straight into the response, otherwise they are written in a work file so that the
+	 * transfer can be resumed.
 	 * 
 	 * @param req The HTTP servlet request
 	 * @param resp The HTTP servlet response
@@ -193,19 +221,27 @@ public class OptimizedSyncController extends MultiActionController {
 		setHeader(resp);
 		try {
 			logger.debug("SeMo: Requesting server modification for session " + command.getSession());
+			if (command.getDirect()) {
+				/* no resume possible, the result is directly written as response */
+				OutputStream out = null;
+				if (acceptsGzip(req)) {
+					resp.setHeader("Content-Encoding", ENCODING_GZIP);
+					out = new BufferedOutputStream(new GZIPOutputStream(resp.getOutputStream(), BUFFER_SIZE),
+							BUFFER_SIZE);
+				} else {
+					out = new BufferedOutputStream(resp.getOutputStream(), BUFFER_SIZE);
+				}
+				out = openModifications(out, req);
+				syncServer.getServerModifications(command.getSession(), out);
+				out.close();
+				resp.flushBuffer();
+				return;
+			}
 			/* write the result in a temporary file */
 			File tempFile = new File(getSyncWorkDirectory(req), command.getSession() + ".smodif");
-			OutputStream fos = new FileOutputStream(tempFile);
-			syncServer.getServerModifications(command.getSession(), fos);
+			writeServerModifications(command.getSession(), tempFile, req);
 			/* read the file and wrote the result as response */
-			InputStream fis = new FileInputStream(tempFile);
-			resp.setContentLength(fis.available());
-			while (fis.available() > 0) {
-				resp.getOutputStream().write(fis.read());
-			}
-			resp.getOutputStream().flush();
-			resp.flushBuffer();
-			fis.close();
+			sendFile(tempFile, 0, req, resp);
 		} catch (Exception e) {
 			logger.error("Request server modifications error", e);
 		}
@@ -242,30 +278,23 @@ public class OptimizedSyncController extends MultiActionController {
 			if (!tempFile.exists()) {
 				logger.debug("ResRec: the file doesn't exist, so we created it by serializing the entities");
 				try {
-					OutputStream fos = new FileOutputStream(tempFile);
-					syncServer.getServerModifications(command.getSession(), fos);
-					fos.close();
-				} catch (ImogSerializationException e) {
-					logger.error(e.getMessage(), e);
+					writeServerModifications(command.getSession(), tempFile, req);
+				} catch (Exception e) {
+					/* a partial file would be sent by the next resume */
+					logger.error("Error writing the server modifications", e);
+					tempFile.delete();
+					resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+					return;
 				}
 			}
-			/* read the file and wrote the result as response */
-			InputStream fis = new FileInputStream(tempFile);
-			long skipped = fis.skip(command.getLen());
-			if (skipped != command.getLen()) {
-				logger.error("Error skipping bytes: " + command.getLen() + " bytes to skip," + skipped
-						+ " bytes skipped");
-				fis.close();
+			/* read the file from the already received offset and wrote the result as response */
+			if (command.getLen() < 0 || command.getLen() > tempFile.length()) {
+				logger.error("Error skipping bytes: " + command.getLen() + " bytes to skip, the file contains "
+						+ tempFile.length() + " bytes");
 				resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
 				return;
 			}
-			resp.setContentLength(fis.available());
-			while (fis.available() > 0) {
-				resp.getOutputStream().write(fis.read());
-			}
-			resp.getOutputStream().flush();
-			resp.flushBuffer();
-			fis.close();
+			sendFile(tempFile, command.getLen(), req, resp);
 		} catch (IOException e) {
 			logger.error("Error resuming a receive", e);
 		}
@@ -318,6 +347,9 @@ public class OptimizedSyncController extends MultiActionController {
 		binder.bind(req);
 		String sessionId = command.getSession();
 		try {
+			/* the data are received entirely, a new resume would not send them again */
+			syncServer.acknowledgeClientModifications(sessionId, new File(getSyncWorkDirectory(req), sessionId
+					+ ".cmodif"));
 			logger.debug("ClMo: Sarting to parse the received file");
 			int code = syncServer.applyClientModifications(sessionId, command.getData().getInputStream());
 			if (code != -1) {
@@ -393,8 +425,126 @@ public class OptimizedSyncController extends MultiActionController {
 		return workDirectory;
 	}
 
+	/**
+	 * Send the content of a file as response, starting at the specified offset. The data are transferred by the file
+	 * channel instead of being copied byte per byte. If the client accepts it, the data are gzipped, the offset still
+	 * refers to the uncompressed file.
+	 * 
+	 * @param file the file to send
+	 * @param offset the number of bytes to skip
+	 * @param req the HTTP request
+	 * @param resp the HTTP response
+	 * @throws IOException
+	 */
+	private void sendFile(File file, long offset, HttpServletRequest req, HttpServletResponse resp)
+			throws IOException {
+		FileInputStream fis = new FileInputStream(file);
+		try {
+			FileChannel channel = fis.getChannel();
+			long size = channel.size();
+			WritableByteChannel out = null;
+			GZIPOutputStream gzip = null;
+			if (acceptsGzip(req)) {
+				/* the compressed length is not known in advance */
+				resp.setHeader("Content-Encoding", ENCODING_GZIP);
+				gzip = new GZIPOutputStream(resp.getOutputStream(), BUFFER_SIZE);
+				out = Channels.newChannel(gzip);
+			} else {
+				resp.setHeader("Content-Length", String.valueOf(size - offset));
+				out = Channels.newChannel(resp.getOutputStream());
+			}
+			long position = offset;
+			while (position < size) {
+				position = position + channel.transferTo(position, size - position, out);
+			}
+			if (gzip != null) {
+				gzip.finish();
+			}
+			resp.flushBuffer();
+		} finally {
+			fis.close();
+		}
+	}
+
+	/**
+	 * Check if the client accepts a gzipped response, that is if the Accept-Encoding header lists the gzip coding
+	 * without a zero quality value
+	 * 
+	 * @param req the HTTP request
+	 * @return true if the response can be gzipped
+	 */
+	private boolean acceptsGzip(HttpServletRequest req) {
+		String accepted = req.getHeader("Accept-Encoding");
+		if (accepted == null) {
+			return false;
+		}
+		for (String coding : accepted.split(",")) {
+			String[] parameters = coding.split(";");
+			if (!parameters[0].trim().equalsIgnoreCase(ENCODING_GZIP)) {
+				continue;
+			}
+			for (int i = 1; i < parameters.length; i++) {
+				String[] parameter = parameters[i].split("=");
+				if (parameter.length == 2 && parameter[0].trim().equalsIgnoreCase("q")) {
+					try {
+						return Double.parseDouble(parameter[1].trim()) > 0;
+					} catch (NumberFormatException e) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Write the server modifications in a work file, from which their transfer can be resumed. The file is forced to
+	 * the disk and its length and checksum are recorded in the session.
+	 * 
+	 * @param sessionId the session id
+	 * @param file the work file
+	 * @param req the HTTP request
+	 * @throws IOException
+	 * @throws ImogSerializationException
+	 */
+	private void writeServerModifications(String sessionId, File file, HttpServletRequest req) throws IOException,
+			ImogSerializationException {
+		FileOutputStream fos = new FileOutputStream(file);
+		CheckedOutputStream checked = new CheckedOutputStream(fos, new CRC32());
+		OutputStream out = openModifications(new BufferedOutputStream(checked, BUFFER_SIZE), req);
+		try {
+			syncServer.getServerModifications(sessionId, out);
+			out.flush();
+			fos.getFD().sync();
+		} finally {
+			out.close();
+		}
+		syncServer.serverModificationsWritten(sessionId, file.length(), checked.getChecksum().getValue());
+	}
+
+	/**
+	 * Open the stream in which the server modifications are serialized. If the client reads framed documents, the
+	 * content of the binaries is sent in binary frames.
+	 * 
+	 * @param out the output stream
+	 * @param req the HTTP request
+	 * @return the stream to give to the sync server
+	 * @throws IOException
+	 */
+	private OutputStream openModifications(OutputStream out, HttpServletRequest req) throws IOException {
+		String accepted = req.getHeader(HEADER_BINARY);
+		if (accepted != null && accepted.contains(BINARY_FRAMED)) {
+			return new FramedOutputStream(out);
+		}
+		return out;
+	}
+
 	private void setHeader(HttpServletResponse response) {
 		response.setHeader(HEADER_NAME, HEADER_VALUE);
+		/* the client modifications can be sent deflated, and as framed documents */
+		response.setHeader(HEADER_ENCODING, ENCODING_DEFLATE);
+		response.setHeader(HEADER_BINARY, BINARY_FRAMED);
 	}
 
 }
@@ -9,6 +9,8 @@ public class SessionCommand {
 	private long len;
 	
 	private boolean debug=false;
+	
+	private boolean direct=false;
 
 	public String getSession() {
 		return session;
@@ -41,5 +43,13 @@ public class SessionCommand {
 	public boolean getDebug(){
 		return this.debug;
 	}
+	
+	public void setDirect(boolean direct){
+		this.direct = direct;
+	}
+	
+	public boolean getDirect(){
+		return this.direct;
+	}
 			
 }
@@ -0,0 +1,191 @@
+package org.imogene.lib.sync.server.session;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+import org.imogene.lib.sync.session.SyncSession;
+import org.imogene.lib.sync.session.SyncSessionDao;
+
+/**
+ * In-memory registry of the synchronization sessions, that avoids to query the database each time a session is
+ * checked. Only the values that never change during a session are kept in memory, in immutable entries, the session
+ * itself is always loaded by the DAO in the transaction of the request that modifies it. The entries expire after a
+ * timeout, an expired or unknown session is then searched again in the database.
+ * <p>
+ * The registry is also a session DAO that delegates to the database one, and evicts the sessions that are closed or
+ * deleted through it.
+ *
+ * @author MEDES-IMPS
+ */
+public class SyncSessionRegistry implements SyncSessionDao {
+
+	private Logger logger = Logger.getLogger("org.imogene.sync.server.session");
+
+	private final ConcurrentMap<String, Entry> sessions = new ConcurrentHashMap<String, Entry>();
+
+	private SyncSessionDao sessionDao;
+
+	/* time in milliseconds during which a session is kept in memory */
+	private long timeout = 30 * 60 * 1000;
+
+	private volatile long lastPurge = System.currentTimeMillis();
+
+	/**
+	 * Register a session that has just been created.
+	 *
+	 * @param session the session to register
+	 */
+	public void register(SyncSession session) {
+		long now = System.currentTimeMillis();
+		sessions.put(session.getId(), new Entry(session, now + timeout));
+		purgeExpired(now);
+	}
+
+	/**
+	 * Get the immutable values of the specified session, from the memory if it has been registered and has not
+	 * expired, from the database otherwise.
+	 *
+	 * @param sessionId the session id
+	 * @return the session values or null if the session does not exist
+	 */
+	public Entry get(String sessionId) {
+		if (sessionId == null) {
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		Entry entry = sessions.get(sessionId);
+		if (entry != null) {
+			if (entry.expiration > now) {
+				return entry;
+			}
+			sessions.remove(sessionId, entry);
+		}
+		SyncSession session = sessionDao.load(sessionId);
+		if (session == null) {
+			return null;
+		}
+		entry = new Entry(session, now + timeout);
+		sessions.put(sessionId, entry);
+		return entry;
+	}
+
+	/**
+	 * Remove a session from the memory, once it is closed
+	 *
+	 * @param sessionId the session id
+	 */
+	public void evict(String sessionId) {
+		if (sessionId != null) {
+			sessions.remove(sessionId);
+		}
+	}
+
+	/**
+	 * Get the number of sessions kept in memory
+	 */
+	public int size() {
+		return sessions.size();
+	}
+
+	@Override
+	public boolean isValid(String sessionId) {
+		return get(sessionId) != null;
+	}
+
+	@Override
+	public void saveOrUpdate(SyncSession session) {
+		sessionDao.saveOrUpdate(session);
+	}
+
+	@Override
+	public SyncSession load(String id) {
+		return sessionDao.load(id);
+	}
+
+	@Override
+	public void delete(SyncSession session) {
+		evict(session.getId());
+		sessionDao.delete(session);
+	}
+
+	@Override
+	public void clearTerminated() {
+		/* the ids of the deleted sessions are not known, they are all searched again in the database */
+		sessions.clear();
+		sessionDao.clearTerminated();
+	}
+
+	/**
+	 * Remove the expired sessions from the memory, at most once per timeout period.
+	 *
+	 * @param now the current time
+	 */
+	private void purgeExpired(long now) {
+		if (now - lastPurge < timeout) {
+			return;
+		}
+		lastPurge = now;
+		for (Iterator<Entry> it = sessions.values().iterator(); it.hasNext();) {
+			if (it.next().expiration <= now) {
+				it.remove();
+			}
+		}
+		logger.debug(sessions.size() + " sessions kept in memory after purge");
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param sessionDao the DAO of the sessions stored in the database
+	 */
+	public void setSessionDao(SyncSessionDao sessionDao) {
+		this.sessionDao = sessionDao;
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param timeout time in milliseconds during which a session is kept in memory
+	 */
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * The values of a registered session that never change during the session, and its expiration time. The entries
+	 * are shared by the concurrent requests of a session.
+	 */
+	public static final class Entry {
+
+		private final String id;
+		private final String terminalId;
+		private final String userId;
+		private final long expiration;
+
+		private Entry(SyncSession session, long expiration) {
+			this.id = session.getId();
+			this.terminalId = session.getTerminalId();
+			this.userId = session.getUserId();
+			this.expiration = expiration;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public String getTerminalId() {
+			return terminalId;
+		}
+
+		public String getUserId() {
+			return userId;
+		}
+
+		public long getExpiration() {
+			return expiration;
+		}
+	}
+
+}
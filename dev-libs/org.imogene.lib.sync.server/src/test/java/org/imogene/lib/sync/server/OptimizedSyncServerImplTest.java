@@ -0,0 +1,505 @@
+package org.imogene.lib.sync.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.imogene.lib.common.binary.Binary;
+import org.imogene.lib.common.binary.file.BinaryFile;
+import org.imogene.lib.common.dao.GenericDao;
+import org.imogene.lib.common.dao.ImogBeanDao;
+import org.imogene.lib.common.entity.ImogActor;
+import org.imogene.lib.common.entity.ImogActorImpl;
+import org.imogene.lib.common.entity.ImogBean;
+import org.imogene.lib.common.model.CardEntity;
+import org.imogene.lib.sync.handler.DataHandlerManager;
+import org.imogene.lib.sync.handler.ImogBeanCursor;
+import org.imogene.lib.sync.handler.ImogBeanHandler;
+import org.imogene.lib.sync.history.SyncHistoryDao;
+import org.imogene.lib.sync.serializer.ImogSerializationException;
+import org.imogene.lib.sync.serializer.ImogSerializer;
+import org.imogene.lib.sync.session.SyncSession;
+import org.imogene.lib.sync.session.SyncSessionDao;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+/**
+ * Tests of the server modifications serialized concurrently by entity type: the output must be the one of the
+ * sequential path, and each entity type must be loaded in its own transaction.
+ *
+ * @author MEDES-IMPS
+ */
+public class OptimizedSyncServerImplTest {
+
+	private static final String[] TYPES = { "org.test.Patient", "org.test.Visit", "org.test.Site", "org.test.Drug",
+			"org.test.Stock", "org.test.Order" };
+
+	private static final int PAGE_SIZE = 10;
+
+	private StubTransactionManager transactionManager;
+
+	private Map<String, List<Load>> loads;
+
+	private Set<String> failing;
+
+	/* true if the user synchronizes the binaries */
+	private boolean binaries;
+
+	/* the transactions whose persistence context has been made read-only */
+	private Set<Integer> readOnly;
+
+	private ImogActor requestUser;
+
+	private OptimizedSyncServerImpl server;
+
+	@Before
+	public void setUp() {
+		transactionManager = new StubTransactionManager();
+		loads = new ConcurrentHashMap<String, List<Load>>();
+		failing = new HashSet<String>();
+		readOnly = Collections.synchronizedSet(new HashSet<Integer>());
+		server = createServer(1);
+	}
+
+	@After
+	public void tearDown() {
+		server.destroy();
+	}
+
+	@Test
+	public void concurrentOutputIsTheSequentialOne() throws Exception {
+		String expected = serialize(server);
+		assertTrue(expected.startsWith("<multi>"));
+		assertTrue(expected.endsWith("</multi>"));
+		/* the types are written in the order of the synchronizables, the entities in the order of their ids */
+		int previous = -1;
+		for (String type : TYPES) {
+			int position = expected.indexOf(type + "-000");
+			assertTrue(type, position > previous);
+			previous = position;
+		}
+		assertEquals(0, transactionManager.begun.get());
+
+		for (int parallelism : new int[] { 2, 4, TYPES.length }) {
+			server.destroy();
+			server = createServer(parallelism);
+			/* the random delays of the loads change the completion order of the types */
+			for (int i = 0; i < 5; i++) {
+				assertEquals("parallelism " + parallelism, expected, serialize(server));
+			}
+		}
+	}
+
+	@Test
+	public void eachTypeIsLoadedInItsOwnTransaction() throws Exception {
+		server.destroy();
+		server = createServer(4);
+		serialize(server);
+
+		assertEquals(TYPES.length, transactionManager.begun.get());
+		assertEquals(TYPES.length, transactionManager.committed.get());
+		assertEquals(0, transactionManager.rolledBack.get());
+		/* the persistence contexts of the tasks are only read, they are never flushed */
+		assertEquals(TYPES.length, transactionManager.readOnly.get());
+		assertEquals(TYPES.length, readOnly.size());
+
+		Set<Integer> transactions = new HashSet<Integer>();
+		for (String type : TYPES) {
+			List<Load> typeLoads = loads.get(type);
+			assertNotNull(type, typeLoads);
+			Integer transaction = typeLoads.get(0).transaction;
+			assertNotNull(type + " is loaded in a transaction", transaction);
+			for (Load load : typeLoads) {
+				assertEquals(type + " is loaded in a single transaction", transaction, load.transaction);
+				assertFalse(type + " is not loaded by the request thread", load.thread == Thread.currentThread());
+				/* the user of the request is not shared with the persistence context of the task */
+				assertNotSame(requestUser, load.user);
+				assertEquals(transaction, load.userTransaction);
+			}
+			assertTrue(type + " has its own transaction", transactions.add(transaction));
+		}
+	}
+
+	@Test
+	public void failureOfATypeFailsTheRequest() throws Exception {
+		server.destroy();
+		server = createServer(4);
+		failing.add(TYPES[2]);
+		try {
+			serialize(server);
+			fail();
+		} catch (ImogSerializationException e) {
+			assertEquals(TYPES[2], e.getCause().getMessage());
+		}
+		/* the other types may have been cancelled */
+		assertTrue(transactionManager.rolledBack.get() >= 1);
+	}
+
+	/**
+	 * A binary associated with the entities of several pages and types is written once in the stream
+	 */
+	@Test
+	public void sharedBinariesAreWrittenOnce() throws Exception {
+		binaries = true;
+		for (int parallelism : new int[] { 1, 4 }) {
+			server.destroy();
+			server = createServer(parallelism);
+			String output = serialize(server);
+			assertEquals("parallelism " + parallelism, 1, output.split("\"shared-binary\"", -1).length - 1);
+			/* the binaries of the first entity of each page */
+			for (String type : TYPES) {
+				for (int i = 0; i < 25; i = i + PAGE_SIZE) {
+					String id = String.format("\"binary-%s-%03d\"", type, i);
+					assertEquals(id, 1, output.split(id, -1).length - 1);
+				}
+			}
+		}
+	}
+
+	private String serialize(OptimizedSyncServerImpl server) throws ImogSerializationException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		server.getServerModifications("s1", out);
+		return new String(out.toByteArray());
+	}
+
+	private OptimizedSyncServerImpl createServer(int parallelism) {
+		OptimizedSyncServerImpl server = new OptimizedSyncServerImpl();
+		server.setSessionDao(new StubSessionDao());
+		server.setHistoryDao(stub(SyncHistoryDao.class, null));
+		server.setGenericDao(stub(GenericDao.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("load") && args.length == 2 && args[0] == ImogActorImpl.class) {
+					return createUser();
+				}
+				if (method.getName().equals("setReadOnly")) {
+					readOnly.add(transactionManager.current());
+				}
+				return null;
+			}
+		}));
+		server.setEntityHelper(stub(EntityHelper.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("getAssociatedBinaries")) {
+					List<?> page = (List<?>) args[0];
+					List<Binary> binaries = new Vector<Binary>();
+					binaries.add(binary("shared-binary"));
+					binaries.add(binary("binary-" + ((ImogBean) page.get(0)).getId()));
+					return binaries;
+				}
+				return null;
+			}
+		}));
+		server.setDataHandlerManager(new StubHandlerManager());
+		server.setSerializer(new StubSerializer());
+		server.setPageSize(PAGE_SIZE);
+		server.setTransactionManager(transactionManager);
+		server.setParallelism(parallelism);
+		return server;
+	}
+
+	/**
+	 * Create the user, as loaded in the current transaction
+	 */
+	private ImogActor createUser() {
+		ImogActor user = new TestActor(transactionManager.current());
+		for (String type : TYPES) {
+			CardEntity synchronizable = new CardEntity();
+			synchronizable.setClassName(type);
+			user.addSynchronizable(synchronizable);
+		}
+		if (binaries) {
+			CardEntity synchronizable = new CardEntity();
+			synchronizable.setClassName(BinaryFile.class.getName());
+			user.addSynchronizable(synchronizable);
+		}
+		if (transactionManager.current() == null) {
+			requestUser = user;
+		}
+		return user;
+	}
+
+	private static Binary binary(String id) {
+		BinaryFile binary = new BinaryFile();
+		binary.setId(id);
+		return binary;
+	}
+
+	/**
+	 * Create a stub of an interface, the methods not answered by the handler return null, false or 0
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> T stub(Class<T> type, final InvocationHandler handler) {
+		return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				Object result = handler != null ? handler.invoke(proxy, method, args) : null;
+				if (result == null && method.getReturnType().isPrimitive()) {
+					if (method.getReturnType() == boolean.class) {
+						return false;
+					}
+					if (method.getReturnType() == void.class) {
+						return null;
+					}
+					return 0;
+				}
+				return result;
+			}
+		});
+	}
+
+	/**
+	 * A page load of an entity type
+	 */
+	private static class Load {
+
+		private final Thread thread = Thread.currentThread();
+		private final Integer transaction;
+		private final ImogActor user;
+		private final Integer userTransaction;
+
+		private Load(Integer transaction, ImogActor user) {
+			this.transaction = transaction;
+			this.user = user;
+			this.userTransaction = ((TestActor) user).transaction;
+		}
+	}
+
+	/**
+	 * User that remembers the transaction it has been loaded in
+	 */
+	private static class TestActor extends ImogActorImpl {
+
+		private static final long serialVersionUID = 5536127795163818154L;
+
+		private final Integer transaction;
+
+		private TestActor(Integer transaction) {
+			this.transaction = transaction;
+		}
+
+		@Override
+		public String getNotificationData(String method) {
+			return null;
+		}
+	}
+
+	/**
+	 * Transaction manager that numbers the transactions of each thread
+	 */
+	private static class StubTransactionManager implements PlatformTransactionManager {
+
+		private final AtomicInteger begun = new AtomicInteger();
+		private final AtomicInteger committed = new AtomicInteger();
+		private final AtomicInteger rolledBack = new AtomicInteger();
+		private final AtomicInteger readOnly = new AtomicInteger();
+		private final ThreadLocal<Integer> transaction = new ThreadLocal<Integer>();
+
+		@Override
+		public TransactionStatus getTransaction(TransactionDefinition definition) throws TransactionException {
+			transaction.set(begun.incrementAndGet());
+			if (definition.isReadOnly()) {
+				readOnly.incrementAndGet();
+			}
+			return new SimpleTransactionStatus(true);
+		}
+
+		@Override
+		public void commit(TransactionStatus status) throws TransactionException {
+			transaction.remove();
+			committed.incrementAndGet();
+		}
+
+		@Override
+		public void rollback(TransactionStatus status) throws TransactionException {
+			transaction.remove();
+			rolledBack.incrementAndGet();
+		}
+
+		private Integer current() {
+			return transaction.get();
+		}
+	}
+
+	/**
+	 * Handlers whose entities are loaded by page after random delays, and whose loads are recorded
+	 */
+	private class StubHandlerManager implements DataHandlerManager {
+
+		@Override
+		public ImogBeanHandler<? extends ImogBean> getHandler(Class<?> clazz) {
+			return getHandler(clazz.getName());
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public ImogBeanHandler<? extends ImogBean> getHandler(final String className) {
+			return stub(ImogBeanHandler.class, new InvocationHandler() {
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) {
+					if (method.getName().equals("openCursor") && !(args[0] instanceof List)) {
+						ImogActor user = (ImogActor) args[1];
+						return new ImogBeanCursor<CardEntity>(createDao(className, user), null, (Date) args[0],
+								null, (Integer) args[3]);
+					}
+					return null;
+				}
+			});
+		}
+
+		@SuppressWarnings("unchecked")
+		private ImogBeanDao<CardEntity> createDao(final String className, final ImogActor user) {
+			final Random random = new Random();
+			return stub(ImogBeanDao.class, new InvocationHandler() {
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) throws InterruptedException {
+					if (method.getName().equals("loadUploadedAfter")) {
+						if (failing.contains(className)) {
+							throw new IllegalStateException(className);
+						}
+						List<Load> typeLoads = loads.get(className);
+						if (typeLoads == null) {
+							typeLoads = new Vector<Load>();
+							loads.put(className, typeLoads);
+						}
+						typeLoads.add(new Load(transactionManager.current(), user));
+						Thread.sleep(random.nextInt(5));
+
+						/* 25 entities by type */
+						String lastId = (String) args[0];
+						int first = lastId == null ? 0 : Integer.parseInt(lastId.substring(lastId.length() - 3)) + 1;
+						List<CardEntity> page = new Vector<CardEntity>();
+						for (int i = first; i < Math.min(first + (Integer) args[1], 25); i++) {
+							CardEntity entity = new CardEntity();
+							entity.setId(String.format("%s-%03d", className, i));
+							entity.setModifiedFrom("server");
+							page.add(entity);
+						}
+						return page;
+					}
+					return null;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Serializer that writes the ids of the entities
+	 */
+	private static class StubSerializer implements ImogSerializer {
+
+		@Override
+		public void startMulti(OutputStream data) throws ImogSerializationException {
+			write("<multi>", data);
+		}
+
+		@Override
+		public <T extends ImogBean> void serializeMulti(List<T> entities, OutputStream data)
+				throws ImogSerializationException {
+			for (T entity : entities) {
+				write("<entity id=\"" + entity.getId() + "\"/>", data);
+			}
+		}
+
+		@Override
+		public void endMulti(OutputStream data) throws ImogSerializationException {
+			write("</multi>", data);
+		}
+
+		private void write(String value, OutputStream data) throws ImogSerializationException {
+			try {
+				data.write(value.getBytes());
+			} catch (IOException e) {
+				throw new ImogSerializationException(e);
+			}
+		}
+
+		@Override
+		public <T extends ImogBean> void serialize(T entity, OutputStream data) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public <T extends ImogBean> void serialize(List<T> entities, OutputStream data) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public <T extends ImogBean> T deSerialize(InputStream data) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public <T extends ImogBean> List<T> deSerializeMulti(InputStream data) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public int processMulti(InputStream data, ImogActor user) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * Session DAO that knows a single session
+	 */
+	private static class StubSessionDao implements SyncSessionDao {
+
+		@Override
+		public SyncSession load(String id) {
+			SyncSession session = new SyncSession();
+			session.setId(id);
+			session.setTerminalId("term");
+			session.setUserId("user");
+			session.setInitDate(new Date());
+			session.setSendDate(new Date());
+			return session;
+		}
+
+		@Override
+		public boolean isValid(String id) {
+			return true;
+		}
+
+		@Override
+		public void saveOrUpdate(SyncSession session) {
+		}
+
+		@Override
+		public void delete(SyncSession session) {
+		}
+
+		@Override
+		public void clearTerminated() {
+		}
+	}
+
+}
@@ -0,0 +1,277 @@
+package org.imogene.lib.sync.server.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.imogene.lib.sync.serializer.FramedInputStream;
+import org.imogene.lib.sync.server.OptimizedSyncServer;
+import org.imogene.lib.sync.server.custom.OptimizedMultiPartResolver;
+import org.springframework.core.io.FileSystemResourceLoader;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
+import org.springframework.web.servlet.mvc.multiaction.ParameterMethodNameResolver;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP server that stands in for the servlet container of the synchronization controller, as configured by the
+ * sync application. It counts the bytes of the request and response bodies, and can interrupt the next transfers
+ * after a number of bytes.
+ *
+ * @author MEDES-IMPS
+ */
+class LocalSyncServer {
+
+	private final File workDirectory;
+
+	private final HttpServer server;
+
+	/* the bytes of the request and response bodies, as sent on the network */
+	private final AtomicLong uploaded = new AtomicLong();
+	private final AtomicLong downloaded = new AtomicLong();
+
+	private volatile String uploadType;
+	private volatile String downloadEncoding;
+
+	/* the number of bytes after which the next transfers are interrupted, -1 to transfer everything */
+	private volatile int uploadCut = -1;
+	private volatile int downloadCut = -1;
+
+	/**
+	 * @param root the root directory of the web application
+	 * @param syncServer the synchronization server called by the controller
+	 * @throws IOException
+	 */
+	LocalSyncServer(File root, OptimizedSyncServer syncServer) throws IOException {
+		new File(root, "WEB-INF").mkdirs();
+		workDirectory = new File(root, "WEB-INF/syncWork");
+		final MockServletContext servletContext = new MockServletContext("file:" + root.getAbsolutePath(),
+				new FileSystemResourceLoader());
+
+		final OptimizedSyncController controller = new OptimizedSyncController();
+		ParameterMethodNameResolver resolver = new ParameterMethodNameResolver();
+		resolver.setParamName("cmd");
+		controller.setMethodNameResolver(resolver);
+		controller.setSyncServer(syncServer);
+
+		final OptimizedMultiPartResolver multipartResolver = new OptimizedMultiPartResolver();
+		multipartResolver.setMaxUploadSize(-1);
+		multipartResolver.setMaxStoredSize(-1);
+		multipartResolver.setServletContext(servletContext);
+
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					MockHttpServletRequest req = new MockHttpServletRequest(servletContext, exchange
+							.getRequestMethod(), exchange.getRequestURI().getPath());
+					String query = exchange.getRequestURI().getRawQuery();
+					if (query != null) {
+						for (String param : query.split("&")) {
+							String[] pair = param.split("=", 2);
+							req.addParameter(URLDecoder.decode(pair[0], "UTF-8"),
+									pair.length > 1 ? URLDecoder.decode(pair[1], "UTF-8") : "");
+						}
+					}
+					for (Map.Entry<String, List<String>> header : exchange.getRequestHeaders().entrySet()) {
+						for (String value : header.getValue()) {
+							req.addHeader(header.getKey(), value);
+						}
+					}
+					req.setContentType(exchange.getRequestHeaders().getFirst("Content-Type"));
+					byte[] body = read(exchange.getRequestBody());
+					uploaded.addAndGet(body.length);
+
+					HttpServletRequest request = req;
+					if (multipartResolver.isMultipart(req)) {
+						int cut = uploadCut;
+						if (cut >= 0 && cut < body.length) {
+							/* the connection is lost, the part of the upload received is stored */
+							uploadCut = -1;
+							req.setContent(Arrays.copyOf(body, cut));
+							try {
+								multipartResolver.resolveMultipart(req);
+							} catch (Exception e) {
+								// expected, the upload is incomplete
+							}
+							exchange.sendResponseHeaders(500, -1);
+							return;
+						}
+						req.setContent(body);
+						request = multipartResolver.resolveMultipart(req);
+						uploadType = ((MultipartHttpServletRequest) request).getFile("data").getContentType();
+					} else {
+						req.setContent(body);
+					}
+					MockHttpServletResponse resp = new MockHttpServletResponse();
+					controller.handleRequest(request, resp);
+
+					for (Object name : resp.getHeaderNames()) {
+						if (!"Content-Length".equalsIgnoreCase((String) name)) {
+							exchange.getResponseHeaders().set((String) name,
+									String.valueOf(resp.getHeader((String) name)));
+						}
+					}
+					if (resp.getHeader("Content-Encoding") != null) {
+						downloadEncoding = String.valueOf(resp.getHeader("Content-Encoding"));
+					}
+					byte[] content = resp.getContentAsByteArray();
+					exchange.sendResponseHeaders(resp.getStatus(), content.length == 0 ? -1 : content.length);
+					int cut = downloadCut;
+					if (cut >= 0 && cut < content.length) {
+						/* the connection is lost after the first bytes of the response */
+						downloadCut = -1;
+						downloaded.addAndGet(cut);
+						OutputStream out = exchange.getResponseBody();
+						out.write(content, 0, cut);
+						out.flush();
+						return;
+					}
+					downloaded.addAndGet(content.length);
+					OutputStream out = exchange.getResponseBody();
+					out.write(content);
+					out.close();
+				} catch (Exception e) {
+					e.printStackTrace();
+					exchange.sendResponseHeaders(500, -1);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		server.start();
+	}
+
+	/**
+	 * Get the URL of the synchronization controller
+	 */
+	String getUrl() {
+		return "http://localhost:" + server.getAddress().getPort() + "/sync.html";
+	}
+
+	/**
+	 * Get the work directory of the controller
+	 */
+	File getWorkDirectory() {
+		return workDirectory;
+	}
+
+	void stop() {
+		server.stop(0);
+	}
+
+	/**
+	 * Reset the counters of the transferred bytes
+	 */
+	void reset() {
+		uploaded.set(0);
+		downloaded.set(0);
+		uploadType = null;
+		downloadEncoding = null;
+	}
+
+	/**
+	 * Get the number of bytes of the request bodies received since the last reset
+	 */
+	long getUploaded() {
+		return uploaded.get();
+	}
+
+	/**
+	 * Get the number of bytes of the response bodies sent since the last reset
+	 */
+	long getDownloaded() {
+		return downloaded.get();
+	}
+
+	/**
+	 * Get the content type of the last upload
+	 */
+	String getUploadType() {
+		return uploadType;
+	}
+
+	/**
+	 * Get the content encoding of the last download, null if it was not encoded
+	 */
+	String getDownloadEncoding() {
+		return downloadEncoding;
+	}
+
+	/**
+	 * Interrupt the next upload after a number of bytes of its request body
+	 */
+	void cutNextUpload(int bytes) {
+		uploadCut = bytes;
+	}
+
+	/**
+	 * Interrupt the next download after a number of bytes of its response body
+	 */
+	void cutNextDownload(int bytes) {
+		downloadCut = bytes;
+	}
+
+	/**
+	 * Create XML like modifications, that compress as the serialized entities do
+	 */
+	static byte[] createModifications(long seed, int size) throws IOException {
+		Random random = new Random(seed);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+		while (out.size() < size) {
+			out.write(("<entity id=\"" + random.nextInt(100000) + "\"><name>" + random.nextLong()
+					+ "</name></entity>\n").getBytes("UTF-8"));
+		}
+		return Arrays.copyOf(out.toByteArray(), size);
+	}
+
+	/**
+	 * Read a received document as the client does, the content is framed
+	 */
+	static byte[] open(byte[] document) throws IOException {
+		return read(FramedInputStream.open(new ByteArrayInputStream(document)));
+	}
+
+	static byte[] read(InputStream in) throws IOException {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+}
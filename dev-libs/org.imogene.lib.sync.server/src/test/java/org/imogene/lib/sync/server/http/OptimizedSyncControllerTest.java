@@ -0,0 +1,277 @@
+package org.imogene.lib.sync.server.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.imogene.lib.sync.serializer.ImogSerializationException;
+import org.imogene.lib.sync.server.OptimizedSyncServer;
+import org.imogene.lib.sync.server.http.command.SessionCommand;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.FileSystemResourceLoader;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+
+/**
+ * Tests of the transfer of the server modifications by the synchronization controller
+ *
+ * @author MEDES-IMPS
+ */
+public class OptimizedSyncControllerTest {
+
+	/* the size of the server modifications sent */
+	private static final int SIZE = 4 * 1024 * 1024;
+
+	private static final String SESSION = "session";
+
+	private File root;
+
+	private File workDirectory;
+
+	private byte[] modifications;
+
+	private StubSyncServer syncServer;
+
+	private OptimizedSyncController controller;
+
+	private MockServletContext servletContext;
+
+	@Before
+	public void setUp() throws IOException {
+		root = File.createTempFile("imogsync", "");
+		root.delete();
+		new File(root, "WEB-INF").mkdirs();
+		workDirectory = new File(root, "WEB-INF/syncWork");
+		servletContext = new MockServletContext("file:" + root.getAbsolutePath(), new FileSystemResourceLoader());
+
+		/* XML like content, that compresses as the serialized entities do */
+		Random random = new Random(0);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(SIZE);
+		while (out.size() < SIZE) {
+			out.write(("<entity id=\"" + random.nextInt(100000) + "\"><name>" + random.nextLong()
+					+ "</name></entity>\n").getBytes("UTF-8"));
+		}
+		modifications = Arrays.copyOf(out.toByteArray(), SIZE);
+
+		syncServer = new StubSyncServer();
+		controller = new OptimizedSyncController();
+		controller.setSyncServer(syncServer);
+	}
+
+	@After
+	public void tearDown() {
+		delete(root);
+	}
+
+	/**
+	 * The work file is transferred by the file channel
+	 */
+	@Test
+	public void serverModificationsAreSentFromTheWorkFile() throws Exception {
+		MockHttpServletResponse resp = new MockHttpServletResponse();
+		controller.reqservmodif(newRequest(), resp, newCommand(false, 0));
+		assertArrayEquals(modifications, resp.getContentAsByteArray());
+		assertEquals(String.valueOf(SIZE), resp.getHeader("Content-Length"));
+	}
+
+	@Test
+	public void workFileIsRecorded() throws Exception {
+		controller.reqservmodif(newRequest(), new MockHttpServletResponse(), newCommand(false, 0));
+		assertEquals(Long.valueOf(SIZE), syncServer.writtenLength);
+		assertEquals(SIZE, new File(workDirectory, SESSION + ".smodif").length());
+	}
+
+	@Test
+	public void resumeSendsTheEndOfTheWorkFile() throws Exception {
+		controller.reqservmodif(newRequest(), new MockHttpServletResponse(), newCommand(false, 0));
+
+		int received = SIZE / 3;
+		MockHttpServletResponse resp = new MockHttpServletResponse();
+		controller.resumereceive(newRequest(), resp, newCommand(false, received));
+		assertEquals(String.valueOf(SIZE - received), resp.getHeader("Content-Length"));
+		assertArrayEquals(Arrays.copyOfRange(modifications, received, SIZE), resp.getContentAsByteArray());
+	}
+
+	@Test
+	public void resumeAfterTheEndIsRejected() throws Exception {
+		controller.reqservmodif(newRequest(), new MockHttpServletResponse(), newCommand(false, 0));
+
+		MockHttpServletResponse resp = new MockHttpServletResponse();
+		controller.resumereceive(newRequest(), resp, newCommand(false, SIZE + 1));
+		assertEquals(500, resp.getStatus());
+		assertEquals(0, resp.getContentAsByteArray().length);
+	}
+
+	@Test
+	public void gzippedTransfer() throws Exception {
+		MockHttpServletRequest req = newRequest();
+		req.addHeader("Accept-Encoding", OptimizedSyncController.ENCODING_GZIP);
+		MockHttpServletResponse resp = new MockHttpServletResponse();
+		controller.reqservmodif(req, resp, newCommand(false, 0));
+		assertEquals(OptimizedSyncController.ENCODING_GZIP, resp.getHeader("Content-Encoding"));
+		assertTrue(resp.getContentAsByteArray().length < SIZE);
+		assertArrayEquals(modifications, gunzip(resp.getContentAsByteArray()));
+	}
+
+	/**
+	 * The gzip coding refused with a zero quality value, or only accepted as part of another coding name, is not used
+	 */
+	@Test
+	public void refusedGzipIsNotUsed() throws Exception {
+		MockHttpServletRequest req = newRequest();
+		req.addHeader("Accept-Encoding", "deflate, gzip;q=0, x-gzip-like");
+		MockHttpServletResponse resp = new MockHttpServletResponse();
+		controller.reqservmodif(req, resp, newCommand(false, 0));
+		assertNull(resp.getHeader("Content-Encoding"));
+		assertArrayEquals(modifications, resp.getContentAsByteArray());
+
+		req = newRequest();
+		req.addHeader("Accept-Encoding", "deflate;q=1.0, GZIP ; q=0.5");
+		resp = new MockHttpServletResponse();
+		controller.reqservmodif(req, resp, newCommand(false, 0));
+		assertEquals(OptimizedSyncController.ENCODING_GZIP, resp.getHeader("Content-Encoding"));
+	}
+
+	/**
+	 * A resume whose work file can not be written is failed without sending a partial file
+	 */
+	@Test
+	public void resumeWithoutModificationsIsFailed() throws Exception {
+		syncServer.failure = true;
+		MockHttpServletResponse resp = new MockHttpServletResponse();
+		controller.resumereceive(newRequest(), resp, newCommand(false, 0));
+		assertEquals(500, resp.getStatus());
+		assertEquals(0, resp.getContentAsByteArray().length);
+		assertFalse(new File(workDirectory, SESSION + ".smodif").exists());
+	}
+
+	@Test
+	public void directTransferHasNoWorkFile() throws Exception {
+		MockHttpServletResponse resp = new MockHttpServletResponse();
+		controller.reqservmodif(newRequest(), resp, newCommand(true, 0));
+		assertArrayEquals(modifications, resp.getContentAsByteArray());
+		assertFalse(new File(workDirectory, SESSION + ".smodif").exists());
+		assertNull(syncServer.writtenLength);
+	}
+
+	private MockHttpServletRequest newRequest() {
+		return new MockHttpServletRequest(servletContext);
+	}
+
+	private static SessionCommand newCommand(boolean direct, long len) {
+		SessionCommand command = new SessionCommand();
+		command.setSession(SESSION);
+		command.setDirect(direct);
+		command.setLen(len);
+		return command;
+	}
+
+	private static byte[] gunzip(byte[] data) throws IOException {
+		InputStream in = new GZIPInputStream(new ByteArrayInputStream(data));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * Sync server that writes fixed server modifications
+	 */
+	private class StubSyncServer implements OptimizedSyncServer {
+
+		private Long writtenLength;
+
+		/* true if the serialization fails after a part of the modifications has been written */
+		private boolean failure;
+
+		@Override
+		public void getServerModifications(String sessionId, OutputStream out) throws ImogSerializationException {
+			try {
+				if (failure) {
+					out.write(modifications, 0, SIZE / 2);
+					throw new ImogSerializationException("stub failure");
+				}
+				out.write(modifications);
+			} catch (IOException e) {
+				throw new ImogSerializationException(e);
+			}
+		}
+
+		@Override
+		public void serverModificationsWritten(String sessionId, long length, long checksum) {
+			writtenLength = length;
+		}
+
+		@Override
+		public void searchEntity(String entityId, OutputStream out) {
+		}
+
+		@Override
+		public String initSession(String termId) {
+			return SESSION;
+		}
+
+		@Override
+		public long initResumeSendSession(String sessionId, File received) {
+			return 0;
+		}
+
+		@Override
+		public boolean initResumeRequestSession(String sessionId, File modifications, long bytesReceived) {
+			return true;
+		}
+
+		@Override
+		public void acknowledgeClientModifications(String sessionId, File received) {
+		}
+
+		@Override
+		public int applyClientModifications(String sessionId, InputStream data) {
+			return 0;
+		}
+
+		@Override
+		public int closeSession(String sessionId, int status) {
+			return 0;
+		}
+
+		@Override
+		public boolean checkSession(String sessionId) {
+			return true;
+		}
+
+		@Override
+		public File getFileDirectory() {
+			return workDirectory;
+		}
+	}
+
+}
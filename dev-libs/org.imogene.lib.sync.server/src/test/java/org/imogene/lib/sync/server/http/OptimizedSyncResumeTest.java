@@ -0,0 +1,324 @@
+package org.imogene.lib.sync.server.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.httpclient.auth.AuthenticationException;
+import org.imogene.lib.sync.client.SynchronizationException;
+import org.imogene.lib.sync.client.http.OptimizedSyncClientHttp;
+import org.imogene.lib.sync.serializer.ImogSerializationException;
+import org.imogene.lib.sync.server.OptimizedSyncServerImpl;
+import org.imogene.lib.sync.session.SyncSession;
+import org.imogene.lib.sync.session.SyncSessionDao;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * End to end tests of the resumed transfers. The transfers are interrupted at random offsets by the local HTTP server
+ * and resumed by the client, as many times as needed, against the resume logic of the sync server implementation.
+ *
+ * @author MEDES-IMPS
+ */
+public class OptimizedSyncResumeTest {
+
+	/* the size of the modifications sent each way */
+	private static final int SIZE = 1024 * 1024;
+
+	/* the number of transfers done with different random offsets */
+	private static final int ROUNDS = 5;
+
+	/* the maximum number of bytes sent on the network before a transfer is interrupted */
+	private static final int MAX_CUT = 200 * 1024;
+
+	private File root;
+
+	private byte[] clientModifications;
+
+	private byte[] serverModifications;
+
+	private volatile byte[] applied;
+
+	private LocalSyncServer server;
+
+	@Before
+	public void setUp() throws IOException {
+		root = File.createTempFile("imogsync", "");
+		root.delete();
+		clientModifications = LocalSyncServer.createModifications(1, SIZE);
+		serverModifications = LocalSyncServer.createModifications(2, SIZE);
+		ResumableSyncServer syncServer = new ResumableSyncServer();
+		syncServer.setSessionDao(syncServer.sessions);
+		server = new LocalSyncServer(root, syncServer);
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+		LocalSyncServer.delete(root);
+	}
+
+	@Test
+	public void interruptedSendsAreResumed() throws Exception {
+		for (int round = 0; round < ROUNDS; round++) {
+			Random random = new Random(round);
+			OptimizedSyncClientHttp client = newClient();
+			String session = client.initSession();
+			applied = null;
+
+			int interruptions = 0;
+			long previous = 0;
+			server.cutNextUpload(random.nextInt(MAX_CUT));
+			boolean sent = send(client, session, 0, true);
+			while (!sent) {
+				interruptions++;
+				long offset = client.resumeSend(session);
+				assertTrue("round " + round, offset >= previous && offset <= SIZE);
+				/* the part stored is the beginning of the modifications, uncompressed */
+				assertArrayEquals("round " + round, Arrays.copyOf(clientModifications, (int) offset),
+						LocalSyncServer.read(new FileInputStream(getWorkFile(session, ".cmodif"))));
+				previous = offset;
+				if (interruptions < 3) {
+					server.cutNextUpload(random.nextInt(MAX_CUT));
+				}
+				sent = send(client, session, (int) offset, false);
+			}
+			assertTrue("round " + round, interruptions >= 1);
+			assertArrayEquals("round " + round, clientModifications, applied);
+		}
+	}
+
+	@Test
+	public void interruptedReceivesAreResumed() throws Exception {
+		for (int round = 0; round < ROUNDS; round++) {
+			Random random = new Random(round);
+			OptimizedSyncClientHttp client = newClient();
+			String session = client.initSession();
+
+			int interruptions = 0;
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			server.cutNextDownload(random.nextInt(MAX_CUT));
+			boolean received = receive(client, session, out, -1);
+			while (!received) {
+				interruptions++;
+				/* the offset refers to the uncompressed document, whatever the compressed bytes received */
+				long offset = out.size();
+				assertEquals("round " + round, offset, client.resumeReceive(session, offset));
+				if (interruptions < 3) {
+					server.cutNextDownload(random.nextInt(MAX_CUT));
+				}
+				received = receive(client, session, out, offset);
+			}
+			assertTrue("round " + round, interruptions >= 1);
+			assertArrayEquals("round " + round, serverModifications, LocalSyncServer.open(out.toByteArray()));
+		}
+	}
+
+	/**
+	 * The client modifications stored have been modified since they have been acknowledged, they are sent again from
+	 * the start
+	 */
+	@Test
+	public void corruptedSendIsRestarted() throws Exception {
+		OptimizedSyncClientHttp client = newClient();
+		String session = client.initSession();
+		server.cutNextUpload(MAX_CUT);
+		assertTrue(!send(client, session, 0, true));
+		long offset = client.resumeSend(session);
+		assertTrue(offset > 0);
+
+		corrupt(getWorkFile(session, ".cmodif"), offset / 2);
+		assertEquals(0, client.resumeSend(session));
+		assertTrue(send(client, session, 0, false));
+		assertArrayEquals(clientModifications, applied);
+	}
+
+	/**
+	 * The server modifications stored have been modified since they have been written, they are serialized and sent
+	 * again from the start
+	 */
+	@Test
+	public void corruptedReceiveIsRestarted() throws Exception {
+		OptimizedSyncClientHttp client = newClient();
+		String session = client.initSession();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		server.cutNextDownload(MAX_CUT);
+		assertTrue(!receive(client, session, out, -1));
+		assertTrue(out.size() > 0);
+
+		corrupt(getWorkFile(session, ".smodif"), out.size() / 2);
+		assertEquals(0, client.resumeReceive(session, out.size()));
+		out = new ByteArrayOutputStream();
+		assertTrue(receive(client, session, out, 0));
+		assertArrayEquals(serverModifications, LocalSyncServer.open(out.toByteArray()));
+	}
+
+	/**
+	 * Send the client modifications from an offset
+	 *
+	 * @return true if they have been sent, false if the transfer has been interrupted
+	 */
+	private boolean send(OptimizedSyncClientHttp client, String session, int offset, boolean first)
+			throws AuthenticationException {
+		InputStream data = new ByteArrayInputStream(clientModifications, offset, SIZE - offset);
+		try {
+			if (first) {
+				client.sendClientModification(session, data);
+			} else {
+				client.resumeSendModification(session, data);
+			}
+			return true;
+		} catch (SynchronizationException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Receive the server modifications from an offset
+	 *
+	 * @param offset the number of bytes already received, -1 for the first request
+	 * @return true if they have been received, false if the transfer has been interrupted
+	 */
+	private boolean receive(OptimizedSyncClientHttp client, String session, OutputStream out, long offset)
+			throws AuthenticationException {
+		try {
+			if (offset < 0) {
+				client.requestServerModifications(session, out);
+			} else {
+				client.resumeRequestModification(session, out, offset);
+			}
+			return true;
+		} catch (SynchronizationException e) {
+			return false;
+		}
+	}
+
+	private File getWorkFile(String session, String extension) {
+		return new File(server.getWorkDirectory(), session + extension);
+	}
+
+	private static void corrupt(File file, long position) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(position);
+			int value = raf.read();
+			raf.seek(position);
+			raf.write(value ^ 0xFF);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private OptimizedSyncClientHttp newClient() {
+		return new OptimizedSyncClientHttp(server.getUrl(), "login", "password", "terminal");
+	}
+
+	/**
+	 * Sync server whose resume logic is the real one, the modifications are fixed and the sessions are kept in memory
+	 */
+	private class ResumableSyncServer extends OptimizedSyncServerImpl {
+
+		private final InMemorySessionDao sessions = new InMemorySessionDao();
+
+		@Override
+		public String initSession(String termId) {
+			SyncSession session = new SyncSession();
+			session.setId(UUID.randomUUID().toString());
+			session.setTerminalId(termId);
+			session.setUserId("user");
+			session.setInitDate(new Date());
+			session.setSendDate(new Date());
+			sessions.saveOrUpdate(session);
+			return session.getId();
+		}
+
+		@Override
+		public void getServerModifications(String sessionId, OutputStream out) throws ImogSerializationException {
+			if (!checkSession(sessionId)) {
+				fail("unknown session " + sessionId);
+			}
+			try {
+				out.write(serverModifications);
+			} catch (IOException e) {
+				throw new ImogSerializationException(e);
+			}
+		}
+
+		@Override
+		public int applyClientModifications(String sessionId, InputStream data) throws ImogSerializationException {
+			try {
+				applied = LocalSyncServer.read(data);
+				return 0;
+			} catch (IOException e) {
+				throw new ImogSerializationException(e);
+			}
+		}
+	}
+
+	/**
+	 * Session DAO that stores copies of the sessions, as the database would
+	 */
+	private static class InMemorySessionDao implements SyncSessionDao {
+
+		private final Map<String, SyncSession> sessions = new ConcurrentHashMap<String, SyncSession>();
+
+		@Override
+		public void saveOrUpdate(SyncSession session) {
+			sessions.put(session.getId(), copy(session));
+		}
+
+		@Override
+		public SyncSession load(String id) {
+			SyncSession session = sessions.get(id);
+			return session != null ? copy(session) : null;
+		}
+
+		@Override
+		public void delete(SyncSession session) {
+			sessions.remove(session.getId());
+		}
+
+		@Override
+		public void clearTerminated() {
+		}
+
+		@Override
+		public boolean isValid(String id) {
+			return sessions.containsKey(id);
+		}
+
+		private static SyncSession copy(SyncSession session) {
+			SyncSession copy = new SyncSession();
+			copy.setId(session.getId());
+			copy.setInitDate(session.getInitDate());
+			copy.setTerminalId(session.getTerminalId());
+			copy.setSendDate(session.getSendDate());
+			copy.setUserId(session.getUserId());
+			copy.setSequence(session.getSequence());
+			copy.setReceivedLength(session.getReceivedLength());
+			copy.setReceivedChecksum(session.getReceivedChecksum());
+			copy.setSentLength(session.getSentLength());
+			copy.setSentChecksum(session.getSentChecksum());
+			copy.setVersion(session.getVersion());
+			return copy;
+		}
+	}
+
+}
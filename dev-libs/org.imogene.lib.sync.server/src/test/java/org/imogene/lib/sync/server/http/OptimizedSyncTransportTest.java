@@ -0,0 +1,227 @@
+package org.imogene.lib.sync.server.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.imogene.lib.sync.client.OptimizedSyncClient;
+import org.imogene.lib.sync.client.http.OptimizedSyncClientHttp;
+import org.imogene.lib.sync.serializer.ImogSerializationException;
+import org.imogene.lib.sync.server.OptimizedSyncServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * End to end tests of the compression of the synchronization transfers, between the HTTP client and the controller
+ * served by a local HTTP server
+ *
+ * @author MEDES-IMPS
+ */
+public class OptimizedSyncTransportTest {
+
+	/* the size of the modifications sent each way */
+	private static final int SIZE = 2 * 1024 * 1024;
+
+	private static final String SESSION = "session";
+
+	private File root;
+
+	private byte[] clientModifications;
+
+	private byte[] serverModifications;
+
+	private byte[] applied;
+
+	private LocalSyncServer server;
+
+	@Before
+	public void setUp() throws IOException {
+		root = File.createTempFile("imogsync", "");
+		root.delete();
+		clientModifications = LocalSyncServer.createModifications(1, SIZE);
+		serverModifications = LocalSyncServer.createModifications(2, SIZE);
+		server = new LocalSyncServer(root, new StubSyncServer());
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+		LocalSyncServer.delete(root);
+	}
+
+	@Test
+	public void compressedTransfers() throws Exception {
+		OptimizedSyncClientHttp client = newClient();
+		String session = client.initSession();
+		assertEquals(SESSION, session);
+		server.reset();
+
+		assertEquals(0, client.sendClientModification(session, new ByteArrayInputStream(clientModifications)));
+		assertTrue(server.getUploadType().startsWith(OptimizedSyncClient.CONTENT_TYPE_DEFLATE));
+		assertArrayEquals(clientModifications, applied);
+		/* the work file contains the uncompressed modifications */
+		assertArrayEquals(clientModifications, LocalSyncServer.read(new FileInputStream(new File(server.getWorkDirectory(), SESSION
+				+ ".cmodif"))));
+		long upload = server.getUploaded();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		client.requestServerModifications(session, out);
+		assertEquals(OptimizedSyncController.ENCODING_GZIP, server.getDownloadEncoding());
+		assertArrayEquals(serverModifications, LocalSyncServer.open(out.toByteArray()));
+		long download = server.getDownloaded();
+
+		/* multipart overhead included */
+		assertTrue(upload < SIZE / 3);
+		assertTrue(download < SIZE / 3);
+	}
+
+	@Test
+	public void uncompressedTransfers() throws Exception {
+		OptimizedSyncClientHttp client = newClient();
+		client.setCompression(false);
+		String session = client.initSession();
+		server.reset();
+
+		client.sendClientModification(session, new ByteArrayInputStream(clientModifications));
+		assertArrayEquals(clientModifications, applied);
+		assertTrue(server.getUploaded() >= SIZE);
+		server.reset();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		client.requestServerModifications(session, out);
+		assertNull(server.getDownloadEncoding());
+		assertArrayEquals(serverModifications, LocalSyncServer.open(out.toByteArray()));
+		assertEquals(out.size(), server.getDownloaded());
+	}
+
+	/**
+	 * The client has received the first part of the server modifications, once uncompressed, the rest is sent
+	 * compressed
+	 */
+	@Test
+	public void resumedReceiveUsesUncompressedOffsets() throws Exception {
+		OptimizedSyncClientHttp client = newClient();
+		String session = client.initSession();
+		ByteArrayOutputStream document = new ByteArrayOutputStream();
+		client.requestServerModifications(session, document);
+		byte[] sent = document.toByteArray();
+		server.reset();
+
+		int received = SIZE / 3 + 17;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		client.resumeRequestModification(session, out, received);
+		assertEquals(OptimizedSyncController.ENCODING_GZIP, server.getDownloadEncoding());
+		assertArrayEquals(Arrays.copyOfRange(sent, received, sent.length), out.toByteArray());
+		assertTrue(server.getDownloaded() < (sent.length - received) / 3);
+	}
+
+	/**
+	 * The server has stored the first part of the client modifications, once uncompressed, the client sends the rest
+	 * compressed
+	 */
+	@Test
+	public void resumedSendAppendsUncompressedData() throws Exception {
+		OptimizedSyncClientHttp client = newClient();
+		String session = client.initSession();
+
+		/* an upload interrupted after the first part */
+		int stored = SIZE / 3 + 17;
+		server.getWorkDirectory().mkdirs();
+		OutputStream partial = new FileOutputStream(new File(server.getWorkDirectory(), SESSION + ".cmodif"));
+		partial.write(clientModifications, 0, stored);
+		partial.close();
+		server.reset();
+
+		long offset = client.resumeSend(session);
+		assertEquals(stored, offset);
+		client.resumeSendModification(session, new ByteArrayInputStream(clientModifications, (int) offset, SIZE
+				- (int) offset));
+		assertTrue(server.getUploadType().startsWith(OptimizedSyncClient.CONTENT_TYPE_DEFLATE));
+		assertArrayEquals(clientModifications, applied);
+		assertTrue(server.getUploaded() < (SIZE - stored) / 3);
+	}
+
+	private OptimizedSyncClientHttp newClient() {
+		return new OptimizedSyncClientHttp(server.getUrl(), "login", "password", "terminal");
+	}
+
+	/**
+	 * Sync server that sends fixed server modifications and keeps the client modifications applied
+	 */
+	private class StubSyncServer implements OptimizedSyncServer {
+
+		@Override
+		public String initSession(String termId) {
+			return SESSION;
+		}
+
+		@Override
+		public void getServerModifications(String sessionId, OutputStream out) throws ImogSerializationException {
+			try {
+				out.write(serverModifications);
+			} catch (IOException e) {
+				throw new ImogSerializationException(e);
+			}
+		}
+
+		@Override
+		public int applyClientModifications(String sessionId, InputStream data) throws ImogSerializationException {
+			try {
+				applied = LocalSyncServer.read(data);
+				return 0;
+			} catch (IOException e) {
+				throw new ImogSerializationException(e);
+			}
+		}
+
+		@Override
+		public long initResumeSendSession(String sessionId, File received) {
+			return received.exists() ? received.length() : 0;
+		}
+
+		@Override
+		public boolean initResumeRequestSession(String sessionId, File modifications, long bytesReceived) {
+			return true;
+		}
+
+		@Override
+		public void serverModificationsWritten(String sessionId, long length, long checksum) {
+		}
+
+		@Override
+		public void acknowledgeClientModifications(String sessionId, File received) {
+		}
+
+		@Override
+		public void searchEntity(String entityId, OutputStream out) {
+		}
+
+		@Override
+		public int closeSession(String sessionId, int status) {
+			return 0;
+		}
+
+		@Override
+		public boolean checkSession(String sessionId) {
+			return true;
+		}
+
+		@Override
+		public File getFileDirectory() {
+			return server.getWorkDirectory();
+		}
+	}
+
+}
@@ -0,0 +1,272 @@
+package org.imogene.lib.sync.server.serializer.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+import org.imogene.lib.common.entity.ImogBean;
+import org.imogene.lib.sync.handler.DataHandlerManager;
+import org.imogene.lib.sync.handler.ImogBeanHandler;
+import org.imogene.lib.sync.server.test.Visit;
+import org.imogene.lib.sync.server.test.VisitDaoImpl;
+import org.imogene.lib.sync.server.test.VisitHandler;
+import org.junit.Test;
+import org.springframework.beans.factory.config.PropertyPlaceholderConfigurer;
+import org.springframework.context.support.GenericXmlApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.thoughtworks.xstream.converters.basic.DateConverter;
+
+/**
+ * Tests of the import of the client modifications in an embedded database. The batched import of the serializer,
+ * which saves the entities of a batch grouped by type, persists the new ones without looking for them, and flushes and
+ * clears the persistence context after each batch, with JDBC batching enabled, is compared to the import done before,
+ * one merge per entity in a single persistence context, without JDBC batching. Both imports insert the entities, then
+ * update all of them.
+ *
+ * @author MEDES-IMPS
+ */
+public class ImogXmlImportTest {
+
+	/* the number of entities of the documents */
+	private static final int COUNT = 5000;
+
+	/* the number of entities of a batch of the serializer, as in the converter contexts */
+	private static final int BATCH_SIZE = 100;
+
+	@Test
+	public void batchedImportBoundsThePersistenceContext() throws Exception {
+		byte[] inserts = createDocument(new Date(1000000000000L), "inserted");
+		byte[] updates = createDocument(new Date(1100000000000L), "updated");
+
+		/* the persistence context grows with the document, unless it is cleared after each batch */
+		assertTrue(run("before", 0, false, inserts, updates) >= COUNT);
+		assertTrue(run("after", 50, true, inserts, updates) <= 2 * BATCH_SIZE);
+	}
+
+	/**
+	 * The associations serialized under an alias refer to the persistent entities once the references of the batch
+	 * are resolved, the referenced entities that are not in the database are created
+	 */
+	@Test
+	public void aliasedAssociationsAreResolved() throws Exception {
+		String date = new DateConverter().toString(new Date(1000000000000L));
+		StringBuilder first = new StringBuilder("<entities>");
+		visit(first, "A1", date, "first", null);
+		first.append("</entities>");
+		StringBuilder second = new StringBuilder("<entities>");
+		visit(second, "A2", date, "second", "A1");
+		visit(second, "A3", date, "third", "A9");
+		second.append("</entities>");
+
+		GenericXmlApplicationContext context = createContext("aliases", 0);
+		try {
+			final VisitHandler handler = context.getBean(VisitHandler.class);
+			final ImogXmlSerializerImpl serializer = context.getBean(ImogXmlSerializerImpl.class);
+			TransactionTemplate transaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+			assertEquals(1, importDocument(transaction, serializer, first.toString().getBytes("UTF-8")));
+			assertEquals(2, importDocument(transaction, serializer, second.toString().getBytes("UTF-8")));
+			/* the visits are saved with the loaded previous visit, not with its empty placeholder */
+			assertEquals("first", handler.getSavedPrevious("A2").getDiagnosis());
+
+			transaction.execute(new TransactionCallbackWithoutResult() {
+				@Override
+				protected void doInTransactionWithoutResult(TransactionStatus status) {
+					Visit previous = handler.loadEntity("A2").getPrevious();
+					assertEquals("A1", previous.getId());
+					assertEquals("first", previous.getDiagnosis());
+					assertEquals("A9", handler.loadEntity("A3").getPrevious().getId());
+					assertNotNull(handler.loadEntity("A9"));
+				}
+			});
+		} finally {
+			context.close();
+		}
+	}
+
+	/**
+	 * Import the documents in a new database
+	 *
+	 * @param database the name of the database
+	 * @param jdbcBatchSize the hibernate.jdbc.batch_size property, 0 to disable JDBC batching
+	 * @param batched true for the batched import, false for one merge per entity
+	 * @return the number of entities managed at most by the persistence context
+	 */
+	private static int run(String database, int jdbcBatchSize, final boolean batched, byte[] inserts, byte[] updates)
+			throws Exception {
+		GenericXmlApplicationContext context = createContext(database, jdbcBatchSize);
+		try {
+			VisitHandler handler = context.getBean(VisitHandler.class);
+			ImogXmlSerializerImpl serializer = context.getBean(ImogXmlSerializerImpl.class);
+			TransactionTemplate transaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+
+			importDocument(transaction, serializer, handler, batched, inserts);
+			int maxManaged = handler.getMaxManaged();
+			importDocument(transaction, serializer, handler, batched, updates);
+			maxManaged = Math.max(maxManaged, handler.getMaxManaged());
+
+			final VisitDaoImpl dao = context.getBean(VisitDaoImpl.class);
+			List<Visit> visits = transaction.execute(new TransactionCallback<List<Visit>>() {
+				@Override
+				public List<Visit> doInTransaction(TransactionStatus status) {
+					return dao.load();
+				}
+			});
+			assertEquals(COUNT, visits.size());
+			for (Visit visit : visits) {
+				assertEquals("updated", visit.getDiagnosis());
+			}
+			return maxManaged;
+		} finally {
+			context.close();
+		}
+	}
+
+	/**
+	 * Create the context of the import in a new database, the serializer gets the visit handler for all the classes
+	 *
+	 * @param database the name of the database
+	 * @param jdbcBatchSize the hibernate.jdbc.batch_size property, 0 to disable JDBC batching
+	 */
+	private static GenericXmlApplicationContext createContext(String database, int jdbcBatchSize) {
+		Properties properties = new Properties();
+		properties.setProperty("database", database);
+		properties.setProperty("batchSize", String.valueOf(jdbcBatchSize));
+		PropertyPlaceholderConfigurer placeholders = new PropertyPlaceholderConfigurer();
+		placeholders.setProperties(properties);
+
+		GenericXmlApplicationContext context = new GenericXmlApplicationContext();
+		context.load("classpath:org/imogene/lib/sync/server/serializer/xml/ImogXmlImport-context.xml");
+		context.addBeanFactoryPostProcessor(placeholders);
+		context.refresh();
+		final VisitHandler handler = context.getBean(VisitHandler.class);
+		context.getBean(ImogXmlSerializerImpl.class).setDataHandlerManager(new DataHandlerManager() {
+			@Override
+			public ImogBeanHandler<? extends ImogBean> getHandler(Class<?> clazz) {
+				return handler;
+			}
+
+			@Override
+			public ImogBeanHandler<? extends ImogBean> getHandler(String className) {
+				return handler;
+			}
+		});
+		return context;
+	}
+
+	/**
+	 * Import a document in a transaction
+	 */
+	private static void importDocument(TransactionTemplate transaction, final ImogXmlSerializerImpl serializer,
+			final VisitHandler handler, final boolean batched, final byte[] document) {
+		int imported = transaction.execute(new TransactionCallback<Integer>() {
+			@Override
+			public Integer doInTransaction(TransactionStatus status) {
+				try {
+					if (batched) {
+						return serializer.processMulti(new ByteArrayInputStream(document), null);
+					}
+					/* the import done before the batches, each entity is looked for and merged */
+					int j = 0;
+					for (ImogBean entity : serializer.deSerializeMulti(new ByteArrayInputStream(document))) {
+						Visit visit = (Visit) entity;
+						Visit exist = handler.loadEntity(visit.getId());
+						if (exist == null || exist.getModified().before(visit.getModified())) {
+							handler.saveOrUpdate(visit, null, exist == null);
+							j++;
+						}
+					}
+					return j;
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		});
+		assertEquals(COUNT, imported);
+	}
+
+	/**
+	 * Import a document with the batched import of the serializer, in a transaction
+	 *
+	 * @return the number of imported entities
+	 */
+	private static int importDocument(TransactionTemplate transaction, final ImogXmlSerializerImpl serializer,
+			final byte[] document) {
+		return transaction.execute(new TransactionCallback<Integer>() {
+			@Override
+			public Integer doInTransaction(TransactionStatus status) {
+				try {
+					return serializer.processMulti(new ByteArrayInputStream(document), null);
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Create a document of visits
+	 *
+	 * @param modified the modification date of the visits
+	 * @param diagnosis the diagnosis of the visits
+	 * @return the serialized visits
+	 */
+	private static byte[] createDocument(Date modified, String diagnosis) throws Exception {
+		/*
+		 * the document is written element by element, XStream 1.4.4 does not write the inherited fields of the
+		 * entities on Java 8, it still reads them
+		 */
+		String date = new DateConverter().toString(modified);
+		StringBuilder xml = new StringBuilder("<entities>");
+		for (int i = 0; i < COUNT; i++) {
+			xml.append("<").append(Visit.class.getName()).append(">");
+			element(xml, "id", String.format("V%05d", i));
+			element(xml, "created", date);
+			element(xml, "createdBy", "user");
+			element(xml, "modified", date);
+			element(xml, "modifiedBy", "user");
+			element(xml, "modifiedFrom", "terminal");
+			element(xml, "patient", "patient " + i);
+			element(xml, "diagnosis", diagnosis);
+			element(xml, "temperature", String.valueOf(36 + i % 5));
+			xml.append("</").append(Visit.class.getName()).append(">");
+		}
+		xml.append("</entities>");
+		return xml.toString().getBytes("UTF-8");
+	}
+
+	/**
+	 * Write a visit that refers to a previous visit
+	 *
+	 * @param previous the id of the previous visit, null for none
+	 */
+	private static void visit(StringBuilder xml, String id, String date, String diagnosis, String previous) {
+		xml.append("<").append(Visit.class.getName()).append(">");
+		element(xml, "id", id);
+		element(xml, "created", date);
+		element(xml, "createdBy", "user");
+		element(xml, "modified", date);
+		element(xml, "modifiedBy", "user");
+		element(xml, "modifiedFrom", "terminal");
+		element(xml, "diagnosis", diagnosis);
+		if (previous != null) {
+			xml.append("<previousVisit><").append(Visit.class.getName()).append(" id=\"").append(previous)
+					.append("\"/></previousVisit>");
+		}
+		xml.append("</").append(Visit.class.getName()).append(">");
+	}
+
+	private static void element(StringBuilder xml, String name, String value) {
+		xml.append("<").append(name).append(">").append(value).append("</").append(name).append(">");
+	}
+
+}
@@ -0,0 +1,240 @@
+package org.imogene.lib.sync.server.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.imogene.lib.sync.session.SyncSession;
+import org.imogene.lib.sync.session.SyncSessionDao;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the in-memory registry of the synchronization sessions
+ *
+ * @author MEDES-IMPS
+ */
+public class SyncSessionRegistryTest {
+
+	private StubSessionDao dao;
+
+	private SyncSessionRegistry registry;
+
+	@Before
+	public void setUp() {
+		dao = new StubSessionDao();
+		registry = new SyncSessionRegistry();
+		registry.setSessionDao(dao);
+	}
+
+	/**
+	 * The checks of a registered session do not query the database
+	 */
+	@Test
+	public void checksAreAnsweredFromMemory() {
+		SyncSession session = createSession("s1");
+		dao.saveOrUpdate(session);
+		registry.register(session);
+
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(registry.isValid("s1"));
+		}
+		assertEquals(0, dao.loads.get());
+	}
+
+	@Test
+	public void unknownSessionIsLoadedOnce() {
+		dao.saveOrUpdate(createSession("s1"));
+
+		assertTrue(registry.isValid("s1"));
+		assertTrue(registry.isValid("s1"));
+		assertEquals(1, dao.loads.get());
+
+		assertFalse(registry.isValid("unknown"));
+		assertFalse(registry.isValid(null));
+	}
+
+	@Test
+	public void expiredSessionIsLoadedAgain() throws Exception {
+		registry.setTimeout(20);
+		dao.saveOrUpdate(createSession("s1"));
+
+		assertTrue(registry.isValid("s1"));
+		Thread.sleep(40);
+		assertTrue(registry.isValid("s1"));
+		assertEquals(2, dao.loads.get());
+	}
+
+	@Test
+	public void concurrentChecksShareTheEntry() throws Exception {
+		SyncSession session = createSession("s1");
+		dao.saveOrUpdate(session);
+		registry.register(session);
+
+		int threads = 8;
+		final int checks = 10000;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Integer>> results = new Vector<Future<Integer>>();
+			for (int i = 0; i < threads; i++) {
+				results.add(executor.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() {
+						int valid = 0;
+						for (int j = 0; j < checks; j++) {
+							if (registry.isValid("s1") && "user".equals(registry.get("s1").getUserId())) {
+								valid++;
+							}
+						}
+						return valid;
+					}
+				}));
+			}
+			for (Future<Integer> result : results) {
+				assertEquals(checks, result.get().intValue());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(0, dao.loads.get());
+	}
+
+	/**
+	 * The registry keeps the immutable values of the session only, the session modified by a request is always the
+	 * one of the database
+	 */
+	@Test
+	public void sessionIsLoadedPerRequest() {
+		SyncSession session = createSession("s1");
+		dao.saveOrUpdate(session);
+		registry.register(session);
+
+		SyncSession first = registry.load("s1");
+		first.setSentLength(10L);
+		first.setSentChecksum(20L);
+		registry.saveOrUpdate(first);
+
+		SyncSession second = registry.load("s1");
+		assertNotSame(first, second);
+		assertEquals(Long.valueOf(10), second.getSentLength());
+		assertEquals(Long.valueOf(20), second.getSentChecksum());
+		assertEquals("term", registry.get("s1").getTerminalId());
+	}
+
+	@Test
+	public void closedSessionIsEvicted() {
+		SyncSession session = createSession("s1");
+		dao.saveOrUpdate(session);
+		registry.register(session);
+		assertEquals(1, registry.size());
+
+		registry.evict("s1");
+		assertEquals(0, registry.size());
+
+		dao.sessions.remove("s1");
+		assertFalse(registry.isValid("s1"));
+	}
+
+	@Test
+	public void deletedSessionIsEvicted() {
+		SyncSession session = createSession("s1");
+		dao.saveOrUpdate(session);
+		registry.register(session);
+
+		registry.delete(session);
+		assertNull(registry.get("s1"));
+		assertFalse(registry.isValid("s1"));
+	}
+
+	@Test
+	public void terminatedSessionsAreEvicted() {
+		SyncSession terminated = createSession("s1");
+		terminated.setSendDate(null);
+		dao.saveOrUpdate(terminated);
+		registry.register(terminated);
+		SyncSession running = createSession("s2");
+		dao.saveOrUpdate(running);
+		registry.register(running);
+
+		registry.clearTerminated();
+		assertFalse(registry.isValid("s1"));
+		assertTrue(registry.isValid("s2"));
+	}
+
+	private static SyncSession createSession(String id) {
+		SyncSession session = new SyncSession();
+		session.setId(id);
+		session.setTerminalId("term");
+		session.setUserId("user");
+		session.setInitDate(new Date());
+		session.setSendDate(new Date());
+		return session;
+	}
+
+	/**
+	 * Session DAO that stores copies of the sessions in memory, as a database would, and counts the loads
+	 */
+	private static class StubSessionDao implements SyncSessionDao {
+
+		private final Map<String, SyncSession> sessions = new ConcurrentHashMap<String, SyncSession>();
+
+		private final AtomicInteger loads = new AtomicInteger();
+
+		@Override
+		public void saveOrUpdate(SyncSession session) {
+			sessions.put(session.getId(), copy(session));
+		}
+
+		@Override
+		public SyncSession load(String id) {
+			loads.incrementAndGet();
+			SyncSession session = sessions.get(id);
+			return session != null ? copy(session) : null;
+		}
+
+		@Override
+		public void delete(SyncSession session) {
+			sessions.remove(session.getId());
+		}
+
+		@Override
+		public void clearTerminated() {
+			for (SyncSession session : sessions.values()) {
+				if (session.getSendDate() == null) {
+					sessions.remove(session.getId());
+				}
+			}
+		}
+
+		@Override
+		public boolean isValid(String id) {
+			return load(id) != null;
+		}
+
+		private static SyncSession copy(SyncSession session) {
+			SyncSession copy = new SyncSession();
+			copy.setId(session.getId());
+			copy.setTerminalId(session.getTerminalId());
+			copy.setUserId(session.getUserId());
+			copy.setInitDate(session.getInitDate());
+			copy.setSendDate(session.getSendDate());
+			copy.setSentLength(session.getSentLength());
+			copy.setSentChecksum(session.getSentChecksum());
+			return copy;
+		}
+	}
+
+}
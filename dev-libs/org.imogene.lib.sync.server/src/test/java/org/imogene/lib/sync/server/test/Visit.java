@@ -0,0 +1,69 @@
+package org.imogene.lib.sync.server.test;
+
+import javax.persistence.Entity;
+import javax.persistence.ManyToOne;
+
+import org.imogene.lib.common.entity.ImogBeanImpl;
+
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * Entity of the tests, with an association serialized under an alias
+ *
+ * @author MEDES-IMPS
+ */
+@Entity
+public class Visit extends ImogBeanImpl {
+
+	private static final long serialVersionUID = 4412389563215879020L;
+
+	private String patient;
+
+	private String diagnosis;
+
+	private Integer temperature;
+
+	@ManyToOne
+	@XStreamAlias("previousVisit")
+	private Visit previous;
+
+	public Visit() {
+	}
+
+	public Visit(String id) {
+		setId(id);
+	}
+
+	public String getPatient() {
+		return patient;
+	}
+
+	public void setPatient(String patient) {
+		this.patient = patient;
+	}
+
+	public String getDiagnosis() {
+		return diagnosis;
+	}
+
+	public void setDiagnosis(String diagnosis) {
+		this.diagnosis = diagnosis;
+	}
+
+	public Integer getTemperature() {
+		return temperature;
+	}
+
+	public void setTemperature(Integer temperature) {
+		this.temperature = temperature;
+	}
+
+	public Visit getPrevious() {
+		return previous;
+	}
+
+	public void setPrevious(Visit previous) {
+		this.previous = previous;
+	}
+
+}
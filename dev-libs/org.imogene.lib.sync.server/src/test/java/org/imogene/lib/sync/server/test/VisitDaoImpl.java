@@ -0,0 +1,29 @@
+package org.imogene.lib.sync.server.test;
+
+import org.hibernate.Session;
+import org.imogene.lib.common.dao.ImogBeanDaoImpl;
+
+/**
+ * DAO of the visits of the tests
+ *
+ * @author MEDES-IMPS
+ */
+public class VisitDaoImpl extends ImogBeanDaoImpl<Visit> {
+
+	public VisitDaoImpl() {
+		super(Visit.class);
+	}
+
+	@Override
+	public void delete() {
+		em.createQuery("DELETE FROM Visit").executeUpdate();
+	}
+
+	/**
+	 * Get the number of entities managed by the persistence context of the current transaction
+	 */
+	public int getManagedCount() {
+		return em.unwrap(Session.class).getStatistics().getEntityCount();
+	}
+
+}
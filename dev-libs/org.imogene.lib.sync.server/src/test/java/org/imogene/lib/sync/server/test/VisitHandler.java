@@ -0,0 +1,82 @@
+package org.imogene.lib.sync.server.test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.imogene.lib.common.criteria.ImogJunction;
+import org.imogene.lib.common.dao.ImogBeanDao;
+import org.imogene.lib.common.entity.ImogActor;
+import org.imogene.lib.sync.handler.ImogBeanHandlerImpl;
+
+/**
+ * Handler of the visits of the tests, without filter, that keeps the largest number of entities managed by the
+ * persistence context when a visit is saved, and the previous visits the saved visits refer to
+ *
+ * @author MEDES-IMPS
+ */
+public class VisitHandler extends ImogBeanHandlerImpl<Visit> {
+
+	private VisitDaoImpl dao;
+
+	private int maxManaged;
+
+	private final Map<String, Visit> savedPrevious = new HashMap<String, Visit>();
+
+	@Override
+	public Visit createNewEntity(String id) {
+		return new Visit(id);
+	}
+
+	@Override
+	protected void saveOrUpdate(Visit entity, boolean neu) {
+		if (entity.getPrevious() != null) {
+			savedPrevious.put(entity.getId(), entity.getPrevious());
+		}
+		super.saveOrUpdate(entity, neu);
+		maxManaged = Math.max(maxManaged, dao.getManagedCount());
+	}
+
+	@Override
+	protected ImogBeanDao<Visit> getDao() {
+		return dao;
+	}
+
+	@Override
+	protected ImogJunction createFilterJuntion(ImogActor actor) {
+		return null;
+	}
+
+	@Override
+	protected ImogJunction createClientFilterJuntion(String userId, String terminalId) {
+		return null;
+	}
+
+	/**
+	 * Setter for bean injection
+	 *
+	 * @param dao
+	 */
+	public void setDao(VisitDaoImpl dao) {
+		this.dao = dao;
+	}
+
+	/**
+	 * Get the largest number of entities managed by the persistence context since the previous call
+	 */
+	public int getMaxManaged() {
+		int max = maxManaged;
+		maxManaged = 0;
+		return max;
+	}
+
+	/**
+	 * Get the previous visit a visit referred to when it was saved
+	 *
+	 * @param id the id of the saved visit
+	 * @return the previous visit, null if the visit had none
+	 */
+	public Visit getSavedPrevious(String id) {
+		return savedPrevious.get(id);
+	}
+
+}
@@ -78,9 +78,11 @@ public interface OptimizedSyncClient {
 	 * @param terminalId the terminal id
 	 * @param sessionId the session id
 	 * @param bytesReceived number of bytes already received
+	 * @return the number of bytes after which the server modifications are resumed, lower than the number of bytes
+	 *         received if the server can not resume the transfer after them
 	 * @throws AuthenticationException
 	 */
-	public void resumeReceive(String terminalId, UUID sessionId, long bytesReceived) throws SynchronizationException,
+	public long resumeReceive(String terminalId, UUID sessionId, long bytesReceived) throws SynchronizationException,
 			AuthenticationException;
 
 	/**
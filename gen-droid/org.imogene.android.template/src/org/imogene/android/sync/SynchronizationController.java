@@ -5,6 +5,7 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.util.UUID;
 
 import org.apache.http.auth.AuthenticationException;
@@ -261,7 +262,16 @@ public class SynchronizationController {
 			/* 1 - initialize the resumed session */
 			notifyInit();
 			File inFile = new File(Paths.PATH_SYNCHRO, his.id + ".smodif");
-			mSyncClient.resumeReceive(mTerminal, his.id, inFile.length());
+			long bytesReceived = mSyncClient.resumeReceive(mTerminal, his.id, inFile.length());
+			if (bytesReceived < inFile.length()) {
+				// the server sends the modifications again from this offset
+				RandomAccessFile raf = new RandomAccessFile(inFile, "rw");
+				try {
+					raf.setLength(bytesReceived);
+				} finally {
+					raf.close();
+				}
+			}
 
 			/* 2 - receiving data */
 			notifyReceive();
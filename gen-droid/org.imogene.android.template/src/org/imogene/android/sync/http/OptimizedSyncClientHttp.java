@@ -205,7 +205,7 @@ public class OptimizedSyncClientHttp implements OptimizedSyncClient {
 	}
 
 	@Override
-	public void resumeReceive(String terminalId, UUID sessionId, long bytesReceived) throws SynchronizationException,
+	public long resumeReceive(String terminalId, UUID sessionId, long bytesReceived) throws SynchronizationException,
 			AuthenticationException {
 		try {
 			HttpClient client = new SSLHttpClient();
@@ -227,7 +227,13 @@ public class OptimizedSyncClientHttp implements OptimizedSyncClient {
 
 			// Read session id
 			String result = readString(response.getEntity().getContent());
-			if (!RESPONSE_OK.equals(result)) {
+			if (RESPONSE_OK.equals(result)) {
+				return bytesReceived;
+			}
+			// the server can not resume after the bytes received, it gives the offset to resume from
+			try {
+				return Long.parseLong(result);
+			} catch (NumberFormatException e) {
 				throw new SynchronizationException("The server return an error code",
 						SynchronizationException.ERROR_RECEIVE);
 			}
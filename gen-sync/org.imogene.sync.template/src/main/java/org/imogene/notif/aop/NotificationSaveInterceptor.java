@@ -4,17 +4,16 @@ import java.lang.reflect.Method;
 import java.util.Date;
 import java.util.UUID;
 
-import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.methods.GetMethod;
-import org.apache.log4j.Logger;
 import org.imogene.lib.common.constants.UserActionConstants;
-import org.imogene.lib.common.dao.GenericDao;
-import org.imogene.lib.common.entity.CloneFactory;
-import org.imogene.lib.common.entity.ImogActor;
 import org.imogene.lib.common.entity.ImogBean;
+import org.imogene.lib.common.notification.NotifierDispatcher;
 import org.imogene.lib.common.useraction.UserAction;
+import org.imogene.lib.common.useraction.UserActionWriter;
 import org.imogene.lib.sync.SyncConstants;
+import org.imogene.sync.security.ImogUserDetails;
 import org.springframework.aop.AfterReturningAdvice;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
@@ -22,13 +21,9 @@ import org.springframework.transaction.annotation.Transactional;
  */
 public class NotificationSaveInterceptor implements AfterReturningAdvice {
 
-	private static final Logger logger = Logger.getLogger(NotificationSaveInterceptor.class);
+	private NotifierDispatcher notifierDispatcher;
 
-	private String notifierHost = "http://localhost:8080/DiabsatNotif";
-
-	private GenericDao genericDao;
-
-	private CloneFactory cloneFactory;
+	private UserActionWriter userActionWriter;
 
 	/**
 	 * Notify about the entity modification/creation
@@ -77,16 +72,10 @@ public class NotificationSaveInterceptor implements AfterReturningAdvice {
 			typeAction = UserActionConstants.USERACTION_TYPE_UPDATE;
 
 		if (!SyncConstants.SYNC_ID_SYS.equals(bean.getCreatedBy())) {
-			saveAction(typeAction, typeFormulaire, idFormulaire, getActor(bean.getCreatedBy()));
-		}
-
-		try {
-			cloneEntity(bean);
-		} catch (Exception e) {
-			logger.error(e.getMessage());
+			saveAction(typeAction, typeFormulaire, idFormulaire);
 		}
 
-		sendToNotifier(className, typeAction, idFormulaire);
+		notifierDispatcher.dispatch(className, typeAction, idFormulaire);
 	}
 
 	/**
@@ -103,7 +92,7 @@ public class NotificationSaveInterceptor implements AfterReturningAdvice {
 			String typeAction = UserActionConstants.USERACTION_TYPE_READ;
 
 			if (!SyncConstants.SYNC_ID_SYS.equals(bean.getCreatedBy())) {
-				saveAction(typeAction, typeFormulaire, idFormulaire, getActor(bean.getCreatedBy()));
+				saveAction(typeAction, typeFormulaire, idFormulaire);
 			}
 		}
 	}
@@ -120,100 +109,59 @@ public class NotificationSaveInterceptor implements AfterReturningAdvice {
 		String typeAction = UserActionConstants.USERACTION_TYPE_DELETE;
 
 		if (!SyncConstants.SYNC_ID_SYS.equals(bean.getCreatedBy())) {
-			saveAction(typeAction, typeFormulaire, idFormulaire, getActor(bean.getCreatedBy()));
-		}
-	}
-
-	private void cloneEntity(Object source) {
-		if (source != null) {
-			Object clone = cloneFactory.clone(source);
-			if (clone != null)
-				genericDao.saveOrUpdate(clone);
+			saveAction(typeAction, typeFormulaire, idFormulaire);
 		}
 	}
 
 	/**
-	 * Notify the notifier by http.
-	 * 
-	 * @param type the card type
-	 * @param operation the operation on the card
-	 * @param id the card id
-	 */
-	private void sendToNotifier(final String type, final String operation, final String id) {
-
-		/* thread the notification process */
-		new Thread() {
-			@Override
-			public void run() {
-
-				HttpClient client = new HttpClient();
-				String uri = notifierHost + "?" + "type=" + type + "&op=" + operation + "&id=" + id;
-				logger.debug("Notifier URI : " + uri);
-				GetMethod method = new GetMethod(uri);
-				try {
-					client.executeMethod(method);
-				} catch (Exception ex) {
-					logger.error(ex.getMessage());
-				}
-
-			}
-		}.start();
-	}
-
-	/**
+	 * Queue the user action, it is stored asynchronously by the user action writer
 	 * 
 	 * @param typeAction
 	 * @param typeFormulaire
 	 * @param idFormulaire
 	 */
-	private void saveAction(String actionType, String form, String formId, ImogActor actor) {
+	private void saveAction(String actionType, String form, String formId) {
 
 		UserAction action = new UserAction();
 		action.setId(UUID.randomUUID().toString());
 		action.setActionDate(new Date(System.currentTimeMillis()));
-		if (actor != null)
-			action.setUserId(actor.getId());
+		action.setUserId(getCurrentUserId());
 		action.setActionType(actionType);
 		action.setFormType(form);
 		action.setFormId(formId);
 
-		genericDao.saveOrUpdate(action);
-	}
-
-	/**
-	 * 
-	 * @param login
-	 * @return
-	 */
-	private ImogActor getActor(String login) {
-		return genericDao.loadFromLogin(login);
+		userActionWriter.write(action);
 	}
 
 	/**
-	 * For bean injection
+	 * Get the id of the authenticated user from the security context
 	 * 
-	 * @param notifier the notifier URL
+	 * @return the user id, or null if no user is authenticated
 	 */
-	public void setNotifierUrl(String notifier) {
-		notifierHost = notifier;
+	private String getCurrentUserId() {
+		Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+		if (authentication != null && authentication.getPrincipal() instanceof ImogUserDetails) {
+			return ((ImogUserDetails) authentication.getPrincipal()).getImogActor().getId();
+		}
+		return null;
 	}
 
 	/**
 	 * For bean injection
 	 * 
-	 * @param dao
+	 * @param notifierDispatcher
 	 */
-	public void setDao(GenericDao dao) {
-		genericDao = dao;
+	public void setNotifierDispatcher(NotifierDispatcher notifierDispatcher) {
+		this.notifierDispatcher = notifierDispatcher;
 	}
 
 	/**
 	 * For bean injection
 	 * 
-	 * @param cloneFactory
+	 * @param userActionWriter
 	 */
-	public void setCloneFactory(CloneFactory cloneFactory) {
-		this.cloneFactory = cloneFactory;
+	public void setUserActionWriter(UserActionWriter userActionWriter) {
+		this.userActionWriter = userActionWriter;
 	}
 
 }
@@ -4,17 +4,17 @@ import java.lang.reflect.Method;
 import java.util.Date;
 import java.util.UUID;
 
-import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.log4j.Logger;
 import org.imogene.lib.common.constants.UserActionConstants;
 import org.imogene.lib.common.dao.GenericDao;
-import org.imogene.lib.common.entity.CloneFactory;
-import org.imogene.lib.common.entity.ImogActor;
 import org.imogene.lib.common.entity.ImogBean;
+import org.imogene.lib.common.notification.NotifierDispatcher;
 import org.imogene.lib.common.useraction.UserAction;
-import org.imogene.web.server.util.HttpSessionUtil;
+import org.imogene.lib.common.useraction.UserActionWriter;
+import org.imogene.web.server.security.ImogUserDetails;
 import org.springframework.aop.AfterReturningAdvice;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
@@ -24,11 +24,11 @@ public class NotificationSaveInterceptor implements AfterReturningAdvice {
 
 	private static final Logger logger = Logger.getLogger(NotificationSaveInterceptor.class);
 
-	private String notifierHost = "http://localhost:8080/DiabsatNotif";
+	private NotifierDispatcher notifierDispatcher;
 
 	private GenericDao genericDao;
 
-	private CloneFactory cloneFactory;
+	private UserActionWriter userActionWriter;
 
 	/**
 	 * Notify about the entity modification/creation
@@ -85,13 +85,7 @@ public class NotificationSaveInterceptor implements AfterReturningAdvice {
 
 		saveAction(typeAction, typeFormulaire, idFormulaire);
 
-		try {
-			cloneEntity(bean);
-		} catch (Exception e) {
-			logger.error(e.getMessage());
-		}
-
-		sendToNotifier(className, typeAction, idFormulaire);
+		notifierDispatcher.dispatch(className, typeAction, idFormulaire);
 	}
 
 	/**
@@ -123,42 +117,8 @@ public class NotificationSaveInterceptor implements AfterReturningAdvice {
 		saveAction(typeAction, typeFormulaire, idFormulaire);
 	}
 
-	private void cloneEntity(Object source) {
-		if (source != null) {
-			Object clone = cloneFactory.clone(source);
-			if (clone != null)
-				genericDao.saveOrUpdate(clone);
-		}
-	}
-
-	/**
-	 * Notify the notifier by http.
-	 * @param type the card type
-	 * @param operation the operation on the card
-	 * @param id the card id
-	 */
-	private void sendToNotifier(final String type, final String operation, final String id) {
-
-		/* thread the notification process */
-		new Thread() {
-			@Override
-			public void run() {
-
-				HttpClient client = new HttpClient();
-				String uri = notifierHost + "?" + "type=" + type + "&op=" + operation + "&id=" + id;
-				logger.debug("Notifier URI : " + uri);
-				GetMethod method = new GetMethod(uri);
-				try {
-					client.executeMethod(method);
-				} catch (Exception ex) {
-					logger.error(ex.getMessage());
-				}
-
-			}
-		}.start();
-	}
-
 	/**
+	 * Queue the user action, it is stored asynchronously by the user action writer
 	 * @param typeAction
 	 * @param typeFormulaire
 	 * @param idFormulaire
@@ -168,21 +128,32 @@ public class NotificationSaveInterceptor implements AfterReturningAdvice {
 		UserAction action = new UserAction();
 		action.setId(UUID.randomUUID().toString());
 		action.setActionDate(new Date(System.currentTimeMillis()));
-		ImogActor actor = HttpSessionUtil.getCurrentUser();
-		action.setUserId(actor.getId());
+		action.setUserId(getCurrentUserId());
 		action.setActionType(actionType);
 		action.setFormType(form);
 		action.setFormId(formId);
 
-		genericDao.saveOrUpdate(action);
+		userActionWriter.write(action);
+	}
+
+	/**
+	 * Get the id of the authenticated user from the security context
+	 * @return the user id, or null if no user is authenticated
+	 */
+	private String getCurrentUserId() {
+		Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+		if (authentication != null && authentication.getPrincipal() instanceof ImogUserDetails) {
+			return ((ImogUserDetails) authentication.getPrincipal()).getImogActor().getId();
+		}
+		return null;
 	}
 
 	/**
 	 * Setter for bean injection
-	 * @param notifier the notifier URL
+	 * @param notifierDispatcher
 	 */
-	public void setNotifierUrl(String notifier) {
-		notifierHost = notifier;
+	public void setNotifierDispatcher(NotifierDispatcher notifierDispatcher) {
+		this.notifierDispatcher = notifierDispatcher;
 	}
 
 	/**
@@ -195,10 +166,10 @@ public class NotificationSaveInterceptor implements AfterReturningAdvice {
 
 	/**
 	 * Setter for bean injection
-	 * @param cloneFactory
+	 * @param userActionWriter
 	 */
-	public void setCloneFactory(CloneFactory cloneFactory) {
-		this.cloneFactory = cloneFactory;
+	public void setUserActionWriter(UserActionWriter userActionWriter) {
+		this.userActionWriter = userActionWriter;
 	}
 
 }
@@ -261,6 +261,20 @@ public abstract class ImogBeanDataProvider<T extends ImogBeanProxy> {
 
 	public abstract Request<List<T>> getList(String property, int start, int numRows, boolean asc);
 
+	/**
+	 * Gets the page that follows a given entity. The data providers that support it load the page with a seek query
+	 * whose cost does not depend on the position of the page, the others load it from its start index.
+	 * @param property the property used to sort
+	 * @param lastId the id of the last entity of the previous page
+	 * @param start the index of the first entity of the page
+	 * @param numRows the number of entities of the page
+	 * @param asc true for an ascendant sort
+	 * @return the request that loads the page
+	 */
+	public Request<List<T>> getNextList(String property, String lastId, int start, int numRows, boolean asc) {
+		return getList(property, start, numRows, asc);
+	}
+
 	public abstract Request<Long> getTotalRowCount();
 
 	public abstract String fullTextSearch(String text);
@@ -85,6 +85,10 @@ public abstract class ImogDynaTable<T extends ImogBeanProxy> extends Composite {
 	private Timer refreshTimer = null;
 
 	private int lastFetch;
+	/* last row of the last fetched page, to load the next page with a seek query */
+	private String lastRowId = null;
+	private int lastRowStart;
+	private String lastRowSortKey;
 	protected int itemByPage = 30;
 	private String sortProperty = "";
 	private boolean newSort = true;
@@ -465,18 +469,35 @@ public abstract class ImogDynaTable<T extends ImogBeanProxy> extends Composite {
 			lastFetch = start;
 			Request<List<T>> request;
 
-			if (sortProperty.isEmpty())
-				request = beanDataProvider.getList(getDefaultSortProperty(), start, itemByPage, getDefaultSortPropertyOrder());
-			else {
-				if (newSort)
-					request = beanDataProvider.getList(sortProperty, 0, itemByPage, ascSort);
-				else
-					request = beanDataProvider.getList(sortProperty, start, itemByPage, ascSort);
+			String property;
+			boolean asc;
+			final int first;
+			if (sortProperty.isEmpty()) {
+				property = getDefaultSortProperty();
+				asc = getDefaultSortPropertyOrder();
+				first = start;
+			} else {
+				property = sortProperty;
+				asc = ascSort;
+				first = newSort ? 0 : start;
 			}
 
+			// the page that follows the last fetched one is loaded from its last row
+			final String sortKey = property + asc;
+			if (lastRowId != null && sortKey.equals(lastRowSortKey) && first == lastRowStart + itemByPage)
+				request = beanDataProvider.getNextList(property, lastRowId, first, itemByPage, asc);
+			else
+				request = beanDataProvider.getList(property, first, itemByPage, asc);
+
 			request.fire(new Receiver<List<T>>() {
 				@Override
 				public void onSuccess(List<T> response) {
+					if (response != null && response.size() > 0) {
+						lastRowId = response.get(response.size() - 1).getId();
+						lastRowStart = first;
+						lastRowSortKey = sortKey;
+					} else
+						lastRowId = null;
 					updateRowData(start, response);
 				}
 
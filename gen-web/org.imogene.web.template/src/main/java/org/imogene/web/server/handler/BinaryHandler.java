@@ -1,7 +1,5 @@
 package org.imogene.web.server.handler;
 
-import java.io.File;
-
 import org.imogene.lib.common.binary.Binary;
 import org.imogene.lib.common.binary.BinaryDao;
 import org.imogene.lib.common.binary.file.BinaryFile;
@@ -63,13 +61,7 @@ public class BinaryHandler {
 	@Transactional
 	public void deleteBinary(Binary bean) {
 		// Delete attached file
-		BinaryFile binary = (BinaryFile) bean;
-		File attachedFile = BinaryFileManager.getInstance().buildFilePath(binary.getId(), binary.getFileName());
-		attachedFile.delete();
-
-		File attachedThumbFile = BinaryFileManager.getInstance().buildFilePath("thumb_" + binary.getId(),
-				binary.getFileName());
-		attachedThumbFile.delete();
+		BinaryFileManager.getInstance().delete(bean);
 
 		// Delete binary bean
 		dao.delete(bean);
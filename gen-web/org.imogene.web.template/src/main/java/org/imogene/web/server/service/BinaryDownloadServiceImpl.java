@@ -1,86 +1,100 @@
 package org.imogene.web.server.service;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.commons.io.IOUtils;
 import org.imogene.lib.common.binary.Binary;
+import org.imogene.lib.common.binary.file.BinaryFile;
 import org.imogene.lib.common.binary.file.BinaryFileManager;
+import org.imogene.lib.media.BinaryOperation;
+import org.imogene.lib.media.PhotoConverter;
 import org.imogene.web.server.handler.BinaryHandler;
+import org.imogene.web.server.util.HttpFileSender;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
 /**
+ * Sends the binaries, their thumbnails and their media conversions. The responses carry validators, so that the
+ * browsers revalidate what they already have instead of downloading it again, and support the byte ranges, so that
+ * the media players can seek.
  * 
  * @author Medes-IMPS
  */
 public class BinaryDownloadServiceImpl implements BinaryDownloadService {
 
+	/* the binaries are revalidated on each view, the revalidation is answered with a 304 */
+	private static final String BINARY_CACHE_CONTROL = "private, no-cache";
+
+	/* the thumbnails are shown in the lists, they are kept one hour before being revalidated */
+	private static final String THUMB_CACHE_CONTROL = "private, max-age=3600";
+
+	/* the media are kept one hour, the seeks are served from the cache or by ranges */
+	private static final String MEDIA_CACHE_CONTROL = "private, max-age=3600";
+
 	@Autowired
 	@Qualifier(value = "binaryHandler")
 	private BinaryHandler binaryHandler;
 
+	@Autowired
+	@Qualifier(value = "binaryOperation")
+	private BinaryOperation binaryOperation;
+
 	@Override
 	public void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
 		String paramId = req.getParameter("binaryId");
 		String flvId = req.getParameter("flvId");
 		String mp3Id = req.getParameter("mp3Id");
 		String thumbId = req.getParameter("thumbId");
+		String thumbWidth = req.getParameter("thumbWidth");
 
 		if (paramId != null) {
 			Binary binary = binaryHandler.getBinary(paramId);
 			if (binary != null) {
-				resp.setHeader("Content-Disposition", "attachment; filename=\"" + binary.getFileName() + "\"");
-				resp.setContentType(binary.getContentType());
-				resp.setContentLength((int) binary.getLength());
-				FileInputStream fis = new FileInputStream(BinaryFileManager.getInstance().buildFilePath(binary));
-				IOUtils.copy(fis, resp.getOutputStream());
-				fis.close();
+				HttpFileSender.send(req, resp, BinaryFileManager.getInstance().buildFilePath(binary),
+						binary.getContentType(), binary.getFileName(), etag(binary, ""), BINARY_CACHE_CONTROL);
 			} else {
 				resp.sendError(404);
 			}
 		} else if (flvId != null) {
 			Binary binary = binaryHandler.getBinary(flvId);
 			if (binary != null) {
-				File flvFile = BinaryFileManager.getInstance().buildFlvFilePath(binary);
-				resp.setHeader("Content-Disposition", "attachment; filename=\"" + binary.getFileName() + ".flv" + "\"");
-				resp.setContentType("x-flash-video");
-				resp.setContentLength((int) flvFile.length());
-				FileInputStream fis = new FileInputStream(flvFile);
-				IOUtils.copy(fis, resp.getOutputStream());
-				fis.close();
+				HttpFileSender.send(req, resp, BinaryFileManager.getInstance().buildFlvFilePath(binary),
+						"x-flash-video", binary.getFileName() + ".flv", etag(binary, BinaryFileManager.FLV_SUFFIX),
+						MEDIA_CACHE_CONTROL);
 			} else {
 				resp.sendError(404);
 			}
 		} else if (mp3Id != null) {
 			Binary binary = binaryHandler.getBinary(mp3Id);
 			if (binary != null) {
-				File mp3File = BinaryFileManager.getInstance().buildMp3FilePath(binary);
-				resp.setHeader("Content-Disposition", "attachment; filename=\"" + binary.getFileName() /* + ".mp3" */
-						+ "\"");
-				resp.setContentType("audio/mp3");
-				resp.setContentLength((int) mp3File.length());
-				FileInputStream fis = new FileInputStream(mp3File);
-				IOUtils.copy(fis, resp.getOutputStream());
-				fis.close();
+				/* the audio that has not been converted is served as it is */
+				File mp3File = BinaryFileManager.getInstance().getMp3File(binary);
+				String suffix = mp3File.equals(BinaryFileManager.getInstance().buildFilePath(binary)) ? ""
+						: BinaryFileManager.MP3_SUFFIX;
+				HttpFileSender.send(req, resp, mp3File, "audio/mp3", binary.getFileName() /* + ".mp3" */,
+						etag(binary, suffix), MEDIA_CACHE_CONTROL);
 			} else {
 				resp.sendError(404);
 			}
 		} else if (thumbId != null) {
 			Binary binary = binaryHandler.getBinary(thumbId);
 			if (binary != null) {
-				File thumbFile = BinaryFileManager.getInstance().buildThumbFilePath(binary);
-				resp.setHeader("Content-Disposition", "attachment; filename=\"" + binary.getFileName() + "\"");
-				resp.setContentType(binary.getContentType());
-				resp.setContentLength((int) thumbFile.length());
-				FileInputStream fis = new FileInputStream(thumbFile);
-				IOUtils.copy(fis, resp.getOutputStream());
-				fis.close();
+				/* the thumbnail is created now if it has not been created yet */
+				File thumbFile = binaryOperation.getThumbnail(binary);
+				String suffix = BinaryFileManager.THUMB_SUFFIX;
+				if (thumbWidth != null && thumbWidth.matches("\\d{1,4}")) {
+					File sizeFile = PhotoConverter.getSizeFile(thumbFile, Integer.parseInt(thumbWidth));
+					if (sizeFile.exists()) {
+						thumbFile = sizeFile;
+						suffix = suffix + "." + thumbWidth;
+					}
+				}
+				HttpFileSender.send(req, resp, thumbFile, binary.getContentType(), binary.getFileName(),
+						etag(binary, suffix), THUMB_CACHE_CONTROL);
 			} else {
 				resp.sendError(404);
 			}
@@ -89,4 +103,20 @@ public class BinaryDownloadServiceImpl implements BinaryDownloadService {
 		}
 	}
 
+	/**
+	 * Build the entity tag of a binary file, the hash of its content when the content is in the binary store, its id
+	 * and version otherwise
+	 * 
+	 * @param binary the binary
+	 * @param suffix the suffix of the sent file, for the variants of the binary
+	 * @return the quoted entity tag
+	 */
+	private static String etag(Binary binary, String suffix) {
+		String hash = binary instanceof BinaryFile ? ((BinaryFile) binary).getContentHash() : null;
+		if (hash != null) {
+			return "\"" + hash + suffix + "\"";
+		}
+		return "\"" + binary.getId() + "-" + binary.getVersion() + suffix + "\"";
+	}
+
 }
@@ -16,10 +16,11 @@ import org.apache.commons.io.IOUtils;
 import org.imogene.lib.common.binary.Binary;
 import org.imogene.lib.common.binary.file.BinaryFile;
 import org.imogene.lib.common.binary.file.BinaryFileManager;
-import org.imogene.lib.media.BinaryOperationImpl;
+import org.imogene.lib.media.BinaryOperation;
 import org.imogene.web.client.util.ImogKeyGenerator;
 import org.imogene.web.server.handler.BinaryHandler;
 import org.imogene.web.server.handler.HandlerHelper;
+import org.imogene.web.server.util.ContentFileItem;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
@@ -29,7 +30,7 @@ public class BinaryUploadServiceImpl implements BinaryUploadService {
 
 	@Autowired
 	@Qualifier(value = "binaryOperation")
-	private BinaryOperationImpl binaryOperation;
+	private BinaryOperation binaryOperation;
 
 	@Autowired
 	@Qualifier(value = "binaryHandler")
@@ -48,18 +49,27 @@ public class BinaryUploadServiceImpl implements BinaryUploadService {
 			if (false == item.isFormField()) {
 				try {
 					entityId = ImogKeyGenerator.generateKeyId(BINARY_SHORTNAME);
-					Binary binary = new BinaryFile();
+					BinaryFile binary = new BinaryFile();
 					binary.setId(entityId);
 					binary.setContentType(item.getContentType());
 					binary.setLength(item.getSize());
 					binary.setFileName(item.getName());
 					handlerHelper.prepare(binary);
 					binary.setModified(null);
-					binaryHandler.saveOrUpdateBinary(binary);
 					/* binary file creation */
-					File localFile = getLocalFile(item.getName(), entityId);
-					item.write(localFile);
-					/* binary file conversion to flv */
+					if (item instanceof ContentFileItem && ((ContentFileItem) item).getHash() != null) {
+						/* the file has been hashed while it was received, it is moved to the store as is */
+						ContentFileItem contentItem = (ContentFileItem) item;
+						binary.setContentType(contentItem.getDetectedContentType());
+						BinaryFileManager.getInstance().store(binary, contentItem.getStoreLocation(),
+								contentItem.getHash());
+					} else {
+						File localFile = BinaryFileManager.getInstance().createTempFile();
+						item.write(localFile);
+						BinaryFileManager.getInstance().store(binary, localFile);
+					}
+					binaryHandler.saveOrUpdateBinary(binary);
+					/* binary file conversion to flv, thumbnail creation in the background */
 					binaryOperation.operate(binary);
 				} catch (Exception e) {
 					e.printStackTrace();
@@ -77,7 +87,7 @@ public class BinaryUploadServiceImpl implements BinaryUploadService {
 		String entityId = request.getParameter(UConsts.PARAM_SHOW);
 		Binary binary = binaryHandler.getBinary(entityId);
 		if (binary != null) {
-			File thumbFile = BinaryFileManager.getInstance().buildThumbFilePath(binary);
+			File thumbFile = binaryOperation.getThumbnail(binary);
 			response.setHeader("Content-Disposition", "attachment; filename=\"" + binary.getFileName() + "\"");
 			response.setContentType(binary.getContentType());
 			response.setContentLength((int) thumbFile.length());
@@ -89,15 +99,4 @@ public class BinaryUploadServiceImpl implements BinaryUploadService {
 		}
 	}
 
-	/**
-	 * Get the local file where copy the FileItem
-	 * 
-	 * @param remoteName the remote name
-	 * @return the corresponding file.
-	 */
-	private File getLocalFile(String remoteName, String entityId) {
-		String basename = (new File(remoteName)).getName();
-		return BinaryFileManager.getInstance().buildFilePath(entityId, basename);
-	}
-
 }
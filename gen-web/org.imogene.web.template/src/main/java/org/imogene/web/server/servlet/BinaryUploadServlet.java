@@ -12,7 +12,9 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileItemFactory;
 import org.imogene.web.server.service.BinaryUploadService;
+import org.imogene.web.server.util.ContentFileItemFactory;
 import org.springframework.web.context.WebApplicationContext;
 import org.springframework.web.context.support.WebApplicationContextUtils;
 
@@ -37,6 +39,14 @@ public class BinaryUploadServlet extends UploadAction {
 		// videoConverter = (MediaConverter) wac.getBean("videoConverter");
 	}
 
+	/**
+	 * The uploaded files are written directly in the binary directory, and hashed while they are received
+	 */
+	@Override
+	protected FileItemFactory getFileItemFactory(long requestSize) {
+		return new ContentFileItemFactory(maxFileSize);
+	}
+
 	/**
 	 * Copy the uploaded file in the correct folder, Create the binary entity associated.
 	 */
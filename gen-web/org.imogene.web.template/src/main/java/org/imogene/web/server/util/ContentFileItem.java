@@ -0,0 +1,189 @@
+package org.imogene.web.server.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileItemHeaders;
+import org.apache.commons.io.FileUtils;
+import org.imogene.lib.common.binary.file.BinaryFileManager;
+import org.imogene.lib.common.binary.file.ContentOutputStream;
+
+/**
+ * Uploaded file written directly in the binary directory. The hash, the length and the content type of the file are
+ * computed while it is received, so that the file can be moved to the binary store without being read again.
+ *
+ * @author MEDES-IMPS
+ */
+public class ContentFileItem implements FileItem {
+
+	private static final long serialVersionUID = -3580261627254370187L;
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private String fieldName;
+
+	private String contentType;
+
+	private String fileName;
+
+	private long maxSize;
+
+	private File storeLocation;
+
+	private transient ContentOutputStream os;
+
+	private FileItemHeaders headers;
+
+	/**
+	 * @param fieldName the name of the form field
+	 * @param contentType the content type sent by the client
+	 * @param fileName the name of the file on the client
+	 * @param maxSize the maximum size of the file, 0 or less for no maximum
+	 */
+	public ContentFileItem(String fieldName, String contentType, String fileName, long maxSize) {
+		this.fieldName = fieldName;
+		this.contentType = contentType;
+		this.fileName = fileName;
+		this.maxSize = maxSize;
+	}
+
+	@Override
+	public OutputStream getOutputStream() throws IOException {
+		if (os == null) {
+			storeLocation = BinaryFileManager.getInstance().createTempFile();
+			os = new ContentOutputStream(new BufferedOutputStream(new FileOutputStream(storeLocation), BUFFER_SIZE),
+					maxSize);
+		}
+		return os;
+	}
+
+	/**
+	 * Get the file that holds the upload, which is moved to the binary store once the upload is stored
+	 */
+	public File getStoreLocation() {
+		return storeLocation;
+	}
+
+	/**
+	 * Get the hash of the uploaded file, once it is received
+	 *
+	 * @return the hexadecimal hash, null if the file is not received
+	 */
+	public String getHash() {
+		return os != null ? os.getHash() : null;
+	}
+
+	/**
+	 * Get the content type of the uploaded file, the one detected from its first bytes if the client has not sent a
+	 * specific one
+	 */
+	public String getDetectedContentType() {
+		String detected = os != null ? os.getDetectedContentType() : null;
+		if (detected != null && (contentType == null || contentType.equals("application/octet-stream"))) {
+			return detected;
+		}
+		return contentType;
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		return new FileInputStream(storeLocation);
+	}
+
+	@Override
+	public String getContentType() {
+		return contentType;
+	}
+
+	@Override
+	public String getName() {
+		return fileName;
+	}
+
+	@Override
+	public boolean isInMemory() {
+		return false;
+	}
+
+	@Override
+	public long getSize() {
+		if (os != null) {
+			return os.getLength();
+		}
+		return storeLocation != null ? storeLocation.length() : 0;
+	}
+
+	@Override
+	public byte[] get() {
+		try {
+			return FileUtils.readFileToByteArray(storeLocation);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public String getString(String encoding) throws UnsupportedEncodingException {
+		return new String(get(), encoding);
+	}
+
+	@Override
+	public String getString() {
+		return new String(get());
+	}
+
+	@Override
+	public void write(File file) throws Exception {
+		if (!storeLocation.renameTo(file)) {
+			FileUtils.copyFile(storeLocation, file);
+		}
+	}
+
+	/**
+	 * Delete the uploaded file if it has not been moved to the binary store
+	 */
+	@Override
+	public void delete() {
+		if (storeLocation != null) {
+			storeLocation.delete();
+		}
+	}
+
+	@Override
+	public String getFieldName() {
+		return fieldName;
+	}
+
+	@Override
+	public void setFieldName(String fieldName) {
+		this.fieldName = fieldName;
+	}
+
+	@Override
+	public boolean isFormField() {
+		return false;
+	}
+
+	@Override
+	public void setFormField(boolean isFormField) {
+		// always a file
+	}
+
+	@Override
+	public FileItemHeaders getHeaders() {
+		return headers;
+	}
+
+	@Override
+	public void setHeaders(FileItemHeaders headers) {
+		this.headers = headers;
+	}
+
+}
@@ -0,0 +1,30 @@
+package org.imogene.web.server.util;
+
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.disk.DiskFileItemFactory;
+
+/**
+ * Creates the uploaded files directly in the binary directory, the form fields are still kept in memory
+ *
+ * @author MEDES-IMPS
+ */
+public class ContentFileItemFactory extends DiskFileItemFactory {
+
+	private final long maxFileSize;
+
+	/**
+	 * @param maxFileSize the maximum size of an uploaded file, 0 or less for no maximum
+	 */
+	public ContentFileItemFactory(long maxFileSize) {
+		this.maxFileSize = maxFileSize;
+	}
+
+	@Override
+	public FileItem createItem(String fieldName, String contentType, boolean isFormField, String fileName) {
+		if (isFormField) {
+			return super.createItem(fieldName, contentType, isFormField, fileName);
+		}
+		return new ContentFileItem(fieldName, contentType, fileName, maxFileSize);
+	}
+
+}
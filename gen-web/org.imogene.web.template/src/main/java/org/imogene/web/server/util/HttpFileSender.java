@@ -0,0 +1,221 @@
+package org.imogene.web.server.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.Vector;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Sends a file as the response of a GET request, with the HTTP validators and the byte ranges. The file is not sent
+ * when the client already has it (304), and only the requested ranges of the file are sent when the client asks for
+ * them (206), so that the media players can seek without downloading the whole file.
+ *
+ * @author MEDES-IMPS
+ */
+public class HttpFileSender {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	/* more ranges than that are served as a whole file */
+	private static final int MAX_RANGES = 16;
+
+	private static final String MULTIPART_BOUNDARY = "IMOGENE_BYTERANGES";
+
+	/**
+	 * Send a file
+	 *
+	 * @param req the request
+	 * @param resp the response
+	 * @param file the file to send
+	 * @param contentType the content type of the file
+	 * @param fileName the file name proposed to the client
+	 * @param etag the strong entity tag of the file, quoted
+	 * @param cacheControl the cache policy of the file
+	 * @throws IOException
+	 */
+	public static void send(HttpServletRequest req, HttpServletResponse resp, File file, String contentType,
+			String fileName, String etag, String cacheControl) throws IOException {
+		if (!file.isFile()) {
+			resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		long length = file.length();
+		/* the HTTP dates have a one second precision */
+		long lastModified = file.lastModified() / 1000 * 1000;
+
+		resp.setHeader("ETag", etag);
+		resp.setDateHeader("Last-Modified", lastModified);
+		resp.setHeader("Cache-Control", cacheControl);
+		resp.setHeader("Accept-Ranges", "bytes");
+
+		if (isNotModified(req, etag, lastModified)) {
+			resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+
+		resp.setHeader("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
+
+		List<long[]> ranges = null;
+		if (isRangeApplicable(req, etag, lastModified)) {
+			ranges = parseRanges(req.getHeader("Range"), length);
+			if (ranges != null && ranges.isEmpty()) {
+				resp.setHeader("Content-Range", "bytes */" + length);
+				resp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+				return;
+			}
+		}
+
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			if (ranges == null) {
+				resp.setContentType(contentType);
+				resp.setHeader("Content-Length", String.valueOf(length));
+				copy(in, resp.getOutputStream(), 0, length);
+			} else if (ranges.size() == 1) {
+				long[] range = ranges.get(0);
+				resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				resp.setContentType(contentType);
+				resp.setHeader("Content-Range", contentRange(range, length));
+				resp.setHeader("Content-Length", String.valueOf(range[1] - range[0] + 1));
+				copy(in, resp.getOutputStream(), range[0], range[1] - range[0] + 1);
+			} else {
+				resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				resp.setContentType("multipart/byteranges; boundary=" + MULTIPART_BOUNDARY);
+				OutputStream out = resp.getOutputStream();
+				for (long[] range : ranges) {
+					writeAscii(out, "\r\n--" + MULTIPART_BOUNDARY + "\r\n");
+					if (contentType != null) {
+						writeAscii(out, "Content-Type: " + contentType + "\r\n");
+					}
+					writeAscii(out, "Content-Range: " + contentRange(range, length) + "\r\n\r\n");
+					copy(in, out, range[0], range[1] - range[0] + 1);
+				}
+				writeAscii(out, "\r\n--" + MULTIPART_BOUNDARY + "--\r\n");
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Check the conditional headers, If-None-Match takes precedence over If-Modified-Since
+	 */
+	private static boolean isNotModified(HttpServletRequest req, String etag, long lastModified) {
+		String ifNoneMatch = req.getHeader("If-None-Match");
+		if (ifNoneMatch != null) {
+			return matches(ifNoneMatch, etag);
+		}
+		try {
+			long ifModifiedSince = req.getDateHeader("If-Modified-Since");
+			return ifModifiedSince != -1 && lastModified <= ifModifiedSince;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Check that the ranges apply to the current file, the whole file is sent if the If-Range validator has changed
+	 */
+	private static boolean isRangeApplicable(HttpServletRequest req, String etag, long lastModified) {
+		if (req.getHeader("Range") == null) {
+			return false;
+		}
+		String ifRange = req.getHeader("If-Range");
+		if (ifRange == null) {
+			return true;
+		}
+		if (ifRange.trim().startsWith("\"")) {
+			return ifRange.trim().equals(etag);
+		}
+		try {
+			return req.getDateHeader("If-Range") == lastModified;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	private static boolean matches(String header, String etag) {
+		for (String tag : header.split(",")) {
+			tag = tag.trim();
+			if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Parse a Range header
+	 *
+	 * @param header the Range header
+	 * @param length the file length
+	 * @return the first and last positions of the satisfiable ranges, an empty list if no range is satisfiable, or
+	 *         null if the header is invalid or has too many ranges, in which case the whole file is sent
+	 */
+	private static List<long[]> parseRanges(String header, long length) {
+		if (!header.startsWith("bytes=")) {
+			return null;
+		}
+		String[] specs = header.substring("bytes=".length()).split(",");
+		if (specs.length > MAX_RANGES) {
+			return null;
+		}
+		List<long[]> ranges = new Vector<long[]>();
+		for (String spec : specs) {
+			spec = spec.trim();
+			int dash = spec.indexOf('-');
+			if (dash < 0) {
+				return null;
+			}
+			long first;
+			long last;
+			try {
+				if (dash == 0) {
+					/* suffix range, the last bytes of the file */
+					long suffix = Long.parseLong(spec.substring(1));
+					first = Math.max(0, length - suffix);
+					last = length - 1;
+				} else {
+					first = Long.parseLong(spec.substring(0, dash));
+					last = dash == spec.length() - 1 ? length - 1 : Long.parseLong(spec.substring(dash + 1));
+				}
+			} catch (NumberFormatException e) {
+				return null;
+			}
+			if (first > last && dash > 0 && dash < spec.length() - 1) {
+				return null;
+			}
+			if (first < length && first <= last) {
+				ranges.add(new long[] { first, Math.min(last, length - 1) });
+			}
+		}
+		return ranges;
+	}
+
+	private static String contentRange(long[] range, long length) {
+		return "bytes " + range[0] + "-" + range[1] + "/" + length;
+	}
+
+	private static void writeAscii(OutputStream out, String value) throws IOException {
+		out.write(value.getBytes("US-ASCII"));
+	}
+
+	private static void copy(RandomAccessFile in, OutputStream out, long start, long count) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		in.seek(start);
+		while (count > 0) {
+			int read = in.read(buffer, 0, (int) Math.min(buffer.length, count));
+			if (read == -1) {
+				break;
+			}
+			out.write(buffer, 0, read);
+			count -= read;
+		}
+	}
+
+}